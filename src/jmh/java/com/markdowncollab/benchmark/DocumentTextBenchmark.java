@@ -0,0 +1,66 @@
+package com.markdowncollab.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import com.markdowncollab.model.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Edits of live documents. Each edit inserts a word and deletes it again, so the document keeps
+ * its size however many times the benchmark runs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocumentTextBenchmark {
+
+	private static final String WORD = "markdown ";
+
+	@Param({ "10000", "1000000", "10000000" })
+	public int size;
+
+	private Document document;
+	private int[] positions;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		document = new Document();
+		document.setContent(MarkdownCorpus.generate(size, 1));
+		Random random = new Random(2);
+		positions = new int[4096];
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = random.nextInt(size);
+		}
+	}
+
+	@Benchmark
+	public int insertAndDeleteText() {
+		int position = positions[next++ & (positions.length - 1)];
+		document.insertText(position, WORD);
+		document.deleteText(position, WORD.length());
+		return document.getContentLength();
+	}
+
+	// Previews, exports and saves read the whole text after edits
+	@Benchmark
+	public String editAndGetContent() {
+		int position = positions[next++ & (positions.length - 1)];
+		document.insertText(position, WORD);
+		document.deleteText(position, WORD.length());
+		return document.getContent();
+	}
+}
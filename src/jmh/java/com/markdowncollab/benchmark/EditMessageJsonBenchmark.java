@@ -0,0 +1,62 @@
+package com.markdowncollab.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.markdowncollab.config.ApplicationConfig;
+import com.markdowncollab.dto.DocumentEditMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JSON of the edit messages sent for every keystroke, as the message converters see them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EditMessageJsonBenchmark {
+
+	// A keystroke, and a paste
+	@Param({ "1", "4096" })
+	public int textLength;
+
+	private ObjectMapper objectMapper;
+	private DocumentEditMessage message;
+	private String json;
+
+	@Setup
+	public void setUp() throws Exception {
+		// The mapper the application uses
+		objectMapper = new ApplicationConfig().objectMapper();
+		message = new DocumentEditMessage();
+		message.setUserId(7L);
+		message.setUsername("alice");
+		message.setOperation("insert");
+		message.setPosition(12345);
+		message.setText(MarkdownCorpus.generate(textLength, 1));
+		message.setBaseRevision(42L);
+		message.setRevision(43);
+		json = objectMapper.writeValueAsString(message);
+	}
+
+	@Benchmark
+	public String serialize() throws Exception {
+		return objectMapper.writeValueAsString(message);
+	}
+
+	@Benchmark
+	public DocumentEditMessage deserialize() throws Exception {
+		return objectMapper.readValue(json, DocumentEditMessage.class);
+	}
+}
@@ -0,0 +1,52 @@
+package com.markdowncollab.benchmark;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import com.markdowncollab.model.Document;
+import com.markdowncollab.pattern.factory.DocumentExporter;
+import com.markdowncollab.pattern.factory.DocumentExporterFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Every export format on the same documents, streamed the way the export cache writes them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ExportBenchmark {
+
+	@Param({ "html", "pdf", "docx" })
+	public String format;
+
+	@Param({ "16", "256" })
+	public int kilobytes;
+
+	private DocumentExporter exporter;
+	private Document document;
+
+	@Setup
+	public void setUp() throws Exception {
+		exporter = DocumentExporterFactory.createExporter(format);
+		document = new Document();
+		document.setTitle("Benchmark document");
+		document.setContent(MarkdownCorpus.generate(kilobytes * 1024, 1));
+	}
+
+	@Benchmark
+	public void export() throws Exception {
+		exporter.export(document, OutputStream.nullOutputStream());
+	}
+}
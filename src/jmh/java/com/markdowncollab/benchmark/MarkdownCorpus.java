@@ -0,0 +1,112 @@
+package com.markdowncollab.benchmark;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates markdown shaped like real documents: headed sections of prose with inline markup
+ * and links, lists, fenced code, quotes and tables, in varying proportions. The same size and
+ * seed always give the same text, so runs compare like for like.
+ */
+final class MarkdownCorpus {
+
+	private static final List<String> WORDS = List.of(
+			"the", "document", "editor", "version", "server", "client", "change", "user", "render",
+			"preview", "export", "markdown", "section", "value", "request", "response", "cache",
+			"collaborator", "history", "operation", "revision", "content", "of", "and", "to", "a",
+			"with", "for", "is", "when", "each", "new", "after", "before", "every", "text");
+
+	private static final List<String> CODE = List.of(
+			"```java\npublic String render(String markdown) {\n    Node document = parser.parse(markdown);\n"
+					+ "    return renderer.render(document);\n}\n```",
+			"```bash\nmvn clean install\nmvn spring-boot:run\n```",
+			"```json\n{\n  \"operation\": \"insert\",\n  \"position\": 42,\n  \"text\": \"hello\"\n}\n```");
+
+	private MarkdownCorpus() {
+	}
+
+	static String generate(int chars, long seed) {
+		Random random = new Random(seed);
+		StringBuilder markdown = new StringBuilder(chars + 1024);
+		int section = 0;
+		while (markdown.length() < chars) {
+			markdown.append("## Section ").append(++section).append(": ").append(sentence(random, 3)).append("\n\n");
+			int blocks = 2 + random.nextInt(5);
+			for (int i = 0; i < blocks; i++) {
+				int kind = random.nextInt(10);
+				if (kind < 5) {
+					paragraph(random, markdown);
+				} else if (kind < 7) {
+					list(random, markdown);
+				} else if (kind == 7) {
+					markdown.append(CODE.get(random.nextInt(CODE.size())));
+				} else if (kind == 8) {
+					markdown.append("> ").append(sentence(random, 12)).append("\n> ").append(sentence(random, 8));
+				} else {
+					table(random, markdown);
+				}
+				markdown.append("\n\n");
+			}
+		}
+		markdown.setLength(chars);
+		return markdown.toString();
+	}
+
+	private static void paragraph(Random random, StringBuilder markdown) {
+		int sentences = 2 + random.nextInt(5);
+		for (int i = 0; i < sentences; i++) {
+			if (i > 0) {
+				markdown.append(random.nextInt(4) == 0 ? "\n" : " ");
+			}
+			switch (random.nextInt(6)) {
+				case 0 -> markdown.append("**").append(sentence(random, 2)).append("** ");
+				case 1 -> markdown.append("Use `").append(word(random)).append("()` to ");
+				case 2 -> markdown.append("See [").append(sentence(random, 2)).append("](https://example.com/")
+						.append(word(random)).append(") for ");
+				case 3 -> markdown.append('*').append(word(random)).append("* ");
+				default -> {
+				}
+			}
+			markdown.append(sentence(random, 6 + random.nextInt(14))).append('.');
+		}
+	}
+
+	private static void list(Random random, StringBuilder markdown) {
+		boolean ordered = random.nextBoolean();
+		int items = 2 + random.nextInt(6);
+		for (int i = 0; i < items; i++) {
+			markdown.append(ordered ? (i + 1) + ". " : "- ").append(sentence(random, 3 + random.nextInt(10)));
+			if (random.nextInt(4) == 0) {
+				markdown.append("\n    - ").append(sentence(random, 4));
+			}
+			if (i + 1 < items) {
+				markdown.append('\n');
+			}
+		}
+	}
+
+	private static void table(Random random, StringBuilder markdown) {
+		markdown.append("| Name | Value | Description |\n|------|-------|-------------|");
+		int rows = 2 + random.nextInt(6);
+		for (int i = 0; i < rows; i++) {
+			markdown.append("\n| ").append(word(random)).append(" | ").append(random.nextInt(1000))
+					.append(" | ").append(sentence(random, 5)).append(" |");
+		}
+	}
+
+	private static String sentence(Random random, int words) {
+		StringBuilder sentence = new StringBuilder();
+		for (int i = 0; i < words; i++) {
+			if (i > 0) {
+				sentence.append(' ');
+			}
+			sentence.append(word(random));
+		}
+		sentence.setCharAt(0, Character.toUpperCase(sentence.charAt(0)));
+		return sentence.toString();
+	}
+
+	private static String word(Random random) {
+		return WORDS.get(random.nextInt(WORDS.size()));
+	}
+}
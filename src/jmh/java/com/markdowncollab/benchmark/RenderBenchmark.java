@@ -0,0 +1,56 @@
+package com.markdowncollab.benchmark;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import com.markdowncollab.pattern.strategy.CommonMarkRenderer;
+import com.markdowncollab.pattern.strategy.FlexmarkRenderer;
+import com.markdowncollab.pattern.strategy.MarkdownRenderStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Both render strategies on the same documents, returning the HTML and streaming it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark {
+
+	@Param({ "commonmark", "flexmark" })
+	public String renderer;
+
+	@Param({ "16", "1024", "8192" })
+	public int kilobytes;
+
+	private MarkdownRenderStrategy strategy;
+	private String content;
+
+	@Setup
+	public void setUp() {
+		strategy = "flexmark".equals(renderer) ? new FlexmarkRenderer() : new CommonMarkRenderer();
+		content = MarkdownCorpus.generate(kilobytes * 1024, 1);
+	}
+
+	@Benchmark
+	public String render() {
+		return strategy.render(content);
+	}
+
+	@Benchmark
+	public void renderStreaming() throws IOException {
+		strategy.render(content, Writer.nullWriter());
+	}
+}
@@ -0,0 +1,41 @@
+package com.markdowncollab.collaboration;
+
+import java.util.List;
+import com.markdowncollab.dto.DocumentEditMessage;
+import com.markdowncollab.model.CollaborationMode;
+import com.markdowncollab.model.Document;
+
+/**
+ * Strategy for merging concurrent edits into a document.
+ * Each {@link CollaborationMode} has one engine; documents choose their mode.
+ */
+public interface CollaborationEngine {
+    /**
+     * The collaboration mode this engine implements
+     */
+    CollaborationMode getMode();
+
+    /**
+     * Merge an edit into the document
+     *
+     * @param document The document to edit
+     * @param message The edit as sent by the client
+     * @return The operations applied to the document content, ready to broadcast
+     */
+    List<DocumentEditMessage> apply(Document document, DocumentEditMessage message);
+
+    /**
+     * Read the content of a document together with the engine's current revision
+     */
+    ContentSnapshot snapshot(Document document);
+
+    /**
+     * The engine's current revision of a document, 0 if it has no state for it
+     */
+    long getRevision(Long documentId);
+
+    /**
+     * Drop the engine state of a document after its content was replaced from outside
+     */
+    void reset(Long documentId);
+}
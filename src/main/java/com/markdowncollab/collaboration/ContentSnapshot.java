@@ -0,0 +1,8 @@
+package com.markdowncollab.collaboration;
+
+/**
+ * Document content together with the server revision it corresponds to.
+ * Clients start editing from this pair and send the revision back as the base of their edits.
+ */
+public record ContentSnapshot(String content, long revision) {
+}
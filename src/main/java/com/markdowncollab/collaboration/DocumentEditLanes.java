@@ -0,0 +1,143 @@
+package com.markdowncollab.collaboration;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import com.markdowncollab.exception.EditQueueFullException;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs edit processing on one sequential lane per document.
+ * Each document has a mailbox of pending tasks that at most one virtual thread drains at a time,
+ * so edits to a document are applied one after another in arrival order while edits to
+ * different documents run in parallel. Mailboxes disappear once drained.
+ */
+@Component
+// Destroyed before the write-behind service so edits still queued at shutdown get flushed
+@DependsOn("documentWriteBehindService")
+public class DocumentEditLanes {
+    private static final Logger logger = LoggerFactory.getLogger(DocumentEditLanes.class);
+    // Document whose lane the current thread drains
+    private static final ThreadLocal<Long> currentLane = new ThreadLocal<>();
+
+    private final int maxQueuedEdits;
+    private final Map<Long, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final ExecutorService drainers = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("document-edit-lane-", 0).factory());
+
+    @Autowired
+    public DocumentEditLanes(@Value("${collaboration.edit-lanes.max-queued:1000}") int maxQueuedEdits) {
+        this.maxQueuedEdits = maxQueuedEdits;
+    }
+
+    /**
+     * Queue a task on the lane of a document.
+     *
+     * @return Completes when the task ran, exceptionally if it failed
+     * @throws EditQueueFullException If the document already has too many edits waiting
+     */
+    public CompletableFuture<Void> submit(Long documentId, Runnable task) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        Runnable entry = () -> {
+            try {
+                task.run();
+                result.complete(null);
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        };
+        // Enqueueing and starting a drainer happen atomically per document
+        mailboxes.compute(documentId, (id, mailbox) -> {
+            if (mailbox == null) {
+                mailbox = new Mailbox();
+            }
+            if (mailbox.tasks.size() >= maxQueuedEdits) {
+                throw new EditQueueFullException("Too many pending edits for document " + id + ", try again");
+            }
+            mailbox.tasks.add(entry);
+            if (!mailbox.draining) {
+                mailbox.draining = true;
+                drainers.execute(() -> drain(id));
+            }
+            return mailbox;
+        });
+        return result;
+    }
+
+    /**
+     * Whether the current thread runs a task of a document's lane, in which case waiting for
+     * another task of that lane would never end.
+     */
+    public boolean isOnLane(Long documentId) {
+        return documentId.equals(currentLane.get());
+    }
+
+    /**
+     * Number of documents with queued or running edits.
+     */
+    public int activeLanes() {
+        return mailboxes.size();
+    }
+
+    private void drain(Long documentId) {
+        currentLane.set(documentId);
+        try {
+            while (true) {
+                Runnable task = next(documentId);
+                if (task == null) {
+                    return;
+                }
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger.error("Edit task for document {} failed", documentId, e);
+                }
+            }
+        } finally {
+            currentLane.remove();
+        }
+    }
+
+    // Takes the next task, or retires the mailbox when it is empty
+    private Runnable next(Long documentId) {
+        Runnable[] next = new Runnable[1];
+        mailboxes.computeIfPresent(documentId, (id, current) -> {
+            next[0] = current.tasks.poll();
+            if (next[0] == null) {
+                current.draining = false;
+                return null;
+            }
+            return current;
+        });
+        return next[0];
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        drainers.shutdown();
+        try {
+            if (!drainers.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warn("Edit lanes still busy at shutdown, {} documents have pending edits", mailboxes.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Only touched inside compute calls on the mailbox map, which serialize access per document
+    private static class Mailbox {
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+        private boolean draining;
+    }
+}
@@ -0,0 +1,543 @@
+package com.markdowncollab.collaboration;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import com.markdowncollab.collaboration.ot.OperationTransformer;
+import com.markdowncollab.dto.DocumentEditMessage;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Append-only journal of applied edit operations, so edits that write-behind holds in memory
+ * survive a crash, and a record of recent edit history. Operations are numbered per document
+ * and written to numbered segment files by a single writer thread, which appends everything
+ * queued since its last write and syncs once for the whole group. Every record carries a CRC;
+ * reading a segment stops at the first torn or corrupt record.
+ * Sealed segments are compacted in place one at a time, see {@link #compactNext(Function)}.
+ */
+@Component
+public class EditJournal {
+    private static final Logger logger = LoggerFactory.getLogger(EditJournal.class);
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String COMPACTING_SUFFIX = ".compacting";
+    // Larger length fields can only come from a torn write
+    private static final int MAX_RECORD_BYTES = 64 * 1024 * 1024;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long segmentBytes;
+    private final boolean fsync;
+    private final long retentionMs;
+    private final long compactionBytesPerSecond;
+
+    private final BlockingQueue<PendingAppend> queue = new LinkedBlockingQueue<>();
+    // Highest sequence of each document known to be in the database
+    private final Map<Long, Long> persisted = new ConcurrentHashMap<>();
+
+    private volatile boolean running;
+    // Segments below this number are never written again
+    private volatile long sealedBelow;
+    private long lastSegment;
+    private Thread writer;
+
+    // Writer thread only
+    private FileChannel channel;
+    private long segmentSize;
+
+    // Guarded by compactionLock
+    private final Object compactionLock = new Object();
+    private long compactedThrough;
+
+    @Autowired
+    public EditJournal(
+            @Value("${collaboration.journal.enabled:true}") boolean enabled,
+            @Value("${collaboration.journal.directory:data/journal}") String directory,
+            @Value("${collaboration.journal.segment-bytes:16777216}") long segmentBytes,
+            @Value("${collaboration.journal.fsync:true}") boolean fsync,
+            @Value("${collaboration.journal.retention-ms:86400000}") long retentionMs,
+            @Value("${collaboration.journal.compaction.max-bytes-per-second:4194304}") long compactionBytesPerSecond) {
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.segmentBytes = segmentBytes;
+        this.fsync = fsync;
+        this.retentionMs = retentionMs;
+        this.compactionBytesPerSecond = compactionBytesPerSecond;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Reads every record in the existing segments, oldest first.
+     * Must be called before {@link #start()}.
+     */
+    public void replay(Consumer<Entry> consumer) throws IOException {
+        for (long number : existingSegments()) {
+            read(segmentPath(number), consumer);
+        }
+    }
+
+    /**
+     * Starts accepting appends. New records go to a segment after the existing ones.
+     */
+    public synchronized void start() throws IOException {
+        if (!enabled || running) {
+            return;
+        }
+        // Left behind by a compaction that did not finish; the original segment is intact
+        if (Files.isDirectory(directory)) {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : files.filter(f -> f.getFileName().toString().endsWith(COMPACTING_SUFFIX)).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+        for (long number : existingSegments()) {
+            lastSegment = Math.max(lastSegment, number);
+        }
+        sealedBelow = lastSegment + 1;
+        running = true;
+        writer = new Thread(this::writeLoop, "edit-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues operations of one document for the next group commit.
+     *
+     * @param firstSequence Sequence number of the first operation, the others follow consecutively
+     * @return Completes once the operations are on disk
+     */
+    public CompletableFuture<Void> append(Long documentId, long firstSequence, List<DocumentEditMessage> operations) {
+        if (!running) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Edit journal is not running"));
+        }
+        long now = System.currentTimeMillis();
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        for (int i = 0; i < operations.size(); i++) {
+            long sequence = firstSequence + i;
+            records.writeBytes(encode(new Entry(documentId, sequence, sequence, now, operations.get(i))));
+        }
+        PendingAppend pending = new PendingAppend(records.toByteArray(), new CompletableFuture<>());
+        queue.add(pending);
+        return pending.done;
+    }
+
+    /**
+     * Records that the database holds a document up to and including the given sequence.
+     */
+    public void markPersisted(Long documentId, long sequence) {
+        persisted.merge(documentId, sequence, Math::max);
+    }
+
+    /**
+     * Compacts the next sealed segment, going through them oldest first and starting over
+     * once all were visited. Operations the database already has are dropped once a version
+     * snapshot covers them or they are older than the retention window; the remaining ones are
+     * merged where one continues another by the same user. Operations that are not persisted
+     * yet are kept as they are, since recovery needs them. The segment is rewritten next to
+     * the original at a throttled rate and then moved over it, or deleted if nothing is left.
+     *
+     * @param versionSequences Looks up the journal sequence of the latest version of each given document
+     * @return Whether a segment was visited; false at the end of a pass
+     */
+    public boolean compactNext(Function<Set<Long>, Map<Long, Long>> versionSequences) throws IOException {
+        synchronized (compactionLock) {
+            if (!running) {
+                return false;
+            }
+            Long number = existingSegments().stream()
+                    .filter(n -> n > compactedThrough && n < sealedBelow)
+                    .findFirst()
+                    .orElse(null);
+            if (number == null) {
+                compactedThrough = 0;
+                return false;
+            }
+            compactedThrough = number;
+
+            Path segment = segmentPath(number);
+            Throttle throttle = new Throttle(compactionBytesPerSecond);
+            throttle.acquire(Files.size(segment));
+            List<Entry> entries = new ArrayList<>();
+            read(segment, entries::add);
+            Set<Long> documentIds = entries.stream().map(Entry::documentId).collect(Collectors.toSet());
+            Map<Long, Long> snapshots = documentIds.isEmpty() ? Map.of() : versionSequences.apply(documentIds);
+
+            List<Entry> kept = compact(entries, persisted, snapshots, System.currentTimeMillis() - retentionMs);
+            if (kept.size() == entries.size()) {
+                return true;
+            }
+            if (kept.isEmpty()) {
+                Files.delete(segment);
+            } else {
+                rewrite(segment, kept, throttle);
+            }
+            logger.debug("Compacted edit journal segment {} from {} to {} operations", number, entries.size(), kept.size());
+            return true;
+        }
+    }
+
+    /**
+     * The compacted form of a run of entries, in the same order.
+     *
+     * @param persisted Highest persisted sequence per document
+     * @param snapshots Journal sequence of the latest version per document
+     * @param retainAfter Persisted operations journaled before this time are dropped
+     */
+    static List<Entry> compact(List<Entry> entries, Map<Long, Long> persisted, Map<Long, Long> snapshots, long retainAfter) {
+        List<Entry> kept = new ArrayList<>(entries.size());
+        // Index in kept of each document's last entry, while it can still absorb the next one
+        Map<Long, Integer> open = new HashMap<>();
+        for (Entry entry : entries) {
+            Long documentId = entry.documentId();
+            long persistedSequence = persisted.getOrDefault(documentId, 0L);
+            if (entry.sequence() > persistedSequence) {
+                kept.add(entry);
+                open.remove(documentId);
+                continue;
+            }
+            if (entry.sequence() <= snapshots.getOrDefault(documentId, 0L) || entry.timestamp() < retainAfter) {
+                continue;
+            }
+            Integer index = open.get(documentId);
+            if (index != null) {
+                Entry previous = kept.get(index);
+                DocumentEditMessage merged = entry.firstSequence() == previous.sequence() + 1
+                        ? merge(previous.operation(), entry.operation()) : null;
+                if (merged != null) {
+                    kept.set(index, new Entry(documentId, previous.firstSequence(), entry.sequence(), entry.timestamp(), merged));
+                    continue;
+                }
+            }
+            open.put(documentId, kept.size());
+            kept.add(entry);
+        }
+        return kept;
+    }
+
+    // A single operation with the effect of applying first and then second, if there is one
+    private static DocumentEditMessage merge(DocumentEditMessage first, DocumentEditMessage second) {
+        String operation = first.getOperation();
+        if (first.getUserId() == null || !Objects.equals(first.getUserId(), second.getUserId())
+                || !operation.equals(second.getOperation())) {
+            return null;
+        }
+        DocumentEditMessage merged = new DocumentEditMessage(first);
+        if (OperationTransformer.INSERT.equals(operation)) {
+            // Typed into the text just inserted
+            String text = first.getText() != null ? first.getText() : "";
+            int offset = second.getPosition() - first.getPosition();
+            if (offset < 0 || offset > text.length()) {
+                return null;
+            }
+            merged.setText(text.substring(0, offset) + (second.getText() != null ? second.getText() : "") + text.substring(offset));
+            return merged;
+        }
+        if (OperationTransformer.DELETE.equals(operation)) {
+            if (second.getPosition() == first.getPosition()) {
+                // Forward delete
+                merged.setLength(first.getLength() + second.getLength());
+                return merged;
+            }
+            if (second.getPosition() + second.getLength() == first.getPosition()) {
+                // Backspace
+                merged.setPosition(second.getPosition());
+                merged.setLength(first.getLength() + second.getLength());
+                return merged;
+            }
+        }
+        return null;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeChannel();
+    }
+
+    private void writeLoop() {
+        List<PendingAppend> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingAppend first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<PendingAppend> batch) {
+        try {
+            if (channel == null || segmentSize >= segmentBytes) {
+                roll();
+            }
+            for (PendingAppend pending : batch) {
+                ByteBuffer buffer = ByteBuffer.wrap(pending.records);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                segmentSize += pending.records.length;
+            }
+            // One sync for the whole group
+            if (fsync) {
+                channel.force(false);
+            }
+            batch.forEach(pending -> pending.done.complete(null));
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to write {} edit journal appends", batch.size(), e);
+            batch.forEach(pending -> pending.done.completeExceptionally(e));
+            // Continue in a fresh segment; the reader stops at whatever was torn here
+            closeChannel();
+        }
+    }
+
+    private void roll() throws IOException {
+        closeChannel();
+        Files.createDirectories(directory);
+        long number = ++lastSegment;
+        // Everything before the new segment may be compacted from now on
+        sealedBelow = number;
+        channel = FileChannel.open(segmentPath(number), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segmentSize = 0;
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close edit journal segment {}", lastSegment, e);
+        }
+        channel = null;
+        sealedBelow = lastSegment + 1;
+    }
+
+    private void rewrite(Path segment, List<Entry> entries, Throttle throttle) throws IOException {
+        Path temporary = segment.resolveSibling(segment.getFileName() + COMPACTING_SUFFIX);
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            OutputStream stream = new BufferedOutputStream(Channels.newOutputStream(out));
+            for (Entry entry : entries) {
+                if (!running) {
+                    throw new InterruptedIOException("Edit journal closed during compaction");
+                }
+                byte[] record = encode(entry);
+                throttle.acquire(record.length);
+                stream.write(record);
+            }
+            stream.flush();
+            if (fsync) {
+                out.force(true);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, segment, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private List<Long> existingSegments() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.valueOf(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path segmentPath(long number) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    // Record layout: payload length, CRC32 of the payload, payload
+    static byte[] encode(Entry entry) {
+        DocumentEditMessage operation = entry.operation();
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(payload)) {
+            out.writeLong(entry.documentId());
+            out.writeLong(entry.firstSequence());
+            out.writeLong(entry.sequence());
+            out.writeLong(entry.timestamp());
+            out.writeLong(operation.getUserId() != null ? operation.getUserId() : -1);
+            out.writeUTF(operation.getOperation());
+            out.writeInt(operation.getPosition());
+            out.writeInt(operation.getLength());
+            // Replay does not need the text a delete removed
+            if (operation.getText() == null || OperationTransformer.DELETE.equals(operation.getOperation())) {
+                out.writeInt(-1);
+            } else {
+                byte[] text = operation.getText().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(text.length);
+                out.write(text);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] bytes = payload.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return ByteBuffer.allocate(8 + bytes.length)
+                .putInt(bytes.length)
+                .putInt((int) crc.getValue())
+                .put(bytes)
+                .array();
+    }
+
+    static void read(Path segment, Consumer<Entry> consumer) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                byte[] payload;
+                int checksum;
+                try {
+                    if (length <= 0 || length > MAX_RECORD_BYTES) {
+                        throw new EOFException();
+                    }
+                    checksum = in.readInt();
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    logger.warn("Edit journal segment {} ends in a torn record", segment.getFileName());
+                    return;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    logger.warn("Corrupt record in edit journal segment {}, ignoring the rest of it", segment.getFileName());
+                    return;
+                }
+                consumer.accept(decode(payload));
+            }
+        }
+    }
+
+    private static Entry decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        Long documentId = in.readLong();
+        long firstSequence = in.readLong();
+        long sequence = in.readLong();
+        long timestamp = in.readLong();
+        long userId = in.readLong();
+        DocumentEditMessage operation = new DocumentEditMessage();
+        operation.setUserId(userId >= 0 ? userId : null);
+        operation.setOperation(in.readUTF());
+        operation.setPosition(in.readInt());
+        operation.setLength(in.readInt());
+        int textLength = in.readInt();
+        if (textLength >= 0) {
+            byte[] text = new byte[textLength];
+            in.readFully(text);
+            operation.setText(new String(text, StandardCharsets.UTF_8));
+        }
+        return new Entry(documentId, firstSequence, sequence, timestamp, operation);
+    }
+
+    /**
+     * One journaled operation. Compaction merges consecutive operations into one entry
+     * covering their sequences from {@code firstSequence} to {@code sequence}.
+     *
+     * @param timestamp When the (last merged) operation was journaled, in epoch milliseconds
+     */
+    public record Entry(Long documentId, long firstSequence, long sequence, long timestamp, DocumentEditMessage operation) {
+    }
+
+    private record PendingAppend(byte[] records, CompletableFuture<Void> done) {
+    }
+
+    // Spreads compaction I/O so it never saturates the disk the writer syncs to
+    private static class Throttle {
+        private final long bytesPerSecond;
+        private final long start = System.nanoTime();
+        private long bytes;
+
+        Throttle(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        void acquire(long amount) throws InterruptedIOException {
+            if (bytesPerSecond <= 0) {
+                return;
+            }
+            bytes += amount;
+            long wait = start + bytes * 1_000_000_000L / bytesPerSecond - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while compacting the edit journal");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.markdowncollab.collaboration.crdt;
+
+/**
+ * Identity of a character in the sequence CRDT: the replica (site) that inserted it and
+ * the Lamport clock it was inserted at. Written as {@code clock@site} in edit messages.
+ */
+public record CharId(String site, long clock) implements Comparable<CharId> {
+
+    public static CharId parse(String value) {
+        int separator = value.indexOf('@');
+        if (separator <= 0 || separator == value.length() - 1) {
+            throw new IllegalArgumentException("Invalid character id: " + value);
+        }
+        return new CharId(value.substring(separator + 1), Long.parseLong(value.substring(0, separator)));
+    }
+
+    public CharId plus(long offset) {
+        return new CharId(site, clock + offset);
+    }
+
+    // Later inserts win: higher clock first, site breaks ties so every replica agrees
+    @Override
+    public int compareTo(CharId other) {
+        int byClock = Long.compare(clock, other.clock);
+        return byClock != 0 ? byClock : site.compareTo(other.site);
+    }
+
+    @Override
+    public String toString() {
+        return clock + "@" + site;
+    }
+}
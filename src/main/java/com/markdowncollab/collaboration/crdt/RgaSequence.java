@@ -0,0 +1,486 @@
+package com.markdowncollab.collaboration.crdt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Replicated Growable Array over run-length encoded items.
+ * A run is a stretch of characters typed in one go by one site, with consecutive clocks.
+ * Inserts name the character they follow (their origin); concurrent inserts after the same
+ * origin are ordered by id, so replicas converge whatever order they integrate operations in.
+ * Deleted characters stay as tombstones (length only) so later operations can still refer to them,
+ * until {@link #compact} removes those every replica has seen deleted.
+ * <p>
+ * Runs are kept in document order in a treap, each node holding the number of runs and visible
+ * characters below it, so locating a run, its visible position and a visible position's run
+ * takes logarithmic time instead of a scan over every run.
+ * Not thread-safe; callers must serialize access.
+ */
+public class RgaSequence {
+    public static final String INITIAL_SITE = "init";
+
+    // Runs in document order, tombstones included
+    private Run root;
+    // Runs by site and first clock, to resolve character ids
+    private final Map<String, TreeMap<Long, Run>> index = new HashMap<>();
+    private long maxClock;
+    // Counts integrated changes: one per insert and one per deleted range
+    private long version;
+    private int tombstones;
+    // Highest clock of a removed tombstone; inserts at or below it were integrated before
+    private long compactedClock;
+
+    /**
+     * Create a sequence holding existing text, attributed to {@link #INITIAL_SITE} with clocks 1..n
+     * so every replica that starts from the same text assigns the same ids.
+     */
+    public RgaSequence(String initialText) {
+        if (initialText != null && !initialText.isEmpty()) {
+            Run run = new Run(INITIAL_SITE, 1, initialText.length(), initialText);
+            insertAfter(null, run);
+            indexRun(run);
+            maxClock = initialText.length();
+        }
+    }
+
+    /**
+     * The next Lamport clock for an insert created by this replica.
+     */
+    public long nextClock() {
+        return maxClock + 1;
+    }
+
+    /**
+     * The number of changes integrated so far: one per insert and one per range a delete removed,
+     * in the order {@link #integrateInsert} and {@link #integrateDelete} report them.
+     */
+    public long version() {
+        return version;
+    }
+
+    public int tombstones() {
+        return tombstones;
+    }
+
+    /**
+     * Integrate an insert.
+     *
+     * @param origin The character the text goes after, or null for the start of the document
+     * @param id The id of the first inserted character
+     * @param text The inserted text
+     * @return The visible position of the inserted text, or -1 if the insert was already integrated
+     * @throws IllegalArgumentException If the origin is unknown, or ids after the first are taken
+     */
+    public int integrateInsert(CharId origin, CharId id, String text) {
+        if (text == null || text.isEmpty() || find(id) != null || id.clock() <= compactedClock) {
+            return -1;
+        }
+        // A resent insert starts at a known id; one starting at a new id must not reuse any other
+        TreeMap<Long, Run> siteRuns = index.get(id.site());
+        Map.Entry<Long, Run> last = siteRuns != null ? siteRuns.floorEntry(id.clock() + text.length() - 1) : null;
+        if (last != null && last.getKey() + last.getValue().length > id.clock()) {
+            throw new IllegalArgumentException("Insert of " + text.length() + " characters at " + id + " overlaps known ids");
+        }
+        Run previous = null;
+        if (origin != null) {
+            Run originRun = find(origin);
+            if (originRun == null) {
+                throw new IllegalArgumentException("Unknown origin " + origin);
+            }
+            int offset = (int) (origin.clock() - originRun.clock);
+            if (offset < originRun.length - 1) {
+                splitAt(originRun, offset + 1);
+            }
+            previous = originRun;
+        }
+        // Skip concurrent inserts with a higher id after the same origin, and everything inserted after them
+        Run next = previous != null ? successor(previous) : first(root);
+        while (next != null && next.firstId().compareTo(id) > 0) {
+            previous = next;
+            next = successor(next);
+        }
+        int position = previous != null ? visibleBefore(previous) + previous.visibleLength() : 0;
+
+        version++;
+        if (previous != null && !previous.deleted && previous.site.equals(id.site())
+                && previous.clock + previous.length == id.clock() && previous.lastId().equals(origin)) {
+            // Continued typing extends the run instead of adding one
+            previous.text = previous.text + text;
+            previous.length += text.length();
+            previous.insertedAt = version;
+            refresh(previous);
+        } else {
+            Run run = new Run(id.site(), id.clock(), text.length(), text);
+            run.insertedAt = version;
+            insertAfter(previous, run);
+            indexRun(run);
+        }
+        maxClock = Math.max(maxClock, id.clock() + text.length() - 1);
+        return position;
+    }
+
+    /**
+     * Integrate a delete of characters with consecutive clocks inserted by one site.
+     *
+     * @param start The id of the first deleted character
+     * @param length The number of characters
+     * @return The visible ranges removed, in the order they must be removed from the text
+     */
+    public List<DeletedRange> integrateDelete(CharId start, int length) {
+        TreeMap<Long, Run> siteRuns = index.get(start.site());
+        if (siteRuns == null || length <= 0) {
+            return Collections.emptyList();
+        }
+        long from = start.clock();
+        long to = from + length;
+        Long firstKey = siteRuns.floorKey(from);
+        List<Run> overlapping = new ArrayList<>(siteRuns.subMap(firstKey != null ? firstKey : from, true, to, false).values());
+
+        List<DeletedRange> ranges = new ArrayList<>();
+        for (Run run : overlapping) {
+            long rangeStart = Math.max(from, run.clock);
+            long rangeEnd = Math.min(to, run.clock + run.length);
+            if (run.deleted || rangeStart >= rangeEnd) {
+                continue;
+            }
+            if (rangeEnd < run.clock + run.length) {
+                splitAt(run, (int) (rangeEnd - run.clock));
+            }
+            Run target = run;
+            if (rangeStart > run.clock) {
+                target = splitAt(run, (int) (rangeStart - run.clock));
+            }
+            int position = visibleBefore(target);
+            target.deleted = true;
+            target.text = null;
+            target.deletedAt = ++version;
+            tombstones++;
+            refresh(target);
+            ranges.add(new DeletedRange(target.firstId(), position, target.length));
+        }
+        return ranges;
+    }
+
+    /**
+     * The id of the visible character before a position, used as the origin of an insert there.
+     */
+    public CharId originAt(int position) {
+        if (position <= 0) {
+            return null;
+        }
+        Run run = runAtVisible(position);
+        if (run == null) {
+            throw new IndexOutOfBoundsException("Position " + position + " is past the end of the text");
+        }
+        return new CharId(run.site, run.clock + (position - visibleBefore(run)) - 1);
+    }
+
+    /**
+     * Resolve a visible range to the ids of its characters, one entry per run it covers.
+     */
+    public List<DeletedRange> idsInRange(int position, int length) {
+        List<DeletedRange> ranges = new ArrayList<>();
+        int end = position + length;
+        Run run = length > 0 ? runAtVisible(position + 1) : null;
+        int offset = run != null ? visibleBefore(run) : 0;
+        for (; run != null && offset < end; run = successor(run)) {
+            if (run.deleted) {
+                continue;
+            }
+            int runEnd = offset + run.length;
+            int from = Math.max(position, offset);
+            int to = Math.min(end, runEnd);
+            if (from < to) {
+                ranges.add(new DeletedRange(new CharId(run.site, run.clock + (from - offset)), from, to - from));
+            }
+            offset = runEnd;
+        }
+        return ranges;
+    }
+
+    /**
+     * Remove tombstones every replica has seen deleted. A tombstone can go once its delete is at
+     * or before the stable version and the run after it was inserted at or before it too: every
+     * insert still to come has a higher id than both, so it stops in front of either and lands at
+     * the same visible position whether the tombstone is there or not.
+     *
+     * @param stableVersion The highest version every replica has integrated
+     * @return The number of tombstones removed
+     */
+    public int compact(long stableVersion) {
+        int removed = 0;
+        Run run = first(root);
+        while (run != null) {
+            Run next = successor(run);
+            if (run.deleted && run.deletedAt <= stableVersion && (next == null || next.insertedAt <= stableVersion)) {
+                remove(run);
+                index.get(run.site).remove(run.clock);
+                compactedClock = Math.max(compactedClock, run.clock + run.length - 1);
+                tombstones--;
+                removed++;
+            }
+            run = next;
+        }
+        return removed;
+    }
+
+    public String text() {
+        StringBuilder sb = new StringBuilder(visibleLength());
+        for (Run run = first(root); run != null; run = successor(run)) {
+            if (!run.deleted) {
+                sb.append(run.text);
+            }
+        }
+        return sb.toString();
+    }
+
+    public int visibleLength() {
+        return visible(root);
+    }
+
+    /**
+     * The runs in document order, tombstones included, for clients building their own replica.
+     */
+    public List<Run> runs() {
+        List<Run> runs = new ArrayList<>(count(root));
+        for (Run run = first(root); run != null; run = successor(run)) {
+            runs.add(run);
+        }
+        return Collections.unmodifiableList(runs);
+    }
+
+    private Run find(CharId id) {
+        TreeMap<Long, Run> siteRuns = index.get(id.site());
+        if (siteRuns == null) {
+            return null;
+        }
+        Map.Entry<Long, Run> entry = siteRuns.floorEntry(id.clock());
+        if (entry == null || id.clock() >= entry.getValue().clock + entry.getValue().length) {
+            return null;
+        }
+        return entry.getValue();
+    }
+
+    // Cuts a run in two at an offset, returning the second part
+    private Run splitAt(Run run, int offset) {
+        Run tail = new Run(run.site, run.clock + offset, run.length - offset,
+                run.deleted ? null : run.text.substring(offset));
+        tail.deleted = run.deleted;
+        tail.insertedAt = run.insertedAt;
+        tail.deletedAt = run.deletedAt;
+        if (tail.deleted) {
+            tombstones++;
+        }
+        run.length = offset;
+        if (!run.deleted) {
+            run.text = run.text.substring(0, offset);
+        }
+        refresh(run);
+        insertAfter(run, tail);
+        indexRun(tail);
+        return tail;
+    }
+
+    private void indexRun(Run run) {
+        index.computeIfAbsent(run.site, site -> new TreeMap<>()).put(run.clock, run);
+    }
+
+    // The run holding the visible character at a 1-based position, null past the end
+    private Run runAtVisible(int position) {
+        Run node = root;
+        while (node != null) {
+            int before = visible(node.left);
+            if (position <= before) {
+                node = node.left;
+            } else if (position <= before + node.visibleLength()) {
+                return node;
+            } else {
+                position -= before + node.visibleLength();
+                node = node.right;
+            }
+        }
+        return null;
+    }
+
+    private static int visibleBefore(Run run) {
+        int length = visible(run.left);
+        for (Run node = run; node.parent != null; node = node.parent) {
+            if (node == node.parent.right) {
+                length += visible(node.parent.left) + node.parent.visibleLength();
+            }
+        }
+        return length;
+    }
+
+    private static int rank(Run run) {
+        int rank = count(run.left);
+        for (Run node = run; node.parent != null; node = node.parent) {
+            if (node == node.parent.right) {
+                rank += count(node.parent.left) + 1;
+            }
+        }
+        return rank;
+    }
+
+    private void insertAfter(Run previous, Run run) {
+        Run[] parts = split(root, previous != null ? rank(previous) + 1 : 0);
+        root = merge(merge(parts[0], run), parts[1]);
+        root.parent = null;
+    }
+
+    private void remove(Run run) {
+        Run[] parts = split(root, rank(run));
+        Run[] rest = split(parts[1], 1);
+        root = merge(parts[0], rest[1]);
+        if (root != null) {
+            root.parent = null;
+        }
+        run.left = null;
+        run.right = null;
+        run.parent = null;
+    }
+
+    // Splits a tree into its first count runs and the rest
+    private static Run[] split(Run node, int count) {
+        if (node == null) {
+            return new Run[2];
+        }
+        Run[] parts;
+        if (count(node.left) >= count) {
+            parts = split(node.left, count);
+            node.left = parts[1];
+            if (node.left != null) {
+                node.left.parent = node;
+            }
+            parts[1] = node;
+        } else {
+            parts = split(node.right, count - count(node.left) - 1);
+            node.right = parts[0];
+            if (node.right != null) {
+                node.right.parent = node;
+            }
+            parts[0] = node;
+        }
+        update(node);
+        for (Run part : parts) {
+            if (part != null) {
+                part.parent = null;
+            }
+        }
+        return parts;
+    }
+
+    private static Run merge(Run first, Run second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        if (first.priority > second.priority) {
+            first.right = merge(first.right, second);
+            first.right.parent = first;
+            update(first);
+            return first;
+        }
+        second.left = merge(first, second.left);
+        second.left.parent = second;
+        update(second);
+        return second;
+    }
+
+    // Recomputes the counts from a changed run up to the root
+    private static void refresh(Run run) {
+        for (Run node = run; node != null; node = node.parent) {
+            update(node);
+        }
+    }
+
+    private static void update(Run node) {
+        node.count = 1 + count(node.left) + count(node.right);
+        node.visible = node.visibleLength() + visible(node.left) + visible(node.right);
+    }
+
+    private static Run first(Run node) {
+        if (node == null) {
+            return null;
+        }
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node;
+    }
+
+    private static Run successor(Run run) {
+        if (run.right != null) {
+            return first(run.right);
+        }
+        Run node = run;
+        while (node.parent != null && node == node.parent.right) {
+            node = node.parent;
+        }
+        return node.parent;
+    }
+
+    private static int count(Run node) {
+        return node != null ? node.count : 0;
+    }
+
+    private static int visible(Run node) {
+        return node != null ? node.visible : 0;
+    }
+
+    /**
+     * Characters with consecutive clocks from one site that form one visible range.
+     */
+    public record DeletedRange(CharId first, int position, int length) {
+    }
+
+    public static final class Run {
+        private final String site;
+        private final long clock;
+        private int length;
+        private String text; // Null once deleted
+        private boolean deleted;
+        // Versions of the newest insert into the run and of its delete
+        private long insertedAt;
+        private long deletedAt;
+
+        // Treap links and the runs and visible characters of the subtree
+        private final int priority = ThreadLocalRandom.current().nextInt();
+        private Run left;
+        private Run right;
+        private Run parent;
+        private int count = 1;
+        private int visible;
+
+        Run(String site, long clock, int length, String text) {
+            this.site = site;
+            this.clock = clock;
+            this.length = length;
+            this.text = text;
+            this.visible = length;
+        }
+
+        public CharId firstId() {
+            return new CharId(site, clock);
+        }
+
+        CharId lastId() {
+            return new CharId(site, clock + length - 1);
+        }
+
+        int visibleLength() {
+            return deleted ? 0 : length;
+        }
+
+        public String getText() { return text; }
+        public int getLength() { return length; }
+        public boolean isDeleted() { return deleted; }
+    }
+}
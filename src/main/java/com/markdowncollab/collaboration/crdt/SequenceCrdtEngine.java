@@ -0,0 +1,274 @@
+package com.markdowncollab.collaboration.crdt;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import com.markdowncollab.collaboration.CollaborationEngine;
+import com.markdowncollab.collaboration.ContentSnapshot;
+import com.markdowncollab.collaboration.ot.OperationTransformer;
+import com.markdowncollab.dto.DocumentEditMessage;
+import com.markdowncollab.exception.InvalidEditException;
+import com.markdowncollab.exception.StaleRevisionException;
+import com.markdowncollab.model.CollaborationMode;
+import com.markdowncollab.model.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Collaboration engine backed by a sequence CRDT ({@link RgaSequence}).
+ * CRDT clients send inserts as (originId, itemId, text) and deletes as (itemId, length); these
+ * commute, so they are integrated in arrival order without transforming against history and a
+ * client never has to be rejected for editing an old revision. Position based messages from
+ * plain clients are mapped onto character ids against the server replica.
+ * Every applied operation is broadcast with both its ids and its resulting position.
+ * <p>
+ * The site of a CRDT client's inserts is its user id, optionally followed by a dot and a name
+ * the client picks for each of its replicas ("42" or "42.tab1"). Inserts under another user's
+ * site or the sites reserved for the server, with a clock ahead of the replica, or reusing known
+ * ids are rejected.
+ * <p>
+ * CRDT clients acknowledge the broadcasts they integrated by sending the highest revision they
+ * have as the base revision of their operations. Tombstones every client active within the
+ * replica timeout has acknowledged are compacted away; an id-based operation from a client whose
+ * base revision is older than the last compaction is rejected, and the client reloads the state.
+ */
+@Component
+public class SequenceCrdtEngine implements CollaborationEngine {
+    // Site of operations created by the server on behalf of position based clients
+    public static final String SERVER_SITE = "server";
+
+    private final long replicaTimeoutMs;
+    private final int compactAfterTombstones;
+    private final Map<Long, ReplicaState> replicas = new ConcurrentHashMap<>();
+
+    @Autowired
+    public SequenceCrdtEngine(
+            @Value("${collaboration.crdt.replica-timeout-ms:600000}") long replicaTimeoutMs,
+            @Value("${collaboration.crdt.compact-after-tombstones:1024}") int compactAfterTombstones) {
+        this.replicaTimeoutMs = replicaTimeoutMs;
+        this.compactAfterTombstones = compactAfterTombstones;
+    }
+
+    @Override
+    public CollaborationMode getMode() {
+        return CollaborationMode.CRDT;
+    }
+
+    @Override
+    public List<DocumentEditMessage> apply(Document document, DocumentEditMessage message) {
+        ReplicaState state = replicaOf(document);
+        synchronized (state) {
+            if (message.getItemId() != null) {
+                acknowledge(document, state, message);
+            }
+            List<DocumentEditMessage> result = new ArrayList<>();
+            String operation = message.getOperation();
+            if (OperationTransformer.INSERT.equals(operation)) {
+                applyInsert(document, state, message, result);
+            } else if (OperationTransformer.DELETE.equals(operation)) {
+                applyDelete(document, state, message, result);
+            } else if (OperationTransformer.REPLACE.equals(operation)) {
+                // Replace is delete everything, then insert the new text as the server
+                DocumentEditMessage deleteAll = new DocumentEditMessage(message);
+                deleteAll.setOperation(OperationTransformer.DELETE);
+                deleteAll.setItemId(null);
+                deleteAll.setPosition(0);
+                deleteAll.setLength(state.sequence.visibleLength());
+                applyDelete(document, state, deleteAll, result);
+                DocumentEditMessage insert = new DocumentEditMessage(message);
+                insert.setOperation(OperationTransformer.INSERT);
+                insert.setItemId(null);
+                insert.setOriginId(null);
+                insert.setPosition(0);
+                applyInsert(document, state, insert, result);
+            }
+            compactIfDue(state);
+            return result;
+        }
+    }
+
+    @Override
+    public ContentSnapshot snapshot(Document document) {
+        ReplicaState state = replicaOf(document);
+        synchronized (state) {
+            return new ContentSnapshot(document.getContent(), state.revision);
+        }
+    }
+
+    @Override
+    public void reset(Long documentId) {
+        replicas.remove(documentId);
+    }
+
+    @Override
+    public long getRevision(Long documentId) {
+        ReplicaState state = replicas.get(documentId);
+        if (state == null) {
+            return 0;
+        }
+        synchronized (state) {
+            return state.revision;
+        }
+    }
+
+    /**
+     * The current runs of a document's replica, so clients can build their own copy with matching ids.
+     */
+    public List<RgaSequence.Run> exportRuns(Document document) {
+        ReplicaState state = replicaOf(document);
+        synchronized (state) {
+            return List.copyOf(state.sequence.runs());
+        }
+    }
+
+    private void applyInsert(Document document, ReplicaState state, DocumentEditMessage message,
+            List<DocumentEditMessage> result) {
+        String text = message.getText();
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        CharId origin;
+        CharId id;
+        if (message.getItemId() != null) {
+            origin = message.getOriginId() != null ? parse(message.getOriginId()) : null;
+            id = parse(message.getItemId());
+            String site = String.valueOf(message.getUserId());
+            if (!id.site().equals(site) && !id.site().startsWith(site + ".")) {
+                throw new InvalidEditException("Insert " + id + " is not from a site of user " + site);
+            }
+            // A client's clock follows the ids it has seen, all of which came through here
+            if (id.clock() < 1 || id.clock() > state.sequence.nextClock()) {
+                throw new InvalidEditException("Insert " + id + " has a clock the document has not reached");
+            }
+        } else {
+            int position = Math.max(0, Math.min(message.getPosition(), state.sequence.visibleLength()));
+            origin = state.sequence.originAt(position);
+            id = new CharId(SERVER_SITE, state.sequence.nextClock());
+        }
+        int position;
+        try {
+            position = state.sequence.integrateInsert(origin, id, text);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidEditException(e.getMessage());
+        }
+        if (position < 0) {
+            // Already integrated, e.g. a client resending after a reconnect
+            return;
+        }
+        document.insertText(position, text);
+
+        DocumentEditMessage applied = new DocumentEditMessage(message);
+        applied.setPosition(position);
+        applied.setItemId(id.toString());
+        applied.setOriginId(origin != null ? origin.toString() : null);
+        result.add(stamp(state, applied));
+    }
+
+    private void applyDelete(Document document, ReplicaState state, DocumentEditMessage message,
+            List<DocumentEditMessage> result) {
+        List<RgaSequence.DeletedRange> targets;
+        if (message.getItemId() != null) {
+            targets = List.of(new RgaSequence.DeletedRange(parse(message.getItemId()), -1, message.getLength()));
+        } else {
+            int visible = state.sequence.visibleLength();
+            int position = Math.max(0, Math.min(message.getPosition(), visible));
+            int length = Math.max(0, Math.min(message.getLength(), visible - position));
+            targets = state.sequence.idsInRange(position, length);
+        }
+        for (RgaSequence.DeletedRange target : targets) {
+            for (RgaSequence.DeletedRange range : state.sequence.integrateDelete(target.first(), target.length())) {
+                String deletedText = document.getTextRange(range.position(), range.length());
+                document.deleteText(range.position(), range.length());
+
+                DocumentEditMessage applied = new DocumentEditMessage(message);
+                applied.setOperation(OperationTransformer.DELETE);
+                applied.setPosition(range.position());
+                applied.setLength(range.length());
+                applied.setItemId(range.first().toString());
+                applied.setOriginId(null);
+                applied.setText(deletedText);
+                result.add(stamp(state, applied));
+            }
+        }
+    }
+
+    private static CharId parse(String value) {
+        try {
+            return CharId.parse(value);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidEditException(e.getMessage());
+        }
+    }
+
+    // Records what the sending client has integrated; clients sending no revision hold compaction back while active
+    private void acknowledge(Document document, ReplicaState state, DocumentEditMessage message) {
+        Long baseRevision = message.getBaseRevision();
+        if (state.compactedThrough > 0 && (baseRevision == null || baseRevision < state.compactedThrough)) {
+            throw new StaleRevisionException("Cannot apply edit based on revision " + baseRevision + ", document " +
+                    document.getId() + " was compacted at revision " + state.compactedThrough + "; reload its state");
+        }
+        state.acknowledged.put(message.getUserId(), new Acknowledgement(
+                baseRevision != null ? Math.min(baseRevision, state.revision) : 0, System.currentTimeMillis()));
+    }
+
+    /**
+     * Compact tombstones up to the lowest revision acknowledged by a client active within the
+     * replica timeout. Compaction waits until the tombstones have doubled since the last one,
+     * so its cost is spread over the deletes that made it necessary.
+     */
+    private void compactIfDue(ReplicaState state) {
+        int tombstones = state.sequence.tombstones();
+        if (tombstones < Math.max(compactAfterTombstones, 2 * state.tombstonesKept)) {
+            return;
+        }
+        long stable = state.revision;
+        long activeSince = System.currentTimeMillis() - replicaTimeoutMs;
+        for (Iterator<Acknowledgement> it = state.acknowledged.values().iterator(); it.hasNext(); ) {
+            Acknowledgement acknowledgement = it.next();
+            if (acknowledgement.at() < activeSince) {
+                it.remove();
+            } else {
+                stable = Math.min(stable, acknowledgement.revision());
+            }
+        }
+        if (stable <= state.compactedThrough) {
+            return;
+        }
+        // Sequence versions count integrated changes one per broadcast, so they equal revisions
+        state.sequence.compact(stable);
+        state.compactedThrough = stable;
+        state.tombstonesKept = state.sequence.tombstones();
+    }
+
+    private DocumentEditMessage stamp(ReplicaState state, DocumentEditMessage applied) {
+        applied.setBaseRevision(state.revision);
+        applied.setRevision(++state.revision);
+        return applied;
+    }
+
+    private ReplicaState replicaOf(Document document) {
+        return replicas.computeIfAbsent(document.getId(), id -> new ReplicaState(new RgaSequence(document.getContent())));
+    }
+
+    private static class ReplicaState {
+        private final RgaSequence sequence;
+        // Number of operations integrated, so clients can tell whether they missed broadcasts
+        private long revision;
+        // Highest revision integrated by each CRDT client, by user
+        private final Map<Long, Acknowledgement> acknowledged = new HashMap<>();
+        // Revision tombstones were last compacted at, and how many were left
+        private long compactedThrough;
+        private int tombstonesKept;
+
+        ReplicaState(RgaSequence sequence) {
+            this.sequence = sequence;
+        }
+    }
+
+    private record Acknowledgement(long revision, long at) {
+    }
+}
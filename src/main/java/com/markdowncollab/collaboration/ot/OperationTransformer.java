@@ -0,0 +1,120 @@
+package com.markdowncollab.collaboration.ot;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import com.markdowncollab.dto.DocumentEditMessage;
+
+/**
+ * Inclusion transformation for position based edit operations ("insert", "delete", "replace").
+ * Transforming an operation against one the server applied first rewrites its position so it
+ * has the same intent on the newer document state.
+ */
+public final class OperationTransformer {
+    public static final String INSERT = "insert";
+    public static final String DELETE = "delete";
+    public static final String REPLACE = "replace";
+    // Acknowledges an operation that transformed to nothing; never applied or transformed
+    public static final String NOOP = "noop";
+
+    private OperationTransformer() {
+    }
+
+    /**
+     * Transform a group of operations against an operation that was applied before them.
+     * All operations in the group must apply to the same document state.
+     *
+     * @param ops The operations to transform
+     * @param applied The operation already applied to that state
+     * @return The transformed group, ordered so that applying it front to back is safe
+     */
+    public static List<DocumentEditMessage> transform(List<DocumentEditMessage> ops, DocumentEditMessage applied) {
+        List<DocumentEditMessage> result = new ArrayList<>(ops.size() + 1);
+        for (DocumentEditMessage op : ops) {
+            result.addAll(transform(op, applied));
+        }
+        // Components only ever come from splitting deletes; applying the rightmost first
+        // keeps the positions of the remaining ones valid
+        result.sort(Comparator.comparingInt(DocumentEditMessage::getPosition).reversed());
+        return result;
+    }
+
+    /**
+     * Transform a single operation against an operation that was applied before it.
+     *
+     * @param op The operation to transform
+     * @param applied The operation already applied to the same document state
+     * @return Zero, one or two operations with the same intent as {@code op}
+     */
+    public static List<DocumentEditMessage> transform(DocumentEditMessage op, DocumentEditMessage applied) {
+        String type = op.getOperation();
+        String appliedType = applied.getOperation();
+
+        // The content was replaced underneath the operation, there is nothing left to apply it to
+        if (REPLACE.equals(appliedType)) {
+            return List.of();
+        }
+
+        if (INSERT.equals(type)) {
+            int position = op.getPosition();
+            if (INSERT.equals(appliedType)) {
+                // Ties go to the operation the server applied first
+                if (applied.getPosition() <= position) {
+                    position += textLength(applied);
+                }
+            } else if (DELETE.equals(appliedType)) {
+                int deleteStart = applied.getPosition();
+                int deleteEnd = deleteStart + applied.getLength();
+                if (position >= deleteEnd) {
+                    position -= applied.getLength();
+                } else if (position > deleteStart) {
+                    position = deleteStart;
+                }
+            }
+            return List.of(copy(op, position, op.getLength()));
+        }
+
+        if (DELETE.equals(type)) {
+            int start = op.getPosition();
+            int end = start + op.getLength();
+            if (INSERT.equals(appliedType)) {
+                int insertAt = applied.getPosition();
+                int inserted = textLength(applied);
+                if (insertAt >= end) {
+                    return List.of(copy(op, start, op.getLength()));
+                }
+                if (insertAt <= start) {
+                    return List.of(copy(op, start + inserted, op.getLength()));
+                }
+                // Text was inserted inside the deleted range: delete around it, rightmost part first
+                return List.of(
+                        copy(op, insertAt + inserted, end - insertAt),
+                        copy(op, start, insertAt - start));
+            }
+            if (DELETE.equals(appliedType)) {
+                int appliedStart = applied.getPosition();
+                int appliedEnd = appliedStart + applied.getLength();
+                int before = Math.max(0, Math.min(end, appliedStart) - start);
+                int after = Math.max(0, end - Math.max(start, appliedEnd));
+                if (before + after == 0) {
+                    return List.of();
+                }
+                int newStart = start < appliedStart ? start : Math.max(appliedStart, start - applied.getLength());
+                return List.of(copy(op, newStart, before + after));
+            }
+        }
+
+        return List.of(copy(op, op.getPosition(), op.getLength()));
+    }
+
+    private static int textLength(DocumentEditMessage op) {
+        return op.getText() != null ? op.getText().length() : 0;
+    }
+
+    private static DocumentEditMessage copy(DocumentEditMessage op, int position, int length) {
+        DocumentEditMessage copy = new DocumentEditMessage(op);
+        copy.setPosition(position);
+        copy.setLength(length);
+        return copy;
+    }
+}
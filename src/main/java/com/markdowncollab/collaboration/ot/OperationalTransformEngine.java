@@ -0,0 +1,142 @@
+package com.markdowncollab.collaboration.ot;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import com.markdowncollab.collaboration.CollaborationEngine;
+import com.markdowncollab.collaboration.ContentSnapshot;
+import com.markdowncollab.dto.DocumentEditMessage;
+import com.markdowncollab.exception.StaleRevisionException;
+import com.markdowncollab.model.CollaborationMode;
+import com.markdowncollab.model.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Server side Operational Transformation engine.
+ * Every applied operation gets the next revision number of its document. An incoming operation
+ * names the revision it was created against and is transformed against everything applied
+ * since, so concurrent edits keep their intent instead of landing on stale positions.
+ */
+@Component
+public class OperationalTransformEngine implements CollaborationEngine {
+    private final int historyLimit;
+    private final Map<Long, RevisionLog> logs = new ConcurrentHashMap<>();
+
+    @Autowired
+    public OperationalTransformEngine(@Value("${collaboration.ot.history-limit:1000}") int historyLimit) {
+        this.historyLimit = historyLimit;
+    }
+
+    @Override
+    public CollaborationMode getMode() {
+        return CollaborationMode.OT;
+    }
+
+    /**
+     * Transform an operation against the operations applied since its base revision
+     * and apply the result to the document.
+     *
+     * @param document The document to edit
+     * @param message The operation as sent by the client
+     * @return The operations actually applied, each carrying its new revision
+     * @throws StaleRevisionException If the base revision is no longer in the history
+     */
+    @Override
+    public List<DocumentEditMessage> apply(Document document, DocumentEditMessage message) {
+        RevisionLog log = logs.computeIfAbsent(document.getId(), id -> new RevisionLog());
+        synchronized (log) {
+            List<DocumentEditMessage> ops = List.of(new DocumentEditMessage(message));
+            Long baseRevision = message.getBaseRevision();
+            // Legacy clients send no revision, their operations apply to the current state
+            if (baseRevision != null) {
+                if (baseRevision > log.revision || baseRevision < log.revision - log.history.size()) {
+                    throw new StaleRevisionException("Cannot apply edit based on revision " + baseRevision +
+                            ", document " + document.getId() + " is at revision " + log.revision);
+                }
+                for (DocumentEditMessage applied : log.history) {
+                    if (applied.getRevision() > baseRevision) {
+                        ops = OperationTransformer.transform(ops, applied);
+                    }
+                }
+            }
+
+            List<DocumentEditMessage> result = new ArrayList<>(ops.size());
+            for (DocumentEditMessage op : ops) {
+                applyToDocument(document, op);
+                op.setBaseRevision(log.revision);
+                op.setRevision(++log.revision);
+                log.history.addLast(op);
+                if (log.history.size() > historyLimit) {
+                    log.history.removeFirst();
+                }
+                result.add(op);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Read the content of a document together with its current revision.
+     */
+    @Override
+    public ContentSnapshot snapshot(Document document) {
+        RevisionLog log = logs.computeIfAbsent(document.getId(), id -> new RevisionLog());
+        synchronized (log) {
+            return new ContentSnapshot(document.getContent(), log.revision);
+        }
+    }
+
+    /**
+     * Start a new revision after the content was replaced outside of the engine
+     * (explicit saves, version restores). Clients editing older revisions must reload.
+     */
+    @Override
+    public void reset(Long documentId) {
+        RevisionLog log = logs.get(documentId);
+        if (log != null) {
+            synchronized (log) {
+                log.revision++;
+                log.history.clear();
+            }
+        }
+    }
+
+    @Override
+    public long getRevision(Long documentId) {
+        RevisionLog log = logs.get(documentId);
+        if (log == null) {
+            return 0;
+        }
+        synchronized (log) {
+            return log.revision;
+        }
+    }
+
+    // Positions are clamped so operations from legacy clients can never fail on stale offsets
+    private void applyToDocument(Document document, DocumentEditMessage op) {
+        int contentLength = document.getContentLength();
+        if (OperationTransformer.INSERT.equals(op.getOperation())) {
+            op.setPosition(Math.max(0, Math.min(op.getPosition(), contentLength)));
+            document.insertText(op.getPosition(), op.getText() != null ? op.getText() : "");
+        } else if (OperationTransformer.DELETE.equals(op.getOperation())) {
+            op.setPosition(Math.max(0, Math.min(op.getPosition(), contentLength)));
+            op.setLength(Math.max(0, Math.min(op.getLength(), contentLength - op.getPosition())));
+            // The deleted text goes along, so the edit can be undone
+            op.setText(document.getTextRange(op.getPosition(), op.getLength()));
+            document.deleteText(op.getPosition(), op.getLength());
+        } else if (OperationTransformer.REPLACE.equals(op.getOperation())) {
+            document.setContent(op.getText());
+        }
+    }
+
+    private static class RevisionLog {
+        private long revision;
+        // Most recent applied operations, oldest first
+        private final Deque<DocumentEditMessage> history = new ArrayDeque<>();
+    }
+}
@@ -0,0 +1,38 @@
+package com.markdowncollab.config;
+
+import com.markdowncollab.pattern.factory.PDFExporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * Prepares the pooled font resolvers of PDF rendering when the application starts, so the first
+ * PDF exports do not pay for loading fonts and stylesheets. The pool is JVM-wide rather than a
+ * bean, so export.pdf.renderers sizes it for the whole JVM.
+ */
+@Component
+public class PdfExportWarmUp implements CommandLineRunner {
+    private static final Logger logger = LoggerFactory.getLogger(PdfExportWarmUp.class);
+    
+    private final int renderers;
+    
+    @Autowired
+    public PdfExportWarmUp(@Value("${export.pdf.renderers:4}") int renderers) {
+        this.renderers = renderers;
+    }
+    
+    @Override
+    public void run(String... args) {
+        long start = System.nanoTime();
+        try {
+            PDFExporter.warmUp(renderers);
+            logger.info("Warmed up {} PDF font resolvers in {} ms", renderers, (System.nanoTime() - start) / 1_000_000);
+        } catch (Exception e) {
+            // Exports still work, they just create their font resolvers when needed
+            logger.warn("Could not warm up PDF export", e);
+        }
+    }
+}
@@ -1,64 +1,119 @@
 package com.markdowncollab.controller;
 
 import java.security.Principal;
+import java.util.List;
+import java.util.function.BiFunction;
+import com.markdowncollab.collaboration.DocumentEditLanes;
 import com.markdowncollab.dto.CursorPositionMessage;
 import com.markdowncollab.dto.DocumentEditMessage;
+import com.markdowncollab.exception.EditQueueFullException;
+import com.markdowncollab.exception.InvalidEditException;
+import com.markdowncollab.exception.StaleRevisionException;
 import com.markdowncollab.model.Document;
 import com.markdowncollab.model.User;
 import com.markdowncollab.service.CollaborationService;
 import com.markdowncollab.service.DocumentService;
 import com.markdowncollab.service.UserService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.MessageExceptionHandler;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.SendTo;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.annotation.SendToUser;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Controller;
 
 @Controller
 public class CollaborationController {
+    private static final Logger logger = LoggerFactory.getLogger(CollaborationController.class);
 
     private final CollaborationService collaborationService;
     private final DocumentService documentService;
     private final UserService userService;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final DocumentEditLanes documentEditLanes;
 
     @Autowired
     public CollaborationController(
             CollaborationService collaborationService,
             DocumentService documentService,
-            UserService userService) {
+            UserService userService,
+            SimpMessagingTemplate messagingTemplate,
+            DocumentEditLanes documentEditLanes) {
         this.collaborationService = collaborationService;
         this.documentService = documentService;
         this.userService = userService;
+        this.messagingTemplate = messagingTemplate;
+        this.documentEditLanes = documentEditLanes;
     }
 
     @MessageMapping("/document/{documentId}/edit")
-    @SendTo("/topic/document/{documentId}")
-    public DocumentEditMessage handleDocumentEdit(
+    public void handleDocumentEdit(
             @DestinationVariable Long documentId,
             DocumentEditMessage message,
             Principal principal) {
         
+        // Process the edit, merging it with concurrent edits
+        submit(documentId, principal, (document, user) -> {
+            List<DocumentEditMessage> applied = collaborationService.processEdit(document, user, message);
+            // Transformed away by concurrent edits; the sender still waits for its acknowledgement,
+            // which goes on the topic so it arrives after the operations that came before it
+            return applied.isEmpty() ? List.of(collaborationService.acknowledgement(document, message)) : applied;
+        });
+    }
+    
+    @MessageMapping("/document/{documentId}/undo")
+    public void handleUndo(@DestinationVariable Long documentId, Principal principal) {
+        // Reverts only the sender's own newest edit, broadcast like any other edit
+        submit(documentId, principal, collaborationService::undo);
+    }
+    
+    @MessageMapping("/document/{documentId}/redo")
+    public void handleRedo(@DestinationVariable Long documentId, Principal principal) {
+        submit(documentId, principal, collaborationService::redo);
+    }
+    
+    private void submit(Long documentId, Principal principal,
+            BiFunction<Document, User, List<DocumentEditMessage>> edit) {
         // Get the current user
         User user = userService.findByUsername(principal.getName());
         
-        // Get the document being edited
-        Document document = documentService.findById(documentId);
-        
-        // Verify user has permission to edit this document
-        if (!collaborationService.canUserEdit(user, document)) {
-            throw new AccessDeniedException("User does not have permission to edit this document");
-        }
-        
-        // Process the edit
-        collaborationService.processEdit(document, user, message);
-        
-        // Add user information to the message
-        message.setUserId(user.getId());
-        message.setUsername(user.getUsername());
-        
-        // Return the message to be broadcast to all subscribers
-        return message;
+        // Edits to one document are applied one at a time, in arrival order, on the document's lane
+        documentEditLanes.submit(documentId, () -> {
+            // Get the document being edited
+            Document document = documentService.findLiveById(documentId);
+            
+            // Verify user has permission to edit this document
+            if (!collaborationService.canUserEdit(user, document)) {
+                throw new AccessDeniedException("User does not have permission to edit this document");
+            }
+            
+            List<DocumentEditMessage> applied = edit.apply(document, user);
+            
+            // Broadcast every applied operation with its server revision; the sender
+            // recognizes its own operation as the acknowledgement
+            for (DocumentEditMessage operation : applied) {
+                messagingTemplate.convertAndSend("/topic/document/" + documentId, operation);
+            }
+        }).exceptionally(e -> {
+            // Failures happen off the inbound thread, so they are reported to the sender directly
+            if (!(e instanceof StaleRevisionException) && !(e instanceof AccessDeniedException)
+                    && !(e instanceof InvalidEditException)) {
+                logger.error("Failed to apply edit to document {}", documentId, e);
+            }
+            messagingTemplate.convertAndSendToUser(principal.getName(), "/queue/errors", e.getMessage());
+            return null;
+        });
+    }
+    
+    @MessageExceptionHandler(EditQueueFullException.class)
+    @SendToUser("/queue/errors")
+    public String handleEditQueueFull(EditQueueFullException e) {
+        // The document's lane is saturated; the client should retry the edit
+        return e.getMessage();
     }
     
     @MessageMapping("/document/{documentId}/cursor")
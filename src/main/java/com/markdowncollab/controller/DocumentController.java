@@ -1,8 +1,15 @@
 package com.markdowncollab.controller;
 
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import com.markdowncollab.dto.CrdtRunDTO;
 import com.markdowncollab.dto.DocumentDTO;
+import com.markdowncollab.dto.RenderedBlockDTO;
+import com.markdowncollab.model.CollaborationMode;
 import com.markdowncollab.service.DocumentService;
+import com.markdowncollab.service.ExportCacheService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
@@ -15,6 +22,7 @@ import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/api/documents")
@@ -83,16 +91,41 @@ public class DocumentController {
         }
     }
 
+    @PutMapping("/{id}/collaboration-mode")
+    public ResponseEntity<?> setCollaborationMode(@PathVariable Long id, @RequestParam CollaborationMode mode) {
+        documentService.setCollaborationMode(id, mode);
+        return ResponseEntity.ok().build();
+    }
+
+    @GetMapping("/{id}/crdt")
+    public ResponseEntity<List<CrdtRunDTO>> getCrdtState(@PathVariable Long id) {
+        return ResponseEntity.ok(documentService.getCrdtState(id));
+    }
+
     @PostMapping("/{id}/preview")
-    public ResponseEntity<String> previewMarkdown(@RequestParam String content) {
-        String html = documentService.renderMarkdown(content);
-        return ResponseEntity.ok(html);
+    public ResponseEntity<StreamingResponseBody> previewMarkdown(@RequestParam String content) {
+        // The HTML is written to the response as it is rendered
+        StreamingResponseBody html = outputStream -> {
+            Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+            documentService.renderMarkdown(content, writer);
+            writer.flush();
+        };
+        return ResponseEntity.ok()
+                .contentType(new MediaType(MediaType.TEXT_HTML, StandardCharsets.UTF_8))
+                .body(html);
+    }
+
+    // Blocks of the current content with content-derived IDs; changed marks blocks not among the shown IDs
+    @GetMapping("/{id}/preview/blocks")
+    public ResponseEntity<List<RenderedBlockDTO>> previewBlocks(@PathVariable Long id,
+            @RequestParam(name = "shown", required = false) List<String> shown) {
+        return ResponseEntity.ok(documentService.renderBlocks(id, shown != null ? shown : List.of()));
     }
 
     @GetMapping("/{id}/export/{format}")
-    public ResponseEntity<byte[]> exportDocument(@PathVariable Long id, @PathVariable String format) {
+    public ResponseEntity<StreamingResponseBody> exportDocument(@PathVariable Long id, @PathVariable String format) {
         try {
-            byte[] content = documentService.exportDocument(id, format);
+            ExportCacheService.Artifact artifact = documentService.openExport(id, format);
             
             HttpHeaders headers = new HttpHeaders();
             MediaType mediaType;
@@ -119,8 +152,15 @@ public class DocumentController {
             headers.setContentType(mediaType);
             headers.setContentDispositionFormData("attachment", fileName);
             
+            // Sent straight from the cached file
+            StreamingResponseBody content = outputStream -> {
+                try (artifact) {
+                    artifact.transferTo(outputStream);
+                }
+            };
             return ResponseEntity.ok()
                     .headers(headers)
+                    .contentLength(artifact.size())
                     .body(content);
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
@@ -0,0 +1,120 @@
+package com.markdowncollab.controller;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.Callable;
+import com.markdowncollab.dto.ExportJobDTO;
+import com.markdowncollab.service.BulkExportService;
+import com.markdowncollab.service.ExportCacheService;
+import com.markdowncollab.service.ExportJobService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * Background exports: queue a job, follow its status (or subscribe to /user/queue/exports),
+ * then download the artifact once it is done. Many documents can be exported at once as a ZIP.
+ */
+@RestController
+@RequestMapping("/api/exports")
+public class ExportController {
+    private static final String BULK_TIMEOUT = ExportController.class.getName() + ".bulkTimeout";
+
+    private final ExportJobService exportJobService;
+    private final BulkExportService bulkExportService;
+    private final long bulkRequestTimeoutMs;
+
+    @Autowired
+    public ExportController(
+            ExportJobService exportJobService,
+            BulkExportService bulkExportService,
+            @Value("${export.bulk.request-timeout-ms:600000}") long bulkRequestTimeoutMs) {
+        this.exportJobService = exportJobService;
+        this.bulkExportService = bulkExportService;
+        this.bulkRequestTimeoutMs = bulkRequestTimeoutMs;
+    }
+
+    @PostMapping
+    public ResponseEntity<ExportJobDTO> queueExport(@RequestParam Long documentId, @RequestParam String format) {
+        ExportJobDTO job = exportJobService.submit(documentId, format);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/exports/" + job.getId()))
+                .body(job);
+    }
+
+    @GetMapping("/{jobId}")
+    public ResponseEntity<ExportJobDTO> getExport(@PathVariable String jobId) {
+        return ResponseEntity.ok(exportJobService.getJob(jobId));
+    }
+
+    @GetMapping("/{jobId}/download")
+    public ResponseEntity<?> downloadExport(@PathVariable String jobId) throws IOException {
+        ExportCacheService.Artifact artifact = exportJobService.openArtifact(jobId);
+        ExportJobDTO job = exportJobService.getJob(jobId);
+        if (artifact == null) {
+            if ("failed".equals(job.getStatus())) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(job);
+            }
+            // Still queued or running, or queued again because the artifact was evicted
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/exports/" + jobId))
+                    .body(job);
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(job.getContentType()));
+        headers.setContentDispositionFormData("attachment", job.getFileName());
+        StreamingResponseBody content = outputStream -> {
+            try (artifact) {
+                artifact.transferTo(outputStream);
+            }
+        };
+        return ResponseEntity.ok()
+                .headers(headers)
+                .contentLength(artifact.size())
+                .body(content);
+    }
+
+    // The given documents, or without any every accessible document whose title contains the
+    // query, as a ZIP written while the documents are exported
+    @PostMapping("/bulk")
+    public ResponseEntity<StreamingResponseBody> bulkExport(
+            @RequestParam(required = false) List<Long> documentId,
+            @RequestParam(required = false) String query,
+            @RequestParam String format,
+            NativeWebRequest request) {
+        List<Long> documentIds = bulkExportService.prepare(documentId, query, format);
+        // Only this response may stream for longer than the default async request timeout
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(BULK_TIMEOUT, new CallableProcessingInterceptor() {
+            @Override
+            public <T> void beforeConcurrentHandling(NativeWebRequest asyncRequest, Callable<T> task) {
+                if (asyncRequest instanceof AsyncWebRequest asyncWebRequest) {
+                    asyncWebRequest.setTimeout(bulkRequestTimeoutMs);
+                }
+            }
+        });
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType("application/zip"));
+        headers.setContentDispositionFormData("attachment", "documents.zip");
+        StreamingResponseBody zip = outputStream -> bulkExportService.writeZip(documentIds, format, outputStream);
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body(zip);
+    }
+}
@@ -1,10 +1,13 @@
 package com.markdowncollab.controller;
 
-import java.util.List;
+import com.markdowncollab.dto.VersionDiffDTO;
+import com.markdowncollab.dto.VersionPageDTO;
 import com.markdowncollab.model.Version;
 import com.markdowncollab.service.UserService;
+import com.markdowncollab.service.VersionDiffService;
 import com.markdowncollab.service.VersionService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -19,17 +22,27 @@ public class VersionController {
 
     private final VersionService versionService;
     private final UserService userService;
+    private final VersionDiffService versionDiffService;
 
     @Autowired
-    public VersionController(VersionService versionService, UserService userService) {
+    public VersionController(VersionService versionService, UserService userService, VersionDiffService versionDiffService) {
         this.versionService = versionService;
         this.userService = userService;
+        this.versionDiffService = versionDiffService;
     }
 
+    // Version summaries, newest first; pass nextCursor back as cursor for older versions
     @GetMapping("/document/{documentId}")
-    public ResponseEntity<List<Version>> getDocumentVersions(@PathVariable Long documentId) {
-        List<Version> versions = versionService.getDocumentVersions(documentId);
-        return ResponseEntity.ok(versions);
+    public ResponseEntity<VersionPageDTO> getDocumentVersions(
+            @PathVariable Long documentId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        return ResponseEntity.ok(versionService.getVersionSummaries(documentId, cursor, limit));
+    }
+
+    @GetMapping(value = "/{versionId}/content", produces = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<String> getVersionContent(@PathVariable Long versionId) {
+        return ResponseEntity.ok(versionService.getVersionContent(versionId));
     }
 
     @GetMapping("/{versionId}")
@@ -39,6 +52,15 @@ public class VersionController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    @GetMapping("/{fromVersionId}/diff/{toVersionId}")
+    public ResponseEntity<VersionDiffDTO> diffVersions(
+            @PathVariable Long fromVersionId,
+            @PathVariable Long toVersionId,
+            @RequestParam(defaultValue = VersionDiffService.LINE) String granularity,
+            @RequestParam(defaultValue = "3") int context) {
+        return ResponseEntity.ok(versionDiffService.diff(fromVersionId, toVersionId, granularity, context));
+    }
+
     @PostMapping("/document/{documentId}")
     public ResponseEntity<Version> createVersion(
             @PathVariable Long documentId,
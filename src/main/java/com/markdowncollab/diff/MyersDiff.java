@@ -0,0 +1,179 @@
+package com.markdowncollab.diff;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Myers' O(ND) difference algorithm in linear space.
+ * The shortest edit script is found by recursively splitting both sequences at the middle
+ * snake, so memory stays proportional to the input size instead of N x D.
+ * Elements are compared with {@code equals}. A {@link Budget} caps the work spent: once it
+ * runs out, the ranges still unresolved are reported as deleted and inserted whole, which is
+ * still a correct edit script, just not the shortest one.
+ */
+public final class MyersDiff {
+
+    private MyersDiff() {
+    }
+
+    public enum Type { EQUAL, DELETE, INSERT }
+
+    /**
+     * A run of elements, {@code [aStart, aEnd)} of the old sequence and {@code [bStart, bEnd)} of the new one.
+     * Deletes have an empty new range, inserts an empty old range.
+     */
+    public record Edit(Type type, int aStart, int aEnd, int bStart, int bEnd) {
+    }
+
+    /**
+     * Limit on the comparisons a diff may spend searching for the shortest edit script.
+     * One budget can be shared by several diffs.
+     */
+    public static final class Budget {
+        private long remaining;
+        private boolean exhausted;
+
+        public Budget(long maxSteps) {
+            this.remaining = maxSteps;
+        }
+
+        public static Budget unlimited() {
+            return new Budget(Long.MAX_VALUE);
+        }
+
+        /**
+         * Whether the budget ran out, meaning some diff using it may not be minimal.
+         */
+        public boolean isExhausted() {
+            return exhausted;
+        }
+
+        private boolean spend(long steps) {
+            remaining -= steps;
+            if (remaining < 0) {
+                exhausted = true;
+            }
+            return !exhausted;
+        }
+    }
+
+    /**
+     * Compute the edits turning {@code a} into {@code b}, in order, adjacent edits of one type merged.
+     */
+    public static <T> List<Edit> diff(List<T> a, List<T> b) {
+        return diff(a, b, Budget.unlimited());
+    }
+
+    /**
+     * Compute the edits turning {@code a} into {@code b} within a budget.
+     */
+    public static <T> List<Edit> diff(List<T> a, List<T> b, Budget budget) {
+        List<Edit> edits = new ArrayList<>();
+        diff(a, 0, a.size(), b, 0, b.size(), budget, edits);
+        return edits;
+    }
+
+    private static <T> void diff(List<T> a, int aLo, int aHi, List<T> b, int bLo, int bHi, Budget budget, List<Edit> edits) {
+        // Common prefix and suffix are equal runs and never part of the recursion
+        int prefix = 0;
+        while (aLo + prefix < aHi && bLo + prefix < bHi && a.get(aLo + prefix).equals(b.get(bLo + prefix))) {
+            prefix++;
+        }
+        add(edits, Type.EQUAL, aLo, aLo + prefix, bLo, bLo + prefix);
+        aLo += prefix;
+        bLo += prefix;
+        int suffix = 0;
+        while (aHi - suffix > aLo && bHi - suffix > bLo && a.get(aHi - suffix - 1).equals(b.get(bHi - suffix - 1))) {
+            suffix++;
+        }
+        aHi -= suffix;
+        bHi -= suffix;
+
+        int[] split = aLo == aHi || bLo == bHi || budget.isExhausted()
+                ? null
+                : middleSnake(a, aLo, aHi, b, bLo, bHi, budget);
+        if (split == null) {
+            add(edits, Type.DELETE, aLo, aHi, bLo, bLo);
+            add(edits, Type.INSERT, aHi, aHi, bLo, bHi);
+        } else {
+            diff(a, aLo, split[0], b, bLo, split[1], budget, edits);
+            diff(a, split[0], aHi, b, split[1], bHi, budget, edits);
+        }
+        add(edits, Type.EQUAL, aHi, aHi + suffix, bHi, bHi + suffix);
+    }
+
+    /**
+     * Find a point on an optimal path by running the search from both ends until they meet.
+     * Both ranges are non-empty and differ in their first and last elements.
+     *
+     * @return The split point, or null if the budget ran out first
+     */
+    private static <T> int[] middleSnake(List<T> a, int aLo, int aHi, List<T> b, int bLo, int bHi, Budget budget) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2;
+        int offset = max + 1;
+        // Furthest x on each diagonal, forward from the start and backward from the end
+        int[] forward = new int[2 * offset + 1];
+        int[] backward = new int[2 * offset + 1];
+
+        for (int d = 0; d <= max; d++) {
+            // Both searches visit d + 1 diagonals; snakes are charged as they are followed
+            if (!budget.spend(2L * (d + 1))) {
+                return null;
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])
+                        ? forward[offset + k + 1]
+                        : forward[offset + k - 1] + 1;
+                int y = x - k;
+                int start = x;
+                while (x < n && y < m && a.get(aLo + x).equals(b.get(bLo + y))) {
+                    x++;
+                    y++;
+                }
+                budget.spend(x - start);
+                forward[offset + k] = x;
+                int reverseK = delta - k;
+                if (odd && reverseK >= -(d - 1) && reverseK <= d - 1 && x + backward[offset + reverseK] >= n) {
+                    return new int[] { aLo + x, bLo + y };
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && backward[offset + k - 1] < backward[offset + k + 1])
+                        ? backward[offset + k + 1]
+                        : backward[offset + k - 1] + 1;
+                int y = x - k;
+                int start = x;
+                while (x < n && y < m && a.get(aHi - x - 1).equals(b.get(bHi - y - 1))) {
+                    x++;
+                    y++;
+                }
+                budget.spend(x - start);
+                backward[offset + k] = x;
+                int forwardK = delta - k;
+                if (!odd && forwardK >= -d && forwardK <= d && forward[offset + forwardK] + x >= n) {
+                    int forwardX = forward[offset + forwardK];
+                    return new int[] { aLo + forwardX, bLo + forwardX - forwardK };
+                }
+            }
+        }
+        throw new IllegalStateException("No middle snake found");
+    }
+
+    private static void add(List<Edit> edits, Type type, int aStart, int aEnd, int bStart, int bEnd) {
+        if (aStart == aEnd && bStart == bEnd) {
+            return;
+        }
+        if (!edits.isEmpty()) {
+            Edit last = edits.get(edits.size() - 1);
+            if (last.type() == type && last.aEnd() == aStart && last.bEnd() == bStart) {
+                edits.set(edits.size() - 1, new Edit(type, last.aStart(), aEnd, last.bStart(), bEnd));
+                return;
+            }
+        }
+        edits.add(new Edit(type, aStart, aEnd, bStart, bEnd));
+    }
+}
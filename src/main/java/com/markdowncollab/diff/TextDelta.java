@@ -0,0 +1,90 @@
+package com.markdowncollab.diff;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact line based delta between two texts.
+ * A delta is a sequence of operations on the lines of the old text:
+ * {@code =n} keeps n lines, {@code -n} drops n lines and {@code +c} followed by a newline
+ * and c characters inserts that text. Counts are decimal and each operation header ends
+ * with a newline.
+ */
+public final class TextDelta {
+
+    private TextDelta() {
+    }
+
+    public static String encode(String base, String target) {
+        return encode(base, target, MyersDiff.Budget.unlimited());
+    }
+
+    /**
+     * Encode within a diff budget; once it runs out the delta still turns base into target,
+     * but may replace more lines than it had to.
+     */
+    public static String encode(String base, String target, MyersDiff.Budget budget) {
+        List<String> baseLines = lines(base);
+        List<String> targetLines = lines(target);
+        StringBuilder delta = new StringBuilder();
+        for (MyersDiff.Edit edit : MyersDiff.diff(baseLines, targetLines, budget)) {
+            switch (edit.type()) {
+                case EQUAL -> delta.append('=').append(edit.aEnd() - edit.aStart()).append('\n');
+                case DELETE -> delta.append('-').append(edit.aEnd() - edit.aStart()).append('\n');
+                case INSERT -> {
+                    String text = String.join("", targetLines.subList(edit.bStart(), edit.bEnd()));
+                    delta.append('+').append(text.length()).append('\n').append(text);
+                }
+            }
+        }
+        return delta.toString();
+    }
+
+    public static String apply(String base, String delta) {
+        List<String> baseLines = lines(base);
+        StringBuilder result = new StringBuilder(base.length());
+        int line = 0;
+        int pos = 0;
+        while (pos < delta.length()) {
+            char op = delta.charAt(pos);
+            int headerEnd = delta.indexOf('\n', pos);
+            if (headerEnd < 0) {
+                throw new IllegalArgumentException("Truncated delta at " + pos);
+            }
+            int count = Integer.parseInt(delta, pos + 1, headerEnd, 10);
+            pos = headerEnd + 1;
+            switch (op) {
+                case '=' -> {
+                    for (int i = 0; i < count; i++) {
+                        result.append(baseLines.get(line++));
+                    }
+                }
+                case '-' -> line += count;
+                case '+' -> {
+                    result.append(delta, pos, pos + count);
+                    pos += count;
+                }
+                default -> throw new IllegalArgumentException("Unknown delta operation '" + op + "' at " + (pos - 1));
+            }
+        }
+        if (line != baseLines.size()) {
+            throw new IllegalArgumentException("Delta does not match its base text");
+        }
+        return result.toString();
+    }
+
+    /**
+     * Split a text into lines, each keeping its line terminator.
+     */
+    public static List<String> lines(String text) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            end = end < 0 ? text.length() : end + 1;
+            lines.add(text.substring(start, end));
+            start = end;
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,35 @@
+package com.markdowncollab.dto;
+
+import com.markdowncollab.collaboration.crdt.RgaSequence;
+
+/**
+ * One run of the CRDT replica of a document: characters with consecutive ids from one site.
+ */
+public class CrdtRunDTO {
+    private String itemId; // Id of the first character
+    private String text; // Null for deleted runs
+    private int length;
+    private boolean deleted;
+    
+    public CrdtRunDTO() {
+    }
+    
+    public CrdtRunDTO(RgaSequence.Run run) {
+        this.itemId = run.firstId().toString();
+        this.text = run.getText();
+        this.length = run.getLength();
+        this.deleted = run.isDeleted();
+    }
+    
+    public String getItemId() { return itemId; }
+    public void setItemId(String itemId) { this.itemId = itemId; }
+    
+    public String getText() { return text; }
+    public void setText(String text) { this.text = text; }
+    
+    public int getLength() { return length; }
+    public void setLength(int length) { this.length = length; }
+    
+    public boolean isDeleted() { return deleted; }
+    public void setDeleted(boolean deleted) { this.deleted = deleted; }
+}
@@ -0,0 +1,36 @@
+package com.markdowncollab.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One hunk of a version diff. Line numbers start at 1; every line is prefixed with
+ * ' ' (context), '-' (removed) or '+' (added) and has no line terminator.
+ */
+public class DiffHunkDTO {
+    private int fromStart;
+    private int fromLines;
+    private int toStart;
+    private int toLines;
+    private List<String> lines = new ArrayList<>();
+    private List<DiffSegmentDTO> words; // Word level changes of the hunk, only for word granularity
+    
+    // Getters and setters
+    public int getFromStart() { return fromStart; }
+    public void setFromStart(int fromStart) { this.fromStart = fromStart; }
+    
+    public int getFromLines() { return fromLines; }
+    public void setFromLines(int fromLines) { this.fromLines = fromLines; }
+    
+    public int getToStart() { return toStart; }
+    public void setToStart(int toStart) { this.toStart = toStart; }
+    
+    public int getToLines() { return toLines; }
+    public void setToLines(int toLines) { this.toLines = toLines; }
+    
+    public List<String> getLines() { return lines; }
+    public void setLines(List<String> lines) { this.lines = lines; }
+    
+    public List<DiffSegmentDTO> getWords() { return words; }
+    public void setWords(List<DiffSegmentDTO> words) { this.words = words; }
+}
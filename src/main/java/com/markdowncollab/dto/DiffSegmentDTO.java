@@ -0,0 +1,22 @@
+package com.markdowncollab.dto;
+
+/**
+ * A run of text in a word level diff.
+ */
+public class DiffSegmentDTO {
+    private String type; // "equal", "delete" or "insert"
+    private String text;
+    
+    public DiffSegmentDTO() {}
+    
+    public DiffSegmentDTO(String type, String text) {
+        this.type = type;
+        this.text = text;
+    }
+    
+    public String getType() { return type; }
+    public void setType(String type) { this.type = type; }
+    
+    public String getText() { return text; }
+    public void setText(String text) { this.text = text; }
+}
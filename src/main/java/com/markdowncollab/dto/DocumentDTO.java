@@ -4,6 +4,7 @@ import java.time.LocalDateTime;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.ArrayList;
+import com.markdowncollab.model.CollaborationMode;
 import com.markdowncollab.model.Document;
 
 public class DocumentDTO {
@@ -12,6 +13,8 @@ public class DocumentDTO {
     private String content;
     private UserDTO owner;
     private List<UserDTO> collaborators;
+    private long revision; // Collaboration revision the content corresponds to
+    private CollaborationMode collaborationMode;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
     
@@ -24,6 +27,7 @@ public class DocumentDTO {
         this.id = document.getId();
         this.title = document.getTitle();
         this.content = document.getContent();
+        this.collaborationMode = document.getCollaborationMode();
         this.createdAt = document.getCreatedAt();
         this.updatedAt = document.getUpdatedAt();
         
@@ -55,6 +59,12 @@ public class DocumentDTO {
     public List<UserDTO> getCollaborators() { return collaborators; }
     public void setCollaborators(List<UserDTO> collaborators) { this.collaborators = collaborators; }
     
+    public long getRevision() { return revision; }
+    public void setRevision(long revision) { this.revision = revision; }
+    
+    public CollaborationMode getCollaborationMode() { return collaborationMode; }
+    public void setCollaborationMode(CollaborationMode collaborationMode) { this.collaborationMode = collaborationMode; }
+    
     public LocalDateTime getCreatedAt() { return createdAt; }
     public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
     
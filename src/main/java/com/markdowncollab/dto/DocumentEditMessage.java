@@ -2,6 +2,21 @@ package com.markdowncollab.dto;
 
 import java.time.LocalDateTime;
 
+/**
+ * An edit operation, as sent by a client and as broadcast once the server applied it.
+ * <p>
+ * In operational transformation mode a client keeps at most one operation in flight. It sends
+ * an operation with the revision it was made against as baseRevision, then waits for the
+ * acknowledgement: the broadcast of the operations applied for it, carrying its own userId.
+ * An operation that concurrent ones transformed away entirely, such as a delete of text another
+ * client deleted first, is acknowledged by a "noop" operation carrying the sender's userId and
+ * the current revision instead; other clients ignore it.
+ * Edits made while waiting are buffered and transformed against the operations of others
+ * received meanwhile, and the next operation is based on the highest revision received. The
+ * server transforms an operation against everything applied after its base revision, the
+ * sender's own operations included, so sending a second operation against the same base
+ * before the first was acknowledged moves it by the first one twice.
+ */
 public class DocumentEditMessage {
     private Long userId;
     private String username;
@@ -9,12 +24,30 @@ public class DocumentEditMessage {
     private int position;
     private String text;
     private int length; // For delete operations
+    private Long baseRevision; // Server revision the client edited against, null for legacy clients
+    private long revision; // Revision assigned by the server once the operation is applied
+    private String itemId; // CRDT mode: id of the first inserted or deleted character ("clock@site")
+    private String originId; // CRDT mode: id of the character an insert follows, null for the start
     private LocalDateTime timestamp;
     
     public DocumentEditMessage() {
         this.timestamp = LocalDateTime.now();
     }
     
+    public DocumentEditMessage(DocumentEditMessage other) {
+        this.userId = other.userId;
+        this.username = other.username;
+        this.operation = other.operation;
+        this.position = other.position;
+        this.text = other.text;
+        this.length = other.length;
+        this.baseRevision = other.baseRevision;
+        this.revision = other.revision;
+        this.itemId = other.itemId;
+        this.originId = other.originId;
+        this.timestamp = other.timestamp;
+    }
+    
     // Getters and setters
     public Long getUserId() { return userId; }
     public void setUserId(Long userId) { this.userId = userId; }
@@ -34,6 +67,18 @@ public class DocumentEditMessage {
     public int getLength() { return length; }
     public void setLength(int length) { this.length = length; }
     
+    public Long getBaseRevision() { return baseRevision; }
+    public void setBaseRevision(Long baseRevision) { this.baseRevision = baseRevision; }
+    
+    public long getRevision() { return revision; }
+    public void setRevision(long revision) { this.revision = revision; }
+    
+    public String getItemId() { return itemId; }
+    public void setItemId(String itemId) { this.itemId = itemId; }
+    
+    public String getOriginId() { return originId; }
+    public void setOriginId(String originId) { this.originId = originId; }
+    
     public LocalDateTime getTimestamp() { return timestamp; }
     public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
 }
\ No newline at end of file
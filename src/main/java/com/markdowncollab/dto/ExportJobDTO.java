@@ -0,0 +1,52 @@
+package com.markdowncollab.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Status of a background export; the artifact is downloaded separately once the job is done.
+ */
+public class ExportJobDTO {
+    private String id;
+    private Long documentId;
+    private String format;
+    private String status; // "queued", "running", "done" or "failed"
+    private String error; // Failure message, null unless failed
+    private String contentType;
+    private String fileName;
+    private Integer size; // Bytes of the artifact, null until done
+    private LocalDateTime createdAt;
+    private LocalDateTime finishedAt;
+    
+    public ExportJobDTO() {}
+    
+    // Getters and setters
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    
+    public Long getDocumentId() { return documentId; }
+    public void setDocumentId(Long documentId) { this.documentId = documentId; }
+    
+    public String getFormat() { return format; }
+    public void setFormat(String format) { this.format = format; }
+    
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+    
+    public String getContentType() { return contentType; }
+    public void setContentType(String contentType) { this.contentType = contentType; }
+    
+    public String getFileName() { return fileName; }
+    public void setFileName(String fileName) { this.fileName = fileName; }
+    
+    public Integer getSize() { return size; }
+    public void setSize(Integer size) { this.size = size; }
+    
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+    
+    public LocalDateTime getFinishedAt() { return finishedAt; }
+    public void setFinishedAt(LocalDateTime finishedAt) { this.finishedAt = finishedAt; }
+}
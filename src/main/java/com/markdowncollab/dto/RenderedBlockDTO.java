@@ -0,0 +1,27 @@
+package com.markdowncollab.dto;
+
+/**
+ * HTML of one top level block of a document, for patching a preview in place.
+ */
+public class RenderedBlockDTO {
+    private String id; // Derived from the block's text, so the same for every viewer; changes when the block is edited
+    private String html;
+    private boolean changed; // Not among the blocks the caller said it shows
+    
+    public RenderedBlockDTO() {}
+    
+    public RenderedBlockDTO(String id, String html, boolean changed) {
+        this.id = id;
+        this.html = html;
+        this.changed = changed;
+    }
+    
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    
+    public String getHtml() { return html; }
+    public void setHtml(String html) { this.html = html; }
+    
+    public boolean isChanged() { return changed; }
+    public void setChanged(boolean changed) { this.changed = changed; }
+}
@@ -0,0 +1,39 @@
+package com.markdowncollab.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Changes between two versions of a document as unified diff style hunks.
+ */
+public class VersionDiffDTO {
+    private Long fromVersionId;
+    private Long toVersionId;
+    private String granularity; // "line" or "word"
+    private boolean complete; // False if the diff budget ran out and some changes are coarser than necessary
+    private int additions; // Lines added
+    private int deletions; // Lines removed
+    private List<DiffHunkDTO> hunks = new ArrayList<>();
+    
+    // Getters and setters
+    public Long getFromVersionId() { return fromVersionId; }
+    public void setFromVersionId(Long fromVersionId) { this.fromVersionId = fromVersionId; }
+    
+    public Long getToVersionId() { return toVersionId; }
+    public void setToVersionId(Long toVersionId) { this.toVersionId = toVersionId; }
+    
+    public String getGranularity() { return granularity; }
+    public void setGranularity(String granularity) { this.granularity = granularity; }
+    
+    public boolean isComplete() { return complete; }
+    public void setComplete(boolean complete) { this.complete = complete; }
+    
+    public int getAdditions() { return additions; }
+    public void setAdditions(int additions) { this.additions = additions; }
+    
+    public int getDeletions() { return deletions; }
+    public void setDeletions(int deletions) { this.deletions = deletions; }
+    
+    public List<DiffHunkDTO> getHunks() { return hunks; }
+    public void setHunks(List<DiffHunkDTO> hunks) { this.hunks = hunks; }
+}
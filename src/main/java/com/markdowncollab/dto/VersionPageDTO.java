@@ -0,0 +1,27 @@
+package com.markdowncollab.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One page of a document's version history, newest first.
+ */
+public class VersionPageDTO {
+    private List<VersionSummaryDTO> versions = new ArrayList<>();
+    private String nextCursor; // Pass back to get the next (older) page; null on the last page
+    
+    public VersionPageDTO() {}
+    
+    public VersionPageDTO(List<VersionSummaryDTO> versions, String nextCursor) {
+        this.versions = versions;
+        this.nextCursor = nextCursor;
+    }
+    
+    public List<VersionSummaryDTO> getVersions() { return versions; }
+    public void setVersions(List<VersionSummaryDTO> versions) { this.versions = versions; }
+    
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+    
+    public boolean hasMore() { return nextCursor != null; }
+}
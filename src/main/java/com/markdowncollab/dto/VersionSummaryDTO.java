@@ -0,0 +1,47 @@
+package com.markdowncollab.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * A version without its content, for listing the history of a document.
+ */
+public class VersionSummaryDTO {
+    private Long id;
+    private Long authorId;
+    private String authorUsername;
+    private String description;
+    private LocalDateTime createdAt;
+    private Integer size; // Characters; null for versions saved before sizes were recorded
+    
+    public VersionSummaryDTO() {}
+    
+    // Used by the JPQL constructor expression in VersionRepository
+    public VersionSummaryDTO(Long id, Long authorId, String authorUsername, String description,
+            LocalDateTime createdAt, Integer size) {
+        this.id = id;
+        this.authorId = authorId;
+        this.authorUsername = authorUsername;
+        this.description = description;
+        this.createdAt = createdAt;
+        this.size = size;
+    }
+    
+    // Getters and setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    
+    public Long getAuthorId() { return authorId; }
+    public void setAuthorId(Long authorId) { this.authorId = authorId; }
+    
+    public String getAuthorUsername() { return authorUsername; }
+    public void setAuthorUsername(String authorUsername) { this.authorUsername = authorUsername; }
+    
+    public String getDescription() { return description; }
+    public void setDescription(String description) { this.description = description; }
+    
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+    
+    public Integer getSize() { return size; }
+    public void setSize(Integer size) { this.size = size; }
+}
@@ -0,0 +1,7 @@
+package com.markdowncollab.exception;
+
+public class EditQueueFullException extends RuntimeException {
+    public EditQueueFullException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.markdowncollab.exception;
+
+public class ExportJobNotFoundException extends RuntimeException {
+    public ExportJobNotFoundException(String message) {
+        super(message);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,7 @@
+package com.markdowncollab.exception;
+
+public class ExportQueueFullException extends RuntimeException {
+    public ExportQueueFullException(String message) {
+        super(message);
+    }
+}
\ No newline at end of file
@@ -37,11 +37,42 @@ public class GlobalExceptionHandler {
         return createErrorResponse(HttpStatus.NOT_FOUND, ex.getMessage(), request);
     }
     
+    @ExceptionHandler(InvalidDiffRequestException.class)
+    public ResponseEntity<?> handleInvalidDiffRequest(InvalidDiffRequestException ex, WebRequest request) {
+        return createErrorResponse(HttpStatus.BAD_REQUEST, ex.getMessage(), request);
+    }
+    
+    @ExceptionHandler(InvalidCursorException.class)
+    public ResponseEntity<?> handleInvalidCursor(InvalidCursorException ex, WebRequest request) {
+        return createErrorResponse(HttpStatus.BAD_REQUEST, ex.getMessage(), request);
+    }
+    
+    @ExceptionHandler(InvalidEditException.class)
+    public ResponseEntity<?> handleInvalidEdit(InvalidEditException ex, WebRequest request) {
+        return createErrorResponse(HttpStatus.BAD_REQUEST, ex.getMessage(), request);
+    }
+    
+    @ExceptionHandler(UnsavedEditsException.class)
+    public ResponseEntity<?> handleUnsavedEdits(UnsavedEditsException ex, WebRequest request) {
+        // The collaborative edits are kept; saving again can succeed once they are written
+        return createErrorResponse(HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage(), request);
+    }
+    
     @ExceptionHandler(UnsupportedExportFormatException.class)
     public ResponseEntity<?> handleUnsupportedExportFormat(UnsupportedExportFormatException ex, WebRequest request) {
         return createErrorResponse(HttpStatus.BAD_REQUEST, ex.getMessage(), request);
     }
     
+    @ExceptionHandler(ExportJobNotFoundException.class)
+    public ResponseEntity<?> handleExportJobNotFound(ExportJobNotFoundException ex, WebRequest request) {
+        return createErrorResponse(HttpStatus.NOT_FOUND, ex.getMessage(), request);
+    }
+    
+    @ExceptionHandler(ExportQueueFullException.class)
+    public ResponseEntity<?> handleExportQueueFull(ExportQueueFullException ex, WebRequest request) {
+        return createErrorResponse(HttpStatus.TOO_MANY_REQUESTS, ex.getMessage(), request);
+    }
+    
     @ExceptionHandler(ExportException.class)
     public ResponseEntity<?> handleExportException(ExportException ex, WebRequest request) {
         return createErrorResponse(HttpStatus.INTERNAL_SERVER_ERROR, ex.getMessage(), request);
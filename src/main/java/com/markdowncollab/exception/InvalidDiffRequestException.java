@@ -0,0 +1,7 @@
+package com.markdowncollab.exception;
+
+public class InvalidDiffRequestException extends RuntimeException {
+    public InvalidDiffRequestException(String message) {
+        super(message);
+    }
+}
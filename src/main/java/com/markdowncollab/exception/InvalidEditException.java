@@ -0,0 +1,7 @@
+package com.markdowncollab.exception;
+
+public class InvalidEditException extends RuntimeException {
+    public InvalidEditException(String message) {
+        super(message);
+    }
+}
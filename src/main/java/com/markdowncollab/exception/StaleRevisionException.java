@@ -0,0 +1,7 @@
+package com.markdowncollab.exception;
+
+public class StaleRevisionException extends RuntimeException {
+    public StaleRevisionException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.markdowncollab.exception;
+
+public class UnsavedEditsException extends RuntimeException {
+    public UnsavedEditsException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,248 @@
+package com.markdowncollab.markdown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits markdown into top level blocks that render independently, so the HTML of the whole
+ * text is the HTML of its blocks one after another. Blocks are separated by blank lines, except
+ * where a blank line does not end the construct: inside fenced code and raw HTML, between the
+ * items of a list and their continuation lines, and within indented code. Where it is unsure
+ * the splitter keeps text together, which only costs rendering time.
+ * <p>
+ * Link reference definitions are the one construct reaching across blocks. Definitions at the
+ * start of a block are collected so blocks with links can be rendered together with them; a
+ * document defining links anywhere else, or with a definition that may continue on the next
+ * line, is kept as a single block.
+ */
+public final class MarkdownBlocks {
+
+    private static final Pattern FENCE = Pattern.compile("^ {0,3}(`{3,}(?!.*`)|~{3,})");
+    private static final Pattern LIST_ITEM = Pattern.compile("^ {0,3}([-+*]|\\d{1,9}[.)])(\\s|$)");
+    private static final Pattern LINK_DEFINITION = Pattern.compile("^ {0,3}\\[(?:[^\\]\\\\]|\\\\.)+\\]:");
+    private static final Pattern ANY_LINK_DEFINITION = Pattern.compile("\\[(?:[^\\]\\\\]|\\\\.)+\\]:");
+    // HTML blocks that may contain blank lines, with what ends them
+    private static final Pattern[][] RAW_HTML = {
+            { Pattern.compile("^ {0,3}<(script|pre|style|textarea)(\\s|>|$)", Pattern.CASE_INSENSITIVE),
+                    Pattern.compile("</(script|pre|style|textarea)>", Pattern.CASE_INSENSITIVE) },
+            { Pattern.compile("^ {0,3}<!--"), Pattern.compile("-->") },
+            { Pattern.compile("^ {0,3}<\\?"), Pattern.compile("\\?>") },
+            { Pattern.compile("^ {0,3}<![A-Za-z]"), Pattern.compile(">") },
+            { Pattern.compile("^ {0,3}<!\\[CDATA\\["), Pattern.compile("]]>") },
+    };
+    
+    private MarkdownBlocks() {
+    }
+    
+    /**
+     * A run of source text that renders on its own.
+     *
+     * @param literal Whether the block is only code or raw HTML, where links are not resolved
+     * @param definitions Link reference definitions the block starts with, empty if none
+     */
+    public record Block(int start, int end, String text, boolean literal, String definitions) {
+    }
+    
+    public static List<Block> split(String content) {
+        Splitter splitter = new Splitter(content);
+        int offset = 0;
+        while (true) {
+            int newline = content.indexOf('\n', offset);
+            int lineEnd = newline < 0 ? content.length() : newline;
+            if (!splitter.line(offset, lineEnd)) {
+                // A link definition where other blocks would not see it
+                return content.isBlank() ? List.of() : List.of(new Block(0, content.length(), content, false, ""));
+            }
+            if (newline < 0) {
+                break;
+            }
+            offset = newline + 1;
+        }
+        splitter.close();
+        return splitter.blocks;
+    }
+    
+    /**
+     * All link reference definitions of a document, in document order.
+     */
+    public static String linkDefinitions(List<Block> blocks) {
+        StringBuilder definitions = new StringBuilder();
+        for (Block block : blocks) {
+            if (!block.definitions().isEmpty()) {
+                definitions.append(block.definitions()).append('\n');
+            }
+        }
+        return definitions.toString();
+    }
+    
+    /**
+     * The text to render for a block: blocks that may contain references get the definitions
+     * of the whole document in front, which render to nothing themselves.
+     */
+    public static String source(Block block, String definitions) {
+        if (block.literal() || definitions.isEmpty() || block.text().indexOf('[') < 0) {
+            return block.text();
+        }
+        return definitions + "\n" + block.text();
+    }
+    
+    private static int indent(String line) {
+        int columns = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == ' ') {
+                columns++;
+            } else if (c == '\t') {
+                columns += 4 - columns % 4;
+            } else {
+                break;
+            }
+        }
+        return columns;
+    }
+    
+    private static class Splitter {
+        private final String content;
+        private final List<Block> blocks = new ArrayList<>();
+        
+        // Current block, start < 0 if there is none
+        private int start = -1;
+        private int end;
+        private boolean list;
+        private boolean code;
+        private boolean literal;
+        private boolean blank;
+        private int lastIndent;
+        private int definitionsEnd;
+        private boolean inDefinitions;
+        
+        // Open construct that blank lines do not end
+        private char fenceChar;
+        private int fenceLength;
+        private Pattern rawEnd;
+        
+        Splitter(String content) {
+            this.content = content;
+        }
+        
+        // Returns false if the document has to stay in one piece
+        boolean line(int lineStart, int lineEnd) {
+            String line = content.substring(lineStart, lineEnd);
+            if (fenceLength > 0 || rawEnd != null) {
+                if (fenceLength > 0 ? closesFence(line) : rawEnd.matcher(line).find()) {
+                    fenceLength = 0;
+                    rawEnd = null;
+                }
+                end = lineEnd;
+                return true;
+            }
+            if (line.isBlank()) {
+                if (start >= 0) {
+                    blank = true;
+                }
+                return true;
+            }
+            int indent = indent(line);
+            if (start >= 0 && blank && !(list && (indent > 0 || LIST_ITEM.matcher(line).find()))
+                    && !(lastIndent >= 4 && indent >= 4)) {
+                close();
+            }
+            if (start < 0) {
+                start = lineStart;
+                list = false;
+                code = indent >= 4;
+                literal = true;
+                inDefinitions = true;
+                definitionsEnd = lineStart;
+            }
+            blank = false;
+            lastIndent = indent;
+            end = lineEnd;
+            
+            boolean codeLine = code && indent >= 4;
+            if (inDefinitions) {
+                Matcher definition = LINK_DEFINITION.matcher(line);
+                if (!codeLine && definition.find()) {
+                    definitionsEnd = lineEnd;
+                    literal = false;
+                    return endsDefinition(line.substring(definition.end()));
+                }
+                if (definitionsEnd > start) {
+                    // The destination or title of the definition before, or a paragraph: only the parser can tell
+                    return false;
+                }
+                inDefinitions = false;
+            }
+            if (codeLine) {
+                return true;
+            }
+            
+            Matcher fence = FENCE.matcher(line);
+            if (fence.find()) {
+                fenceChar = fence.group(1).charAt(0);
+                fenceLength = fence.group(1).length();
+                return true;
+            }
+            for (Pattern[] raw : RAW_HTML) {
+                if (raw[0].matcher(line).find()) {
+                    rawEnd = raw[1].matcher(line).find() ? null : raw[1];
+                    return true;
+                }
+            }
+            literal = false;
+            if (ANY_LINK_DEFINITION.matcher(line).find()) {
+                return false;
+            }
+            if (LIST_ITEM.matcher(line).find()) {
+                list = true;
+            }
+            return true;
+        }
+        
+        void close() {
+            if (start < 0) {
+                return;
+            }
+            String definitions = definitionsEnd > start ? content.substring(start, definitionsEnd) : "";
+            blocks.add(new Block(start, end, content.substring(start, end), literal, definitions));
+            start = -1;
+            blank = false;
+            code = false;
+            list = false;
+        }
+        
+        // Whether what follows the label is a whole destination and title ending the definition on its line
+        private static boolean endsDefinition(String afterLabel) {
+            String rest = afterLabel.strip();
+            int destinationEnd = rest.startsWith("<") ? rest.indexOf('>') + 1 : rest.split("\\s", 2)[0].length();
+            if (destinationEnd <= 0) {
+                return false;
+            }
+            String title = rest.substring(destinationEnd).strip();
+            if (title.isEmpty()) {
+                return true;
+            }
+            char close = switch (title.charAt(0)) {
+                case '"' -> '"';
+                case '\'' -> '\'';
+                case '(' -> ')';
+                default -> 0;
+            };
+            return title.length() > 1 && title.charAt(title.length() - 1) == close && title.charAt(title.length() - 2) != '\\';
+        }
+        
+        private boolean closesFence(String line) {
+            String trimmed = line.stripLeading();
+            if (line.length() - trimmed.length() > 3) {
+                return false;
+            }
+            int run = 0;
+            while (run < trimmed.length() && trimmed.charAt(run) == fenceChar) {
+                run++;
+            }
+            return run >= fenceLength && trimmed.substring(run).isBlank();
+        }
+    }
+}
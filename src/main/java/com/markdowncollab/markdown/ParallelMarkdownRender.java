@@ -0,0 +1,79 @@
+package com.markdowncollab.markdown;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.UnaryOperator;
+
+/**
+ * Renders large documents on the common fork-join pool. The document is cut into chunks of
+ * whole top level blocks as split by {@link MarkdownBlocks}, each chunk is rendered on its own
+ * together with the link definitions of the document, and the HTML of the chunks in document
+ * order is the HTML of the whole document. Documents that cannot be split are rendered whole.
+ */
+public final class ParallelMarkdownRender {
+
+    private ParallelMarkdownRender() {
+    }
+    
+    /**
+     * Render a document in chunks of about the given size.
+     *
+     * @param render Renders one chunk; called from pool threads concurrently
+     * @return The HTML of the chunks in document order
+     */
+    public static List<String> render(String content, int chunkChars, UnaryOperator<String> render) {
+        List<MarkdownBlocks.Block> blocks = MarkdownBlocks.split(content);
+        String definitions = MarkdownBlocks.linkDefinitions(blocks);
+        List<String> sources = new ArrayList<>();
+        int first = 0;
+        while (first < blocks.size()) {
+            int last = first;
+            boolean literal = blocks.get(first).literal();
+            while (last + 1 < blocks.size() && blocks.get(last + 1).end() - blocks.get(first).start() <= chunkChars) {
+                last++;
+                literal &= blocks.get(last).literal();
+            }
+            int start = blocks.get(first).start();
+            int end = blocks.get(last).end();
+            MarkdownBlocks.Block chunk = new MarkdownBlocks.Block(start, end, content.substring(start, end), literal, "");
+            sources.add(MarkdownBlocks.source(chunk, definitions));
+            first = last + 1;
+        }
+        if (sources.size() < 2) {
+            return List.of(render.apply(content));
+        }
+        
+        String[] html = new String[sources.size()];
+        new RenderChunks(sources, html, 0, html.length, render).invoke();
+        return Arrays.asList(html);
+    }
+    
+    private static class RenderChunks extends RecursiveAction {
+        private final List<String> sources;
+        private final String[] html;
+        private final int from;
+        private final int to;
+        private final UnaryOperator<String> render;
+        
+        RenderChunks(List<String> sources, String[] html, int from, int to, UnaryOperator<String> render) {
+            this.sources = sources;
+            this.html = html;
+            this.from = from;
+            this.to = to;
+            this.render = render;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                html[from] = render.apply(sources.get(from));
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RenderChunks(sources, html, from, middle, render),
+                    new RenderChunks(sources, html, middle, to, render));
+        }
+    }
+}
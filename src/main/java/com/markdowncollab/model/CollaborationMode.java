@@ -0,0 +1,11 @@
+package com.markdowncollab.model;
+
+/**
+ * How concurrent edits to a document are merged.
+ */
+public enum CollaborationMode {
+    // Position based operations transformed against a server revision history
+    OT,
+    // Sequence CRDT: operations name characters by id and commute
+    CRDT
+}
@@ -0,0 +1,61 @@
+package com.markdowncollab.model;
+
+import java.util.Base64;
+import com.markdowncollab.model.text.TextCompression;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * Stores large text columns deflated. Compressed values are Base64 and start with a format
+ * tag, so they live in the same TEXT column as uncompressed rows, which are read as they are.
+ * Text that itself starts with the tag is always written compressed, so it cannot be mistaken
+ * for a compressed value when read back.
+ * Created by Hibernate through the Spring bean container.
+ */
+@Converter
+public class CompressedTextConverter implements AttributeConverter<String, String> {
+    // Control character prefix that markdown text does not start with, plus format version
+    public static final String DEFLATE_TAG = "\u0001z1:";
+
+    private final boolean enabled;
+    private final int minLength;
+
+    @Autowired
+    public CompressedTextConverter(
+            @Value("${storage.compression.enabled:true}") boolean enabled,
+            @Value("${storage.compression.min-length:512}") int minLength) {
+        this.enabled = enabled;
+        this.minLength = minLength;
+    }
+
+    @Override
+    public String convertToDatabaseColumn(String text) {
+        return shouldCompress(text) ? compress(text) : text;
+    }
+
+    @Override
+    public String convertToEntityAttribute(String stored) {
+        return isCompressed(stored) ? decompress(stored) : stored;
+    }
+
+    public static boolean isCompressed(String stored) {
+        return stored != null && stored.startsWith(DEFLATE_TAG);
+    }
+
+    public static String compress(String text) {
+        return DEFLATE_TAG + Base64.getEncoder().encodeToString(TextCompression.deflate(text));
+    }
+
+    public static String decompress(String stored) {
+        return TextCompression.inflate(Base64.getDecoder().decode(stored.substring(DEFLATE_TAG.length())));
+    }
+
+    /**
+     * Whether a value would be written compressed with the current settings.
+     */
+    public boolean shouldCompress(String text) {
+        return isCompressed(text) || (enabled && text != null && text.length() >= minLength);
+    }
+}
@@ -6,9 +6,14 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import jakarta.persistence.FetchType;
+import jakarta.persistence.Access;
+import jakarta.persistence.AccessType;
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
@@ -20,6 +25,8 @@ import jakarta.persistence.OneToMany;
 import jakarta.persistence.PrePersist;
 import jakarta.persistence.PreUpdate;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+import com.markdowncollab.model.text.TextBuffer;
 
 @Entity
 @Table(name = "documents")
@@ -30,8 +37,9 @@ public class Document {
     
     private String title;
     
-    @Column(columnDefinition = "TEXT")
-    private String content;
+    // Edits go to the buffer; the TEXT column is only materialized through getContent()
+    @Transient
+    private TextBuffer content;
     
     @ManyToOne
     @JoinColumn(name = "owner_id")
@@ -51,6 +59,13 @@ public class Document {
     @OneToMany(mappedBy = "document", cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.LAZY)
     private List<Comment> comments = new ArrayList<>();
     
+    // How concurrent edits are merged; null for documents created before modes existed
+    @Enumerated(EnumType.STRING)
+    private CollaborationMode collaborationMode;
+    
+    // Sequence of the last edit journal operation in the content; null for documents never edited live
+    private Long journalSequence;
+    
     private LocalDateTime createdAt;
     
     private LocalDateTime updatedAt;
@@ -73,8 +88,11 @@ public class Document {
     public String getTitle() { return title; }
     public void setTitle(String title) { this.title = title; }
     
-    public String getContent() { return content; }
-    public void setContent(String content) { this.content = content; }
+    @Access(AccessType.PROPERTY)
+    @Column(name = "content", columnDefinition = "TEXT")
+    @Convert(converter = CompressedTextConverter.class)
+    public synchronized String getContent() { return content != null ? content.toString() : null; }
+    public synchronized void setContent(String content) { this.content = content != null ? TextBuffer.of(content) : null; }
     
     public User getOwner() { return owner; }
     public void setOwner(User owner) { this.owner = owner; }
@@ -88,10 +106,35 @@ public class Document {
     public List<Comment> getComments() { return comments; }
     public void setComments(List<Comment> comments) { this.comments = comments; }
     
+    public CollaborationMode getCollaborationMode() {
+        return collaborationMode != null ? collaborationMode : CollaborationMode.OT;
+    }
+    public void setCollaborationMode(CollaborationMode collaborationMode) { this.collaborationMode = collaborationMode; }
+    
+    public long getJournalSequence() { return journalSequence != null ? journalSequence : 0; }
+    public void setJournalSequence(long journalSequence) { this.journalSequence = journalSequence; }
+    
     public LocalDateTime getCreatedAt() { return createdAt; }
     
     public LocalDateTime getUpdatedAt() { return updatedAt; }
     
+    /**
+     * Copies the columns and the access lists, without content, versions and comments.
+     * Used to keep a detached document around while its content is stored elsewhere.
+     */
+    public Document copyMetadata() {
+        Document copy = new Document();
+        copy.id = id;
+        copy.title = title;
+        copy.owner = owner;
+        copy.collaborators = new HashSet<>(collaborators);
+        copy.collaborationMode = collaborationMode;
+        copy.journalSequence = journalSequence;
+        copy.createdAt = createdAt;
+        copy.updatedAt = updatedAt;
+        return copy;
+    }
+    
     // Collaboration methods
     public void addCollaborator(User user) {
         collaborators.add(user);
@@ -103,7 +146,7 @@ public class Document {
     }
     
     // Version tracking methods
-    public void createNewVersion(String content, User author, String description) {
+    public Version createNewVersion(String content, User author, String description) {
         Version version = new Version();
         version.setDocument(this);
         version.setContent(content);
@@ -113,12 +156,13 @@ public class Document {
         versions.add(version);
         
         // Update the current content
-        this.content = content;
+        setContent(content);
+        return version;
     }
     
     // Maintain backward compatibility with existing code
-    public void createNewVersion(String content, User author) {
-        createNewVersion(content, author, "Auto-saved version");
+    public Version createNewVersion(String content, User author) {
+        return createNewVersion(content, author, "Auto-saved version");
     }
     
     // Comment methods
@@ -131,23 +175,30 @@ public class Document {
         comments.remove(comment);
     }
     
-    // Text manipulation methods (for Command pattern)
-    public void insertText(int position, String text) {
-        StringBuilder sb = new StringBuilder(content);
-        sb.insert(position, text);
-        content = sb.toString();
+    // Text manipulation methods (for Command pattern).
+    // Synchronized because live documents are edited and flushed from different threads.
+    public synchronized void insertText(int position, String text) {
+        if (content == null) {
+            content = TextBuffer.of("");
+        }
+        content.insert(position, text);
     }
     
-    public void deleteText(int position, int length) {
-        StringBuilder sb = new StringBuilder(content);
-        sb.delete(position, position + length);
-        content = sb.toString();
+    public synchronized void deleteText(int position, int length) {
+        if (content == null) {
+            content = TextBuffer.of("");
+        }
+        content.delete(position, length);
     }
     
-    public String getTextRange(int position, int length) {
-        if (position < 0 || position + length > content.length()) {
+    public synchronized String getTextRange(int position, int length) {
+        if (content == null || position < 0 || length < 0 || position + length > content.length()) {
             throw new IndexOutOfBoundsException("Invalid text range");
         }
         return content.substring(position, position + length);
     }
+    
+    public synchronized int getContentLength() {
+        return content != null ? content.length() : 0;
+    }
 }
\ No newline at end of file
@@ -1,17 +1,28 @@
 package com.markdowncollab.model;
 
 import java.time.LocalDateTime;
+import java.util.function.Function;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+import jakarta.persistence.UniqueConstraint;
 
 @Entity
-@Table(name = "document_versions")
+@Table(name = "document_versions",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"document_id", "sequence"}),
+       // Serves the newest-first keyset pagination of version summaries
+       indexes = @Index(name = "idx_document_versions_history", columnList = "document_id, created_at, id"))
+@EntityListeners(VersionContentListener.class)
 public class Version {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -25,13 +36,38 @@ public class Version {
     @JoinColumn(name = "author_id")
     private User author;
     
+    // Full text, only stored for keyframes (and versions created before deltas existed)
     @Column(columnDefinition = "TEXT")
+    @Convert(converter = CompressedTextConverter.class)
     private String content;
     
+    // Changes against the previous version of the document, for versions that are not keyframes
+    @Column(columnDefinition = "TEXT")
+    private String delta;
+    
+    // Position in the document's version history, starting at 1
+    private Integer sequence;
+    
+    // Sequence of the keyframe this version is reconstructed from
+    private Integer keyframeSequence;
+    
+    // Length of the full text, so listings never need the content; null for older versions
+    private Integer contentLength;
+    
+    // Edit journal sequence of the document when the version was taken; older edits are folded into it
+    private Long journalSequence;
+    
     private String description;
     
     private LocalDateTime createdAt;
     
+    // Full text of a delta version, reconstructed on first access
+    @Transient
+    private String reconstructedContent;
+    
+    @Transient
+    private Function<Version, String> contentResolver;
+    
     // Getters and setters
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
@@ -42,12 +78,62 @@ public class Version {
     public User getAuthor() { return author; }
     public void setAuthor(User author) { this.author = author; }
     
-    public String getContent() { return content; }
-    public void setContent(String content) { this.content = content; }
+    public String getContent() {
+        if (content != null) {
+            return content;
+        }
+        if (reconstructedContent == null && delta != null && contentResolver != null) {
+            reconstructedContent = contentResolver.apply(this);
+        }
+        return reconstructedContent;
+    }
+    
+    public void setContent(String content) {
+        this.content = content;
+        this.delta = null;
+        this.reconstructedContent = null;
+    }
+    
+    /**
+     * Store this version as changes against the previous one. The full text stays available
+     * in memory; loaded instances reconstruct it through the content resolver.
+     */
+    public void storeAsDelta(String delta, int sequence, int keyframeSequence) {
+        this.reconstructedContent = getContent();
+        this.content = null;
+        this.delta = delta;
+        this.sequence = sequence;
+        this.keyframeSequence = keyframeSequence;
+    }
+    
+    public void storeAsKeyframe(int sequence) {
+        this.sequence = sequence;
+        this.keyframeSequence = sequence;
+    }
+    
+    @JsonIgnore
+    public boolean isKeyframe() { return content != null; }
+    
+    @JsonIgnore
+    public String getDelta() { return delta; }
+    
+    public Integer getSequence() { return sequence; }
+    
+    @JsonIgnore
+    public Integer getKeyframeSequence() { return keyframeSequence; }
+    
+    public Integer getContentLength() { return contentLength; }
+    public void setContentLength(Integer contentLength) { this.contentLength = contentLength; }
+    
+    @JsonIgnore
+    public Long getJournalSequence() { return journalSequence; }
+    public void setJournalSequence(Long journalSequence) { this.journalSequence = journalSequence; }
+    
+    public void setContentResolver(Function<Version, String> contentResolver) { this.contentResolver = contentResolver; }
     
     public String getDescription() { return description; }
     public void setDescription(String description) { this.description = description; }
     
     public LocalDateTime getCreatedAt() { return createdAt; }
     public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
-}
\ No newline at end of file
+}
@@ -0,0 +1,25 @@
+package com.markdowncollab.model;
+
+import com.markdowncollab.service.VersionStorageService;
+import jakarta.persistence.PostLoad;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+
+/**
+ * Gives loaded versions a way to reconstruct delta encoded content on demand.
+ * Created by Hibernate through the Spring bean container; the storage service is injected
+ * lazily because it depends on the repositories, which are built after the entity manager.
+ */
+public class VersionContentListener {
+    private final VersionStorageService versionStorageService;
+
+    @Autowired
+    public VersionContentListener(@Lazy VersionStorageService versionStorageService) {
+        this.versionStorageService = versionStorageService;
+    }
+
+    @PostLoad
+    public void postLoad(Version version) {
+        version.setContentResolver(versionStorageService::reconstruct);
+    }
+}
@@ -0,0 +1,289 @@
+package com.markdowncollab.model.text;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Rope implementation of {@link TextBuffer}.
+ * The text is cut into bounded chunks held by an implicit treap ordered by character offset,
+ * so an edit costs O(log n) plus the size of a single chunk instead of a copy of the whole text.
+ * Not thread-safe; callers must serialize access.
+ */
+public class RopeTextBuffer implements TextBuffer {
+    // Chunks are edited in place up to this size, beyond that the tree is split instead
+    static final int MAX_CHUNK = 1024;
+    // Chunks produced by a bulk build are half full to leave room for typing
+    static final int BUILD_CHUNK = MAX_CHUNK / 2;
+
+    private Node root;
+    private String materialized; // Cached result of toString(), cleared on every edit
+
+    public RopeTextBuffer() {
+        this("");
+    }
+
+    public RopeTextBuffer(String text) {
+        if (text != null && !text.isEmpty()) {
+            root = build(text);
+            materialized = text;
+        } else {
+            materialized = "";
+        }
+    }
+
+    @Override
+    public int length() {
+        return size(root);
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length());
+        }
+        Node node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index < leftSize + node.chunk.length()) {
+                return node.chunk.charAt(index - leftSize);
+            } else {
+                index -= leftSize + node.chunk.length();
+                node = node.right;
+            }
+        }
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return substring(start, end);
+    }
+
+    @Override
+    public String substring(int start, int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("Invalid range [" + start + ", " + end + ") for length " + length());
+        }
+        if (materialized != null) {
+            return materialized.substring(start, end);
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        appendRange(root, start, end, sb);
+        return sb.toString();
+    }
+
+    @Override
+    public void insert(int position, String text) {
+        if (position < 0 || position > length()) {
+            throw new IndexOutOfBoundsException("Invalid insert position " + position + " for length " + length());
+        }
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        if (root == null) {
+            root = build(text);
+        } else if (!insertIntoChunk(root, position, text)) {
+            Node[] parts = split(root, position);
+            root = merge(merge(parts[0], build(text)), parts[1]);
+        }
+        materialized = null;
+    }
+
+    @Override
+    public void delete(int position, int length) {
+        if (position < 0 || length < 0 || position > length()) {
+            throw new IndexOutOfBoundsException("Invalid delete range " + position + "+" + length + " for length " + length());
+        }
+        int count = Math.min(length, length() - position);
+        if (count == 0) {
+            return;
+        }
+        if (!deleteFromChunk(root, position, count)) {
+            Node[] head = split(root, position);
+            Node[] tail = split(head[1], count);
+            root = merge(head[0], tail[1]);
+        }
+        materialized = null;
+    }
+
+    @Override
+    public String toString() {
+        if (materialized == null) {
+            StringBuilder sb = new StringBuilder(length());
+            appendRange(root, 0, length(), sb);
+            materialized = sb.toString();
+        }
+        return materialized;
+    }
+
+    // Fast path for typing: grow the chunk that already holds the position
+    private boolean insertIntoChunk(Node node, int position, String text) {
+        if (node == null) {
+            return false;
+        }
+        int leftSize = size(node.left);
+        int chunkEnd = leftSize + node.chunk.length();
+        boolean inserted;
+        if (position < leftSize) {
+            inserted = insertIntoChunk(node.left, position, text);
+        } else if (position <= chunkEnd) {
+            if (node.chunk.length() + text.length() > MAX_CHUNK) {
+                return false;
+            }
+            int offset = position - leftSize;
+            node.chunk = new StringBuilder(node.chunk.length() + text.length())
+                    .append(node.chunk, 0, offset)
+                    .append(text)
+                    .append(node.chunk, offset, node.chunk.length())
+                    .toString();
+            inserted = true;
+        } else {
+            inserted = insertIntoChunk(node.right, position - chunkEnd, text);
+        }
+        if (inserted) {
+            node.size += text.length();
+        }
+        return inserted;
+    }
+
+    // Fast path for backspace: shrink a chunk when the range does not empty it
+    private boolean deleteFromChunk(Node node, int position, int count) {
+        if (node == null) {
+            return false;
+        }
+        int leftSize = size(node.left);
+        int chunkEnd = leftSize + node.chunk.length();
+        boolean deleted;
+        if (position < leftSize) {
+            deleted = position + count <= leftSize && deleteFromChunk(node.left, position, count);
+        } else if (position < chunkEnd) {
+            if (position + count > chunkEnd || count == node.chunk.length()) {
+                return false;
+            }
+            int offset = position - leftSize;
+            node.chunk = new StringBuilder(node.chunk.length() - count)
+                    .append(node.chunk, 0, offset)
+                    .append(node.chunk, offset + count, node.chunk.length())
+                    .toString();
+            deleted = true;
+        } else {
+            deleted = deleteFromChunk(node.right, position - chunkEnd, count);
+        }
+        if (deleted) {
+            node.size -= count;
+        }
+        return deleted;
+    }
+
+    /**
+     * Split a tree so that the first tree holds the first {@code offset} characters.
+     * A chunk straddling the offset is cut in two.
+     */
+    private static Node[] split(Node node, int offset) {
+        if (node == null) {
+            return new Node[] { null, null };
+        }
+        int leftSize = size(node.left);
+        int chunkEnd = leftSize + node.chunk.length();
+        if (offset <= leftSize) {
+            Node[] parts = split(node.left, offset);
+            node.left = parts[1];
+            node.update();
+            return new Node[] { parts[0], node };
+        }
+        if (offset >= chunkEnd) {
+            Node[] parts = split(node.right, offset - chunkEnd);
+            node.right = parts[0];
+            node.update();
+            return new Node[] { node, parts[1] };
+        }
+        int cut = offset - leftSize;
+        Node tail = new Node(node.chunk.substring(cut));
+        Node right = merge(tail, node.right);
+        node.chunk = node.chunk.substring(0, cut);
+        node.right = null;
+        node.update();
+        return new Node[] { node, right };
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        }
+        right.left = merge(left, right.left);
+        right.update();
+        return right;
+    }
+
+    // Builds a treap from text in linear time using the right-spine construction
+    private static Node build(String text) {
+        Deque<Node> spine = new ArrayDeque<>();
+        for (int start = 0; start < text.length(); start += BUILD_CHUNK) {
+            Node node = new Node(text.substring(start, Math.min(text.length(), start + BUILD_CHUNK)));
+            Node last = null;
+            while (!spine.isEmpty() && spine.peek().priority < node.priority) {
+                last = spine.pop();
+                last.update();
+            }
+            node.left = last;
+            if (!spine.isEmpty()) {
+                spine.peek().right = node;
+            }
+            spine.push(node);
+        }
+        Node top = null;
+        while (!spine.isEmpty()) {
+            top = spine.pop();
+            top.update();
+        }
+        return top;
+    }
+
+    private static void appendRange(Node node, int start, int end, StringBuilder sb) {
+        if (node == null || start >= end) {
+            return;
+        }
+        int leftSize = size(node.left);
+        int chunkEnd = leftSize + node.chunk.length();
+        if (start < leftSize) {
+            appendRange(node.left, start, Math.min(end, leftSize), sb);
+        }
+        if (start < chunkEnd && end > leftSize) {
+            sb.append(node.chunk, Math.max(start, leftSize) - leftSize, Math.min(end, chunkEnd) - leftSize);
+        }
+        if (end > chunkEnd) {
+            appendRange(node.right, Math.max(start, chunkEnd) - chunkEnd, end - chunkEnd, sb);
+        }
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static final class Node {
+        private String chunk;
+        private final int priority = ThreadLocalRandom.current().nextInt();
+        private Node left;
+        private Node right;
+        private int size;
+
+        Node(String chunk) {
+            this.chunk = chunk;
+            this.size = chunk.length();
+        }
+
+        void update() {
+            size = size(left) + chunk.length() + size(right);
+        }
+    }
+}
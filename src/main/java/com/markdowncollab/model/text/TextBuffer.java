@@ -0,0 +1,50 @@
+package com.markdowncollab.model.text;
+
+/**
+ * Mutable text storage used behind {@link com.markdowncollab.model.Document}.
+ * Implementations are free to keep the text in any structure (rope, piece table, ...)
+ * as long as edits do not require copying the whole document.
+ */
+public interface TextBuffer extends CharSequence {
+    /**
+     * Insert text at the given position
+     *
+     * @param position The position to insert at (0..length)
+     * @param text The text to insert
+     */
+    void insert(int position, String text);
+
+    /**
+     * Delete a range of text. A range running past the end is clamped to the end,
+     * matching {@link StringBuilder#delete(int, int)}.
+     *
+     * @param position The start of the range
+     * @param length The number of characters to delete
+     */
+    void delete(int position, int length);
+
+    /**
+     * Get a copy of a range of text
+     *
+     * @param start The start of the range (inclusive)
+     * @param end The end of the range (exclusive)
+     * @return The text in the range
+     */
+    String substring(int start, int end);
+
+    /**
+     * Materialize the full text. Implementations should cache the result until the next edit.
+     */
+    @Override
+    String toString();
+
+    /**
+     * Create the default buffer implementation for the given text
+     *
+     * @param text The initial text
+     * @return A new buffer holding the text
+     */
+    static TextBuffer of(String text) {
+        return new RopeTextBuffer(text);
+    }
+}
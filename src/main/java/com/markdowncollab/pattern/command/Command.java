@@ -1,18 +1,50 @@
 package com.markdowncollab.pattern.command;
 
+import java.util.List;
+import com.markdowncollab.dto.DocumentEditMessage;
+import com.markdowncollab.model.Document;
+
 /**
  * Command interface for implementing the Command Pattern.
  * This is used for operations like inserting or deleting text in a document,
- * allowing for undo/redo functionality.
+ * allowing for undo/redo functionality. Commands only describe the change;
+ * the document is passed in, so a long undo history never keeps entities alive.
  */
 public interface Command {
     /**
      * Execute the command
      */
-    void execute();
+    void execute(Document document);
     
     /**
      * Undo the command
      */
-    void undo();
-}
\ No newline at end of file
+    void undo(Document document);
+    
+    /**
+     * Operations that undo the command on the current content, to be applied in list order.
+     * Used where the document is edited collaboratively and undo has to be broadcast.
+     */
+    List<DocumentEditMessage> undoOperations();
+    
+    /**
+     * Rebase the command onto an edit applied after it, by any user.
+     *
+     * @return The rebased command, or null if the edit left nothing of it to undo
+     */
+    Command transform(DocumentEditMessage applied);
+    
+    /**
+     * Rough memory held by the command, for bounding undo history
+     */
+    long estimatedBytes();
+    
+    /**
+     * Combine with the command executed right after this one, so both are undone together.
+     *
+     * @return The combined command, or null if the two stay separate
+     */
+    default Command coalesce(Command next) {
+        return null;
+    }
+}
@@ -1,31 +1,87 @@
 package com.markdowncollab.pattern.command;
 
+import java.util.List;
+import com.markdowncollab.collaboration.ot.OperationTransformer;
+import com.markdowncollab.dto.DocumentEditMessage;
 import com.markdowncollab.model.Document;
 
 /**
  * Concrete Command implementation for deleting text from a document.
  */
 public class DeleteTextCommand implements Command {
-    private final Document document;
     private final int position;
     private final int length;
     private String deletedText; // Stored for undo operation
     
-    public DeleteTextCommand(Document document, int position, int length) {
-        this.document = document;
+    public DeleteTextCommand(int position, int length) {
         this.position = position;
         this.length = length;
     }
     
+    // A delete that was already applied, with the text it removed
+    DeleteTextCommand(int position, String deletedText) {
+        this.position = position;
+        this.length = deletedText.length();
+        this.deletedText = deletedText;
+    }
+    
     @Override
-    public void execute() {
+    public void execute(Document document) {
         // Save the text that will be deleted for undo operation
         deletedText = document.getTextRange(position, length);
         document.deleteText(position, length);
     }
     
     @Override
-    public void undo() {
+    public void undo(Document document) {
         document.insertText(position, deletedText);
     }
-}
\ No newline at end of file
+    
+    @Override
+    public List<DocumentEditMessage> undoOperations() {
+        DocumentEditMessage insert = new DocumentEditMessage();
+        insert.setOperation(OperationTransformer.INSERT);
+        insert.setPosition(position);
+        insert.setText(deletedText);
+        return List.of(insert);
+    }
+    
+    @Override
+    public Command transform(DocumentEditMessage applied) {
+        int at = applied.getPosition();
+        if (OperationTransformer.INSERT.equals(applied.getOperation())) {
+            int inserted = applied.getText() != null ? applied.getText().length() : 0;
+            return at <= position ? new DeleteTextCommand(position + inserted, deletedText) : this;
+        }
+        if (OperationTransformer.DELETE.equals(applied.getOperation())) {
+            if (at + applied.getLength() <= position) {
+                return new DeleteTextCommand(position - applied.getLength(), deletedText);
+            }
+            // The text around the gap is gone, the deleted text goes back where the delete started
+            return at < position ? new DeleteTextCommand(at, deletedText) : this;
+        }
+        // Replaced content has nothing left of this command
+        return null;
+    }
+    
+    @Override
+    public long estimatedBytes() {
+        return 32 + (deletedText != null ? 2L * deletedText.length() : 0);
+    }
+    
+    // Repeated backspace or delete of single characters becomes one command
+    @Override
+    public Command coalesce(Command next) {
+        if (!(next instanceof DeleteTextCommand delete) || delete.length != 1
+                || deletedText == null || delete.deletedText == null) {
+            return null;
+        }
+        if (delete.position == position - 1) {
+            return new DeleteTextCommand(delete.position, delete.deletedText + deletedText);
+        }
+        if (delete.position == position) {
+            return new DeleteTextCommand(position, deletedText + delete.deletedText);
+        }
+        return null;
+    }
+}
@@ -1,68 +1,293 @@
 package com.markdowncollab.pattern.command;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Stack;
-import com.markdowncollab.model.Document;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+import com.markdowncollab.collaboration.ot.OperationTransformer;
+import com.markdowncollab.dto.DocumentEditMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 /**
- * Invoker for the Command Pattern. Manages execution of commands and maintains
- * undo/redo history for each document.
+ * Invoker for the Command Pattern. Maintains undo/redo history for each user of each
+ * document, so an undo only reverts that user's own changes. Every operation applied to
+ * the document, by anyone, is appended to the document's operation log; a command is rebased
+ * onto the operations logged after it only when it is about to be undone or redone, the way
+ * concurrent operations are transformed, and a command whose text was deleted by someone else
+ * drops out. Each history is capped by depth and by the estimated bytes its commands hold,
+ * dropping the oldest commands first; commands older than the operations the log keeps are
+ * dropped too, and histories nobody used for a while are dropped entirely. Callers apply
+ * operations under the document's lock, so histories see them in document order.
  */
 @Component
 public class DocumentEditor {
-    // Map to store command history for each document
-    private final Map<Long, Stack<Command>> undoStackMap = new HashMap<>();
-    private final Map<Long, Stack<Command>> redoStackMap = new HashMap<>();
+    private final int maxDepth;
+    private final long maxBytes;
+    private final long coalesceWindowMs;
+    private final long idleTimeoutMs;
+    private final int maxLogOperations;
     
-    public void executeCommand(Document document, Command command) {
-        Long documentId = document.getId();
-        
-        // Initialize stacks if they don't exist for this document
-        undoStackMap.computeIfAbsent(documentId, k -> new Stack<>());
-        redoStackMap.computeIfAbsent(documentId, k -> new Stack<>());
-        
-        // Execute the command
-        command.execute();
-        
-        // Add to undo stack
-        undoStackMap.get(documentId).push(command);
-        
-        // Clear redo stack when a new command is executed
-        redoStackMap.get(documentId).clear();
+    // Histories of the users editing each document
+    private final Map<Long, DocumentHistory> histories = new ConcurrentHashMap<>();
+    
+    @Autowired
+    public DocumentEditor(
+            @Value("${editor.undo.max-depth:200}") int maxDepth,
+            @Value("${editor.undo.max-bytes:262144}") long maxBytes,
+            @Value("${editor.undo.coalesce-window-ms:1000}") long coalesceWindowMs,
+            @Value("${editor.undo.idle-timeout-ms:1800000}") long idleTimeoutMs,
+            @Value("${editor.undo.max-log-operations:10000}") int maxLogOperations) {
+        this.maxDepth = maxDepth;
+        this.maxBytes = maxBytes;
+        this.coalesceWindowMs = coalesceWindowMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.maxLogOperations = maxLogOperations;
+    }
+    
+    /**
+     * Record the operations an edit of a user applied, so the user can undo them.
+     * Deletes must carry the text they removed.
+     */
+    public void recordEdit(Long documentId, Long userId, List<DocumentEditMessage> applied) {
+        DocumentHistory document = histories.computeIfAbsent(documentId, id -> new DocumentHistory());
+        synchronized (document) {
+            History history = document.users.computeIfAbsent(userId, id -> new History());
+            Command command = commandFor(applied);
+            
+            // Coalesce before logging the edit: it was made in the coordinates of the log's end
+            if (history.coalescing && command != null
+                    && System.currentTimeMillis() - history.lastAccess < coalesceWindowMs
+                    && document.settle(history, history.undo)) {
+                Command combined = history.undo.peekLast().command().coalesce(command);
+                if (combined != null) {
+                    history.bytes -= history.undo.removeLast().command().estimatedBytes();
+                    command = combined;
+                }
+            }
+            
+            // A new edit invalidates everything the user could redo
+            history.bytes -= history.redo.stream().mapToLong(entry -> entry.command().estimatedBytes()).sum();
+            history.redo.clear();
+            document.log.addAll(applied);
+            if (command != null) {
+                history.push(history.undo, new Entry(command, document.end()));
+            }
+            history.touch(true);
+            if (document.log.size() > maxLogOperations) {
+                document.trim(maxLogOperations);
+            }
+        }
+    }
+    
+    public boolean canUndo(Long documentId, Long userId) {
+        return hasCommands(documentId, userId, true);
+    }
+    
+    public boolean canRedo(Long documentId, Long userId) {
+        return hasCommands(documentId, userId, false);
+    }
+    
+    /**
+     * Undo the newest command of a user.
+     *
+     * @param apply Applies operations to the document and returns the operations actually applied
+     * @return The applied operations, empty if the user has nothing to undo
+     */
+    public List<DocumentEditMessage> undo(Long documentId, Long userId, UnaryOperator<List<DocumentEditMessage>> apply) {
+        return revert(documentId, userId, apply, true);
+    }
+    
+    /**
+     * Redo the newest command a user undid.
+     *
+     * @param apply Applies operations to the document and returns the operations actually applied
+     * @return The applied operations, empty if the user has nothing to redo
+     */
+    public List<DocumentEditMessage> redo(Long documentId, Long userId, UnaryOperator<List<DocumentEditMessage>> apply) {
+        return revert(documentId, userId, apply, false);
+    }
+    
+    public void clearHistory(Long documentId) {
+        histories.remove(documentId);
     }
     
-    public boolean canUndo(Long documentId) {
-        return undoStackMap.containsKey(documentId) && !undoStackMap.get(documentId).isEmpty();
+    @Scheduled(fixedDelayString = "${editor.undo.sweep-interval-ms:60000}")
+    public void evictIdle() {
+        long idleSince = System.currentTimeMillis() - idleTimeoutMs;
+        histories.values().removeIf(document -> {
+            synchronized (document) {
+                document.users.values().removeIf(history -> history.lastAccess < idleSince);
+                document.trim(maxLogOperations);
+                return document.users.isEmpty();
+            }
+        });
     }
     
-    public boolean canRedo(Long documentId) {
-        return redoStackMap.containsKey(documentId) && !redoStackMap.get(documentId).isEmpty();
+    private boolean hasCommands(Long documentId, Long userId, boolean undo) {
+        DocumentHistory document = histories.get(documentId);
+        if (document == null) {
+            return false;
+        }
+        synchronized (document) {
+            History history = document.users.get(userId);
+            return history != null && document.settle(history, undo ? history.undo : history.redo);
+        }
     }
     
-    public void undo(Long documentId) {
-        if (canUndo(documentId)) {
-            Command command = undoStackMap.get(documentId).pop();
-            command.undo();
-            redoStackMap.get(documentId).push(command);
+    private List<DocumentEditMessage> revert(Long documentId, Long userId,
+            UnaryOperator<List<DocumentEditMessage>> apply, boolean undo) {
+        DocumentHistory document = histories.get(documentId);
+        if (document == null) {
+            return List.of();
+        }
+        synchronized (document) {
+            History history = document.users.get(userId);
+            Deque<Entry> from = history != null ? (undo ? history.undo : history.redo) : null;
+            if (from == null || !document.settle(history, from)) {
+                return List.of();
+            }
+            Entry entry = from.removeLast();
+            history.bytes -= entry.command().estimatedBytes();
+            List<DocumentEditMessage> applied;
+            try {
+                applied = apply.apply(entry.command().undoOperations());
+            } catch (RuntimeException e) {
+                history.push(from, entry);
+                throw e;
+            }
+            
+            // What was just applied is itself a command that can be reverted the other way
+            document.log.addAll(applied);
+            Command inverse = commandFor(applied);
+            if (inverse != null) {
+                history.push(undo ? history.redo : history.undo, new Entry(inverse, document.end()));
+            }
+            history.touch(false);
+            if (document.log.size() > maxLogOperations) {
+                document.trim(maxLogOperations);
+            }
+            return applied;
         }
     }
     
-    public void redo(Long documentId) {
-        if (canRedo(documentId)) {
-            Command command = redoStackMap.get(documentId).pop();
-            command.execute();
-            undoStackMap.get(documentId).push(command);
+    // The command undoing a list of applied operations, null if they cannot be undone
+    private static Command commandFor(List<DocumentEditMessage> applied) {
+        List<Command> commands = new ArrayList<>(applied.size());
+        for (DocumentEditMessage op : applied) {
+            if (OperationTransformer.INSERT.equals(op.getOperation())) {
+                if (op.getText() != null && !op.getText().isEmpty()) {
+                    commands.add(new InsertTextCommand(op.getPosition(), op.getText()));
+                }
+            } else if (OperationTransformer.DELETE.equals(op.getOperation())) {
+                if (op.getText() != null && !op.getText().isEmpty()) {
+                    commands.add(new DeleteTextCommand(op.getPosition(), op.getText()));
+                }
+            } else {
+                // Replacing the whole content is not undone piece by piece
+                return null;
+            }
         }
+        if (commands.isEmpty()) {
+            return null;
+        }
+        return commands.size() == 1 ? commands.get(0) : new MacroCommand(commands);
     }
     
-    public void clearHistory(Long documentId) {
-        if (undoStackMap.containsKey(documentId)) {
-            undoStackMap.get(documentId).clear();
+    // A command and the number of document operations logged when it was last rebased
+    private record Entry(Command command, long sequence) {
+    }
+    
+    private static class DocumentHistory {
+        private final Map<Long, History> users = new HashMap<>();
+        // Operations applied to the document, by anyone; the first is operation number start
+        private final List<DocumentEditMessage> log = new ArrayList<>();
+        private long start;
+        
+        long end() {
+            return start + log.size();
+        }
+        
+        /**
+         * Rebase the newest command of a deque onto every operation logged after it, dropping
+         * commands nothing is left of.
+         *
+         * @return Whether a command is left
+         */
+        boolean settle(History history, Deque<Entry> commands) {
+            while (!commands.isEmpty()) {
+                Entry entry = commands.peekLast();
+                Command command = entry.command();
+                for (long i = entry.sequence(); i < end() && command != null; i++) {
+                    command = command.transform(log.get((int) (i - start)));
+                }
+                commands.removeLast();
+                history.bytes -= entry.command().estimatedBytes();
+                if (command != null) {
+                    commands.addLast(new Entry(command, end()));
+                    history.bytes += command.estimatedBytes();
+                    return true;
+                }
+            }
+            return false;
         }
-        if (redoStackMap.containsKey(documentId)) {
-            redoStackMap.get(documentId).clear();
+        
+        // Drops operations no command needs; past the limit, the oldest commands go with them
+        void trim(int maxOperations) {
+            long keepFrom = log.size() > maxOperations ? end() - maxOperations / 2 : start;
+            long oldest = end();
+            for (History history : users.values()) {
+                oldest = Math.min(oldest, history.dropBefore(history.undo, keepFrom));
+                oldest = Math.min(oldest, history.dropBefore(history.redo, keepFrom));
+            }
+            log.subList(0, (int) (oldest - start)).clear();
+            start = oldest;
+        }
+    }
+    
+    private class History {
+        private final Deque<Entry> undo = new ArrayDeque<>();
+        private final Deque<Entry> redo = new ArrayDeque<>();
+        private long bytes;
+        private volatile long lastAccess = System.currentTimeMillis();
+        // Whether the newest undo entry may still absorb the next command
+        private boolean coalescing;
+        
+        void push(Deque<Entry> commands, Entry entry) {
+            commands.addLast(entry);
+            bytes += entry.command().estimatedBytes();
+            
+            // Oldest commands go first
+            while (commands.size() > 1 && (commands.size() > maxDepth || bytes > maxBytes)) {
+                bytes -= commands.removeFirst().command().estimatedBytes();
+            }
+        }
+        
+        // Drops commands rebased before an operation, returning the oldest operation the rest need
+        long dropBefore(Deque<Entry> commands, long sequence) {
+            long oldest = Long.MAX_VALUE;
+            for (Iterator<Entry> it = commands.iterator(); it.hasNext();) {
+                Entry entry = it.next();
+                if (entry.sequence() < sequence) {
+                    bytes -= entry.command().estimatedBytes();
+                    it.remove();
+                } else {
+                    oldest = Math.min(oldest, entry.sequence());
+                }
+            }
+            return oldest;
+        }
+        
+        void touch(boolean coalescing) {
+            this.coalescing = coalescing;
+            lastAccess = System.currentTimeMillis();
         }
     }
-}
\ No newline at end of file
+}
@@ -1,28 +1,94 @@
 package com.markdowncollab.pattern.command;
 
+import java.util.List;
+import com.markdowncollab.collaboration.ot.OperationTransformer;
+import com.markdowncollab.dto.DocumentEditMessage;
 import com.markdowncollab.model.Document;
 
 /**
  * Concrete Command implementation for inserting text into a document.
  */
 public class InsertTextCommand implements Command {
-    private final Document document;
     private final int position;
     private final String text;
     
-    public InsertTextCommand(Document document, int position, String text) {
-        this.document = document;
+    public InsertTextCommand(int position, String text) {
         this.position = position;
         this.text = text;
     }
     
     @Override
-    public void execute() {
+    public void execute(Document document) {
         document.insertText(position, text);
     }
     
     @Override
-    public void undo() {
+    public void undo(Document document) {
         document.deleteText(position, text.length());
     }
-}
\ No newline at end of file
+    
+    @Override
+    public List<DocumentEditMessage> undoOperations() {
+        DocumentEditMessage delete = new DocumentEditMessage();
+        delete.setOperation(OperationTransformer.DELETE);
+        delete.setPosition(position);
+        delete.setLength(text.length());
+        return List.of(delete);
+    }
+    
+    @Override
+    public Command transform(DocumentEditMessage applied) {
+        int end = position + text.length();
+        int at = applied.getPosition();
+        if (OperationTransformer.INSERT.equals(applied.getOperation())) {
+            int inserted = applied.getText() != null ? applied.getText().length() : 0;
+            if (at <= position) {
+                return new InsertTextCommand(position + inserted, text);
+            }
+            if (at >= end) {
+                return this;
+            }
+            // Someone typed into the middle of the text: undo removes both halves around it
+            int split = at - position;
+            return new MacroCommand(List.of(
+                    new InsertTextCommand(position, text.substring(0, split)),
+                    new InsertTextCommand(at + inserted, text.substring(split))));
+        }
+        if (OperationTransformer.DELETE.equals(applied.getOperation())) {
+            int deleteEnd = at + applied.getLength();
+            if (deleteEnd <= position) {
+                return new InsertTextCommand(position - applied.getLength(), text);
+            }
+            if (at >= end) {
+                return this;
+            }
+            // Only what survived the delete is left to undo
+            String left = text.substring(0, Math.max(0, at - position));
+            String right = text.substring(Math.min(text.length(), deleteEnd - position));
+            String remaining = left + right;
+            return remaining.isEmpty() ? null : new InsertTextCommand(Math.min(position, at), remaining);
+        }
+        // Replaced content has nothing left of this command
+        return null;
+    }
+    
+    @Override
+    public long estimatedBytes() {
+        return 32 + 2L * text.length();
+    }
+    
+    // Typing one character after another becomes one command per word
+    @Override
+    public Command coalesce(Command next) {
+        if (!(next instanceof InsertTextCommand insert) || insert.text.length() != 1
+                || insert.position != position + text.length() || text.isEmpty()) {
+            return null;
+        }
+        char last = text.charAt(text.length() - 1);
+        char typed = insert.text.charAt(0);
+        if (typed == '\n' || (Character.isWhitespace(last) && !Character.isWhitespace(typed))) {
+            return null;
+        }
+        return new InsertTextCommand(position, text + insert.text);
+    }
+}
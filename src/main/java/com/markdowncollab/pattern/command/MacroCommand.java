@@ -0,0 +1,65 @@
+package com.markdowncollab.pattern.command;
+
+import java.util.ArrayList;
+import java.util.List;
+import com.markdowncollab.dto.DocumentEditMessage;
+import com.markdowncollab.model.Document;
+
+/**
+ * Composite command executing its commands in order and undoing them in reverse.
+ * Used for edits that applied as several disjoint pieces, such as a delete split
+ * around text someone else inserted.
+ */
+public class MacroCommand implements Command {
+    private final List<Command> commands;
+    
+    public MacroCommand(List<Command> commands) {
+        this.commands = List.copyOf(commands);
+    }
+    
+    @Override
+    public void execute(Document document) {
+        commands.forEach(command -> command.execute(document));
+    }
+    
+    @Override
+    public void undo(Document document) {
+        for (int i = commands.size() - 1; i >= 0; i--) {
+            commands.get(i).undo(document);
+        }
+    }
+    
+    @Override
+    public List<DocumentEditMessage> undoOperations() {
+        List<DocumentEditMessage> operations = new ArrayList<>();
+        for (int i = commands.size() - 1; i >= 0; i--) {
+            operations.addAll(commands.get(i).undoOperations());
+        }
+        return operations;
+    }
+    
+    @Override
+    public Command transform(DocumentEditMessage applied) {
+        // The pieces are disjoint, so each is rebased on its own
+        List<Command> transformed = new ArrayList<>(commands.size());
+        for (Command command : commands) {
+            Command rebased = command.transform(applied);
+            if (rebased != null) {
+                transformed.add(rebased);
+            }
+        }
+        if (transformed.isEmpty()) {
+            return null;
+        }
+        return transformed.size() == 1 ? transformed.get(0) : new MacroCommand(transformed);
+    }
+    
+    @Override
+    public long estimatedBytes() {
+        long bytes = 16;
+        for (Command command : commands) {
+            bytes += command.estimatedBytes();
+        }
+        return bytes;
+    }
+}
@@ -1,5 +1,7 @@
 package com.markdowncollab.pattern.factory;
 
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
 import java.rmi.server.ExportException;
 import com.markdowncollab.model.Document;
 
@@ -7,6 +9,15 @@ import com.markdowncollab.model.Document;
  * Interface for document exporters (Factory Pattern product).
  */
 public interface DocumentExporter {
+    /**
+     * Export a document to a specific format, writing it to a stream as it is produced
+     * 
+     * @param document The document to export
+     * @param outputStream Receives the exported document; left open
+     * @throws ExportException If export fails
+     */
+    void export(Document document, OutputStream outputStream) throws ExportException;
+    
     /**
      * Export a document to a specific format
      * 
@@ -14,7 +25,11 @@ public interface DocumentExporter {
      * @return The exported document as a byte array
      * @throws ExportException If export fails
      */
-    byte[] export(Document document) throws ExportException;
+    default byte[] export(Document document) throws ExportException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        export(document, outputStream);
+        return outputStream.toByteArray();
+    }
     
     /**
      * Get the content type of the exported document
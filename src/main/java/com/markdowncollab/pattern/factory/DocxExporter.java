@@ -1,7 +1,7 @@
 package com.markdowncollab.pattern.factory;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.rmi.server.ExportException;
 import com.markdowncollab.model.Document;
 import org.apache.poi.xwpf.usermodel.XWPFDocument;
@@ -13,7 +13,7 @@ import org.apache.poi.xwpf.usermodel.XWPFRun;
  */
 public class DocxExporter implements DocumentExporter {
     @Override
-    public byte[] export(Document document) throws ExportException {
+    public void export(Document document, OutputStream outputStream) throws ExportException {
         try (XWPFDocument docx = new XWPFDocument()) {
             // Add title
             XWPFParagraph titleParagraph = docx.createParagraph();
@@ -29,10 +29,8 @@ public class DocxExporter implements DocumentExporter {
             XWPFRun contentRun = contentParagraph.createRun();
             contentRun.setText(document.getContent());
             
-            // Write to byte array
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            docx.write(out);
-            return out.toByteArray();
+            // Write to the stream; the document model itself stays in memory until then
+            docx.write(outputStream);
         } catch (IOException e) {
             throw new ExportException("Failed to export document to DOCX", e);
         }
@@ -1,5 +1,9 @@
 package com.markdowncollab.pattern.factory;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.rmi.server.ExportException;
 import com.markdowncollab.model.Document;
@@ -10,15 +14,12 @@ import com.markdowncollab.pattern.strategy.CommonMarkRenderer;
  */
 public class HTMLExporter implements DocumentExporter {
     @Override
-    public byte[] export(Document document) throws ExportException {
+    public void export(Document document, OutputStream outputStream) throws ExportException {
         try {
-            // Convert Markdown to HTML
-            String html = new CommonMarkRenderer().render(document.getContent());
-            
-            // Wrap in proper HTML structure
-            html = wrapHtml(html, document.getTitle());
-            
-            return html.getBytes(StandardCharsets.UTF_8);
+            // Convert Markdown to HTML, written inside the page structure as it is rendered
+            Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+            writeHtml(writer, document);
+            writer.flush();
         } catch (Exception e) {
             throw new ExportException("Failed to export document to HTML", e);
         }
@@ -34,7 +35,15 @@ public class HTMLExporter implements DocumentExporter {
         return "html";
     }
     
-    private String wrapHtml(String content, String title) {
+    private void writeHtml(Writer writer, Document document) throws IOException {
+        String content = document.getContent();
+        writer.write(htmlHead(document.getTitle()));
+        new CommonMarkRenderer().render(content != null ? content : "", writer);
+        writer.write("</body>\n" +
+                "</html>");
+    }
+    
+    private String htmlHead(String title) {
         return "<!DOCTYPE html>\n" +
                 "<html>\n" +
                 "<head>\n" +
@@ -49,9 +58,6 @@ public class HTMLExporter implements DocumentExporter {
                 "        img { max-width: 100%; }\n" +
                 "    </style>\n" +
                 "</head>\n" +
-                "<body>\n" +
-                content +
-                "</body>\n" +
-                "</html>";
+                "<body>\n";
     }
 }
\ No newline at end of file
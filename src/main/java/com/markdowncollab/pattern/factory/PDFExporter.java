@@ -1,32 +1,66 @@
 package com.markdowncollab.pattern.factory;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.rmi.server.ExportException;
+import java.util.ArrayList;
+import java.util.List;
 import com.markdowncollab.model.Document;
 import com.markdowncollab.pattern.strategy.CommonMarkRenderer;
+import org.springframework.util.StreamUtils;
 import org.xhtmlrenderer.pdf.ITextRenderer;
+import org.xhtmlrenderer.resource.XMLResource;
 
 /**
  * Concrete product implementation for exporting documents to PDF format.
+ * PDF rendering reuses font resolvers from a pool shared by the whole JVM, see {@link PdfRendererPool}.
  */
 public class PDFExporter implements DocumentExporter {
+    // Thread-safe, so one instance serves every export
+    private static final CommonMarkRenderer MARKDOWN_RENDERER = new CommonMarkRenderer();
+    
+    private static final String HEAD_START = "<!DOCTYPE html>\n" +
+            "<html>\n" +
+            "<head>\n" +
+            "    <meta charset=\"UTF-8\" />\n" +
+            "    <title>";
+    private static final String HEAD_END = "</title>\n" +
+            "    <style>\n" +
+            "        body { font-family: Arial, sans-serif; margin: 2cm; }\n" +
+            "        pre { background-color: #f0f0f0; padding: 10px; border-radius: 5px; overflow: auto; }\n" +
+            "        code { font-family: monospace; }\n" +
+            "        h1, h2, h3, h4, h5, h6 { color: #333; }\n" +
+            "        a { color: #0066cc; }\n" +
+            "        img { max-width: 100%; height: auto; }\n" +
+            "    </style>\n" +
+            "</head>\n" +
+            "<body>\n";
+    
+    // Uses the common elements and styles, so a warm-up loads everything most exports need
+    private static final String WARM_UP_CONTENT = "# Warm-up\n\n" +
+            "Some *emphasis*, **strong** text, `code` and a [link](https://example.com).\n\n" +
+            "- A list\n- of items\n\n" +
+            "```\ncode block\n```\n";
+    
     @Override
-    public byte[] export(Document document) throws ExportException {
+    public void export(Document document, OutputStream outputStream) throws ExportException {
         try {
-            // Convert Markdown to HTML
-            String html = new CommonMarkRenderer().render(document.getContent());
-            
-            // Wrap in proper HTML structure
-            html = wrapHtml(html, document.getTitle());
+            // Convert Markdown to HTML, encoded straight into the page structure as it is rendered
+            ByteArrayOutputStream htmlStream = new ByteArrayOutputStream();
+            try (Writer writer = new OutputStreamWriter(htmlStream, StandardCharsets.UTF_8)) {
+                writeHtml(writer, document);
+            }
             
-            // Convert HTML to PDF
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            ITextRenderer renderer = new ITextRenderer();
-            renderer.setDocumentFromString(html);
-            renderer.layout();
-            renderer.createPDF(outputStream);
-            
-            return outputStream.toByteArray();
+            // Convert HTML to PDF; the layout needs the whole page, but the PDF is written out as it is
+            // produced. Finishing the PDF closes the stream it is written to, which is not ours to close
+            ITextRenderer renderer = PdfRendererPool.acquire();
+            renderPdf(renderer, htmlStream.toByteArray(), outputStream);
+            PdfRendererPool.release(renderer);
         } catch (Exception e) {
             // Log the full stack trace for debugging
             System.err.println("PDF Export Error: " + e.getMessage());
@@ -46,28 +80,62 @@ public class PDFExporter implements DocumentExporter {
         return "pdf";
     }
     
-    private String wrapHtml(String content, String title) {
+    /**
+     * Create pooled font resolvers ahead of the first exports and render a short document with
+     * each, so fonts, the default stylesheet and the XML parser are loaded before they are needed.
+     * The pool is static, so this sizes it for every PDF export in the JVM, including those of
+     * other application contexts; the last call wins.
+     *
+     * @param renderers The number of font resolvers to create and keep idle at most
+     */
+    public static void warmUp(int renderers) throws ExportException {
+        PdfRendererPool.setMaxIdle(renderers);
+        Document document = new Document();
+        document.setTitle("Warm-up");
+        document.setContent(WARM_UP_CONTENT);
+        try {
+            ByteArrayOutputStream htmlStream = new ByteArrayOutputStream();
+            try (Writer writer = new OutputStreamWriter(htmlStream, StandardCharsets.UTF_8)) {
+                new PDFExporter().writeHtml(writer, document);
+            }
+            byte[] html = htmlStream.toByteArray();
+            
+            // All taken from the pool before any is returned, so each one is warmed up
+            List<ITextRenderer> warmed = new ArrayList<>();
+            for (int i = 0; i < renderers; i++) {
+                warmed.add(PdfRendererPool.acquire());
+            }
+            for (ITextRenderer renderer : warmed) {
+                renderPdf(renderer, html, OutputStream.nullOutputStream());
+            }
+            for (ITextRenderer renderer : warmed) {
+                PdfRendererPool.release(renderer);
+            }
+        } catch (Exception e) {
+            throw new ExportException("Failed to warm up PDF export: " + e.getMessage(), e);
+        }
+    }
+    
+    // Package-private so tests can render with a given renderer
+    static void renderPdf(ITextRenderer renderer, byte[] html, OutputStream outputStream) throws Exception {
+        renderer.setDocument(XMLResource.load(new ByteArrayInputStream(html)).getDocument(), null);
+        renderer.layout();
+        renderer.createPDF(StreamUtils.nonClosing(outputStream));
+    }
+    
+    private void writeHtml(Writer writer, Document document) throws IOException {
+        String content = document.getContent();
+        writer.write(htmlHead(document.getTitle()));
+        MARKDOWN_RENDERER.render(content != null ? content : "", writer);
+        writer.write("</body>\n" +
+                "</html>");
+    }
+    
+    private String htmlHead(String title) {
         // Escape special characters in the title
         String safeTitle = escapeHtml(title != null ? title : "Untitled Document");
         
-        return "<!DOCTYPE html>\n" +
-                "<html>\n" +
-                "<head>\n" +
-                "    <meta charset=\"UTF-8\" />\n" +
-                "    <title>" + safeTitle + "</title>\n" +
-                "    <style>\n" +
-                "        body { font-family: Arial, sans-serif; margin: 2cm; }\n" +
-                "        pre { background-color: #f0f0f0; padding: 10px; border-radius: 5px; overflow: auto; }\n" +
-                "        code { font-family: monospace; }\n" +
-                "        h1, h2, h3, h4, h5, h6 { color: #333; }\n" +
-                "        a { color: #0066cc; }\n" +
-                "        img { max-width: 100%; height: auto; }\n" +
-                "    </style>\n" +
-                "</head>\n" +
-                "<body>\n" +
-                content +
-                "</body>\n" +
-                "</html>";
+        return HEAD_START + safeTitle + HEAD_END;
     }
     
     // Helper method to escape HTML special characters
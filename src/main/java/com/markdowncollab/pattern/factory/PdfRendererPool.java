@@ -0,0 +1,56 @@
+package com.markdowncollab.pattern.factory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import org.xhtmlrenderer.pdf.ITextFontResolver;
+import org.xhtmlrenderer.pdf.ITextRenderer;
+
+/**
+ * PDF renderers built on pooled font resolvers. Creating an ITextFontResolver loads the metrics
+ * of the built-in PDF fonts, and it caches every font it resolves; a pooled resolver keeps both,
+ * so an export only sets up a renderer and parses and lays out its document. The renderers
+ * themselves are not reused: a renderer keeps the metadata of each document it rendered and
+ * writes it into the next ones. Resolvers are not thread-safe and serve one export at a time;
+ * when all are busy a new one is created.
+ * <p>
+ * The pool is static and JVM-wide, like the exporters, which {@link DocumentExporterFactory}
+ * creates outside of Spring. Its size is set from export.pdf.renderers at startup, so
+ * application contexts in one JVM, such as those of tests, share the pool and its size.
+ */
+final class PdfRendererPool {
+    // Most recently used first, so a few resolvers stay warm under light load; guarded by itself
+    private static final Deque<ITextFontResolver> idle = new ArrayDeque<>();
+    private static volatile int maxIdle = Runtime.getRuntime().availableProcessors();
+    
+    private PdfRendererPool() {
+    }
+    
+    static ITextRenderer acquire() {
+        ITextFontResolver fontResolver;
+        synchronized (idle) {
+            fontResolver = idle.pollFirst();
+        }
+        return new ITextRenderer(fontResolver != null ? fontResolver : new ITextFontResolver());
+    }
+    
+    /**
+     * Return the font resolver of a renderer after a successful export. Those of failed exports
+     * are not returned, as their state is unknown.
+     */
+    static void release(ITextRenderer renderer) {
+        synchronized (idle) {
+            if (idle.size() < maxIdle) {
+                idle.addFirst(renderer.getFontResolver());
+            }
+        }
+    }
+    
+    static void setMaxIdle(int renderers) {
+        maxIdle = renderers;
+        synchronized (idle) {
+            while (idle.size() > renderers) {
+                idle.pollLast();
+            }
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.markdowncollab.pattern.strategy;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+/**
+ * Strategy that routes each render to whichever of CommonMark and Flexmark is faster for
+ * documents like it. Documents are classified by size and by what most of their lines are
+ * (prose, tables, code or lists). For each class both engines first render the same samples,
+ * which are timed and compared; Flexmark is only used for a class once its HTML matched the
+ * CommonMark reference on every sample, up to whitespace between tags outside preformatted text
+ * and the differences in {@link #ALLOWED_DIFFERENCES}. A class is sampled again now and then to
+ * follow changes in timing, and a single mismatch pins it to CommonMark for good.
+ * <p>
+ * The comparison is sampled: between samples a document is rendered by one engine only, so a
+ * document whose Flexmark HTML differs can be shown that way until a sample of its class catches
+ * the difference.
+ */
+@Component
+@Primary
+public class AdaptiveRenderer implements MarkdownRenderStrategy {
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveRenderer.class);
+    
+    // Markup differences between the engines that do not change what is displayed
+    private static final List<Map.Entry<Pattern, String>> ALLOWED_DIFFERENCES = List.of(
+            Map.entry(Pattern.compile("\\s*/>"), ">"),
+            Map.entry(Pattern.compile("&quot;"), "\""),
+            Map.entry(Pattern.compile("&#(39|x27);"), "'"),
+            Map.entry(Pattern.compile("\\s+\\z"), ""));
+    // Whitespace between tags, which is only insignificant outside preformatted text
+    private static final Pattern BETWEEN_TAGS = Pattern.compile(">\\s+<");
+    private static final Pattern PREFORMATTED = Pattern.compile("<(pre|code)[\\s>].*?</\\1>",
+            Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
+    
+    // Weight of the newest timing in the moving averages
+    private static final double SMOOTHING = 0.2;
+    
+    private final MarkdownRenderStrategy reference;
+    private final MarkdownRenderStrategy alternative;
+    private final int samples;
+    private final int resampleInterval;
+    
+    private final Map<ContentClass, ClassStats> stats = new ConcurrentHashMap<>();
+    
+    @Autowired
+    public AdaptiveRenderer(
+            CommonMarkRenderer commonMarkRenderer,
+            FlexmarkRenderer flexmarkRenderer,
+            @Value("${markdown.adaptive.samples:5}") int samples,
+            @Value("${markdown.adaptive.resample-interval:500}") int resampleInterval) {
+        this((MarkdownRenderStrategy) commonMarkRenderer, flexmarkRenderer, samples, resampleInterval);
+    }
+    
+    AdaptiveRenderer(MarkdownRenderStrategy reference, MarkdownRenderStrategy alternative,
+            int samples, int resampleInterval) {
+        this.reference = reference;
+        this.alternative = alternative;
+        this.samples = samples;
+        this.resampleInterval = resampleInterval;
+    }
+    
+    @Override
+    public String render(String markdownContent) {
+        ContentClass contentClass = ContentClass.of(markdownContent);
+        ClassStats classStats = stats.computeIfAbsent(contentClass, key -> new ClassStats());
+        if (classStats.nextIsSample()) {
+            return sample(contentClass, classStats, markdownContent);
+        }
+        
+        boolean useAlternative = classStats.prefersAlternative();
+        long start = System.nanoTime();
+        String html = (useAlternative ? alternative : reference).render(markdownContent);
+        classStats.record(useAlternative, System.nanoTime() - start, markdownContent.length());
+        return html;
+    }
+    
+    @Override
+    public void render(String markdownContent, Appendable html) throws IOException {
+        ContentClass contentClass = ContentClass.of(markdownContent);
+        ClassStats classStats = stats.computeIfAbsent(contentClass, key -> new ClassStats());
+        if (classStats.nextIsSample()) {
+            html.append(sample(contentClass, classStats, markdownContent));
+            return;
+        }
+        
+        boolean useAlternative = classStats.prefersAlternative();
+        long start = System.nanoTime();
+        (useAlternative ? alternative : reference).render(markdownContent, html);
+        classStats.record(useAlternative, System.nanoTime() - start, markdownContent.length());
+    }
+    
+    public String getStatistics() {
+        StringBuilder statistics = new StringBuilder();
+        stats.forEach((contentClass, classStats) -> statistics.append(contentClass).append(": ")
+                .append(classStats).append('\n'));
+        return statistics.toString();
+    }
+    
+    // Renders with both engines, returning the reference HTML
+    private String sample(ContentClass contentClass, ClassStats classStats, String markdownContent) {
+        // Alternate the order so neither engine always runs with the content freshly in cache
+        boolean referenceFirst = classStats.sampleCount() % 2 == 0;
+        String expected = null;
+        String actual = null;
+        long referenceNanos = 0;
+        long alternativeNanos = 0;
+        for (int run = 0; run < 2; run++) {
+            long start = System.nanoTime();
+            if ((run == 0) == referenceFirst) {
+                expected = reference.render(markdownContent);
+                referenceNanos = System.nanoTime() - start;
+            } else {
+                try {
+                    actual = alternative.render(markdownContent);
+                } catch (RuntimeException e) {
+                    logger.warn("Flexmark failed to render a sample", e);
+                }
+                alternativeNanos = System.nanoTime() - start;
+            }
+        }
+        
+        boolean equivalent = actual != null && normalize(expected).equals(normalize(actual));
+        if (!equivalent && classStats.equivalent) {
+            logger.info("Flexmark HTML differs from CommonMark for {} documents; rendering them with CommonMark",
+                    contentClass);
+        }
+        classStats.sampled(referenceNanos, alternativeNanos, markdownContent.length(), equivalent);
+        return expected;
+    }
+    
+    private static String normalize(String html) {
+        List<int[]> preformatted = new ArrayList<>();
+        Matcher element = PREFORMATTED.matcher(html);
+        while (element.find()) {
+            preformatted.add(new int[] { element.start(), element.end() });
+        }
+        
+        StringBuilder collapsed = new StringBuilder(html.length());
+        Matcher whitespace = BETWEEN_TAGS.matcher(html);
+        int range = 0;
+        while (whitespace.find()) {
+            while (range < preformatted.size() && preformatted.get(range)[1] < whitespace.end()) {
+                range++;
+            }
+            boolean inside = range < preformatted.size() && preformatted.get(range)[0] <= whitespace.start();
+            whitespace.appendReplacement(collapsed, inside ? Matcher.quoteReplacement(whitespace.group()) : "><");
+        }
+        whitespace.appendTail(collapsed);
+        
+        html = collapsed.toString();
+        for (Map.Entry<Pattern, String> difference : ALLOWED_DIFFERENCES) {
+            html = difference.getKey().matcher(html).replaceAll(difference.getValue());
+        }
+        return html;
+    }
+    
+    enum Shape { PROSE, TABLES, CODE, LISTS }
+    
+    /**
+     * Documents expected to render alike: the same size within a factor of four and the same
+     * kind of line making up much of the text.
+     */
+    record ContentClass(int sizeBucket, Shape shape) {
+        static ContentClass of(String content) {
+            int lines = 0;
+            int tableLines = 0;
+            int codeLines = 0;
+            int listLines = 0;
+            boolean inFence = false;
+            int lineStart = 0;
+            while (lineStart <= content.length()) {
+                int lineEnd = content.indexOf('\n', lineStart);
+                if (lineEnd < 0) {
+                    lineEnd = content.length();
+                }
+                int first = lineStart;
+                while (first < lineEnd && first - lineStart < 4 && content.charAt(first) == ' ') {
+                    first++;
+                }
+                if (first < lineEnd) {
+                    lines++;
+                    char c = content.charAt(first);
+                    boolean fence = content.startsWith("```", first) || content.startsWith("~~~", first);
+                    if (fence || inFence || first - lineStart >= 4) {
+                        codeLines++;
+                        inFence ^= fence;
+                    } else if (c == '|') {
+                        tableLines++;
+                    } else if ((c == '-' || c == '*' || c == '+' || Character.isDigit(c))
+                            && first + 1 < lineEnd && (content.charAt(first + 1) == ' ' || content.charAt(first + 1) == '.')) {
+                        listLines++;
+                    }
+                }
+                lineStart = lineEnd + 1;
+            }
+            
+            Shape shape = Shape.PROSE;
+            if (tableLines * 5 >= lines && tableLines > 0) {
+                shape = Shape.TABLES;
+            } else if (codeLines * 3 >= lines && codeLines > 0) {
+                shape = Shape.CODE;
+            } else if (listLines * 3 >= lines && listLines > 0) {
+                shape = Shape.LISTS;
+            }
+            int size = Math.max(content.length(), 1);
+            return new ContentClass((31 - Integer.numberOfLeadingZeros(size)) / 2, shape);
+        }
+        
+        @Override
+        public String toString() {
+            return shape.name().toLowerCase() + " up to " + (1L << (2 * sizeBucket + 2)) + " chars";
+        }
+    }
+    
+    private class ClassStats {
+        private long renders;
+        private int samplesTaken;
+        // Moving averages of nanoseconds per char, NaN until measured
+        private double referenceCost = Double.NaN;
+        private double alternativeCost = Double.NaN;
+        private volatile boolean equivalent = true;
+        
+        synchronized boolean nextIsSample() {
+            renders++;
+            return equivalent && (samplesTaken < samples || renders % resampleInterval == 0);
+        }
+        
+        synchronized int sampleCount() {
+            return samplesTaken;
+        }
+        
+        synchronized boolean prefersAlternative() {
+            return equivalent && samplesTaken >= samples && alternativeCost < referenceCost;
+        }
+        
+        synchronized void sampled(long referenceNanos, long alternativeNanos, int chars, boolean equivalent) {
+            samplesTaken++;
+            this.equivalent &= equivalent;
+            record(false, referenceNanos, chars);
+            record(true, alternativeNanos, chars);
+        }
+        
+        synchronized void record(boolean alternativeEngine, long nanos, int chars) {
+            double cost = (double) nanos / Math.max(chars, 1);
+            if (alternativeEngine) {
+                alternativeCost = Double.isNaN(alternativeCost) ? cost : alternativeCost + SMOOTHING * (cost - alternativeCost);
+            } else {
+                referenceCost = Double.isNaN(referenceCost) ? cost : referenceCost + SMOOTHING * (cost - referenceCost);
+            }
+        }
+        
+        @Override
+        public synchronized String toString() {
+            return String.format("renders=%d, samples=%d, commonmark=%.1f ns/char, flexmark=%.1f ns/char, %s",
+                    renders, samplesTaken, referenceCost, alternativeCost,
+                    !equivalent ? "pinned to commonmark (output differs)" : prefersAlternative() ? "using flexmark" : "using commonmark");
+        }
+    }
+}
@@ -1,28 +1,65 @@
 package com.markdowncollab.pattern.strategy;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import com.markdowncollab.markdown.ParallelMarkdownRender;
 import org.commonmark.node.Node;
 import org.commonmark.parser.Parser;
 import org.commonmark.renderer.html.HtmlRenderer;
-import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Component;
 
 /**
  * Concrete Strategy implementation using the CommonMark library for rendering markdown.
+ * Documents above a size threshold are rendered in chunks of whole blocks on the fork-join
+ * pool; the parser and renderer are thread-safe and the chunks give the same HTML.
  */
 @Component
-@Primary
 public class CommonMarkRenderer implements MarkdownRenderStrategy {
     private final Parser parser;
     private final HtmlRenderer renderer;
     
+    // Documents at least this long are rendered in parallel, in chunks of at least minChunkChars
+    private static final int PARALLEL_THRESHOLD_CHARS = 512 * 1024;
+    private static final int MIN_CHUNK_CHARS = 64 * 1024;
+    private final int parallelThreshold;
+    private final int minChunkChars;
+    
     public CommonMarkRenderer() {
+        this(PARALLEL_THRESHOLD_CHARS, MIN_CHUNK_CHARS);
+    }
+    
+    CommonMarkRenderer(int parallelThreshold, int minChunkChars) {
         parser = Parser.builder().build();
         renderer = HtmlRenderer.builder().build();
+        this.parallelThreshold = parallelThreshold;
+        this.minChunkChars = minChunkChars;
     }
     
     @Override
     public String render(String markdownContent) {
+        if (markdownContent.length() >= parallelThreshold) {
+            return String.join("", renderChunks(markdownContent));
+        }
         Node document = parser.parse(markdownContent);
         return renderer.render(document);
     }
+    
+    @Override
+    public void render(String markdownContent, Appendable html) throws IOException {
+        if (markdownContent.length() >= parallelThreshold) {
+            for (String chunk : renderChunks(markdownContent)) {
+                html.append(chunk);
+            }
+            return;
+        }
+        renderer.render(parser.parse(markdownContent), html);
+    }
+    
+    private List<String> renderChunks(String markdownContent) {
+        // A few chunks per core, so uneven chunks still keep every core busy
+        int chunkChars = Math.max(minChunkChars, markdownContent.length() / (4 * ForkJoinPool.getCommonPoolParallelism()));
+        return ParallelMarkdownRender.render(markdownContent, chunkChars,
+                chunk -> renderer.render(parser.parse(chunk)));
+    }
 }
\ No newline at end of file
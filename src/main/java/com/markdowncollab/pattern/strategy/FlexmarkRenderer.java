@@ -28,4 +28,9 @@ public class FlexmarkRenderer implements MarkdownRenderStrategy {
         Node document = parser.parse(markdownContent);
         return renderer.render(document);
     }
+    
+    @Override
+    public void render(String markdownContent, Appendable html) {
+        renderer.render(parser.parse(markdownContent), html);
+    }
 }
\ No newline at end of file
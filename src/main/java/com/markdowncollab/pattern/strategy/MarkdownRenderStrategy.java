@@ -1,5 +1,7 @@
 package com.markdowncollab.pattern.strategy;
 
+import java.io.IOException;
+
 /**
  * Strategy interface for implementing different markdown rendering strategies.
  */
@@ -11,4 +13,15 @@ public interface MarkdownRenderStrategy {
      * @return The rendered HTML
      */
     String render(String markdownContent);
+    
+    /**
+     * Render markdown content, appending the HTML to the output instead of returning it.
+     * 
+     * @param markdownContent The markdown content to render
+     * @param html The output the rendered HTML is appended to
+     * @throws IOException If writing the HTML fails
+     */
+    default void render(String markdownContent, Appendable html) throws IOException {
+        html.append(render(markdownContent));
+    }
 }
\ No newline at end of file
@@ -1,13 +1,19 @@
 package com.markdowncollab.repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import com.markdowncollab.model.Document;
 import com.markdowncollab.model.User;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 @Repository
 public interface DocumentRepository extends JpaRepository<Document, Long> {
@@ -21,6 +27,38 @@ public interface DocumentRepository extends JpaRepository<Document, Long> {
        "ORDER BY d.updatedAt DESC")
     List<Document> findAllAccessibleByUser(@Param("user") User user);
 
+    // IDs and titles of the documents a user can access, without loading the documents
+    @Query("SELECT d.id AS id, d.title AS title FROM Document d " +
+       "WHERE d.owner = :user OR :user MEMBER OF d.collaborators " +
+       "ORDER BY d.updatedAt DESC")
+    List<DocumentTitle> findTitlesAccessibleByUser(@Param("user") User user);
+    
+    // Which of the given documents a user can access
+    @Query("SELECT d.id FROM Document d " +
+       "WHERE d.id IN :ids AND (d.owner = :user OR :user MEMBER OF d.collaborators)")
+    List<Long> findIdsAccessibleByUser(@Param("ids") Collection<Long> ids, @Param("user") User user);
+
+    // Locks the document row until the transaction ends, so versions of a document are numbered one at a time
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT d FROM Document d WHERE d.id = :id")
+    Optional<Document> lockById(@Param("id") Long id);
+
+    // Writes only the content columns, used by write-behind flushes of live documents
+    @Modifying
+    @Transactional
+    @Query("UPDATE Document d SET d.content = :content, d.journalSequence = :journalSequence, d.updatedAt = :updatedAt WHERE d.id = :id")
+    int updateContent(@Param("id") Long id, @Param("content") String content,
+            @Param("journalSequence") long journalSequence, @Param("updatedAt") LocalDateTime updatedAt);
+    
+    // Raw rows for the compression migration, in ID order
+    @Query(value = "SELECT id, content FROM documents WHERE id > :afterId ORDER BY id LIMIT :limit", nativeQuery = true)
+    List<StoredContent> findStoredContentAfter(@Param("afterId") Long afterId, @Param("limit") int limit);
+    
+    // Rewrites a row compressed, unless its content changed since it was read
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE documents SET content = :compressed WHERE id = :id AND content = :raw", nativeQuery = true)
+    int replaceStoredContent(@Param("id") Long id, @Param("raw") String raw, @Param("compressed") String compressed);
     
     List<Document> findByOwner(User owner);
     List<Document> findByCollaboratorsContaining(User user);
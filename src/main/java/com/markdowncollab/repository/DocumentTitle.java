@@ -0,0 +1,9 @@
+package com.markdowncollab.repository;
+
+/**
+ * ID and title of a document, for listings that do not need its content or collaborators.
+ */
+public interface DocumentTitle {
+    Long getId();
+    String getTitle();
+}
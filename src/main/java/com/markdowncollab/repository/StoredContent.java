@@ -0,0 +1,9 @@
+package com.markdowncollab.repository;
+
+/**
+ * ID and content column of a row exactly as stored, without attribute conversion.
+ */
+public interface StoredContent {
+    Long getId();
+    String getContent();
+}
@@ -1,14 +1,62 @@
 package com.markdowncollab.repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import com.markdowncollab.dto.VersionSummaryDTO;
 import com.markdowncollab.model.Document;
 import com.markdowncollab.model.Version;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 @Repository
 public interface VersionRepository extends JpaRepository<Version, Long> {
     List<Version> findByDocumentOrderByCreatedAtDesc(Document document);
     
     List<Version> findByDocumentIdOrderByCreatedAtDesc(Long documentId);
+    
+    // The document of a version, without loading either entity
+    @Query("SELECT v.document.id FROM Version v WHERE v.id = :id")
+    Optional<Long> findDocumentIdById(@Param("id") Long id);
+    
+    // Newest versions of a document without their content
+    @Query("SELECT new com.markdowncollab.dto.VersionSummaryDTO(v.id, a.id, a.username, v.description, v.createdAt, v.contentLength) " +
+           "FROM Version v LEFT JOIN v.author a WHERE v.document.id = :documentId " +
+           "ORDER BY v.createdAt DESC, v.id DESC")
+    List<VersionSummaryDTO> findSummaries(@Param("documentId") Long documentId, Pageable page);
+    
+    // Versions older than the (createdAt, id) cursor, continuing the order above
+    @Query("SELECT new com.markdowncollab.dto.VersionSummaryDTO(v.id, a.id, a.username, v.description, v.createdAt, v.contentLength) " +
+           "FROM Version v LEFT JOIN v.author a WHERE v.document.id = :documentId " +
+           "AND (v.createdAt < :createdAt OR (v.createdAt = :createdAt AND v.id < :id)) " +
+           "ORDER BY v.createdAt DESC, v.id DESC")
+    List<VersionSummaryDTO> findSummariesBefore(@Param("documentId") Long documentId,
+            @Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Pageable page);
+    
+    // Pairs of document ID and the highest journal sequence of its versions, for edit journal compaction
+    @Query("SELECT v.document.id, MAX(v.journalSequence) FROM Version v " +
+           "WHERE v.document.id IN :documentIds AND v.journalSequence IS NOT NULL GROUP BY v.document.id")
+    List<Object[]> findLatestJournalSequences(@Param("documentIds") Collection<Long> documentIds);
+    
+    // Latest version in the delta chain, the base for the next one
+    Optional<Version> findFirstByDocumentIdAndSequenceNotNullOrderBySequenceDesc(Long documentId);
+    
+    // A keyframe and the deltas after it, in order
+    List<Version> findByDocumentIdAndSequenceBetweenOrderBySequenceAsc(Long documentId, Integer from, Integer to);
+    
+    // Raw rows for the compression migration, in ID order
+    @Query(value = "SELECT id, content FROM document_versions WHERE id > :afterId ORDER BY id LIMIT :limit", nativeQuery = true)
+    List<StoredContent> findStoredContentAfter(@Param("afterId") Long afterId, @Param("limit") int limit);
+    
+    // Versions never change, but the guard keeps the migration safe to run twice concurrently
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE document_versions SET content = :compressed WHERE id = :id AND content = :raw", nativeQuery = true)
+    int replaceStoredContent(@Param("id") Long id, @Param("raw") String raw, @Param("compressed") String compressed);
 }
\ No newline at end of file
@@ -0,0 +1,186 @@
+package com.markdowncollab.service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import com.markdowncollab.model.Document;
+import com.markdowncollab.pattern.factory.DocumentExporterFactory;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Exports many documents as one ZIP. Documents are exported in parallel on a fixed pool shared
+ * by all bulk exports, into the export cache, and each entry is written to the ZIP as soon as
+ * its export completes. Only a bounded number of documents per bulk export are exported ahead
+ * of the ZIP, so memory and open files stay bounded however many documents are included.
+ */
+@Service
+public class BulkExportService {
+    private static final Logger logger = LoggerFactory.getLogger(BulkExportService.class);
+    private static final String ERRORS_ENTRY = "errors.txt";
+    
+    private final DocumentService documentService;
+    private final ExportCacheService exportCacheService;
+    private final int maxInFlight;
+    
+    private final ExecutorService workers;
+    
+    @Autowired
+    public BulkExportService(
+            DocumentService documentService,
+            ExportCacheService exportCacheService,
+            @Value("${export.bulk.workers:4}") int workers,
+            @Value("${export.bulk.max-in-flight:8}") int maxInFlight) {
+        this.documentService = documentService;
+        this.exportCacheService = exportCacheService;
+        this.maxInFlight = maxInFlight;
+        this.workers = Executors.newFixedThreadPool(workers, Thread.ofPlatform().name("bulk-export-", 0).factory());
+    }
+    
+    /**
+     * Choose the documents of a bulk export for the current user. Access and the format are
+     * checked here, while the request can still be answered with an error.
+     *
+     * @return The IDs of the documents to pass to {@link #writeZip}
+     */
+    public List<Long> prepare(Collection<Long> documentIds, String titleQuery, String format) {
+        DocumentExporterFactory.createExporter(format);
+        return documentService.getExportableDocumentIds(documentIds, titleQuery);
+    }
+    
+    /**
+     * Export documents and write them into a ZIP in the order their exports complete.
+     * Documents that fail to export are listed in an errors.txt entry at the end.
+     *
+     * @param outputStream Receives the ZIP; finished but left open
+     */
+    public void writeZip(List<Long> documentIds, String format, OutputStream outputStream) throws IOException {
+        String extension = DocumentExporterFactory.createExporter(format).getFileExtension();
+        Batch batch = new Batch();
+        StringBuilder errors = new StringBuilder();
+        ZipOutputStream zip = new ZipOutputStream(outputStream);
+        int submitted = 0;
+        try {
+            for (int written = 0; written < documentIds.size(); written++) {
+                while (submitted < documentIds.size() && submitted - written < maxInFlight) {
+                    Long documentId = documentIds.get(submitted++);
+                    workers.execute(() -> export(batch, documentId, format));
+                }
+                
+                Entry entry = batch.take();
+                if (entry.artifact() == null) {
+                    errors.append("Document ").append(entry.documentId()).append(": ").append(entry.error()).append('\n');
+                    continue;
+                }
+                try (ExportCacheService.Artifact artifact = entry.artifact()) {
+                    zip.putNextEntry(new ZipEntry(entryName(entry, extension)));
+                    artifact.transferTo(zip);
+                    zip.closeEntry();
+                }
+            }
+            
+            if (!errors.isEmpty()) {
+                zip.putNextEntry(new ZipEntry(ERRORS_ENTRY));
+                zip.write(errors.toString().getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+            zip.finish();
+            logger.info("Bulk export of {} documents in {} format written", documentIds.size(), format);
+        } finally {
+            // Exports not yet written, for instance after the client went away, are dropped
+            batch.abandon();
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+    
+    private void export(Batch batch, Long documentId, String format) {
+        if (batch.isAbandoned()) {
+            return;
+        }
+        Entry entry;
+        try {
+            Document document = documentService.getCheckedExportSnapshot(documentId);
+            entry = new Entry(documentId, document.getTitle(), exportCacheService.export(document, format), null);
+        } catch (Exception e) {
+            logger.warn("Bulk export of document {} failed", documentId, e);
+            entry = new Entry(documentId, null, null, e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+        batch.complete(entry);
+    }
+    
+    // Unique by the ID, readable by the title
+    private static String entryName(Entry entry, String extension) {
+        String title = entry.title() != null ? entry.title().replaceAll("[^\\p{L}\\p{N} ._-]", "_").trim() : "";
+        return (title.isEmpty() ? "document" : title) + "-" + entry.documentId() + "." + extension;
+    }
+    
+    private record Entry(Long documentId, String title, ExportCacheService.Artifact artifact, String error) {
+    }
+    
+    /**
+     * Exports of one ZIP that completed but were not written yet. Once abandoned, exports
+     * still completing close their artifact themselves.
+     */
+    private static class Batch {
+        private final Deque<Entry> completed = new ArrayDeque<>();
+        private boolean abandoned;
+        
+        synchronized void complete(Entry entry) {
+            if (abandoned) {
+                close(entry);
+                return;
+            }
+            completed.addLast(entry);
+            notifyAll();
+        }
+        
+        synchronized Entry take() throws InterruptedIOException {
+            while (completed.isEmpty()) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for exports");
+                }
+            }
+            return completed.removeFirst();
+        }
+        
+        synchronized boolean isAbandoned() {
+            return abandoned;
+        }
+        
+        synchronized void abandon() {
+            abandoned = true;
+            completed.forEach(Batch::close);
+            completed.clear();
+        }
+        
+        private static void close(Entry entry) {
+            if (entry.artifact() != null) {
+                try {
+                    entry.artifact().close();
+                } catch (IOException e) {
+                    logger.warn("Could not close export of document {}", entry.documentId(), e);
+                }
+            }
+        }
+    }
+}
@@ -1,26 +1,62 @@
 package com.markdowncollab.service;
 
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.UnaryOperator;
+import com.markdowncollab.collaboration.CollaborationEngine;
+import com.markdowncollab.collaboration.ContentSnapshot;
+import com.markdowncollab.collaboration.EditJournal;
+import com.markdowncollab.collaboration.crdt.RgaSequence;
+import com.markdowncollab.collaboration.crdt.SequenceCrdtEngine;
+import com.markdowncollab.collaboration.ot.OperationTransformer;
 import com.markdowncollab.dto.DocumentEditMessage;
+import com.markdowncollab.model.CollaborationMode;
 import com.markdowncollab.model.Document;
 import com.markdowncollab.model.User;
+import com.markdowncollab.pattern.command.DocumentEditor;
 import com.markdowncollab.pattern.observer.DocumentObserver;
 import com.markdowncollab.pattern.observer.DocumentSubject;
 import com.markdowncollab.repository.DocumentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 @Service
 public class CollaborationService implements DocumentSubject {
+    private static final Logger logger = LoggerFactory.getLogger(CollaborationService.class);
 
     private final DocumentRepository documentRepository;
+    private final DocumentWriteBehindService documentWriteBehindService;
+    private final EditJournal editJournal;
+    private final DocumentCacheService documentCacheService;
+    private final SequenceCrdtEngine sequenceCrdtEngine;
+    private final DocumentEditor documentEditor;
+    private final Map<CollaborationMode, CollaborationEngine> engines = new EnumMap<>(CollaborationMode.class);
     private final List<DocumentObserver> observers = new CopyOnWriteArrayList<>();
 
     @Autowired
-    public CollaborationService(DocumentRepository documentRepository) {
+    public CollaborationService(
+            DocumentRepository documentRepository,
+            DocumentWriteBehindService documentWriteBehindService,
+            EditJournal editJournal,
+            DocumentCacheService documentCacheService,
+            List<CollaborationEngine> collaborationEngines,
+            SequenceCrdtEngine sequenceCrdtEngine,
+            DocumentEditor documentEditor) {
         this.documentRepository = documentRepository;
+        this.documentWriteBehindService = documentWriteBehindService;
+        this.editJournal = editJournal;
+        this.documentCacheService = documentCacheService;
+        this.sequenceCrdtEngine = sequenceCrdtEngine;
+        this.documentEditor = documentEditor;
+        for (CollaborationEngine engine : collaborationEngines) {
+            engines.put(engine.getMode(), engine);
+        }
     }
 
     @Override
@@ -40,28 +76,177 @@ public class CollaborationService implements DocumentSubject {
         }
     }
 
-    @Transactional
-    public void processEdit(Document document, User user, DocumentEditMessage message) {
-        // Update document content based on the edit operation
-        if ("insert".equals(message.getOperation())) {
-            document.insertText(message.getPosition(), message.getText());
-        } else if ("delete".equals(message.getOperation())) {
-            document.deleteText(message.getPosition(), message.getLength());
-        } else if ("replace".equals(message.getOperation())) {
-            document.setContent(message.getText());
+    /**
+     * Apply an edit from a collaborator. In operational transformation mode the client must
+     * not send its next edit before this one was acknowledged, see {@link DocumentEditMessage}.
+     *
+     * @return The operations that were applied after merging, each with its server revision
+     */
+    public List<DocumentEditMessage> processEdit(Document document, User user, DocumentEditMessage message) {
+        // With write-behind, edits go to the shared in-memory instance of the document
+        if (documentWriteBehindService.isEnabled()) {
+            document = documentWriteBehindService.attach(document);
         }
         
-        // Save the document
-        documentRepository.save(document);
-        
-        // Notify observers about the change
         message.setUserId(user.getId());
         message.setUsername(user.getUsername());
-        notifyObservers(message);
+        
+        // Merge with concurrent edits and update the document content. The journal sequence
+        // is taken under the same lock a flush reads the content with, so both always match.
+        List<DocumentEditMessage> applied;
+        long firstSequence;
+        synchronized (document) {
+            applied = engineFor(document).apply(document, message);
+            if (applied.isEmpty()) {
+                return applied;
+            }
+            firstSequence = document.getJournalSequence() + 1;
+            document.setJournalSequence(firstSequence + applied.size() - 1);
+            // Rebases everyone's undo history, in the order the operations were applied
+            documentEditor.recordEdit(document.getId(), user.getId(), applied);
+        }
+        
+        persist(document, firstSequence, applied);
+        return applied;
+    }
+    
+    /**
+     * The acknowledgement of an edit {@link #processEdit} applied nothing for: a no-op at the
+     * current revision, so the sender can base its next edit on it.
+     */
+    public DocumentEditMessage acknowledgement(Document document, DocumentEditMessage message) {
+        DocumentEditMessage acknowledgement = new DocumentEditMessage(message);
+        acknowledgement.setOperation(OperationTransformer.NOOP);
+        acknowledgement.setText(null);
+        acknowledgement.setLength(0);
+        long revision = engineFor(document).getRevision(document.getId());
+        acknowledgement.setBaseRevision(revision);
+        acknowledgement.setRevision(revision);
+        return acknowledgement;
+    }
+    
+    /**
+     * Undo the newest edit of a user, as far as it is still in the document.
+     * Edits of other users stay untouched; the undo is applied as ordinary operations.
+     *
+     * @return The operations that were applied, each with its server revision; empty if there is nothing to undo
+     */
+    public List<DocumentEditMessage> undo(Document document, User user) {
+        return revert(document, user, true);
+    }
+    
+    /**
+     * Redo the newest edit a user undid.
+     *
+     * @return The operations that were applied, each with its server revision; empty if there is nothing to redo
+     */
+    public List<DocumentEditMessage> redo(Document document, User user) {
+        return revert(document, user, false);
+    }
+    
+    public boolean canUndo(Long documentId, User user) {
+        return documentEditor.canUndo(documentId, user.getId());
+    }
+    
+    public boolean canRedo(Long documentId, User user) {
+        return documentEditor.canRedo(documentId, user.getId());
+    }
+    
+    private List<DocumentEditMessage> revert(Document document, User user, boolean undo) {
+        if (documentWriteBehindService.isEnabled()) {
+            document = documentWriteBehindService.attach(document);
+        }
+        Document target = document;
+        
+        List<DocumentEditMessage> applied;
+        long firstSequence;
+        synchronized (target) {
+            UnaryOperator<List<DocumentEditMessage>> apply = operations -> applyOperations(target, user, operations);
+            applied = undo
+                    ? documentEditor.undo(target.getId(), user.getId(), apply)
+                    : documentEditor.redo(target.getId(), user.getId(), apply);
+            if (applied.isEmpty()) {
+                return applied;
+            }
+            firstSequence = target.getJournalSequence() + 1;
+            target.setJournalSequence(firstSequence + applied.size() - 1);
+        }
+        
+        persist(target, firstSequence, applied);
+        return applied;
+    }
+    
+    // Operations against the current content, applied one after another
+    private List<DocumentEditMessage> applyOperations(Document document, User user, List<DocumentEditMessage> operations) {
+        CollaborationEngine engine = engineFor(document);
+        List<DocumentEditMessage> applied = new ArrayList<>();
+        for (DocumentEditMessage operation : operations) {
+            operation.setUserId(user.getId());
+            operation.setUsername(user.getUsername());
+            applied.addAll(engine.apply(document, operation));
+        }
+        return applied;
+    }
+    
+    private void persist(Document document, long firstSequence, List<DocumentEditMessage> applied) {
+        // Save the document, or journal the operations and leave it to the background flush
+        if (documentWriteBehindService.isEnabled()) {
+            documentWriteBehindService.markDirty(document, applied.size());
+            if (editJournal.isEnabled()) {
+                awaitJournal(document, firstSequence, applied);
+            }
+        } else {
+            documentRepository.save(document);
+        }
+        documentCacheService.contentChanged(document);
+        
+        // Notify observers about the change
+        applied.forEach(this::notifyObservers);
+    }
+    
+    // Broadcast only once the operations are durable
+    private void awaitJournal(Document document, long firstSequence, List<DocumentEditMessage> applied) {
+        try {
+            editJournal.append(document.getId(), firstSequence, applied).join();
+        } catch (CompletionException e) {
+            logger.error("Failed to journal edits of document {}, flushing it instead", document.getId(), e.getCause());
+            documentWriteBehindService.flush(document.getId());
+        }
+    }
+    
+    /**
+     * Read the content of a document together with the revision clients should edit against.
+     */
+    public ContentSnapshot snapshot(Document document) {
+        // Same lock order as processEdit: the document before the engine's state
+        synchronized (document) {
+            return engineFor(document).snapshot(document);
+        }
+    }
+    
+    /**
+     * The CRDT replica of a document, for clients editing in CRDT mode.
+     */
+    public List<RgaSequence.Run> crdtState(Document document) {
+        return sequenceCrdtEngine.exportRuns(document);
+    }
+    
+    /**
+     * Called after the content of a document was replaced outside of collaborative editing,
+     * or its collaboration mode changed.
+     */
+    public void contentReplaced(Long documentId) {
+        engines.values().forEach(engine -> engine.reset(documentId));
+        // Undo history refers to positions in the old content
+        documentEditor.clearHistory(documentId);
+    }
+
+    private CollaborationEngine engineFor(Document document) {
+        return engines.get(document.getCollaborationMode());
     }
 
     public boolean canUserEdit(User user, Document document) {
-        return document.getOwner().getId().equals(user.getId()) ||
-                document.getCollaborators().contains(user);
+        // Compared by ID through the cached access list; entity instances differ between sessions
+        return documentCacheService.canAccess(document.getId(), user.getId());
     }
 }
\ No newline at end of file
@@ -0,0 +1,93 @@
+package com.markdowncollab.service;
+
+import java.util.List;
+import com.markdowncollab.model.CompressedTextConverter;
+import com.markdowncollab.repository.DocumentRepository;
+import com.markdowncollab.repository.StoredContent;
+import com.markdowncollab.repository.VersionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Compresses document and version rows written before compressed storage was enabled.
+ * Works through both tables in ID order, one small batch per run, so it never competes
+ * with regular traffic for long. Each row is only replaced if it still holds the content
+ * that was read, so edits flushed in between are never overwritten.
+ */
+@Service
+public class ContentCompressionMigrationService {
+    private static final Logger logger = LoggerFactory.getLogger(ContentCompressionMigrationService.class);
+
+    private final DocumentRepository documentRepository;
+    private final VersionRepository versionRepository;
+    private final boolean enabled;
+    private final int minLength;
+    private final int batchSize;
+
+    // Progress since startup; rows already compressed are skipped cheaply on a rerun
+    private long lastDocumentId;
+    private long lastVersionId;
+    private boolean documentsDone;
+    private boolean versionsDone;
+    private long compressedRows;
+
+    @Autowired
+    public ContentCompressionMigrationService(
+            DocumentRepository documentRepository,
+            VersionRepository versionRepository,
+            @Value("${storage.compression.enabled:true}") boolean compressionEnabled,
+            @Value("${storage.compression.migrate:true}") boolean migrate,
+            @Value("${storage.compression.min-length:512}") int minLength,
+            @Value("${storage.compression.migration-batch-size:100}") int batchSize) {
+        this.documentRepository = documentRepository;
+        this.versionRepository = versionRepository;
+        this.enabled = compressionEnabled && migrate;
+        this.minLength = minLength;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${storage.compression.migration-interval-ms:5000}",
+               initialDelayString = "${storage.compression.migration-initial-delay-ms:60000}")
+    public synchronized void migrateBatch() {
+        if (!enabled || (documentsDone && versionsDone)) {
+            return;
+        }
+        try {
+            if (!documentsDone) {
+                List<StoredContent> rows = documentRepository.findStoredContentAfter(lastDocumentId, batchSize);
+                for (StoredContent row : rows) {
+                    if (needsCompression(row.getContent())) {
+                        compressedRows += documentRepository.replaceStoredContent(
+                                row.getId(), row.getContent(), CompressedTextConverter.compress(row.getContent()));
+                    }
+                    lastDocumentId = row.getId();
+                }
+                documentsDone = rows.size() < batchSize;
+            } else {
+                List<StoredContent> rows = versionRepository.findStoredContentAfter(lastVersionId, batchSize);
+                for (StoredContent row : rows) {
+                    if (needsCompression(row.getContent())) {
+                        compressedRows += versionRepository.replaceStoredContent(
+                                row.getId(), row.getContent(), CompressedTextConverter.compress(row.getContent()));
+                    }
+                    lastVersionId = row.getId();
+                }
+                versionsDone = rows.size() < batchSize;
+            }
+            if (documentsDone && versionsDone) {
+                logger.info("Content compression migration finished, {} rows compressed", compressedRows);
+            }
+        } catch (RuntimeException e) {
+            // Progress is kept, the next run retries from the failed batch
+            logger.error("Content compression migration batch failed", e);
+        }
+    }
+
+    private boolean needsCompression(String stored) {
+        return stored != null && stored.length() >= minLength && !CompressedTextConverter.isCompressed(stored);
+    }
+}
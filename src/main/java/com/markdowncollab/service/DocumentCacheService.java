@@ -0,0 +1,435 @@
+package com.markdowncollab.service;
+
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import com.markdowncollab.collaboration.DocumentEditLanes;
+import com.markdowncollab.exception.UnsavedEditsException;
+import com.markdowncollab.exception.DocumentNotFoundException;
+import com.markdowncollab.model.Document;
+import com.markdowncollab.model.User;
+import com.markdowncollab.model.text.TextCompression;
+import com.markdowncollab.repository.DocumentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Session cache of documents with active readers and editors, keyed by document ID.
+ * The hot tier holds the live instance (the one collaborative edits go to) together with its
+ * access list, bounded by an estimate of the bytes it holds. Least recently used and idle
+ * documents are flushed and moved to a tier of compressed content, also bounded by size,
+ * so a document that becomes active again does not have to be loaded from the database.
+ * Evictions run on the document's edit lane so they never overlap an edit.
+ * Misses load outside of any map lock; concurrent misses on one document share a single load.
+ */
+@Service
+public class DocumentCacheService {
+    private static final Logger logger = LoggerFactory.getLogger(DocumentCacheService.class);
+
+    // Rough per-document cost of the entity, access list and map entries
+    private static final int ENTRY_OVERHEAD_BYTES = 512;
+    // Budget evictions bring the estimate down to this share of the budget, so a cache at its
+    // limit does not pick eviction candidates again on every change
+    private static final double LOW_WATER_MARK = 0.9;
+
+    private final DocumentRepository documentRepository;
+    private final DocumentWriteBehindService documentWriteBehindService;
+    private final DocumentEditLanes documentEditLanes;
+    private final long maxBytes;
+    private final long compressedMaxBytes;
+    private final long idleTimeoutMs;
+
+    private final Map<Long, HotEntry> hot = new ConcurrentHashMap<>();
+    private final AtomicLong hotBytes = new AtomicLong();
+    // Bytes of hot entries already scheduled for eviction
+    private final AtomicLong evictingBytes = new AtomicLong();
+    // Loads in progress; a load only becomes hot if the document was not invalidated meanwhile
+    private final Map<Long, CompletableFuture<HotEntry>> loading = new ConcurrentHashMap<>();
+    // Documents whose lanes the current thread holds until its transaction completes
+    private final ThreadLocal<Set<Long>> heldLanes = ThreadLocal.withInitial(HashSet::new);
+    // Access ordered; guarded by its own monitor
+    private final LinkedHashMap<Long, CompressedEntry> compressed = new LinkedHashMap<>(16, 0.75f, true);
+    private long compressedBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong compressedHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Autowired
+    public DocumentCacheService(
+            DocumentRepository documentRepository,
+            DocumentWriteBehindService documentWriteBehindService,
+            DocumentEditLanes documentEditLanes,
+            @Value("${collaboration.cache.max-bytes:67108864}") long maxBytes,
+            @Value("${collaboration.cache.compressed-max-bytes:16777216}") long compressedMaxBytes,
+            @Value("${collaboration.cache.idle-timeout-ms:300000}") long idleTimeoutMs) {
+        this.documentRepository = documentRepository;
+        this.documentWriteBehindService = documentWriteBehindService;
+        this.documentEditLanes = documentEditLanes;
+        this.maxBytes = maxBytes;
+        this.compressedMaxBytes = compressedMaxBytes;
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    /**
+     * Returns the cached instance of a document, loading it with its collaborators on a miss.
+     *
+     * @throws DocumentNotFoundException If the document does not exist
+     */
+    public Document get(Long documentId) {
+        HotEntry entry = hot.get(documentId);
+        if (entry != null) {
+            hits.incrementAndGet();
+        } else {
+            CompletableFuture<HotEntry> load = new CompletableFuture<>();
+            CompletableFuture<HotEntry> running = loading.putIfAbsent(documentId, load);
+            if (running != null) {
+                hits.incrementAndGet();
+                entry = await(running);
+            } else {
+                entry = load(documentId, load);
+            }
+        }
+        entry.lastAccess = System.currentTimeMillis();
+        return entry.document;
+    }
+
+    /**
+     * Whether a user is the owner or a collaborator of a document, from the cached access list.
+     */
+    public boolean canAccess(Long documentId, Long userId) {
+        get(documentId);
+        HotEntry entry = hot.get(documentId);
+        // Evicted in between: fall back to a fresh load
+        Access access = entry != null ? entry.access : Access.of(loadDocument(documentId));
+        return access.allows(userId);
+    }
+
+    /**
+     * Re-estimates the memory held by a document after its content changed.
+     */
+    public void contentChanged(Document document) {
+        HotEntry entry = hot.get(document.getId());
+        if (entry == null || entry.document != document) {
+            return;
+        }
+        long bytes = estimateBytes(document);
+        hotBytes.addAndGet(bytes - entry.bytes);
+        entry.bytes = bytes;
+        entry.lastAccess = System.currentTimeMillis();
+        enforceBudget();
+    }
+
+    /**
+     * Flushes pending edits and drops every cached copy of a document.
+     * Called before code paths that load and save the entity themselves, and whenever
+     * the content or access list changes outside collaborative editing. Inside a transaction
+     * the document's edit lane stays held until the transaction completes, so no edit applies to
+     * the old content meanwhile, and the copies are dropped again after the commit in case a
+     * reader loaded the old row in between.
+     *
+     * @throws UnsavedEditsException If pending edits could not be flushed; the caller must not
+     *         replace the content, or the edits would overwrite it when they are written later
+     */
+    public void invalidate(Long documentId) {
+        boolean inTransaction = TransactionSynchronizationManager.isSynchronizationActive();
+        if (documentEditLanes.isOnLane(documentId) || heldLanes.get().contains(documentId)) {
+            // Edits of the document already wait for this thread
+            drop(documentId);
+            if (inTransaction && documentEditLanes.isOnLane(documentId)) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        drop(documentId);
+                    }
+                });
+            }
+            return;
+        }
+        if (!inTransaction) {
+            await(documentEditLanes.submit(documentId, () -> drop(documentId)));
+            return;
+        }
+
+        CompletableFuture<Void> dropped = new CompletableFuture<>();
+        CountDownLatch completed = new CountDownLatch(1);
+        documentEditLanes.submit(documentId, () -> {
+            try {
+                drop(documentId);
+                dropped.complete(null);
+            } catch (RuntimeException e) {
+                dropped.completeExceptionally(e);
+                return;
+            }
+            try {
+                completed.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        await(dropped);
+        heldLanes.get().add(documentId);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                drop(documentId);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                heldLanes.get().remove(documentId);
+                completed.countDown();
+            }
+        });
+    }
+
+    /**
+     * Moves documents nobody touched within the idle timeout to the compressed tier.
+     */
+    @Scheduled(fixedDelayString = "${collaboration.cache.sweep-interval-ms:30000}")
+    public void evictIdle() {
+        long idleSince = System.currentTimeMillis() - idleTimeoutMs;
+        hot.forEach((documentId, entry) -> {
+            if (entry.lastAccess < idleSince) {
+                scheduleEviction(documentId, entry);
+            }
+        });
+    }
+
+    public String getStatistics() {
+        synchronized (compressed) {
+            return String.format("hot=%d (%d bytes), compressed=%d (%d bytes), hits=%d, compressedHits=%d, misses=%d",
+                    hot.size(), hotBytes.get(), compressed.size(), compressedBytes,
+                    hits.get(), compressedHits.get(), misses.get());
+        }
+    }
+
+    // Loads a missing document and makes it hot, unless it was invalidated during the load
+    private HotEntry load(Long documentId, CompletableFuture<HotEntry> load) {
+        HotEntry entry;
+        try {
+            entry = promoteOrLoad(documentId);
+        } catch (RuntimeException e) {
+            loading.remove(documentId, load);
+            load.completeExceptionally(e);
+            throw e;
+        }
+        // A load that finished first, between the miss and this load starting, stays hot
+        HotEntry[] result = {entry};
+        boolean[] published = new boolean[1];
+        loading.computeIfPresent(documentId, (id, current) -> {
+            if (current != load) {
+                return current;
+            }
+            HotEntry existing = hot.putIfAbsent(id, entry);
+            if (existing != null) {
+                result[0] = existing;
+            } else {
+                published[0] = true;
+            }
+            return null;
+        });
+        load.complete(result[0]);
+        if (published[0]) {
+            hotBytes.addAndGet(entry.bytes);
+            enforceBudget();
+        }
+        return result[0];
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    // Runs on the document's lane, or while it is held
+    private void drop(Long documentId) {
+        if (!documentWriteBehindService.evictIfClean(documentId)) {
+            // The live instance and its copies stay, so the next load picks its edits up again
+            throw new UnsavedEditsException("Document " + documentId + " has edits that could not be saved yet, try again");
+        }
+        loading.remove(documentId);
+        removeHot(documentId);
+        synchronized (compressed) {
+            CompressedEntry removed = compressed.remove(documentId);
+            if (removed != null) {
+                compressedBytes -= removed.bytes();
+            }
+        }
+    }
+
+    private HotEntry promoteOrLoad(Long documentId) {
+        CompressedEntry stored;
+        synchronized (compressed) {
+            stored = compressed.remove(documentId);
+            if (stored != null) {
+                compressedBytes -= stored.bytes();
+            }
+        }
+        Document document;
+        if (stored != null) {
+            compressedHits.incrementAndGet();
+            document = stored.metadata();
+            document.setContent(TextCompression.inflate(stored.content()));
+        } else {
+            misses.incrementAndGet();
+            document = loadDocument(documentId);
+        }
+        return new HotEntry(document, Access.of(document), estimateBytes(document));
+    }
+
+    private Document loadDocument(Long documentId) {
+        return documentRepository.findByIdWithCollaborators(documentId)
+                .orElseThrow(() -> new DocumentNotFoundException("Document not found with ID: " + documentId));
+    }
+
+    // Evicts least recently used documents until the estimate is back under the low water mark
+    private void enforceBudget() {
+        // Evictions already scheduled cover the excess
+        if (hotBytes.get() - evictingBytes.get() <= maxBytes) {
+            return;
+        }
+        long excess = hotBytes.get() - evictingBytes.get() - (long) (maxBytes * LOW_WATER_MARK);
+        List<Map.Entry<Long, HotEntry>> candidates = hot.entrySet().stream()
+                .filter(e -> !e.getValue().evicting.get())
+                .sorted(Comparator.comparingLong(e -> e.getValue().lastAccess))
+                .collect(Collectors.toList());
+        for (Map.Entry<Long, HotEntry> candidate : candidates) {
+            if (excess <= 0) {
+                break;
+            }
+            if (scheduleEviction(candidate.getKey(), candidate.getValue())) {
+                excess -= candidate.getValue().scheduledBytes;
+            }
+        }
+    }
+
+    private boolean scheduleEviction(Long documentId, HotEntry entry) {
+        if (!entry.evicting.compareAndSet(false, true)) {
+            return false;
+        }
+        entry.scheduledBytes = entry.bytes;
+        evictingBytes.addAndGet(entry.scheduledBytes);
+        try {
+            documentEditLanes.submit(documentId, () -> {
+                try {
+                    evict(documentId, entry);
+                } finally {
+                    evictingBytes.addAndGet(-entry.scheduledBytes);
+                }
+            });
+        } catch (RuntimeException e) {
+            // The lane is full of edits; the next sweep tries again
+            evictingBytes.addAndGet(-entry.scheduledBytes);
+            entry.evicting.set(false);
+            return false;
+        }
+        return true;
+    }
+
+    // Runs on the document's lane
+    private void evict(Long documentId, HotEntry entry) {
+        if (hot.get(documentId) != entry) {
+            return;
+        }
+        // Touched again since it was picked and the cache has room without it: keep it
+        long ifKept = hotBytes.get() - (evictingBytes.get() - entry.scheduledBytes);
+        if (ifKept <= maxBytes * LOW_WATER_MARK && entry.lastAccess >= System.currentTimeMillis() - idleTimeoutMs) {
+            entry.evicting.set(false);
+            return;
+        }
+        if (!documentWriteBehindService.evictIfClean(documentId)) {
+            // Flushing failed, keep the edits in memory and retry later
+            entry.evicting.set(false);
+            return;
+        }
+        removeHot(documentId);
+
+        String content = entry.document.getContent();
+        byte[] deflated = TextCompression.deflate(content != null ? content : "");
+        CompressedEntry stored = new CompressedEntry(entry.document.copyMetadata(), deflated);
+        synchronized (compressed) {
+            CompressedEntry previous = compressed.put(documentId, stored);
+            compressedBytes += stored.bytes() - (previous != null ? previous.bytes() : 0);
+            Iterator<CompressedEntry> eldest = compressed.values().iterator();
+            while (compressedBytes > compressedMaxBytes && eldest.hasNext()) {
+                compressedBytes -= eldest.next().bytes();
+                eldest.remove();
+            }
+        }
+        logger.debug("Moved document {} to the compressed tier ({} -> {} bytes)",
+                documentId, entry.bytes, deflated.length);
+    }
+
+    private void removeHot(Long documentId) {
+        HotEntry removed = hot.remove(documentId);
+        if (removed != null) {
+            hotBytes.addAndGet(-removed.bytes);
+        }
+    }
+
+    private static long estimateBytes(Document document) {
+        // Strings hold up to two bytes per char
+        return ENTRY_OVERHEAD_BYTES + 2L * document.getContentLength();
+    }
+
+    /**
+     * Owner and collaborator IDs of a document.
+     */
+    public record Access(Long ownerId, Set<Long> collaboratorIds) {
+        static Access of(Document document) {
+            return new Access(document.getOwner().getId(), document.getCollaborators().stream()
+                    .map(User::getId)
+                    .collect(Collectors.toUnmodifiableSet()));
+        }
+
+        public boolean allows(Long userId) {
+            return ownerId.equals(userId) || collaboratorIds.contains(userId);
+        }
+    }
+
+    private static class HotEntry {
+        private final Document document;
+        private final Access access;
+        private volatile long bytes;
+        private volatile long lastAccess = System.currentTimeMillis();
+        private final AtomicBoolean evicting = new AtomicBoolean();
+        // Bytes counted in evictingBytes while an eviction is scheduled
+        private volatile long scheduledBytes;
+
+        HotEntry(Document document, Access access, long bytes) {
+            this.document = document;
+            this.access = access;
+            this.bytes = bytes;
+        }
+    }
+
+    private record CompressedEntry(Document metadata, byte[] content) {
+        long bytes() {
+            return ENTRY_OVERHEAD_BYTES + content.length;
+        }
+    }
+}
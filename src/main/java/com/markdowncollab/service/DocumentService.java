@@ -1,16 +1,29 @@
 package com.markdowncollab.service;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
 import java.util.stream.Collectors;
+import com.markdowncollab.collaboration.ContentSnapshot;
+import com.markdowncollab.collaboration.DocumentEditLanes;
+import com.markdowncollab.dto.CrdtRunDTO;
 import com.markdowncollab.dto.DocumentDTO;
+import com.markdowncollab.dto.DocumentEditMessage;
+import com.markdowncollab.dto.RenderedBlockDTO;
 import com.markdowncollab.exception.DocumentNotFoundException;
 import com.markdowncollab.exception.UserNotFoundException;
+import com.markdowncollab.model.CollaborationMode;
 import com.markdowncollab.model.Document;
 import com.markdowncollab.model.User;
-import com.markdowncollab.pattern.factory.DocumentExporter;
-import com.markdowncollab.pattern.factory.DocumentExporterFactory;
-import com.markdowncollab.pattern.strategy.MarkdownRenderStrategy;
+import com.markdowncollab.model.Version;
 import com.markdowncollab.repository.DocumentRepository;
+import com.markdowncollab.repository.DocumentTitle;
 import com.markdowncollab.repository.UserRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,19 +37,37 @@ import org.springframework.transaction.annotation.Transactional;
 @Service
 public class DocumentService {
     private static final Logger logger = LoggerFactory.getLogger(DocumentService.class);
-
+    
     private final DocumentRepository documentRepository;
     private final UserRepository userRepository;
-    private final MarkdownRenderStrategy markdownRenderStrategy;
-
+    private final MarkdownService markdownService;
+    private final IncrementalRenderService incrementalRenderService;
+    private final DocumentCacheService documentCacheService;
+    private final VersionStorageService versionStorageService;
+    private final CollaborationService collaborationService;
+    private final DocumentEditLanes documentEditLanes;
+    private final ExportCacheService exportCacheService;
+    
     @Autowired
     public DocumentService(
             DocumentRepository documentRepository,
             UserRepository userRepository,
-            MarkdownRenderStrategy markdownRenderStrategy) {
+            MarkdownService markdownService,
+            IncrementalRenderService incrementalRenderService,
+            DocumentCacheService documentCacheService,
+            VersionStorageService versionStorageService,
+            CollaborationService collaborationService,
+            DocumentEditLanes documentEditLanes,
+            ExportCacheService exportCacheService) {
         this.documentRepository = documentRepository;
         this.userRepository = userRepository;
-        this.markdownRenderStrategy = markdownRenderStrategy;
+        this.markdownService = markdownService;
+        this.incrementalRenderService = incrementalRenderService;
+        this.documentCacheService = documentCacheService;
+        this.versionStorageService = versionStorageService;
+        this.collaborationService = collaborationService;
+        this.documentEditLanes = documentEditLanes;
+        this.exportCacheService = exportCacheService;
     }
     
     public Document findById(Long id) {
@@ -44,14 +75,27 @@ public class DocumentService {
                 .orElseThrow(() -> new DocumentNotFoundException("Document not found with ID: " + id));
     }
     
+    /**
+     * Returns the cached instance of a document, which may be ahead of the database
+     * while it is edited collaboratively. Read-only use outside of collaborative editing.
+     */
+    public Document findLiveById(Long id) {
+        return documentCacheService.get(id);
+    }
+    
     public DocumentDTO getDocumentById(Long id) {
-        Document document = findById(id);
+        Document document = findLiveById(id);
         checkDocumentAccess(document);
         
         // Log access details
         System.out.println("Accessing document - ID: " + id + ", Title: " + document.getTitle());
         
-        return new DocumentDTO(document);
+        // Content and revision are read together so clients can edit against the revision
+        ContentSnapshot snapshot = collaborationService.snapshot(document);
+        DocumentDTO documentDTO = new DocumentDTO(document);
+        documentDTO.setContent(snapshot.content());
+        documentDTO.setRevision(snapshot.revision());
+        return documentDTO;
     }
         
     public List<DocumentDTO> getUserDocuments() {
@@ -89,6 +133,9 @@ public class DocumentService {
     @Transactional
     public void updateDocument(Long id, String content) {
         try {
+            // Checked before pending edits are flushed on the user's behalf
+            checkDocumentAccess(findLiveById(id));
+            documentCacheService.invalidate(id);
             Document document = findById(id);
             User currentUser = getCurrentUser();
             
@@ -98,11 +145,10 @@ public class DocumentService {
             logger.debug("Before update - Document content: {}", document.getContent());
             logger.debug("Incoming content: {}", content);
             
-            checkDocumentAccess(document);
-            
             // Update content
             document.setContent(content);
             documentRepository.save(document);
+            collaborationService.contentReplaced(id);
             
             logger.info("Document {} updated successfully", id);
         } catch (Exception e) {
@@ -111,6 +157,59 @@ public class DocumentService {
         }
     }
     
+    /**
+     * Applies an edit of the current user as an operation, merged like a collaborator's edit,
+     * instead of saving the whole content.
+     *
+     * @return The operations that were applied
+     */
+    public List<DocumentEditMessage> editDocument(Long id, DocumentEditMessage message) {
+        return applyOnLane(id, (document, user) -> collaborationService.processEdit(document, user, message));
+    }
+    
+    /**
+     * Undoes the newest edit of the current user, leaving edits of collaborators alone.
+     *
+     * @return The operations that were applied, empty if there was nothing to undo
+     */
+    public List<DocumentEditMessage> undo(Long id) {
+        return applyOnLane(id, collaborationService::undo);
+    }
+    
+    /**
+     * Redoes the newest edit the current user undid.
+     *
+     * @return The operations that were applied, empty if there was nothing to redo
+     */
+    public List<DocumentEditMessage> redo(Long id) {
+        return applyOnLane(id, collaborationService::redo);
+    }
+    
+    public boolean canUndo(Long id) {
+        return collaborationService.canUndo(id, getCurrentUser());
+    }
+    
+    public boolean canRedo(Long id) {
+        return collaborationService.canRedo(id, getCurrentUser());
+    }
+    
+    // Runs on the document's edit lane, in order with the edits of collaborators
+    private List<DocumentEditMessage> applyOnLane(Long id, BiFunction<Document, User, List<DocumentEditMessage>> edit) {
+        // The security context does not reach the lane, so access is checked here
+        User currentUser = getCurrentUser();
+        checkDocumentAccess(findLiveById(id));
+        List<DocumentEditMessage> applied = new ArrayList<>();
+        try {
+            documentEditLanes.submit(id, () -> applied.addAll(edit.apply(findLiveById(id), currentUser))).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return applied;
+    }
+    
     /**
      * Saves document content and creates a version.
      * Used for explicit saves when user requests a save operation.
@@ -118,20 +217,23 @@ public class DocumentService {
     @Transactional
     public void saveDocumentWithVersion(Long id, String content, String versionDescription) {
         try {
+            // Checked before pending edits are flushed on the user's behalf
+            checkDocumentAccess(findLiveById(id));
+            documentCacheService.invalidate(id);
             Document document = findById(id);
             User currentUser = getCurrentUser();
             
             logger.info("Saving document {} with new version by user {}", id, currentUser.getUsername());
             
-            checkDocumentAccess(document);
-            
             // Update content
             document.setContent(content);
             
-            // Create new version
-            document.createNewVersion(content, currentUser, versionDescription);
+            // Create new version, stored as a delta against the previous one where possible
+            Version version = document.createNewVersion(content, currentUser, versionDescription);
+            versionStorageService.prepare(version);
             
             documentRepository.save(document);
+            collaborationService.contentReplaced(id);
             
             logger.info("Document {} saved with new version successfully", id);
         } catch (Exception e) {
@@ -142,13 +244,13 @@ public class DocumentService {
     
     @Transactional
     public boolean addCollaborator(Long documentId, String username) {
-        Document document = findById(documentId);
-        
-        // Check if current user is the owner
+        // Check if current user is the owner, before pending edits are flushed on their behalf
         User currentUser = getCurrentUser();
-        if (!document.getOwner().getId().equals(currentUser.getId())) {
+        if (!findLiveById(documentId).getOwner().getId().equals(currentUser.getId())) {
             throw new AccessDeniedException("Only the document owner can add collaborators");
         }
+        documentCacheService.invalidate(documentId);
+        Document document = findById(documentId);
         
         // Find user by username
         User user = userRepository.findByUsername(username)
@@ -174,13 +276,13 @@ public class DocumentService {
     
     @Transactional
     public boolean removeCollaborator(Long documentId, Long userId) {
-        Document document = findById(documentId);
-        
-        // Check if current user is the owner
+        // Check if current user is the owner, before pending edits are flushed on their behalf
         User currentUser = getCurrentUser();
-        if (!document.getOwner().getId().equals(currentUser.getId())) {
+        if (!findLiveById(documentId).getOwner().getId().equals(currentUser.getId())) {
             throw new AccessDeniedException("Only the document owner can remove collaborators");
         }
+        documentCacheService.invalidate(documentId);
+        Document document = findById(documentId);
         
         // Find user
         User user = userRepository.findById(userId)
@@ -196,31 +298,144 @@ public class DocumentService {
         return false;
     }
     
+    /**
+     * Switches how concurrent edits to a document are merged.
+     * Clients connected in the old mode have to reload the document.
+     */
+    @Transactional
+    public void setCollaborationMode(Long documentId, CollaborationMode mode) {
+        // Check if current user is the owner, before pending edits are flushed on their behalf
+        User currentUser = getCurrentUser();
+        if (!findLiveById(documentId).getOwner().getId().equals(currentUser.getId())) {
+            throw new AccessDeniedException("Only the document owner can change the collaboration mode");
+        }
+        documentCacheService.invalidate(documentId);
+        Document document = findById(documentId);
+        
+        document.setCollaborationMode(mode);
+        documentRepository.save(document);
+        collaborationService.contentReplaced(documentId);
+        
+        logger.info("Document {} now uses {} collaboration", documentId, mode);
+    }
+    
+    /**
+     * Returns the CRDT replica of a document so CRDT clients can start with matching character ids.
+     */
+    public List<CrdtRunDTO> getCrdtState(Long documentId) {
+        Document document = findLiveById(documentId);
+        checkDocumentAccess(document);
+        
+        return collaborationService.crdtState(document).stream()
+                .map(CrdtRunDTO::new)
+                .collect(Collectors.toList());
+    }
+    
     public String renderMarkdown(String markdownContent) {
-        return markdownRenderStrategy.render(markdownContent);
+        // Cached by content, so previews of an unchanged document are not rendered again
+        return markdownService.renderMarkdown(markdownContent);
+    }
+    
+    public void renderMarkdown(String markdownContent, Appendable html) throws IOException {
+        markdownService.renderMarkdown(markdownContent, html);
+    }
+    
+    /**
+     * Renders the current content of a document block by block, so a preview can patch
+     * only the blocks it does not show yet.
+     *
+     * @param shownIds IDs of the blocks the preview shows
+     */
+    public List<RenderedBlockDTO> renderBlocks(Long id, Collection<String> shownIds) {
+        return incrementalRenderService.render(id, getDocumentById(id).getContent(), shownIds);
+    }
+    
+    /**
+     * Renders content being edited in a document block by block.
+     */
+    public List<RenderedBlockDTO> renderBlocks(Long id, String content) {
+        checkDocumentAccess(findLiveById(id));
+        return incrementalRenderService.render(id, content, List.of());
     }
     
     public byte[] exportDocument(Long documentId, String format) throws Exception {
+        try (ExportCacheService.Artifact artifact = openExport(documentId, format)) {
+            return artifact.readAllBytes();
+        }
+    }
+    
+    /**
+     * Export a document into the export cache, or find it there if its content was exported before.
+     *
+     * @return The artifact, open for reading; the caller closes it
+     */
+    public ExportCacheService.Artifact openExport(Long documentId, String format) throws Exception {
         try {
-            Document document = findById(documentId);
             User currentUser = getCurrentUser();
             
             logger.info("Exporting document {} in {} format by user {}", 
                 documentId, format, currentUser.getUsername());
             
-            checkDocumentAccess(document);
-            
-            DocumentExporter exporter = DocumentExporterFactory.createExporter(format);
-            byte[] exportedContent = exporter.export(document);
+            // A snapshot, so the content the artifact is cached under is the content exported
+            Document document = getExportSnapshot(documentId);
+            ExportCacheService.Artifact artifact = exportCacheService.export(document, format);
             
             logger.info("Document {} exported successfully in {} format", documentId, format);
-            return exportedContent;
+            return artifact;
         } catch (Exception e) {
             logger.error("Error exporting document", e);
             throw e;
         }
     }
     
+    /**
+     * A detached copy of a document and its current content, for exports that run after the
+     * request returned while the live document keeps changing.
+     */
+    public Document getExportSnapshot(Long documentId) {
+        Document document = findLiveById(documentId);
+        checkDocumentAccess(document);
+        return snapshot(document);
+    }
+    
+    /**
+     * The documents the current user exports together: the given ones, which must all be
+     * accessible, or else every accessible document whose title contains the query.
+     */
+    public List<Long> getExportableDocumentIds(Collection<Long> documentIds, String titleQuery) {
+        // Only IDs and titles are queried, so listing does not load documents or fill the cache
+        User currentUser = getCurrentUser();
+        if (documentIds != null && !documentIds.isEmpty()) {
+            List<Long> ids = new ArrayList<>(new LinkedHashSet<>(documentIds));
+            Set<Long> accessible = new HashSet<>(documentRepository.findIdsAccessibleByUser(ids, currentUser));
+            for (Long id : ids) {
+                if (!accessible.contains(id)) {
+                    if (!documentRepository.existsById(id)) {
+                        throw new DocumentNotFoundException("Document not found with ID: " + id);
+                    }
+                    throw new AccessDeniedException("You don't have access to this document");
+                }
+            }
+            return ids;
+        }
+        String query = titleQuery != null ? titleQuery.toLowerCase() : "";
+        return documentRepository.findTitlesAccessibleByUser(currentUser).stream()
+                .filter(document -> document.getTitle() != null && document.getTitle().toLowerCase().contains(query))
+                .map(DocumentTitle::getId)
+                .collect(Collectors.toList());
+    }
+    
+    // For exports whose access was checked when they were requested, on threads without the user
+    Document getCheckedExportSnapshot(Long documentId) {
+        return snapshot(findLiveById(documentId));
+    }
+    
+    private static Document snapshot(Document document) {
+        Document snapshot = document.copyMetadata();
+        snapshot.setContent(document.getContent());
+        return snapshot;
+    }
+    
     private User getCurrentUser() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         
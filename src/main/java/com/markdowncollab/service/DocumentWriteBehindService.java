@@ -0,0 +1,275 @@
+package com.markdowncollab.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import com.markdowncollab.collaboration.EditJournal;
+import com.markdowncollab.collaboration.ot.OperationTransformer;
+import com.markdowncollab.dto.DocumentEditMessage;
+import com.markdowncollab.model.Document;
+import com.markdowncollab.repository.DocumentRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps documents that receive collaborative edits in memory and persists them
+ * in the background instead of writing the whole content column on every keystroke.
+ * Dirty documents are flushed on a fixed interval, as soon as they collect enough
+ * pending operations, on explicit saves and on shutdown.
+ * Applied operations are also written to the {@link EditJournal}; on startup the journal is
+ * replayed on top of the persisted content, so a crash loses no acknowledged edit.
+ */
+@Service
+public class DocumentWriteBehindService {
+    private static final Logger logger = LoggerFactory.getLogger(DocumentWriteBehindService.class);
+
+    private final DocumentRepository documentRepository;
+    private final EditJournal editJournal;
+    private final boolean enabled;
+    private final int maxPendingOps;
+
+    // Documents with edits applied in memory, keyed by document ID
+    private final Map<Long, LiveDocument> liveDocuments = new ConcurrentHashMap<>();
+
+    // Flushes triggered by the op count run here so the edit path never waits on the database
+    private final ExecutorService flushExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "document-write-behind");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public DocumentWriteBehindService(
+            DocumentRepository documentRepository,
+            EditJournal editJournal,
+            @Value("${collaboration.write-behind.enabled:true}") boolean enabled,
+            @Value("${collaboration.write-behind.max-pending-ops:200}") int maxPendingOps) {
+        this.documentRepository = documentRepository;
+        this.editJournal = editJournal;
+        this.enabled = enabled;
+        this.maxPendingOps = maxPendingOps;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Applies journaled operations the database does not have yet, then starts the journal.
+     */
+    @PostConstruct
+    public void recover() {
+        if (!editJournal.isEnabled()) {
+            return;
+        }
+        Map<Long, Recovery> recovered = new HashMap<>();
+        try {
+            editJournal.replay(entry -> {
+                Recovery recovery = recovered.computeIfAbsent(entry.documentId(),
+                        id -> new Recovery(documentRepository.findById(id).orElse(null)));
+                recovery.apply(entry);
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to replay the edit journal", e);
+        }
+
+        recovered.forEach((documentId, recovery) -> {
+            if (recovery.document == null) {
+                // Deleted since; nothing to recover
+                editJournal.markPersisted(documentId, Long.MAX_VALUE);
+            } else if (recovery.replayed > 0 || recovery.broken) {
+                // Past a gap, new edits must not reuse the sequences of the unreplayed tail
+                long sequence = Math.max(recovery.document.getJournalSequence(), recovery.lastSequence);
+                recovery.document.setJournalSequence(sequence);
+                documentRepository.updateContent(documentId, recovery.document.getContent(), sequence, LocalDateTime.now());
+                editJournal.markPersisted(documentId, sequence);
+                logger.info("Recovered {} journaled edits of document {}", recovery.replayed, documentId);
+            } else {
+                editJournal.markPersisted(documentId, recovery.document.getJournalSequence());
+            }
+        });
+
+        try {
+            editJournal.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to start the edit journal", e);
+        }
+    }
+
+    /**
+     * Returns the in-memory instance of a document, registering the given one
+     * if the document is not being edited yet.
+     */
+    public Document attach(Document document) {
+        return liveDocuments.computeIfAbsent(document.getId(), id -> new LiveDocument(document)).document;
+    }
+
+    /**
+     * Records that operations were applied to a live document.
+     */
+    public void markDirty(Document document, int operations) {
+        LiveDocument live = liveDocuments.get(document.getId());
+        if (live == null) {
+            return;
+        }
+        int pending = live.pendingOps.addAndGet(operations);
+        if (pending >= maxPendingOps && live.flushQueued.compareAndSet(false, true)) {
+            flushExecutor.execute(() -> flush(document.getId()));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${collaboration.write-behind.flush-interval-ms:2000}")
+    public void flushDirty() {
+        for (Long documentId : liveDocuments.keySet()) {
+            flush(documentId);
+        }
+    }
+
+    /**
+     * Synchronously writes the pending content of a document, if any.
+     */
+    public void flush(Long documentId) {
+        LiveDocument live = liveDocuments.get(documentId);
+        if (live == null) {
+            return;
+        }
+        // One flush per document at a time so an older snapshot never overwrites a newer one
+        live.flushLock.lock();
+        try {
+            live.flushQueued.set(false);
+            int pending = live.pendingOps.getAndSet(0);
+            if (pending == 0) {
+                return;
+            }
+            // Edits apply and take their journal sequence under the document's lock
+            String content;
+            long sequence;
+            synchronized (live.document) {
+                content = live.document.getContent();
+                sequence = live.document.getJournalSequence();
+            }
+            try {
+                int updated = documentRepository.updateContent(documentId, content, sequence, LocalDateTime.now());
+                if (updated == 0) {
+                    logger.warn("Document {} no longer exists, dropping {} pending edits", documentId, pending);
+                    liveDocuments.remove(documentId, live);
+                    editJournal.markPersisted(documentId, Long.MAX_VALUE);
+                } else {
+                    editJournal.markPersisted(documentId, sequence);
+                    logger.debug("Flushed {} pending edits of document {}", pending, documentId);
+                }
+            } catch (RuntimeException e) {
+                // Keep the edits pending so the next flush retries them
+                live.pendingOps.addAndGet(pending);
+                logger.error("Failed to flush document {}", documentId, e);
+            }
+        } finally {
+            live.flushLock.unlock();
+        }
+    }
+
+    /**
+     * Flushes a document and forgets its in-memory instance, unless the flush failed
+     * or edits applied during the flush are still pending. Used before code paths that
+     * load and save the entity themselves, and when the cache evicts a document.
+     *
+     * @return Whether the document is no longer held
+     */
+    public boolean evictIfClean(Long documentId) {
+        flush(documentId);
+        LiveDocument live = liveDocuments.get(documentId);
+        if (live == null) {
+            return true;
+        }
+        live.flushLock.lock();
+        try {
+            if (live.pendingOps.get() > 0) {
+                return false;
+            }
+            liveDocuments.remove(documentId, live);
+            return true;
+        } finally {
+            live.flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void flushAll() {
+        flushExecutor.shutdown();
+        try {
+            flushExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushDirty();
+    }
+
+    // Positions were already resolved when the operations were first applied
+    private static void replay(Document document, DocumentEditMessage op) {
+        int contentLength = document.getContentLength();
+        if (OperationTransformer.INSERT.equals(op.getOperation())) {
+            document.insertText(Math.min(op.getPosition(), contentLength), op.getText() != null ? op.getText() : "");
+        } else if (OperationTransformer.DELETE.equals(op.getOperation())) {
+            int position = Math.min(op.getPosition(), contentLength);
+            document.deleteText(position, Math.min(op.getLength(), contentLength - position));
+        } else if (OperationTransformer.REPLACE.equals(op.getOperation())) {
+            document.setContent(op.getText());
+        }
+    }
+
+    private static class Recovery {
+        private final Document document;
+        private int replayed;
+        private boolean broken;
+        private long lastSequence;
+
+        Recovery(Document document) {
+            this.document = document;
+        }
+
+        void apply(EditJournal.Entry entry) {
+            lastSequence = Math.max(lastSequence, entry.sequence());
+            if (document == null || broken || entry.sequence() <= document.getJournalSequence()) {
+                return;
+            }
+            if (entry.firstSequence() != document.getJournalSequence() + 1) {
+                // A lost record; later operations would land on the wrong positions
+                logger.error("Edit journal of document {} skips from sequence {} to {}, not replaying further",
+                        entry.documentId(), document.getJournalSequence(), entry.firstSequence());
+                broken = true;
+                return;
+            }
+            replay(document, entry.operation());
+            document.setJournalSequence(entry.sequence());
+            replayed++;
+        }
+    }
+
+    private static class LiveDocument {
+        private final Document document;
+        private final AtomicInteger pendingOps = new AtomicInteger();
+        private final AtomicBoolean flushQueued = new AtomicBoolean();
+        // Held across the database write, so a lock instead of a monitor: a virtual thread
+        // waiting on it, or blocked in JDBC while holding it, does not pin its carrier
+        private final ReentrantLock flushLock = new ReentrantLock();
+
+        LiveDocument(Document document) {
+            this.document = document;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.markdowncollab.service;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import com.markdowncollab.collaboration.EditJournal;
+import com.markdowncollab.repository.VersionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps the edit journal bounded by compacting one sealed segment per run in the background.
+ * Versions are the snapshots of the edit history: journaled operations a version already
+ * contains are dropped from the journal.
+ */
+@Service
+public class EditJournalCompactionService {
+    private static final Logger logger = LoggerFactory.getLogger(EditJournalCompactionService.class);
+
+    private final EditJournal editJournal;
+    private final VersionRepository versionRepository;
+
+    @Autowired
+    public EditJournalCompactionService(EditJournal editJournal, VersionRepository versionRepository) {
+        this.editJournal = editJournal;
+        this.versionRepository = versionRepository;
+    }
+
+    @Scheduled(fixedDelayString = "${collaboration.journal.compaction.interval-ms:10000}",
+               initialDelayString = "${collaboration.journal.compaction.initial-delay-ms:60000}")
+    public void compactNextSegment() {
+        if (!editJournal.isEnabled()) {
+            return;
+        }
+        try {
+            editJournal.compactNext(documentIds -> {
+                Map<Long, Long> sequences = new HashMap<>();
+                for (Object[] row : versionRepository.findLatestJournalSequences(documentIds)) {
+                    sequences.put((Long) row[0], (Long) row[1]);
+                }
+                return sequences;
+            });
+        } catch (IOException | RuntimeException e) {
+            // The segment is left as it was; it is visited again on the next pass
+            logger.error("Edit journal compaction failed", e);
+        }
+    }
+}
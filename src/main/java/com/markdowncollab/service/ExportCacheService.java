@@ -0,0 +1,258 @@
+package com.markdowncollab.service;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.rmi.server.ExportException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import com.markdowncollab.model.Document;
+import com.markdowncollab.pattern.factory.DocumentExporter;
+import com.markdowncollab.pattern.factory.DocumentExporterFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps exported documents as files, so exporting unchanged content again is only I/O.
+ * Artifacts are addressed by a hash of the document, its title and content, the format and
+ * the exporter that produced them; an edit simply leads to a new file. The directory is
+ * bounded by total size and evicts the least recently used files first, and files left by a
+ * previous run are picked up again on startup.
+ */
+@Service
+public class ExportCacheService {
+    private static final Logger logger = LoggerFactory.getLogger(ExportCacheService.class);
+    private static final String TEMP_SUFFIX = ".tmp";
+    
+    private final Path directory;
+    private final long maxBytes;
+    
+    // File name -> size, access ordered; guarded by its own monitor
+    private final LinkedHashMap<String, Long> files = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    
+    @Autowired
+    public ExportCacheService(
+            @Value("${export.cache.directory:${java.io.tmpdir}/markdown-collab/exports}") String directory,
+            @Value("${export.cache.max-bytes:268435456}") long maxBytes) throws IOException {
+        this.directory = Files.createDirectories(Paths.get(directory));
+        this.maxBytes = maxBytes;
+        load();
+    }
+    
+    /**
+     * An exported document, open for reading. Close it once it was sent.
+     */
+    public record Artifact(FileChannel channel, long size, String contentType, String fileExtension)
+            implements Closeable {
+        
+        // Lets the operating system move the bytes where it can, without copying them into the heap
+        public void transferTo(OutputStream outputStream) throws IOException {
+            WritableByteChannel target = Channels.newChannel(outputStream);
+            long position = 0;
+            while (position < size) {
+                position += channel.transferTo(position, size - position, target);
+            }
+        }
+        
+        public byte[] readAllBytes() throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(size));
+            int read = 0;
+            while (buffer.hasRemaining() && read >= 0) {
+                read = channel.read(buffer, buffer.position());
+            }
+            return buffer.array();
+        }
+        
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+    
+    /**
+     * Export a document, or reuse the artifact of an earlier export of the same content.
+     *
+     * @param document A snapshot of the document that does not change while it is exported
+     */
+    public Artifact export(Document document, String format) throws ExportException, IOException {
+        DocumentExporter exporter = DocumentExporterFactory.createExporter(format);
+        String name = fileName(document, exporter);
+        Path path = directory.resolve(name);
+        synchronized (files) {
+            if (files.get(name) != null) {
+                try {
+                    Artifact artifact = open(path, exporter);
+                    hits.incrementAndGet();
+                    return artifact;
+                } catch (NoSuchFileException e) {
+                    // Removed behind our back; export it again
+                    cachedBytes -= files.remove(name);
+                }
+            }
+        }
+        misses.incrementAndGet();
+        
+        // Exported outside the lock; two concurrent misses for one document just export twice.
+        // The exporter writes straight to the file, so the artifact is never held in memory
+        Path temp = Files.createTempFile(directory, "export-", TEMP_SUFFIX);
+        long size;
+        try {
+            try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                exporter.export(document, outputStream);
+            }
+            size = Files.size(temp);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        if (size > maxBytes) {
+            // Too large to keep; the file goes away once it was read
+            return new Artifact(FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE),
+                    size, exporter.getContentType(), exporter.getFileExtension());
+        }
+        synchronized (files) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Long previous = files.put(name, size);
+            cachedBytes += size - (previous != null ? previous : 0);
+            evict();
+            // Opened under the lock, so eviction cannot remove the file first
+            return open(path, exporter);
+        }
+    }
+    
+    /**
+     * The key an export of a document is cached by, to find the artifact again later without
+     * keeping the document.
+     */
+    public String key(Document document, String format) {
+        return fileName(document, DocumentExporterFactory.createExporter(format));
+    }
+    
+    public boolean contains(String key) {
+        synchronized (files) {
+            return files.containsKey(key);
+        }
+    }
+    
+    /**
+     * A cached artifact by its key.
+     *
+     * @return The artifact, open for reading; null if it is not cached, for instance because it
+     *         was evicted or too large to keep
+     */
+    public Artifact find(String key, String format) throws IOException {
+        DocumentExporter exporter = DocumentExporterFactory.createExporter(format);
+        synchronized (files) {
+            if (files.get(key) == null) {
+                return null;
+            }
+            try {
+                Artifact artifact = open(directory.resolve(key), exporter);
+                hits.incrementAndGet();
+                return artifact;
+            } catch (NoSuchFileException e) {
+                cachedBytes -= files.remove(key);
+                return null;
+            }
+        }
+    }
+    
+    public String getStatistics() {
+        synchronized (files) {
+            return String.format("files=%d (%d bytes), hits=%d, misses=%d, evictions=%d",
+                    files.size(), cachedBytes, hits.get(), misses.get(), evictions.get());
+        }
+    }
+    
+    // Called with the lock held; the newest file fits, so it is never the one evicted
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> eldest = files.entrySet().iterator();
+        while (cachedBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            try {
+                // Downloads still reading the file keep their open channel
+                Files.deleteIfExists(directory.resolve(entry.getKey()));
+            } catch (IOException e) {
+                logger.warn("Could not delete cached export {}", entry.getKey(), e);
+            }
+            cachedBytes -= entry.getValue();
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+    
+    // Picks up the files of a previous run, least recently written first
+    private void load() throws IOException {
+        List<Path> existing;
+        try (Stream<Path> listing = Files.list(directory)) {
+            existing = listing.filter(Files::isRegularFile).toList();
+        }
+        List<Path> cached = existing.stream()
+                .filter(path -> !path.getFileName().toString().endsWith(TEMP_SUFFIX))
+                .sorted(Comparator.comparing(path -> path.toFile().lastModified()))
+                .toList();
+        synchronized (files) {
+            for (Path path : cached) {
+                long size = Files.size(path);
+                files.put(path.getFileName().toString(), size);
+                cachedBytes += size;
+            }
+            evict();
+        }
+        // Left over from exports interrupted by a shutdown
+        for (Path path : existing) {
+            if (path.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                Files.deleteIfExists(path);
+            }
+        }
+        logger.info("Export cache in {} holds {} files ({} bytes)", directory, files.size(), cachedBytes);
+    }
+    
+    private static Artifact open(Path path, DocumentExporter exporter) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        return new Artifact(channel, channel.size(), exporter.getContentType(), exporter.getFileExtension());
+    }
+    
+    private static String fileName(Document document, DocumentExporter exporter) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            // The exporter class stands for the renderer and layout that produced the artifact
+            String key = document.getId() + "\0" + exporter.getClass().getName() + "\0" + document.getTitle() + "\0";
+            digest.update(key.getBytes(StandardCharsets.UTF_8));
+            String content = document.getContent();
+            digest.update((content != null ? content : "").getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest()) + "." + exporter.getFileExtension();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package com.markdowncollab.service;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import com.markdowncollab.dto.ExportJobDTO;
+import com.markdowncollab.exception.ExportJobNotFoundException;
+import com.markdowncollab.exception.ExportQueueFullException;
+import com.markdowncollab.model.Document;
+import com.markdowncollab.pattern.factory.DocumentExporter;
+import com.markdowncollab.pattern.factory.DocumentExporterFactory;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+/**
+ * Runs document exports in the background, so slow formats such as PDF never hold a request
+ * thread. A job exports a snapshot of the document taken when it was queued. Jobs wait in one
+ * queue per user and a fixed pool of workers serves the users round robin, so a user queueing
+ * many exports does not hold up everyone else. Status changes are pushed to the user on
+ * /user/queue/exports. Artifacts go to the export cache and finished jobs only keep their cache
+ * key; a job whose artifact was evicted before it was downloaded is queued again, exporting the
+ * document as it is then. Jobs are kept until they expire, and at most a fixed number of them,
+ * dropping the oldest finished jobs first.
+ */
+@Service
+public class ExportJobService {
+    private static final Logger logger = LoggerFactory.getLogger(ExportJobService.class);
+    
+    private final DocumentService documentService;
+    private final ExportCacheService exportCacheService;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final int maxQueued;
+    private final int maxQueuedPerUser;
+    private final int maxJobs;
+    private final long retentionMs;
+    
+    // Added and removed with this held, so the cap holds
+    private final Map<String, ExportJob> jobs = new ConcurrentHashMap<>();
+    // Waiting jobs of each user, and the users in the order they are served; guarded by this
+    private final Map<String, Queue<ExportJob>> waiting = new HashMap<>();
+    private final Deque<String> turns = new ArrayDeque<>();
+    private int queued;
+    
+    private final ExecutorService workers;
+    
+    @Autowired
+    public ExportJobService(
+            DocumentService documentService,
+            ExportCacheService exportCacheService,
+            SimpMessagingTemplate messagingTemplate,
+            @Value("${export.jobs.workers:2}") int workers,
+            @Value("${export.jobs.max-queued:200}") int maxQueued,
+            @Value("${export.jobs.max-queued-per-user:10}") int maxQueuedPerUser,
+            @Value("${export.jobs.max-jobs:1000}") int maxJobs,
+            @Value("${export.jobs.retention-ms:600000}") long retentionMs) {
+        this.documentService = documentService;
+        this.exportCacheService = exportCacheService;
+        this.messagingTemplate = messagingTemplate;
+        this.maxQueued = maxQueued;
+        this.maxQueuedPerUser = maxQueuedPerUser;
+        this.maxJobs = maxJobs;
+        this.retentionMs = retentionMs;
+        this.workers = Executors.newFixedThreadPool(workers, Thread.ofPlatform().name("export-worker-", 0).factory());
+    }
+    
+    /**
+     * Queue an export of a document for the current user.
+     *
+     * @return The queued job
+     * @throws ExportQueueFullException If the user or the server has too many exports waiting
+     */
+    public ExportJobDTO submit(Long documentId, String format) {
+        String username = currentUsername();
+        // Unknown formats and missing access are reported right away rather than by a failed job
+        DocumentExporter exporter = DocumentExporterFactory.createExporter(format);
+        Document snapshot = documentService.getExportSnapshot(documentId);
+        
+        ExportJob job = new ExportJob(UUID.randomUUID().toString(), username, format.toLowerCase(), documentId, exporter);
+        synchronized (this) {
+            if (!makeRoom()) {
+                throw new ExportQueueFullException("Too many exports waiting, try again later");
+            }
+            enqueue(job, snapshot);
+            jobs.put(job.id, job);
+        }
+        
+        logger.info("Queued {} export {} of document {} for user {}", job.format, job.id, documentId, username);
+        return publish(job);
+    }
+    
+    public ExportJobDTO getJob(String jobId) {
+        return find(jobId).toDTO();
+    }
+    
+    /**
+     * The exported document of a finished job. A job whose artifact is no longer cached is
+     * queued again instead.
+     *
+     * @return The artifact, open for reading; null if the job has not finished successfully
+     * @throws ExportQueueFullException If the job has to be queued again but too many exports are waiting
+     */
+    public ExportCacheService.Artifact openArtifact(String jobId) throws IOException {
+        ExportJob job = find(jobId);
+        if (!"done".equals(job.status)) {
+            return null;
+        }
+        ExportCacheService.Artifact artifact = job.takeUncached();
+        if (artifact == null) {
+            artifact = exportCacheService.find(job.key, job.format);
+        }
+        if (artifact == null) {
+            Document snapshot = documentService.getExportSnapshot(job.documentId);
+            synchronized (this) {
+                // Another download may have queued it already
+                if ("done".equals(job.status)) {
+                    enqueue(job, snapshot);
+                }
+            }
+            logger.info("Export {} of document {} was evicted; queued again", job.id, job.documentId);
+            publish(job);
+        }
+        return artifact;
+    }
+    
+    @Scheduled(fixedDelayString = "${export.jobs.sweep-interval-ms:60000}")
+    public synchronized void evictExpired() {
+        LocalDateTime expiry = LocalDateTime.now().minusNanos(retentionMs * 1_000_000);
+        for (Iterator<ExportJob> it = jobs.values().iterator(); it.hasNext();) {
+            ExportJob job = it.next();
+            if (job.finishedAt != null && job.finishedAt.isBefore(expiry)) {
+                job.discard();
+                it.remove();
+            }
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+    
+    // Called with this held
+    private void enqueue(ExportJob job, Document snapshot) {
+        Queue<ExportJob> userJobs = waiting.computeIfAbsent(job.username, user -> new ArrayDeque<>());
+        if (queued >= maxQueued || userJobs.size() >= maxQueuedPerUser) {
+            if (userJobs.isEmpty()) {
+                waiting.remove(job.username);
+            }
+            throw new ExportQueueFullException("Too many exports waiting, try again later");
+        }
+        job.document = snapshot;
+        job.error = null;
+        job.size = null;
+        job.finishedAt = null;
+        job.status = "queued";
+        if (userJobs.isEmpty()) {
+            turns.addLast(job.username);
+        }
+        userJobs.add(job);
+        queued++;
+        
+        // One run per queued job; each run takes whichever job is next in turn
+        workers.execute(this::runNext);
+    }
+    
+    // Called with this held; drops the oldest finished jobs while there are too many jobs
+    private boolean makeRoom() {
+        if (jobs.size() < maxJobs) {
+            return true;
+        }
+        List<ExportJob> finished = jobs.values().stream()
+                .filter(job -> job.finishedAt != null)
+                .sorted(Comparator.comparing((ExportJob job) -> job.finishedAt))
+                .toList();
+        for (ExportJob job : finished) {
+            if (jobs.size() < maxJobs) {
+                break;
+            }
+            job.discard();
+            jobs.remove(job.id);
+        }
+        return jobs.size() < maxJobs;
+    }
+    
+    private void runNext() {
+        ExportJob job;
+        synchronized (this) {
+            String username = turns.pollFirst();
+            if (username == null) {
+                return;
+            }
+            Queue<ExportJob> userJobs = waiting.get(username);
+            job = userJobs.poll();
+            if (userJobs.isEmpty()) {
+                waiting.remove(username);
+            } else {
+                turns.addLast(username);
+            }
+            queued--;
+        }
+        
+        job.status = "running";
+        publish(job);
+        Document document = job.document;
+        try {
+            job.key = exportCacheService.key(document, job.format);
+            ExportCacheService.Artifact artifact = exportCacheService.export(document, job.format);
+            job.size = artifact.size();
+            if (exportCacheService.contains(job.key)) {
+                artifact.close();
+            } else {
+                // Too large for the cache; kept for the first download
+                job.keepUncached(artifact);
+            }
+        } catch (Exception e) {
+            logger.error("Export {} of document {} failed", job.id, job.documentId, e);
+            job.error = e.getMessage() != null ? e.getMessage() : e.toString();
+        } finally {
+            // The snapshot is not needed once the artifact exists, or the export failed
+            job.document = null;
+        }
+        job.finishedAt = LocalDateTime.now();
+        job.status = job.error == null ? "done" : "failed";
+        publish(job);
+    }
+    
+    private ExportJobDTO publish(ExportJob job) {
+        ExportJobDTO dto = job.toDTO();
+        messagingTemplate.convertAndSendToUser(job.username, "/queue/exports", dto);
+        return dto;
+    }
+    
+    // Jobs of other users are reported as missing, not forbidden
+    private ExportJob find(String jobId) {
+        ExportJob job = jobs.get(jobId);
+        if (job == null || !job.username.equals(currentUsername())) {
+            throw new ExportJobNotFoundException("Export job not found: " + jobId);
+        }
+        return job;
+    }
+    
+    private String currentUsername() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null) {
+            throw new AccessDeniedException("User not authenticated");
+        }
+        return authentication.getName();
+    }
+    
+    private static class ExportJob {
+        private final String id;
+        private final String username;
+        private final String format;
+        private final Long documentId;
+        private final DocumentExporter exporter;
+        private final LocalDateTime createdAt = LocalDateTime.now();
+        // Only held while the job waits or runs
+        private volatile Document document;
+        // Cache key of the artifact once exported
+        private volatile String key;
+        // Artifact the cache did not keep, until it is downloaded or the job is dropped
+        private ExportCacheService.Artifact uncached;
+        private volatile String status = "queued";
+        private volatile String error;
+        private volatile Long size;
+        private volatile LocalDateTime finishedAt;
+        
+        ExportJob(String id, String username, String format, Long documentId, DocumentExporter exporter) {
+            this.id = id;
+            this.username = username;
+            this.format = format;
+            this.documentId = documentId;
+            this.exporter = exporter;
+        }
+        
+        synchronized void keepUncached(ExportCacheService.Artifact artifact) {
+            uncached = artifact;
+        }
+        
+        synchronized ExportCacheService.Artifact takeUncached() {
+            ExportCacheService.Artifact artifact = uncached;
+            uncached = null;
+            return artifact;
+        }
+        
+        void discard() {
+            ExportCacheService.Artifact artifact = takeUncached();
+            if (artifact != null) {
+                try {
+                    artifact.close();
+                } catch (IOException e) {
+                    logger.warn("Could not close export {}", id, e);
+                }
+            }
+        }
+        
+        ExportJobDTO toDTO() {
+            ExportJobDTO dto = new ExportJobDTO();
+            dto.setId(id);
+            dto.setDocumentId(documentId);
+            dto.setFormat(format);
+            dto.setStatus(status);
+            dto.setError(error);
+            dto.setContentType(exporter.getContentType());
+            dto.setFileName("document." + exporter.getFileExtension());
+            Long finished = size;
+            dto.setSize(finished != null ? Math.toIntExact(finished) : null);
+            dto.setCreatedAt(createdAt);
+            dto.setFinishedAt(finishedAt);
+            return dto;
+        }
+    }
+}
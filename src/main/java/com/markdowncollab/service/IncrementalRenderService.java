@@ -0,0 +1,134 @@
+package com.markdowncollab.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import com.markdowncollab.dto.RenderedBlockDTO;
+import com.markdowncollab.markdown.MarkdownBlocks;
+import com.markdowncollab.pattern.strategy.MarkdownRenderStrategy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Renders documents block by block and keeps the HTML of the blocks of the last render of each
+ * document. A block is identified by the exact text it is rendered from, so after an edit only
+ * blocks whose text changed are rendered again; that includes every block with links when a link
+ * definition changed. Block IDs are derived from that text, so every viewer of a document gets
+ * the same IDs for the same content, and a preview that sends the IDs it shows learns which
+ * blocks it has to patch. The kept HTML is only a cache: what is returned never depends on who
+ * rendered the document before.
+ */
+@Service
+public class IncrementalRenderService {
+    private final MarkdownService markdownService;
+    private final int maxDocuments;
+    
+    // Access ordered; guarded by its own monitor
+    private final LinkedHashMap<Long, RenderState> states;
+    
+    @Autowired
+    public IncrementalRenderService(
+            MarkdownService markdownService,
+            @Value("${markdown.incremental.max-documents:64}") int maxDocuments) {
+        this.markdownService = markdownService;
+        this.maxDocuments = maxDocuments;
+        this.states = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, RenderState> eldest) {
+                return size() > IncrementalRenderService.this.maxDocuments;
+            }
+        };
+    }
+    
+    /**
+     * Render the content of a document, reusing blocks rendered for the document before.
+     *
+     * @param shownIds IDs of the blocks the caller already shows; other blocks are marked changed
+     * @return The blocks of the document in order
+     */
+    public List<RenderedBlockDTO> render(Long documentId, String content, Collection<String> shownIds) {
+        MarkdownRenderStrategy strategy = markdownService.getRenderStrategy();
+        List<MarkdownBlocks.Block> blocks = MarkdownBlocks.split(content != null ? content : "");
+        String definitions = MarkdownBlocks.linkDefinitions(blocks);
+        List<String> sources = new ArrayList<>(blocks.size());
+        for (MarkdownBlocks.Block block : blocks) {
+            sources.add(MarkdownBlocks.source(block, definitions));
+        }
+        
+        RenderState state;
+        synchronized (states) {
+            state = states.get(documentId);
+            if (state == null || state.strategy != strategy) {
+                state = new RenderState(strategy);
+                states.put(documentId, state);
+            }
+        }
+        List<String> html;
+        synchronized (state) {
+            html = state.update(sources);
+        }
+        
+        Set<String> shown = shownIds != null ? new HashSet<>(shownIds) : Set.of();
+        Map<String, Integer> occurrences = new HashMap<>();
+        List<RenderedBlockDTO> result = new ArrayList<>(sources.size());
+        for (int i = 0; i < sources.size(); i++) {
+            String id = blockId(sources.get(i), occurrences);
+            result.add(new RenderedBlockDTO(id, html.get(i), !shown.contains(id)));
+        }
+        return result;
+    }
+    
+    // Derived from the source; repeated blocks are told apart by how many came before them
+    private static String blockId(String source, Map<String, Integer> occurrences) {
+        String hash;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            hash = HexFormat.of().formatHex(digest.digest(source.getBytes(StandardCharsets.UTF_8)), 0, 12);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+        int occurrence = occurrences.merge(hash, 1, Integer::sum);
+        return occurrence == 1 ? "block-" + hash : "block-" + hash + "-" + occurrence;
+    }
+    
+    private static class RenderState {
+        private final MarkdownRenderStrategy strategy;
+        // HTML of the blocks of the last render by their source
+        private Map<String, String> blocks = Map.of();
+        
+        RenderState(MarkdownRenderStrategy strategy) {
+            this.strategy = strategy;
+        }
+        
+        // The HTML of each source, rendering only sources the last render did not have
+        List<String> update(List<String> sources) {
+            Map<String, String> previous = blocks;
+            Map<String, String> updated = new HashMap<>();
+            List<String> result = new ArrayList<>(sources.size());
+            for (String source : sources) {
+                String html = updated.get(source);
+                if (html == null) {
+                    html = previous.get(source);
+                    if (html == null) {
+                        html = strategy.render(source);
+                    }
+                    updated.put(source, html);
+                }
+                result.add(html);
+            }
+            blocks = updated;
+            return result;
+        }
+    }
+}
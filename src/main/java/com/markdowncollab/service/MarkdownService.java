@@ -1,24 +1,129 @@
 package com.markdowncollab.service;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import com.markdowncollab.pattern.strategy.MarkdownRenderStrategy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+/**
+ * Renders markdown with the active strategy. Rendered HTML is cached by a hash of the content
+ * and the strategy that rendered it, so previewing unchanged content again, or several viewers
+ * of the same revision, render it only once. The cache is bounded by an estimate of the bytes
+ * it holds and evicts the least recently used HTML first. HTML larger than a small share of
+ * that bound is not cached, so one large document cannot push out everything else.
+ */
 @Service
 public class MarkdownService {
+    // Rough per-entry cost of the key and map entry
+    private static final int ENTRY_OVERHEAD_BYTES = 160;
     
-    private MarkdownRenderStrategy renderStrategy;
+    private volatile MarkdownRenderStrategy renderStrategy;
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    
+    // Access ordered; guarded by its own monitor
+    private final LinkedHashMap<RenderKey, String> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
     
     @Autowired
-    public MarkdownService(MarkdownRenderStrategy defaultRenderStrategy) {
+    public MarkdownService(
+            MarkdownRenderStrategy defaultRenderStrategy,
+            @Value("${markdown.render-cache.max-bytes:16777216}") long maxBytes,
+            @Value("${markdown.render-cache.max-entry-bytes:1048576}") long maxEntryBytes) {
         this.renderStrategy = defaultRenderStrategy;
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = Math.min(maxEntryBytes, maxBytes);
+    }
+    
+    public MarkdownRenderStrategy getRenderStrategy() {
+        return renderStrategy;
     }
     
     public void setRenderStrategy(MarkdownRenderStrategy renderStrategy) {
+        // Entries are keyed by strategy, so those of the previous one simply age out
         this.renderStrategy = renderStrategy;
     }
     
     public String renderMarkdown(String markdownContent) {
-        return renderStrategy.render(markdownContent);
+        String content = markdownContent != null ? markdownContent : "";
+        MarkdownRenderStrategy strategy = renderStrategy;
+        RenderKey key = new RenderKey(strategy.getClass().getName(), hash(content));
+        synchronized (cache) {
+            String cached = cache.get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        misses.incrementAndGet();
+        
+        // Rendered outside the lock; two concurrent misses for one content just render twice
+        String html = strategy.render(content);
+        long bytes = estimateBytes(html);
+        if (bytes <= maxEntryBytes) {
+            synchronized (cache) {
+                String previous = cache.put(key, html);
+                cachedBytes += bytes - (previous != null ? estimateBytes(previous) : 0);
+                Iterator<String> eldest = cache.values().iterator();
+                while (cachedBytes > maxBytes && eldest.hasNext()) {
+                    cachedBytes -= estimateBytes(eldest.next());
+                    eldest.remove();
+                    evictions.incrementAndGet();
+                }
+            }
+        }
+        return html;
+    }
+    
+    /**
+     * Render markdown into an output. Content small enough to be cached goes through the cache;
+     * larger content is rendered straight into the output without its HTML ever being a string.
+     */
+    public void renderMarkdown(String markdownContent, Appendable html) throws IOException {
+        String content = markdownContent != null ? markdownContent : "";
+        // HTML is rarely shorter than the markdown it was rendered from
+        if (estimateBytes(content) > maxEntryBytes) {
+            misses.incrementAndGet();
+            renderStrategy.render(content, html);
+            return;
+        }
+        html.append(renderMarkdown(content));
+    }
+    
+    public String getStatistics() {
+        synchronized (cache) {
+            return String.format("entries=%d (%d bytes), hits=%d, misses=%d, evictions=%d",
+                    cache.size(), cachedBytes, hits.get(), misses.get(), evictions.get());
+        }
+    }
+    
+    private static String hash(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private static long estimateBytes(String html) {
+        // Strings hold up to two bytes per char
+        return ENTRY_OVERHEAD_BYTES + 2L * html.length();
+    }
+    
+    private record RenderKey(String strategy, String contentHash) {
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,301 @@
+package com.markdowncollab.service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import com.markdowncollab.diff.MyersDiff;
+import com.markdowncollab.diff.TextDelta;
+import com.markdowncollab.dto.DiffHunkDTO;
+import com.markdowncollab.dto.DiffSegmentDTO;
+import com.markdowncollab.dto.UserDTO;
+import com.markdowncollab.dto.VersionDiffDTO;
+import com.markdowncollab.exception.InvalidDiffRequestException;
+import com.markdowncollab.exception.VersionNotFoundException;
+import com.markdowncollab.model.Version;
+import com.markdowncollab.repository.VersionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+
+/**
+ * Computes what changed between two versions of a document.
+ * Lines are compared with a linear-space Myers diff; at word granularity each changed block
+ * is diffed again by words. The work per diff is capped, and since versions never change
+ * the results are kept in an LRU cache keyed by the version pair, bounded by an estimate of
+ * the bytes it holds.
+ */
+@Service
+public class VersionDiffService {
+    public static final String LINE = "line";
+    public static final String WORD = "word";
+    // Rough per-entry cost of the key and DTOs, and per line or word segment
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+    private static final int ITEM_OVERHEAD_BYTES = 48;
+
+    private final VersionRepository versionRepository;
+    private final DocumentCacheService documentCacheService;
+    private final UserService userService;
+    private final long maxSteps;
+    private final long cacheMaxBytes;
+
+    // Access ordered; guarded by its own monitor
+    private final LinkedHashMap<DiffKey, CachedDiff> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+
+    @Autowired
+    public VersionDiffService(
+            VersionRepository versionRepository,
+            DocumentCacheService documentCacheService,
+            UserService userService,
+            @Value("${versions.diff.max-steps:5000000}") long maxSteps,
+            @Value("${versions.diff.cache-max-bytes:8388608}") long cacheMaxBytes) {
+        this.versionRepository = versionRepository;
+        this.documentCacheService = documentCacheService;
+        this.userService = userService;
+        this.maxSteps = maxSteps;
+        this.cacheMaxBytes = cacheMaxBytes;
+    }
+
+    /**
+     * Diff two versions of the same document.
+     *
+     * @param granularity {@link #LINE} or {@link #WORD}
+     * @param context Unchanged lines shown around each change
+     */
+    public VersionDiffDTO diff(Long fromVersionId, Long toVersionId, String granularity, int context) {
+        if (!LINE.equals(granularity) && !WORD.equals(granularity)) {
+            throw new InvalidDiffRequestException("Unsupported diff granularity: " + granularity);
+        }
+        if (context < 0) {
+            throw new InvalidDiffRequestException("Context must not be negative");
+        }
+        Version from = findVersion(fromVersionId);
+        Version to = findVersion(toVersionId);
+        Long documentId = from.getDocument().getId();
+        if (!documentId.equals(to.getDocument().getId())) {
+            throw new InvalidDiffRequestException("Versions " + fromVersionId + " and " + toVersionId
+                    + " belong to different documents");
+        }
+        UserDTO currentUser = userService.getCurrentUser();
+        if (currentUser == null || !documentCacheService.canAccess(documentId, currentUser.getId())) {
+            throw new AccessDeniedException("You don't have access to this document");
+        }
+
+        DiffKey key = new DiffKey(fromVersionId, toVersionId, granularity, context);
+        synchronized (cache) {
+            CachedDiff cached = cache.get(key);
+            if (cached != null) {
+                return cached.diff();
+            }
+        }
+        // Computed outside the lock; two concurrent misses for one pair just do the work twice
+        VersionDiffDTO diff = diff(from.getContent(), to.getContent(), granularity, context, maxSteps);
+        diff.setFromVersionId(fromVersionId);
+        diff.setToVersionId(toVersionId);
+        cache(key, diff);
+        return diff;
+    }
+
+    private void cache(DiffKey key, VersionDiffDTO diff) {
+        long bytes = estimateBytes(diff);
+        // One diff of two large versions must not push out everything else
+        if (bytes > cacheMaxBytes / 4) {
+            return;
+        }
+        synchronized (cache) {
+            CachedDiff previous = cache.put(key, new CachedDiff(diff, bytes));
+            cachedBytes += bytes - (previous != null ? previous.bytes() : 0);
+            Iterator<CachedDiff> eldest = cache.values().iterator();
+            while (cachedBytes > cacheMaxBytes && eldest.hasNext()) {
+                cachedBytes -= eldest.next().bytes();
+                eldest.remove();
+            }
+        }
+    }
+
+    private static long estimateBytes(VersionDiffDTO diff) {
+        long bytes = ENTRY_OVERHEAD_BYTES;
+        for (DiffHunkDTO hunk : diff.getHunks()) {
+            // Strings hold up to two bytes per char
+            for (String line : hunk.getLines()) {
+                bytes += ITEM_OVERHEAD_BYTES + 2L * line.length();
+            }
+            if (hunk.getWords() != null) {
+                for (DiffSegmentDTO segment : hunk.getWords()) {
+                    bytes += ITEM_OVERHEAD_BYTES + 2L * segment.getText().length();
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private Version findVersion(Long versionId) {
+        return versionRepository.findById(versionId)
+                .orElseThrow(() -> new VersionNotFoundException("Version not found with ID: " + versionId));
+    }
+
+    /**
+     * Diff two texts into hunks, without version IDs.
+     */
+    static VersionDiffDTO diff(String fromText, String toText, String granularity, int context, long maxSteps) {
+        List<String> a = TextDelta.lines(fromText != null ? fromText : "");
+        List<String> b = TextDelta.lines(toText != null ? toText : "");
+        MyersDiff.Budget budget = new MyersDiff.Budget(maxSteps);
+        List<MyersDiff.Edit> edits = MyersDiff.diff(a, b, budget);
+
+        VersionDiffDTO result = new VersionDiffDTO();
+        result.setGranularity(granularity);
+
+        HunkBuilder hunk = null;
+        for (int i = 0; i < edits.size(); i++) {
+            MyersDiff.Edit edit = edits.get(i);
+            if (edit.type() == MyersDiff.Type.EQUAL) {
+                if (hunk == null) {
+                    continue;
+                }
+                int length = edit.aEnd() - edit.aStart();
+                boolean last = i == edits.size() - 1;
+                if (last || length > 2 * context) {
+                    // Trailing context, the next change (if any) starts a new hunk
+                    hunk.context(a, edit.aStart(), Math.min(context, length));
+                    result.getHunks().add(hunk.build(granularity, budget));
+                    hunk = null;
+                } else {
+                    hunk.context(a, edit.aStart(), length);
+                }
+                continue;
+            }
+            if (hunk == null) {
+                MyersDiff.Edit previous = i > 0 ? edits.get(i - 1) : null;
+                int leading = previous != null ? Math.min(context, previous.aEnd() - previous.aStart()) : 0;
+                hunk = new HunkBuilder(edit.aStart() - leading, edit.bStart() - leading);
+                hunk.context(a, edit.aStart() - leading, leading);
+            }
+            if (edit.type() == MyersDiff.Type.DELETE) {
+                hunk.deleted(a, edit.aStart(), edit.aEnd());
+                result.setDeletions(result.getDeletions() + edit.aEnd() - edit.aStart());
+            } else {
+                hunk.inserted(b, edit.bStart(), edit.bEnd());
+                result.setAdditions(result.getAdditions() + edit.bEnd() - edit.bStart());
+            }
+        }
+        if (hunk != null) {
+            result.getHunks().add(hunk.build(granularity, budget));
+        }
+        result.setComplete(!budget.isExhausted());
+        return result;
+    }
+
+    /**
+     * Split text into words, runs of whitespace and single other characters.
+     */
+    static List<String> words(String text) {
+        List<String> tokens = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            char c = text.charAt(start);
+            int end = start + 1;
+            if (Character.isLetterOrDigit(c)) {
+                while (end < text.length() && Character.isLetterOrDigit(text.charAt(end))) {
+                    end++;
+                }
+            } else if (Character.isWhitespace(c)) {
+                while (end < text.length() && Character.isWhitespace(text.charAt(end))) {
+                    end++;
+                }
+            }
+            tokens.add(text.substring(start, end));
+            start = end;
+        }
+        return tokens;
+    }
+
+    private static String stripTerminator(String line) {
+        return line.endsWith("\n") ? line.substring(0, line.length() - 1) : line;
+    }
+
+    private static class HunkBuilder {
+        private final DiffHunkDTO hunk = new DiffHunkDTO();
+        // Changed text of the current block, for word level refinement
+        private final StringBuilder deletedText = new StringBuilder();
+        private final StringBuilder insertedText = new StringBuilder();
+        private final List<String[]> blocks = new ArrayList<>();
+
+        HunkBuilder(int fromStart, int toStart) {
+            hunk.setFromStart(fromStart + 1);
+            hunk.setToStart(toStart + 1);
+        }
+
+        void context(List<String> a, int start, int length) {
+            endBlock();
+            for (int i = start; i < start + length; i++) {
+                hunk.getLines().add(" " + stripTerminator(a.get(i)));
+            }
+            hunk.setFromLines(hunk.getFromLines() + length);
+            hunk.setToLines(hunk.getToLines() + length);
+        }
+
+        void deleted(List<String> a, int start, int end) {
+            for (int i = start; i < end; i++) {
+                hunk.getLines().add("-" + stripTerminator(a.get(i)));
+                deletedText.append(a.get(i));
+            }
+            hunk.setFromLines(hunk.getFromLines() + end - start);
+        }
+
+        void inserted(List<String> b, int start, int end) {
+            for (int i = start; i < end; i++) {
+                hunk.getLines().add("+" + stripTerminator(b.get(i)));
+                insertedText.append(b.get(i));
+            }
+            hunk.setToLines(hunk.getToLines() + end - start);
+        }
+
+        DiffHunkDTO build(String granularity, MyersDiff.Budget budget) {
+            endBlock();
+            // As in unified diffs, an empty range names the line before it
+            if (hunk.getFromLines() == 0) {
+                hunk.setFromStart(hunk.getFromStart() - 1);
+            }
+            if (hunk.getToLines() == 0) {
+                hunk.setToStart(hunk.getToStart() - 1);
+            }
+            if (WORD.equals(granularity)) {
+                List<DiffSegmentDTO> segments = new ArrayList<>();
+                for (String[] block : blocks) {
+                    refine(block[0], block[1], budget, segments);
+                }
+                hunk.setWords(segments);
+            }
+            return hunk;
+        }
+
+        private void endBlock() {
+            if (deletedText.length() > 0 || insertedText.length() > 0) {
+                blocks.add(new String[] { deletedText.toString(), insertedText.toString() });
+                deletedText.setLength(0);
+                insertedText.setLength(0);
+            }
+        }
+
+        private static void refine(String deleted, String inserted, MyersDiff.Budget budget, List<DiffSegmentDTO> segments) {
+            List<String> a = words(deleted);
+            List<String> b = words(inserted);
+            for (MyersDiff.Edit edit : MyersDiff.diff(a, b, budget)) {
+                switch (edit.type()) {
+                    case EQUAL -> segments.add(new DiffSegmentDTO("equal", String.join("", a.subList(edit.aStart(), edit.aEnd()))));
+                    case DELETE -> segments.add(new DiffSegmentDTO("delete", String.join("", a.subList(edit.aStart(), edit.aEnd()))));
+                    case INSERT -> segments.add(new DiffSegmentDTO("insert", String.join("", b.subList(edit.bStart(), edit.bEnd()))));
+                }
+            }
+        }
+    }
+
+    private record DiffKey(Long fromVersionId, Long toVersionId, String granularity, int context) {
+    }
+
+    private record CachedDiff(VersionDiffDTO diff, long bytes) {
+    }
+}
@@ -1,9 +1,14 @@
 package com.markdowncollab.service;
 
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Optional;
+import com.markdowncollab.dto.UserDTO;
+import com.markdowncollab.dto.VersionPageDTO;
+import com.markdowncollab.dto.VersionSummaryDTO;
 import com.markdowncollab.exception.DocumentNotFoundException;
+import com.markdowncollab.exception.InvalidCursorException;
 import com.markdowncollab.exception.UserNotFoundException;
 import com.markdowncollab.exception.VersionNotFoundException;
 import com.markdowncollab.model.Document;
@@ -13,6 +18,8 @@ import com.markdowncollab.repository.DocumentRepository;
 import com.markdowncollab.repository.UserRepository;
 import com.markdowncollab.repository.VersionRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -22,15 +29,27 @@ public class VersionService {
     private final VersionRepository versionRepository;
     private final DocumentRepository documentRepository;
     private final UserRepository userRepository;
+    private final DocumentCacheService documentCacheService;
+    private final CollaborationService collaborationService;
+    private final VersionStorageService versionStorageService;
+    private final UserService userService;
 
     @Autowired
     public VersionService(
             VersionRepository versionRepository,
             DocumentRepository documentRepository,
-            UserRepository userRepository) {
+            UserRepository userRepository,
+            DocumentCacheService documentCacheService,
+            CollaborationService collaborationService,
+            VersionStorageService versionStorageService,
+            UserService userService) {
         this.versionRepository = versionRepository;
         this.documentRepository = documentRepository;
         this.userRepository = userRepository;
+        this.documentCacheService = documentCacheService;
+        this.collaborationService = collaborationService;
+        this.versionStorageService = versionStorageService;
+        this.userService = userService;
     }
 
     @Transactional
@@ -47,42 +66,102 @@ public class VersionService {
         version.setContent(content);
         version.setDescription(description);
         version.setCreatedAt(LocalDateTime.now());
+        versionStorageService.prepare(version);
         
         return versionRepository.save(version);
     }
 
-    public List<Version> getDocumentVersions(Long documentId) {
-        Document document = documentRepository.findById(documentId)
-                .orElseThrow(() -> new DocumentNotFoundException("Document not found"));
-                
-        return versionRepository.findByDocumentOrderByCreatedAtDesc(document);
+    /**
+     * One page of a document's history, newest first, without version content.
+     *
+     * @param cursor The cursor of the previous page, or null for the newest versions
+     * @param limit Maximum number of versions in the page
+     */
+    public VersionPageDTO getVersionSummaries(Long documentId, String cursor, int limit) {
+        checkDocumentAccess(documentId);
+        return summaryPage(versionRepository, documentId, cursor, limit);
+    }
+    
+    // One row more than the page is read, so the last page is known to be the last
+    static VersionPageDTO summaryPage(VersionRepository versionRepository, Long documentId, String cursor, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, 200));
+        PageRequest page = PageRequest.of(0, pageSize + 1);
+        List<VersionSummaryDTO> versions;
+        if (cursor == null || cursor.isEmpty()) {
+            versions = versionRepository.findSummaries(documentId, page);
+        } else {
+            int separator = cursor.lastIndexOf('_');
+            try {
+                LocalDateTime createdAt = LocalDateTime.parse(cursor.substring(0, Math.max(separator, 0)));
+                Long id = Long.valueOf(cursor.substring(separator + 1));
+                versions = versionRepository.findSummariesBefore(documentId, createdAt, id, page);
+            } catch (DateTimeParseException | NumberFormatException e) {
+                throw new InvalidCursorException("Invalid version cursor: " + cursor);
+            }
+        }
+        
+        if (versions.size() <= pageSize) {
+            return new VersionPageDTO(versions, null);
+        }
+        // The last row shown is where the next page starts
+        versions = versions.subList(0, pageSize);
+        VersionSummaryDTO last = versions.get(pageSize - 1);
+        return new VersionPageDTO(versions, last.getCreatedAt() + "_" + last.getId());
+    }
+    
+    /**
+     * The full text of one version, reconstructed from its delta chain if needed.
+     */
+    public String getVersionContent(Long versionId) {
+        Version version = versionRepository.findById(versionId)
+                .orElseThrow(() -> new VersionNotFoundException("Version not found"));
+        checkDocumentAccess(version.getDocument().getId());
+        return version.getContent();
     }
 
     public Optional<Version> getVersion(Long versionId) {
         return versionRepository.findById(versionId);
     }
     
+    private void checkDocumentAccess(Long documentId) {
+        UserDTO currentUser = userService.getCurrentUser();
+        if (currentUser == null || !documentCacheService.canAccess(documentId, currentUser.getId())) {
+            throw new AccessDeniedException("You don't have access to this document");
+        }
+    }
+    
     @Transactional
     public Document restoreVersion(Long versionId, Long userId) {
-        Version version = versionRepository.findById(versionId)
+        // Only the ID is read before pending edits are flushed: a document loaded earlier would
+        // still hold the old journal sequence and write it back over the flushed one
+        Long documentId = versionRepository.findDocumentIdById(versionId)
                 .orElseThrow(() -> new VersionNotFoundException("Version not found"));
         
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new UserNotFoundException("User not found"));
         
-        Document document = version.getDocument();
+        // Pending collaborative edits must not overwrite the restored content later
+        documentCacheService.invalidate(documentId);
+        
+        // Read after the flush, and locked so no version or flush of the document runs in between
+        Document document = documentRepository.lockById(documentId)
+                .orElseThrow(() -> new DocumentNotFoundException("Document not found"));
+        Version version = versionRepository.findById(versionId)
+                .orElseThrow(() -> new VersionNotFoundException("Version not found"));
         document.setContent(version.getContent());
         
         // Save the document with the restored content
         Document savedDocument = documentRepository.save(document);
+        collaborationService.contentReplaced(documentId);
         
         // Create a new version to mark the restoration
         Version newVersion = new Version();
-        newVersion.setDocument(document);
+        newVersion.setDocument(savedDocument);
         newVersion.setAuthor(user);
         newVersion.setContent(version.getContent());
         newVersion.setDescription("Restored from version created at " + version.getCreatedAt());
         newVersion.setCreatedAt(LocalDateTime.now());
+        versionStorageService.prepare(newVersion);
         versionRepository.save(newVersion);
         
         return savedDocument;
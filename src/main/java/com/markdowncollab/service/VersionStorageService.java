@@ -0,0 +1,156 @@
+package com.markdowncollab.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import com.markdowncollab.diff.MyersDiff;
+import com.markdowncollab.diff.TextDelta;
+import com.markdowncollab.model.Version;
+import com.markdowncollab.repository.DocumentRepository;
+import com.markdowncollab.repository.VersionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Stores versions as line deltas against the previous version of their document, with a full
+ * keyframe every {@code keyframeInterval} versions so reconstruction never replays more than
+ * that many deltas. Versions whose diff does not fit the diff budget are stored as keyframes
+ * too. Reconstructed content is cached, bounded by an estimate of its bytes.
+ */
+@Service
+public class VersionStorageService {
+    // Rough per-entry cost of the key and map entry
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final VersionRepository versionRepository;
+    private final DocumentRepository documentRepository;
+    private final int keyframeInterval;
+    private final long diffMaxSteps;
+    private final long cacheMaxBytes;
+
+    // Reconstructed content by version ID, access ordered; versions never change once written.
+    // Guarded by its own monitor
+    private final LinkedHashMap<Long, String> reconstructed = new LinkedHashMap<>(16, 0.75f, true);
+    private long reconstructedBytes;
+
+    @Autowired
+    public VersionStorageService(
+            VersionRepository versionRepository,
+            DocumentRepository documentRepository,
+            @Value("${versions.keyframe-interval:20}") int keyframeInterval,
+            @Value("${versions.diff.max-steps:5000000}") long diffMaxSteps,
+            @Value("${versions.content-cache-max-bytes:8388608}") long cacheMaxBytes) {
+        this.versionRepository = versionRepository;
+        this.documentRepository = documentRepository;
+        this.keyframeInterval = keyframeInterval;
+        this.diffMaxSteps = diffMaxSteps;
+        this.cacheMaxBytes = cacheMaxBytes;
+    }
+
+    /**
+     * Decide how a new version is stored. Must be called once, in the transaction that first saves
+     * the version: the document row stays locked until that transaction ends, so concurrent
+     * versions of one document are numbered one after another.
+     */
+    public void prepare(Version version) {
+        Long documentId = version.getDocument().getId();
+        String content = version.getContent() != null ? version.getContent() : "";
+        // The delta is worked out before taking the lock, against the version that is latest now
+        Version base = latest(documentId);
+        String delta = base != null && !keyframeDue(base) ? encode(base, content) : null;
+        
+        documentRepository.lockById(documentId);
+        version.setContentLength(content.length());
+        version.setJournalSequence(version.getDocument().getJournalSequence());
+        Version previous = latest(documentId);
+        if (previous == null) {
+            version.storeAsKeyframe(1);
+            return;
+        }
+        int sequence = previous.getSequence() + 1;
+        if (keyframeDue(previous)) {
+            version.storeAsKeyframe(sequence);
+            return;
+        }
+        if (base == null || !base.getId().equals(previous.getId())) {
+            // Another version was saved in between
+            delta = encode(previous, content);
+        }
+        if (delta == null || delta.length() >= content.length()) {
+            // Rewritten rather than edited, the delta would not save anything or took too long to find
+            version.storeAsKeyframe(sequence);
+        } else {
+            version.storeAsDelta(delta, sequence, previous.getKeyframeSequence());
+        }
+    }
+    
+    private Version latest(Long documentId) {
+        return versionRepository.findFirstByDocumentIdAndSequenceNotNullOrderBySequenceDesc(documentId).orElse(null);
+    }
+    
+    private boolean keyframeDue(Version previous) {
+        return previous.getSequence() + 1 - previous.getKeyframeSequence() >= keyframeInterval;
+    }
+    
+    // Null if the diff ran out of budget: its delta could be nearly as large as the content
+    private String encode(Version previous, String content) {
+        MyersDiff.Budget budget = new MyersDiff.Budget(diffMaxSteps);
+        String delta = TextDelta.encode(previous.getContent(), content, budget);
+        return budget.isExhausted() ? null : delta;
+    }
+
+    /**
+     * Rebuild the text of a delta version from its keyframe and the deltas after it.
+     */
+    public String reconstruct(Version version) {
+        if (version.isKeyframe()) {
+            return version.getContent();
+        }
+        synchronized (reconstructed) {
+            String cached = reconstructed.get(version.getId());
+            if (cached != null) {
+                return cached;
+            }
+        }
+        List<Version> chain = versionRepository.findByDocumentIdAndSequenceBetweenOrderBySequenceAsc(
+                version.getDocument().getId(), version.getKeyframeSequence(), version.getSequence());
+        String text = null;
+        for (Version link : chain) {
+            if (link.isKeyframe()) {
+                text = link.getContent();
+            } else if (text == null) {
+                throw new IllegalStateException("Version " + version.getId() + " has no keyframe to reconstruct from");
+            } else {
+                text = TextDelta.apply(text, link.getDelta());
+            }
+        }
+        if (text == null) {
+            throw new IllegalStateException("Version " + version.getId() + " has no keyframe to reconstruct from");
+        }
+        cache(version.getId(), text);
+        return text;
+    }
+
+    private void cache(Long versionId, String text) {
+        long bytes = estimateBytes(text);
+        // One large version must not push out everything else
+        if (bytes > cacheMaxBytes / 4) {
+            return;
+        }
+        synchronized (reconstructed) {
+            String previous = reconstructed.put(versionId, text);
+            reconstructedBytes += bytes - (previous != null ? estimateBytes(previous) : 0);
+            Iterator<String> eldest = reconstructed.values().iterator();
+            while (reconstructedBytes > cacheMaxBytes && eldest.hasNext()) {
+                reconstructedBytes -= estimateBytes(eldest.next());
+                eldest.remove();
+            }
+        }
+    }
+
+    private static long estimateBytes(String text) {
+        // Strings hold up to two bytes per char
+        return ENTRY_OVERHEAD_BYTES + 2L * text.length();
+    }
+}
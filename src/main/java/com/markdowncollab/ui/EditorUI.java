@@ -1,13 +1,28 @@
 package com.markdowncollab.ui;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import com.markdowncollab.dto.DiffHunkDTO;
+import com.markdowncollab.collaboration.ot.OperationTransformer;
 import com.markdowncollab.dto.DocumentDTO;
+import com.markdowncollab.dto.DocumentEditMessage;
+import com.markdowncollab.dto.RenderedBlockDTO;
 import com.markdowncollab.dto.UserDTO;
-import com.markdowncollab.pattern.command.DocumentEditor;
+import com.markdowncollab.dto.VersionDiffDTO;
 import com.markdowncollab.service.DocumentService;
 import com.markdowncollab.service.UserService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutorService;
 import org.springframework.stereotype.Component;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
@@ -35,6 +50,7 @@ import javafx.scene.control.TextField;
 import javafx.scene.control.TextInputDialog;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.scene.web.WebView;
 import javafx.stage.Stage;
@@ -43,33 +59,63 @@ import java.io.File;
 import javafx.beans.value.ChangeListener;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import com.markdowncollab.model.Version;
+import com.markdowncollab.dto.VersionPageDTO;
+import com.markdowncollab.dto.VersionSummaryDTO;
+import com.markdowncollab.service.VersionDiffService;
 import com.markdowncollab.service.VersionService;
 import javafx.scene.control.ListCell;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextFlow;
 
 /**
  * Main UI class for the Markdown Editor application.
  */
 @Component
 public class EditorUI {
+    private static final Logger logger = LoggerFactory.getLogger(EditorUI.class);
 
+    private static final int VERSION_PAGE_SIZE = 50;
+    
     private final DocumentService documentService;
     private final UserService userService;
-    private final DocumentEditor documentEditor;
     private final VersionService versionService;
-
+    private final VersionDiffService versionDiffService;
+    
     private Stage primaryStage;
     private TextArea editorTextArea;
     private WebView previewWebView;
     private ListView<String> collaboratorsList;
     private Long currentDocumentId;
     
+    // Blocks shown in the preview by ID, so edits only patch the blocks that changed
+    private Long previewDocumentId;
+    private final Map<String, String> previewBlocks = new HashMap<>();
+    
+    // Edits, undo and redo go to the server one at a time off the FX thread, in the order they were
+    // made, with the security context of the FX thread
+    private final ExecutorService edits = new DelegatingSecurityContextExecutorService(
+            Executors.newSingleThreadExecutor(Thread.ofPlatform().name("editor-edits").daemon().factory()));
+    // Bumped when the editor is reloaded from the server; edits queued before that are dropped
+    private final AtomicLong editSession = new AtomicLong();
+    private long loadedSession;
+    // Highest server revision the editor has seen; only used on the edit thread
+    private long revision;
+    
     @Autowired
-    public EditorUI(DocumentService documentService, UserService userService, DocumentEditor documentEditor, VersionService versionService) {
+    public EditorUI(DocumentService documentService, UserService userService,
+            VersionService versionService, VersionDiffService versionDiffService) {
         this.documentService = documentService;
         this.userService = userService;
-        this.documentEditor = documentEditor;
         this.versionService = versionService;
+        this.versionDiffService = versionDiffService;
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        edits.shutdownNow();
     }
     
     public void initialize(Stage primaryStage) {
@@ -113,9 +159,9 @@ public class EditorUI {
             // Update preview when text changes
             updatePreview(newText);
             
-            // Save changes if a document is open
+            // Send the change if a document is open
             if (currentDocumentId != null) {
-                saveDocumentChanges();
+                sendEdit(oldText, newText);
             }
         };
         
@@ -165,12 +211,12 @@ public class EditorUI {
         // Create the scene with appropriate size
         return new Scene(root, 1200, 800);
     }    
-
+    
     // Add textChangeListener as a class field
     private ChangeListener<String> textChangeListener;
-
+    
     private MenuBar menuBar;
-
+    
     private void updateMenuBar() {
         // Clear existing menus
         menuBar.getMenus().clear();
@@ -238,12 +284,15 @@ public class EditorUI {
         
         // Update menu items based on application state
         saveItem.setDisable(currentDocumentId == null);
-        undoItem.setDisable(currentDocumentId == null || !documentEditor.canUndo(currentDocumentId));
-        redoItem.setDisable(currentDocumentId == null || !documentEditor.canRedo(currentDocumentId));
+        // Undo state changes with every edit, so it is checked whenever the menu opens
+        editMenu.setOnShowing(e -> {
+            undoItem.setDisable(currentDocumentId == null || !documentService.canUndo(currentDocumentId));
+            redoItem.setDisable(currentDocumentId == null || !documentService.canRedo(currentDocumentId));
+        });
         versionHistoryItem.setDisable(currentDocumentId == null);
         exportMenu.setDisable(currentDocumentId == null);
     }
-
+    
     private MenuBar createMenuBar() {
         MenuBar menuBar = new MenuBar();
         
@@ -334,22 +383,85 @@ public class EditorUI {
         
     
     private void updatePreview(String markdownText) {
-        if (markdownText == null || markdownText.isEmpty()) {
-            previewWebView.getEngine().loadContent("<p>No content to preview</p>");
+        if (markdownText == null || markdownText.isBlank()) {
+            showPreview(null, "<p>No content to preview</p>");
             return;
         }
         
-        // Use the document service to render the markdown
-        String htmlContent = documentService.renderMarkdown(markdownText);
+        if (currentDocumentId == null) {
+            // Use the document service to render the markdown
+            showPreview(null, wrapWithStyle(documentService.renderMarkdown(markdownText)));
+            return;
+        }
         
-        // Apply CSS styling
-        final String styledHtmlContent = wrapWithStyle(htmlContent);
-                
-        // Update the preview
+        Long documentId = currentDocumentId;
+        List<RenderedBlockDTO> blocks = documentService.renderBlocks(documentId, markdownText);
+        Platform.runLater(() -> patchPreview(documentId, blocks));
+    }
+    
+    private void showPreview(Long documentId, String html) {
         Platform.runLater(() -> {
-            previewWebView.getEngine().loadContent(styledHtmlContent);
+            previewDocumentId = documentId;
+            previewBlocks.clear();
+            previewWebView.getEngine().loadContent(html);
         });
-
+    }
+    
+    // Runs on the FX thread; replaces only blocks whose HTML differs from what is shown
+    private void patchPreview(Long documentId, List<RenderedBlockDTO> blocks) {
+        WebEngine engine = previewWebView.getEngine();
+        if (!documentId.equals(previewDocumentId) || engine.getLoadWorker().isRunning()) {
+            loadPreview(documentId, blocks);
+            return;
+        }
+        
+        StringBuilder order = new StringBuilder("[");
+        StringBuilder changed = new StringBuilder("{");
+        for (RenderedBlockDTO block : blocks) {
+            order.append(order.length() > 1 ? "," : "").append(jsString(block.getId()));
+            if (!block.getHtml().equals(previewBlocks.get(block.getId()))) {
+                changed.append(changed.length() > 1 ? "," : "")
+                        .append(jsString(block.getId())).append(':').append(jsString(block.getHtml()));
+            }
+        }
+        try {
+            engine.executeScript("patchBlocks(" + order + "]," + changed + "})");
+        } catch (RuntimeException e) {
+            loadPreview(documentId, blocks);
+            return;
+        }
+        previewBlocks.clear();
+        for (RenderedBlockDTO block : blocks) {
+            previewBlocks.put(block.getId(), block.getHtml());
+        }
+    }
+    
+    private void loadPreview(Long documentId, List<RenderedBlockDTO> blocks) {
+        StringBuilder html = new StringBuilder();
+        previewBlocks.clear();
+        for (RenderedBlockDTO block : blocks) {
+            html.append("<div id=\"").append(block.getId()).append("\">").append(block.getHtml()).append("</div>");
+            previewBlocks.put(block.getId(), block.getHtml());
+        }
+        previewDocumentId = documentId;
+        previewWebView.getEngine().loadContent(wrapWithStyle(html.toString()));
+    }
+    
+    private static String jsString(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 16).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                case '\n' -> quoted.append("\\n");
+                case '\r' -> quoted.append("\\r");
+                case '\u2028' -> quoted.append("\\u2028");
+                case '\u2029' -> quoted.append("\\u2029");
+                default -> quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
     }
     
     private String wrapWithStyle(String htmlContent) {
@@ -364,7 +476,26 @@ public class EditorUI {
                 "th, td { border: 1px solid #555; padding: 8px; }\n" +
                 "th { background-color: #3c3f41; }\n" +
                 "tr:nth-child(even) { background-color: #323232; }\n" +
-                "</style></head><body>\n" +
+                "</style><script>\n" +
+                // Puts the blocks in the given order, replacing changed ones and dropping the rest
+                "function patchBlocks(order, changed) {\n" +
+                "  var previous = null;\n" +
+                "  for (var i = 0; i < order.length; i++) {\n" +
+                "    var block = document.getElementById(order[i]);\n" +
+                "    if (changed.hasOwnProperty(order[i])) {\n" +
+                "      var fresh = document.createElement('div');\n" +
+                "      fresh.id = order[i];\n" +
+                "      fresh.innerHTML = changed[order[i]];\n" +
+                "      if (block) block.parentNode.replaceChild(fresh, block);\n" +
+                "      block = fresh;\n" +
+                "    }\n" +
+                "    var next = previous ? previous.nextSibling : document.body.firstChild;\n" +
+                "    if (block !== next) document.body.insertBefore(block, next);\n" +
+                "    previous = block;\n" +
+                "  }\n" +
+                "  while (previous && previous.nextSibling) document.body.removeChild(previous.nextSibling);\n" +
+                "}\n" +
+                "</script></head><body>\n" +
                 htmlContent +
                 "</body></html>";
     }
@@ -431,7 +562,6 @@ public class EditorUI {
             
             dialog.showAndWait().ifPresent(document -> {
                 System.out.println("Selected document - ID: " + document.getId() + ", Title: " + document.getTitle());
-                saveDocumentChanges(); // Save any pending changes before loading new document
                 loadDocument(document.getId());
             });
         } catch (Exception e) {
@@ -476,8 +606,11 @@ public class EditorUI {
                 );
             }
             
-            // Set current document ID
+            // Set current document ID; later edits are based on the loaded revision
             currentDocumentId = documentId;
+            loadedSession = editSession.get();
+            long loadedRevision = document.getRevision();
+            edits.execute(() -> revision = loadedRevision);
             
             // Re-enable text change listener AFTER setting content
             editorTextArea.textProperty().addListener(textChangeListener);
@@ -529,26 +662,72 @@ public class EditorUI {
         }
     }
     
-    // Update saveDocumentChanges method
-    private void saveDocumentChanges() {
-        // Auto-save functionality - now using regular update without version creation
-        if (currentDocumentId != null) {
+    // Sends the changed range as operations, so the edit merges with collaborators' edits and can be undone
+    private void sendEdit(String oldText, String newText) {
+        int prefix = 0;
+        int common = Math.min(oldText.length(), newText.length());
+        while (prefix < common && oldText.charAt(prefix) == newText.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < common - prefix
+                && oldText.charAt(oldText.length() - 1 - suffix) == newText.charAt(newText.length() - 1 - suffix)) {
+            suffix++;
+        }
+        
+        List<DocumentEditMessage> operations = new ArrayList<>(2);
+        int deleted = oldText.length() - prefix - suffix;
+        if (deleted > 0) {
+            DocumentEditMessage delete = new DocumentEditMessage();
+            delete.setOperation(OperationTransformer.DELETE);
+            delete.setPosition(prefix);
+            delete.setLength(deleted);
+            operations.add(delete);
+        }
+        if (newText.length() - prefix - suffix > 0) {
+            DocumentEditMessage insert = new DocumentEditMessage();
+            insert.setOperation(OperationTransformer.INSERT);
+            insert.setPosition(prefix);
+            insert.setText(newText.substring(prefix, newText.length() - suffix));
+            operations.add(insert);
+        }
+        
+        Long documentId = currentDocumentId;
+        long session = loadedSession;
+        edits.execute(() -> {
+            if (session != editSession.get()) {
+                return;
+            }
             try {
-                String currentContent = editorTextArea.getText();
-                
-                // Only save if content has actually changed
-                DocumentDTO currentDocument = documentService.getDocumentById(currentDocumentId);
-                if (!currentContent.equals(currentDocument.getContent())) {
-                    documentService.updateDocument(currentDocumentId, currentContent);
-                    System.out.println("Auto-saved document ID: " + currentDocumentId + " (no version created)");
+                // Each operation is based on the revision the previous one was applied at
+                for (DocumentEditMessage operation : operations) {
+                    operation.setBaseRevision(revision);
+                    updateRevision(documentService.editDocument(documentId, operation));
                 }
             } catch (Exception e) {
-                // Silently log error, don't disrupt user with alerts for auto-save
-                System.err.println("Auto-save failed: " + e.getMessage());
+                logger.warn("Sending an edit of document {} failed, reloading it", documentId, e);
+                resync(documentId);
             }
+        });
+    }
+    
+    // Runs on the edit thread
+    private void updateRevision(List<DocumentEditMessage> applied) {
+        for (DocumentEditMessage operation : applied) {
+            revision = Math.max(revision, operation.getRevision());
         }
     }
     
+    // Runs on the edit thread: the editor no longer matches the server, so edits still queued are
+    // dropped and the document is loaded again
+    private void resync(Long documentId) {
+        editSession.incrementAndGet();
+        Platform.runLater(() -> {
+            if (documentId.equals(currentDocumentId)) {
+                loadDocument(documentId);
+            }
+        });
+    }
     
     private void exportDocument(String format) {
         if (currentDocumentId == null) {
@@ -622,41 +801,59 @@ public class EditorUI {
         }
         
         try {
-            // Get versions from service
-            List<Version> versions = versionService.getDocumentVersions(currentDocumentId);
+            // Get the newest page of versions from service
+            VersionPageDTO firstPage = versionService.getVersionSummaries(currentDocumentId, null, VERSION_PAGE_SIZE);
             
-            if (versions.isEmpty()) {
+            if (firstPage.getVersions().isEmpty()) {
                 showAlert(Alert.AlertType.INFORMATION, "No Versions", 
                         "No versions found", "Save the document to create a version.");
                 return;
             }
             
             // Create a dialog to display versions
-            Dialog<Version> dialog = new Dialog<>();
+            Dialog<VersionSummaryDTO> dialog = new Dialog<>();
             dialog.setTitle("Version History");
             dialog.setHeaderText("Document Version History");
             
             // Create a ListView to show versions
-            ListView<Version> versionListView = new ListView<>();
+            ListView<VersionSummaryDTO> versionListView = new ListView<>();
             versionListView.setPrefWidth(400);
             versionListView.setPrefHeight(300);
             
             // Define a custom cell factory using anonymous inner class
-            versionListView.setCellFactory(param -> new ListCell<Version>() {
+            versionListView.setCellFactory(param -> new ListCell<VersionSummaryDTO>() {
                 @Override
-                protected void updateItem(Version version, boolean empty) {
+                protected void updateItem(VersionSummaryDTO version, boolean empty) {
                     super.updateItem(version, empty);
                     if (empty || version == null) {
                         setText(null);
                     } else {
                         setText(version.getCreatedAt() + " - " + version.getDescription() + 
-                                " (by " + version.getAuthor().getUsername() + ")");
+                                " (by " + version.getAuthorUsername() + ")" +
+                                (version.getSize() != null ? " - " + version.getSize() + " chars" : ""));
                     }
                 }
             });
             
             // Add versions to the list view
-            versionListView.getItems().addAll(versions);
+            List<VersionSummaryDTO> versions = versionListView.getItems();
+            versions.addAll(firstPage.getVersions());
+            
+            // Older versions are fetched a page at a time
+            String[] nextCursor = { firstPage.getNextCursor() };
+            Button loadOlderButton = new Button("Load Older Versions");
+            loadOlderButton.setDisable(nextCursor[0] == null);
+            loadOlderButton.setOnAction(e -> {
+                try {
+                    VersionPageDTO page = versionService.getVersionSummaries(currentDocumentId, nextCursor[0], VERSION_PAGE_SIZE);
+                    versions.addAll(page.getVersions());
+                    nextCursor[0] = page.getNextCursor();
+                    loadOlderButton.setDisable(nextCursor[0] == null);
+                } catch (Exception ex) {
+                    showAlert(Alert.AlertType.ERROR, "Error", 
+                            "Failed to load older versions", ex.getMessage());
+                }
+            });
             
             // Add buttons
             ButtonType restoreButtonType = new ButtonType("Restore", ButtonBar.ButtonData.OK_DONE);
@@ -667,12 +864,26 @@ public class EditorUI {
             Node restoreButton = dialog.getDialogPane().lookupButton(restoreButtonType);
             restoreButton.setDisable(true);
             
+            // Show what the selected version changed compared to the one before it
+            Button showChangesButton = new Button("Show Changes");
+            showChangesButton.setDisable(true);
+            showChangesButton.setOnAction(e -> {
+                int index = versionListView.getSelectionModel().getSelectedIndex();
+                // Versions are listed newest first
+                if (index >= 0 && index + 1 < versions.size()) {
+                    showVersionChanges(versions.get(index + 1), versions.get(index));
+                }
+            });
+            
             versionListView.getSelectionModel().selectedItemProperty().addListener((obs, old, newVal) -> {
                 restoreButton.setDisable(newVal == null);
+                int index = versionListView.getSelectionModel().getSelectedIndex();
+                showChangesButton.setDisable(newVal == null || index + 1 >= versions.size());
             });
             
             // Set content
-            dialog.getDialogPane().setContent(versionListView);
+            VBox content = new VBox(10, versionListView, new HBox(10, showChangesButton, loadOlderButton));
+            dialog.getDialogPane().setContent(content);
             
             // Set result converter
             dialog.setResultConverter(dialogButton -> {
@@ -683,7 +894,7 @@ public class EditorUI {
             });
             
             // Show dialog and handle result
-            Optional<Version> result = dialog.showAndWait();
+            Optional<VersionSummaryDTO> result = dialog.showAndWait();
             result.ifPresent(version -> {
                 try {
                     versionService.restoreVersion(version.getId(), userService.getCurrentUser().getId());
@@ -701,6 +912,48 @@ public class EditorUI {
         }
     }
     
+    private void showVersionChanges(VersionSummaryDTO older, VersionSummaryDTO newer) {
+        try {
+            VersionDiffDTO diff = versionDiffService.diff(older.getId(), newer.getId(), VersionDiffService.LINE, 3);
+            
+            TextFlow changes = new TextFlow();
+            changes.setPadding(new Insets(10));
+            for (DiffHunkDTO hunk : diff.getHunks()) {
+                changes.getChildren().add(diffLine("@@ -" + hunk.getFromStart() + "," + hunk.getFromLines() +
+                        " +" + hunk.getToStart() + "," + hunk.getToLines() + " @@", Color.GRAY));
+                for (String line : hunk.getLines()) {
+                    Color color = line.startsWith("+") ? Color.LIMEGREEN : line.startsWith("-") ? Color.INDIANRED : Color.LIGHTGRAY;
+                    changes.getChildren().add(diffLine(line, color));
+                }
+            }
+            if (diff.getHunks().isEmpty()) {
+                changes.getChildren().add(diffLine("No changes", Color.GRAY));
+            }
+            
+            ScrollPane scrollPane = new ScrollPane(changes);
+            scrollPane.setPrefSize(700, 500);
+            scrollPane.setFitToWidth(true);
+            
+            Dialog<Void> dialog = new Dialog<>();
+            dialog.setTitle("Version Changes");
+            dialog.setHeaderText(newer.getDescription() + ": " + diff.getAdditions() + " lines added, " +
+                    diff.getDeletions() + " lines removed" + (diff.isComplete() ? "" : " (approximate)"));
+            dialog.getDialogPane().setContent(scrollPane);
+            dialog.getDialogPane().getButtonTypes().add(ButtonType.CLOSE);
+            dialog.showAndWait();
+        } catch (Exception e) {
+            showAlert(Alert.AlertType.ERROR, "Error", 
+                    "Failed to compare versions", e.getMessage());
+        }
+    }
+    
+    private Text diffLine(String line, Color color) {
+        Text text = new Text(line + "\n");
+        text.setFill(color);
+        text.setFont(Font.font("Monospaced", 12));
+        return text;
+    }
+    
     private void showInviteDialog() {
         if (currentDocumentId == null) {
             showAlert(Alert.AlertType.WARNING, "No Document", 
@@ -926,19 +1179,63 @@ public class EditorUI {
     }
     
     private void undo() {
-        if (currentDocumentId != null && documentEditor.canUndo(currentDocumentId)) {
-            documentEditor.undo(currentDocumentId);
-            // Update UI after undo
-            loadDocument(currentDocumentId);
+        if (currentDocumentId != null) {
+            // Only this user's newest edit is reverted
+            revert(documentService::undo);
         }
     }
     
     private void redo() {
-        if (currentDocumentId != null && documentEditor.canRedo(currentDocumentId)) {
-            documentEditor.redo(currentDocumentId);
-            // Update UI after redo
-            loadDocument(currentDocumentId);
+        if (currentDocumentId != null) {
+            revert(documentService::redo);
+        }
+    }
+    
+    // Undo and redo queue behind the edits already made, then apply what the server did to the editor
+    private void revert(Function<Long, List<DocumentEditMessage>> revert) {
+        Long documentId = currentDocumentId;
+        long session = loadedSession;
+        edits.execute(() -> {
+            if (session != editSession.get()) {
+                return;
+            }
+            try {
+                List<DocumentEditMessage> applied = revert.apply(documentId);
+                updateRevision(applied);
+                Platform.runLater(() -> {
+                    if (session == editSession.get() && documentId.equals(currentDocumentId)) {
+                        applyToEditor(applied);
+                    }
+                });
+            } catch (Exception e) {
+                logger.warn("Undo or redo of document {} failed, reloading it", documentId, e);
+                resync(documentId);
+            }
+        });
+    }
+    
+    // Applies operations to the editor in place, keeping the rest of the text and the scroll position
+    private void applyToEditor(List<DocumentEditMessage> operations) {
+        if (operations.isEmpty()) {
+            return;
+        }
+        editorTextArea.textProperty().removeListener(textChangeListener);
+        try {
+            for (DocumentEditMessage operation : operations) {
+                int length = editorTextArea.getLength();
+                int position = Math.max(0, Math.min(operation.getPosition(), length));
+                if (OperationTransformer.INSERT.equals(operation.getOperation())) {
+                    editorTextArea.insertText(position, operation.getText() != null ? operation.getText() : "");
+                } else if (OperationTransformer.DELETE.equals(operation.getOperation())) {
+                    editorTextArea.deleteText(position, Math.min(length, position + operation.getLength()));
+                } else if (OperationTransformer.REPLACE.equals(operation.getOperation())) {
+                    editorTextArea.setText(operation.getText());
+                }
+            }
+        } finally {
+            editorTextArea.textProperty().addListener(textChangeListener);
         }
+        updatePreview(editorTextArea.getText());
     }
     
     private void showAlert(Alert.AlertType type, String title, String header, String content) {
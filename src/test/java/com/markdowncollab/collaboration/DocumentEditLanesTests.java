@@ -0,0 +1,81 @@
+package com.markdowncollab.collaboration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import com.markdowncollab.exception.EditQueueFullException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class DocumentEditLanesTests {
+
+	private final DocumentEditLanes lanes = new DocumentEditLanes(10_000);
+
+	@AfterEach
+	void shutdown() {
+		lanes.shutdown();
+	}
+
+	@Test
+	void editsToOneDocumentRunInSubmissionOrder() throws Exception {
+		List<Integer> applied = new ArrayList<>();
+		List<CompletableFuture<Void>> results = new ArrayList<>();
+		for (int i = 0; i < 5_000; i++) {
+			int edit = i;
+			results.add(lanes.submit(1L, () -> applied.add(edit)));
+		}
+		CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+
+		assertThat(applied).hasSize(5_000).isSorted();
+	}
+
+	@Test
+	void blockedDocumentDoesNotDelayOthers() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		lanes.submit(1L, () -> awaitQuietly(release));
+
+		lanes.submit(2L, () -> { }).get(10, TimeUnit.SECONDS);
+		release.countDown();
+	}
+
+	@Test
+	void failedEditCompletesExceptionallyAndLaneContinues() throws Exception {
+		CompletableFuture<Void> failed = lanes.submit(1L, () -> {
+			throw new IllegalStateException("boom");
+		});
+		CompletableFuture<Void> next = lanes.submit(1L, () -> { });
+
+		next.get(10, TimeUnit.SECONDS);
+		assertThat(failed).isCompletedExceptionally();
+	}
+
+	@Test
+	void rejectsEditsBeyondQueueLimit() {
+		DocumentEditLanes small = new DocumentEditLanes(1);
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			small.submit(1L, () -> awaitQuietly(release));
+			// The first task may still be queued or already running, so fill the queue until it rejects
+			assertThatThrownBy(() -> {
+				small.submit(1L, () -> { });
+				small.submit(1L, () -> { });
+			}).isInstanceOf(EditQueueFullException.class);
+		} finally {
+			release.countDown();
+			small.shutdown();
+		}
+	}
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
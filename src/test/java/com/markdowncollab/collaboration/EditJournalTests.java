@@ -0,0 +1,164 @@
+package com.markdowncollab.collaboration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import com.markdowncollab.dto.DocumentEditMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class EditJournalTests {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void replaysAppendedOperationsInOrder() throws Exception {
+		EditJournal journal = open();
+		journal.append(1L, 1, List.of(insert(0, "héllo"), insert(5, " world"))).get(10, TimeUnit.SECONDS);
+		journal.append(2L, 1, List.of(delete(3, 2))).get(10, TimeUnit.SECONDS);
+		journal.append(1L, 3, List.of(insert(11, "!"))).get(10, TimeUnit.SECONDS);
+		journal.close();
+
+		List<EditJournal.Entry> entries = replay();
+
+		assertThat(entries).extracting(EditJournal.Entry::documentId).containsExactly(1L, 1L, 2L, 1L);
+		assertThat(entries).extracting(EditJournal.Entry::sequence).containsExactly(1L, 2L, 1L, 3L);
+		assertThat(entries.get(0).operation().getText()).isEqualTo("héllo");
+		assertThat(entries.get(2).operation().getOperation()).isEqualTo("delete");
+		assertThat(entries.get(2).operation().getLength()).isEqualTo(2);
+	}
+
+	@Test
+	void stopsAtTornRecord() throws Exception {
+		EditJournal journal = open();
+		journal.append(1L, 1, List.of(insert(0, "a"), insert(1, "b"))).get(10, TimeUnit.SECONDS);
+		journal.close();
+		Path segment = segments().get(0);
+		byte[] bytes = Files.readAllBytes(segment);
+		Files.write(segment, Arrays.copyOf(bytes, bytes.length - 3));
+
+		assertThat(replay()).extracting(EditJournal.Entry::sequence).containsExactly(1L);
+	}
+
+	@Test
+	void stopsAtCorruptRecord() throws Exception {
+		EditJournal journal = open();
+		journal.append(1L, 1, List.of(insert(0, "a"), insert(1, "b"))).get(10, TimeUnit.SECONDS);
+		journal.close();
+		Path segment = segments().get(0);
+		byte[] bytes = Files.readAllBytes(segment);
+		bytes[bytes.length - 1] ^= 0x7f;
+		Files.write(segment, bytes, StandardOpenOption.TRUNCATE_EXISTING);
+
+		assertThat(replay()).extracting(EditJournal.Entry::sequence).containsExactly(1L);
+	}
+
+	@Test
+	void compactionMergesConsecutiveEditsOfOneUser() {
+		List<EditJournal.Entry> entries = List.of(
+				entry(1, insert(0, "h")), entry(2, insert(1, "i")), entry(3, insert(1, "-")),
+				entry(4, delete(2, 1)), entry(5, delete(1, 1)),
+				entry(6, insert(0, "x", 8L)));
+
+		List<EditJournal.Entry> compacted = EditJournal.compact(entries, Map.of(1L, 6L), Map.of(), 0);
+
+		assertThat(compacted).extracting(EditJournal.Entry::firstSequence).containsExactly(1L, 4L, 6L);
+		assertThat(compacted).extracting(EditJournal.Entry::sequence).containsExactly(3L, 5L, 6L);
+		assertThat(compacted.get(0).operation().getText()).isEqualTo("h-i");
+		assertThat(compacted.get(1).operation().getPosition()).isEqualTo(1);
+		assertThat(compacted.get(1).operation().getLength()).isEqualTo(2);
+	}
+
+	@Test
+	void compactionDropsSnapshottedAndExpiredEditsButKeepsUnpersisted() {
+		List<EditJournal.Entry> entries = List.of(
+				entry(1, insert(0, "a")), entry(2, insert(5, "b")), entry(3, insert(9, "c")), entry(4, insert(0, "d")));
+		long retainAfter = 100;
+
+		List<EditJournal.Entry> compacted = EditJournal.compact(entries, Map.of(1L, 3L), Map.of(1L, 1L), retainAfter);
+
+		assertThat(compacted).extracting(EditJournal.Entry::sequence).containsExactly(2L, 3L, 4L);
+
+		List<EditJournal.Entry> expired = List.of(new EditJournal.Entry(1L, 1, 1, 50, insert(0, "a")), entry(2, insert(0, "b")));
+		assertThat(EditJournal.compact(expired, Map.of(1L, 2L), Map.of(), retainAfter))
+				.extracting(EditJournal.Entry::sequence).containsExactly(2L);
+	}
+
+	@Test
+	void compactsSealedSegmentsInPlace() throws Exception {
+		EditJournal journal = new EditJournal(true, directory.toString(), 1, false, 60_000, 0);
+		journal.replay(entry -> { });
+		journal.start();
+		journal.append(1L, 1, List.of(insert(0, "a"), insert(1, "b"))).get(10, TimeUnit.SECONDS);
+		journal.append(1L, 3, List.of(insert(2, "c"))).get(10, TimeUnit.SECONDS);
+		journal.markPersisted(1L, 2);
+
+		assertThat(journal.compactNext(documentIds -> Map.of())).isTrue();
+		assertThat(journal.compactNext(documentIds -> Map.of())).isFalse();
+		journal.close();
+
+		List<EditJournal.Entry> entries = replay();
+		assertThat(entries).extracting(EditJournal.Entry::sequence).containsExactly(2L, 3L);
+		assertThat(entries.get(0).operation().getText()).isEqualTo("ab");
+
+		journal = open();
+		journal.markPersisted(1L, 3);
+		journal.compactNext(documentIds -> Map.of(1L, 3L));
+		journal.close();
+		assertThat(replay()).extracting(EditJournal.Entry::sequence).containsExactly(3L);
+	}
+
+	private EditJournal open() throws Exception {
+		EditJournal journal = new EditJournal(true, directory.toString(), 1 << 20, false, 60_000, 0);
+		journal.replay(entry -> { });
+		journal.start();
+		return journal;
+	}
+
+	private List<EditJournal.Entry> replay() throws Exception {
+		List<EditJournal.Entry> entries = new ArrayList<>();
+		new EditJournal(true, directory.toString(), 1 << 20, false, 60_000, 0).replay(entries::add);
+		return entries;
+	}
+
+	private List<Path> segments() throws Exception {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.sorted().toList();
+		}
+	}
+
+	private static EditJournal.Entry entry(long sequence, DocumentEditMessage operation) {
+		return new EditJournal.Entry(1L, sequence, sequence, 1_000, operation);
+	}
+
+	private static DocumentEditMessage insert(int position, String text) {
+		return insert(position, text, 7L);
+	}
+
+	private static DocumentEditMessage insert(int position, String text, Long userId) {
+		DocumentEditMessage message = new DocumentEditMessage();
+		message.setUserId(userId);
+		message.setOperation("insert");
+		message.setPosition(position);
+		message.setText(text);
+		return message;
+	}
+
+	private static DocumentEditMessage delete(int position, int length) {
+		DocumentEditMessage message = new DocumentEditMessage();
+		message.setUserId(7L);
+		message.setOperation("delete");
+		message.setPosition(position);
+		message.setLength(length);
+		return message;
+	}
+}
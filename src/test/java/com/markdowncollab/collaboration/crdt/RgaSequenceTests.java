@@ -0,0 +1,179 @@
+package com.markdowncollab.collaboration.crdt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class RgaSequenceTests {
+
+	@Test
+	void concurrentInsertsAtSameOriginConvergeInEitherOrder() {
+		RgaSequence left = new RgaSequence("ac");
+		RgaSequence right = new RgaSequence("ac");
+		CharId origin = new CharId(RgaSequence.INITIAL_SITE, 1);
+		CharId fromA = new CharId("a", 3);
+		CharId fromB = new CharId("b", 3);
+
+		left.integrateInsert(origin, fromA, "X");
+		left.integrateInsert(origin, fromB, "Y");
+		right.integrateInsert(origin, fromB, "Y");
+		right.integrateInsert(origin, fromA, "X");
+
+		assertThat(left.text()).isEqualTo(right.text()).isEqualTo("aYXc");
+	}
+
+	@Test
+	void continuedTypingExtendsRun() {
+		RgaSequence sequence = new RgaSequence("");
+		sequence.integrateInsert(null, new CharId("a", 1), "he");
+		sequence.integrateInsert(new CharId("a", 2), new CharId("a", 3), "llo");
+
+		assertThat(sequence.text()).isEqualTo("hello");
+		assertThat(sequence.runs()).hasSize(1);
+	}
+
+	@Test
+	void deleteSplitsRunAndReportsVisiblePosition() {
+		RgaSequence sequence = new RgaSequence("abcdef");
+
+		List<RgaSequence.DeletedRange> removed = sequence.integrateDelete(new CharId(RgaSequence.INITIAL_SITE, 3), 2);
+
+		assertThat(sequence.text()).isEqualTo("abef");
+		assertThat(removed).singleElement().satisfies(range -> {
+			assertThat(range.position()).isEqualTo(2);
+			assertThat(range.length()).isEqualTo(2);
+		});
+		// Inserting after a deleted character still works
+		assertThat(sequence.integrateInsert(new CharId(RgaSequence.INITIAL_SITE, 4), new CharId("a", 7), "X")).isEqualTo(2);
+		assertThat(sequence.text()).isEqualTo("abXef");
+	}
+
+	@Test
+	void duplicateInsertIsIgnored() {
+		RgaSequence sequence = new RgaSequence("ab");
+		CharId id = new CharId("a", 3);
+
+		assertThat(sequence.integrateInsert(null, id, "X")).isZero();
+		assertThat(sequence.integrateInsert(null, id, "X")).isEqualTo(-1);
+		assertThat(sequence.text()).isEqualTo("Xab");
+	}
+
+	@Test
+	void insertOverlappingKnownIdsIsRejected() {
+		RgaSequence sequence = new RgaSequence("ab");
+		sequence.integrateInsert(null, new CharId("a", 5), "XY");
+
+		// Starts at a new id, but its second character would take the id of X
+		assertThatThrownBy(() -> sequence.integrateInsert(null, new CharId("a", 4), "PQ"))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThat(sequence.integrateInsert(null, new CharId("a", 3), "P")).isEqualTo(2);
+		assertThat(sequence.text()).isEqualTo("XYPab");
+	}
+
+	@Test
+	void reportedPositionsMatchText() {
+		RgaSequence sequence = new RgaSequence("The quick brown fox");
+		StringBuilder expected = new StringBuilder("The quick brown fox");
+		Random random = new Random(7);
+
+		for (int i = 0; i < 2000; i++) {
+			if (expected.length() > 0 && random.nextInt(3) == 0) {
+				int position = random.nextInt(expected.length());
+				int length = 1 + random.nextInt(Math.min(8, expected.length() - position));
+				for (RgaSequence.DeletedRange target : sequence.idsInRange(position, length)) {
+					for (RgaSequence.DeletedRange range : sequence.integrateDelete(target.first(), target.length())) {
+						expected.delete(range.position(), range.position() + range.length());
+					}
+				}
+			} else {
+				int position = random.nextInt(expected.length() + 1);
+				String text = Character.toString('a' + random.nextInt(26));
+				CharId id = new CharId("s" + random.nextInt(3), sequence.nextClock());
+				assertThat(sequence.integrateInsert(sequence.originAt(position), id, text)).isEqualTo(position);
+				expected.insert(position, text);
+			}
+			assertThat(sequence.visibleLength()).isEqualTo(expected.length());
+		}
+		assertThat(sequence.text()).isEqualTo(expected.toString());
+	}
+
+	@Test
+	void compactionKeepsTombstoneBeforeUnacknowledgedInsert() {
+		RgaSequence sequence = new RgaSequence("abc");
+		sequence.integrateDelete(new CharId(RgaSequence.INITIAL_SITE, 2), 1);
+		// Inserted after the tombstone by a replica that had not seen the delete
+		sequence.integrateInsert(new CharId(RgaSequence.INITIAL_SITE, 2), new CharId("a", 4), "X");
+
+		assertThat(sequence.compact(1)).isZero();
+		assertThat(sequence.compact(2)).isEqualTo(1);
+		assertThat(sequence.text()).isEqualTo("aXc");
+		assertThat(sequence.runs()).hasSize(3);
+		assertThat(sequence.tombstones()).isZero();
+		// A resent insert of the removed character is still recognised as integrated
+		assertThat(sequence.integrateInsert(null, new CharId(RgaSequence.INITIAL_SITE, 2), "b")).isEqualTo(-1);
+	}
+
+	@Test
+	void compactedReplicaPlacesLaterInsertsLikeFullReplica() {
+		RgaSequence compacted = new RgaSequence("abcdefgh");
+		RgaSequence full = new RgaSequence("abcdefgh");
+		Random random = new Random(11);
+
+		List<CharId> deleted = new ArrayList<>();
+
+		applyRandomEdits(random, compacted, full, deleted, 300);
+		long stable = compacted.version();
+		long lagClock = compacted.nextClock();
+		int deletedByStable = deleted.size();
+		applyRandomEdits(random, compacted, full, deleted, 300);
+		// Characters deleted up to the stable version are no longer referred to by anyone
+		deleted.subList(0, deletedByStable).clear();
+
+		assertThat(compacted.compact(stable)).isPositive();
+		assertThat(compacted.text()).isEqualTo(full.text());
+
+		// A replica that has only seen the stable version keeps inserting concurrently
+		for (int i = 0; i < 300; i++) {
+			if (random.nextBoolean()) {
+				int position = random.nextInt(full.visibleLength() + 1);
+				CharId origin = full.originAt(position);
+				CharId id = new CharId("lag", lagClock);
+				lagClock += 2;
+				compacted.integrateInsert(origin, id, "L");
+				full.integrateInsert(origin, id, "L");
+			} else {
+				applyRandomEdits(random, compacted, full, deleted, 1);
+			}
+			assertThat(compacted.text()).isEqualTo(full.text());
+		}
+		assertThat(compacted.runs().size()).isLessThan(full.runs().size());
+	}
+
+	// Inserts sometimes follow a deleted character, as from a replica that had not seen the delete yet
+	private static void applyRandomEdits(Random random, RgaSequence first, RgaSequence second, List<CharId> deleted, int count) {
+		for (int i = 0; i < count; i++) {
+			int visible = second.visibleLength();
+			if (visible > 0 && random.nextInt(3) == 0) {
+				int position = random.nextInt(visible);
+				int length = 1 + random.nextInt(Math.min(5, visible - position));
+				for (RgaSequence.DeletedRange target : second.idsInRange(position, length)) {
+					first.integrateDelete(target.first(), target.length());
+					second.integrateDelete(target.first(), target.length());
+					deleted.add(target.first());
+				}
+			} else {
+				CharId origin = !deleted.isEmpty() && random.nextInt(4) == 0
+						? deleted.get(random.nextInt(deleted.size()))
+						: second.originAt(random.nextInt(visible + 1));
+				CharId id = new CharId("s" + random.nextInt(3), Math.max(first.nextClock(), second.nextClock()));
+				String text = Character.toString('a' + random.nextInt(26));
+				first.integrateInsert(origin, id, text);
+				second.integrateInsert(origin, id, text);
+			}
+		}
+	}
+}
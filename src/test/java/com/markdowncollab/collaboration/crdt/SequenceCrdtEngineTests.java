@@ -0,0 +1,74 @@
+package com.markdowncollab.collaboration.crdt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.markdowncollab.collaboration.ot.OperationTransformer;
+import com.markdowncollab.dto.DocumentEditMessage;
+import com.markdowncollab.exception.InvalidEditException;
+import com.markdowncollab.model.CollaborationMode;
+import com.markdowncollab.model.Document;
+import org.junit.jupiter.api.Test;
+
+class SequenceCrdtEngineTests {
+
+	private final SequenceCrdtEngine engine = new SequenceCrdtEngine(600_000, 1024);
+	private final Document document = document("abc");
+
+	@Test
+	void clientsInsertUnderTheirOwnSites() {
+		assertThat(engine.apply(document, insert(7L, "4@7", "X"))).hasSize(1);
+		DocumentEditMessage fromOtherTab = insert(7L, "5@7.tab2", "Y");
+		fromOtherTab.setOriginId("4@7");
+		assertThat(engine.apply(document, fromOtherTab)).hasSize(1);
+
+		assertThat(document.getContent()).isEqualTo("abcXY");
+	}
+
+	@Test
+	void insertsUnderOtherSitesAreRejected() {
+		for (String itemId : new String[] { "4@8", "4@70", "4@" + SequenceCrdtEngine.SERVER_SITE, "4@" + RgaSequence.INITIAL_SITE }) {
+			assertThatThrownBy(() -> engine.apply(document, insert(7L, itemId, "X"))).as(itemId)
+					.isInstanceOf(InvalidEditException.class);
+		}
+		assertThat(document.getContent()).isEqualTo("abc");
+	}
+
+	@Test
+	void insertsWithClocksAheadOfTheDocumentAreRejected() {
+		assertThatThrownBy(() -> engine.apply(document, insert(7L, "5@7", "X"))).isInstanceOf(InvalidEditException.class);
+		assertThatThrownBy(() -> engine.apply(document, insert(7L, "0@7", "X"))).isInstanceOf(InvalidEditException.class);
+		assertThatThrownBy(() -> engine.apply(document, insert(7L, Long.MAX_VALUE + "@7", "X"))).isInstanceOf(InvalidEditException.class);
+
+		assertThat(document.getContent()).isEqualTo("abc");
+	}
+
+	@Test
+	void insertsReusingKnownIdsAreRejected() {
+		engine.apply(document, insert(7L, "4@7", "XY"));
+
+		// A resend of the same insert is ignored, one overlapping it part way is rejected
+		assertThat(engine.apply(document, insert(7L, "4@7", "XY"))).isEmpty();
+		assertThatThrownBy(() -> engine.apply(document, insert(7L, "3@7", "PQ"))).isInstanceOf(InvalidEditException.class);
+		assertThat(document.getContent()).isEqualTo("abcXY");
+	}
+
+	private static DocumentEditMessage insert(Long userId, String itemId, String text) {
+		DocumentEditMessage message = new DocumentEditMessage();
+		message.setUserId(userId);
+		message.setOperation(OperationTransformer.INSERT);
+		message.setItemId(itemId);
+		message.setOriginId("3@" + RgaSequence.INITIAL_SITE);
+		message.setText(text);
+		message.setBaseRevision(0L);
+		return message;
+	}
+
+	private static Document document(String content) {
+		Document document = new Document();
+		document.setId(1L);
+		document.setContent(content);
+		document.setCollaborationMode(CollaborationMode.CRDT);
+		return document;
+	}
+}
@@ -0,0 +1,80 @@
+package com.markdowncollab.collaboration.ot;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import com.markdowncollab.dto.DocumentEditMessage;
+import org.junit.jupiter.api.Test;
+
+class OperationTransformerTests {
+
+	@Test
+	void concurrentEditsConvergeInEitherOrder() {
+		String text = "hello world";
+		List<DocumentEditMessage> candidates = List.of(
+				insert(0, "A"), insert(5, "B"), insert(11, "C"),
+				delete(0, 3), delete(4, 4), delete(2, 9));
+
+		for (DocumentEditMessage first : candidates) {
+			for (DocumentEditMessage second : candidates) {
+				if (isInsert(first) && isInsert(second) && first.getPosition() == second.getPosition()) {
+					continue; // Ties are resolved by server order, not symmetrically
+				}
+				String viaFirst = apply(apply(text, List.of(first)), OperationTransformer.transform(List.of(second), first));
+				String viaSecond = apply(apply(text, List.of(second)), OperationTransformer.transform(List.of(first), second));
+				assertThat(viaFirst).isEqualTo(viaSecond);
+			}
+		}
+	}
+
+	@Test
+	void deleteAroundConcurrentInsertKeepsInsertedText() {
+		List<DocumentEditMessage> transformed = OperationTransformer.transform(List.of(delete(2, 6)), insert(4, "xyz"));
+
+		assertThat(apply("abcdefghij", List.of(insert(4, "xyz"))))
+				.isEqualTo("abcdxyzefghij");
+		assertThat(apply("abcdxyzefghij", transformed)).isEqualTo("abxyzij");
+	}
+
+	@Test
+	void operationsAfterReplaceAreDropped() {
+		DocumentEditMessage replace = new DocumentEditMessage();
+		replace.setOperation(OperationTransformer.REPLACE);
+		replace.setText("new");
+
+		assertThat(OperationTransformer.transform(insert(1, "x"), replace)).isEmpty();
+	}
+
+	private static boolean isInsert(DocumentEditMessage op) {
+		return OperationTransformer.INSERT.equals(op.getOperation());
+	}
+
+	private static DocumentEditMessage insert(int position, String text) {
+		DocumentEditMessage op = new DocumentEditMessage();
+		op.setOperation(OperationTransformer.INSERT);
+		op.setPosition(position);
+		op.setText(text);
+		return op;
+	}
+
+	private static DocumentEditMessage delete(int position, int length) {
+		DocumentEditMessage op = new DocumentEditMessage();
+		op.setOperation(OperationTransformer.DELETE);
+		op.setPosition(position);
+		op.setLength(length);
+		return op;
+	}
+
+	private static String apply(String text, List<DocumentEditMessage> ops) {
+		StringBuilder sb = new StringBuilder(text);
+		for (DocumentEditMessage op : ops) {
+			if (isInsert(op)) {
+				sb.insert(op.getPosition(), op.getText());
+			} else {
+				sb.delete(op.getPosition(), op.getPosition() + op.getLength());
+			}
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,97 @@
+package com.markdowncollab.diff;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class MyersDiffTests {
+
+	@Test
+	void editScriptsAreShortest() {
+		Random random = new Random(5);
+		for (int i = 0; i < 1_000; i++) {
+			List<Integer> a = randomSequence(random, random.nextInt(30));
+			List<Integer> b = randomSequence(random, random.nextInt(30));
+
+			List<MyersDiff.Edit> edits = MyersDiff.diff(a, b);
+
+			assertThat(apply(a, b, edits)).isEqualTo(b);
+			assertThat(changed(edits)).isEqualTo(a.size() + b.size() - 2 * longestCommonSubsequence(a, b));
+		}
+	}
+
+	@Test
+	void exhaustedBudgetStillTurnsOldIntoNew() {
+		Random random = new Random(9);
+		List<Integer> a = randomSequence(random, 2_000);
+		List<Integer> b = randomSequence(random, 2_000);
+		MyersDiff.Budget budget = new MyersDiff.Budget(1_000);
+
+		List<MyersDiff.Edit> edits = MyersDiff.diff(a, b, budget);
+
+		assertThat(budget.isExhausted()).isTrue();
+		assertThat(apply(a, b, edits)).isEqualTo(b);
+		assertThat(changed(edits)).isGreaterThan(a.size() + b.size() - 2 * longestCommonSubsequence(a, b));
+	}
+
+	@Test
+	void withoutBudgetChangedRangesAreReplacedWhole() {
+		List<String> a = List.of("same", "x", "y", "same");
+		List<String> b = List.of("same", "y", "z", "same");
+
+		List<MyersDiff.Edit> edits = MyersDiff.diff(a, b, new MyersDiff.Budget(0));
+
+		assertThat(edits).containsExactly(
+				new MyersDiff.Edit(MyersDiff.Type.EQUAL, 0, 1, 0, 1),
+				new MyersDiff.Edit(MyersDiff.Type.DELETE, 1, 3, 1, 1),
+				new MyersDiff.Edit(MyersDiff.Type.INSERT, 3, 3, 1, 3),
+				new MyersDiff.Edit(MyersDiff.Type.EQUAL, 3, 4, 3, 4));
+	}
+
+	private static List<Integer> randomSequence(Random random, int length) {
+		List<Integer> sequence = new ArrayList<>();
+		for (int i = 0; i < length; i++) {
+			sequence.add(random.nextInt(4));
+		}
+		return sequence;
+	}
+
+	// Rebuilds the new sequence, checking equal runs really are equal
+	private static <T> List<T> apply(List<T> a, List<T> b, List<MyersDiff.Edit> edits) {
+		List<T> result = new ArrayList<>();
+		for (MyersDiff.Edit edit : edits) {
+			if (edit.type() == MyersDiff.Type.EQUAL) {
+				assertThat(a.subList(edit.aStart(), edit.aEnd())).isEqualTo(b.subList(edit.bStart(), edit.bEnd()));
+				result.addAll(a.subList(edit.aStart(), edit.aEnd()));
+			} else if (edit.type() == MyersDiff.Type.INSERT) {
+				result.addAll(b.subList(edit.bStart(), edit.bEnd()));
+			}
+		}
+		return result;
+	}
+
+	private static int changed(List<MyersDiff.Edit> edits) {
+		int changed = 0;
+		for (MyersDiff.Edit edit : edits) {
+			if (edit.type() != MyersDiff.Type.EQUAL) {
+				changed += edit.aEnd() - edit.aStart() + edit.bEnd() - edit.bStart();
+			}
+		}
+		return changed;
+	}
+
+	private static <T> int longestCommonSubsequence(List<T> a, List<T> b) {
+		int[][] lengths = new int[a.size() + 1][b.size() + 1];
+		for (int i = a.size() - 1; i >= 0; i--) {
+			for (int j = b.size() - 1; j >= 0; j--) {
+				lengths[i][j] = a.get(i).equals(b.get(j))
+						? lengths[i + 1][j + 1] + 1
+						: Math.max(lengths[i + 1][j], lengths[i][j + 1]);
+			}
+		}
+		return lengths[0][0];
+	}
+}
@@ -0,0 +1,59 @@
+package com.markdowncollab.diff;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class TextDeltaTests {
+
+	@Test
+	void randomEditsRoundTrip() {
+		Random random = new Random(7);
+		for (int i = 0; i < 2_000; i++) {
+			String base = randomText(random, random.nextInt(40));
+			StringBuilder target = new StringBuilder(base);
+			for (int edit = random.nextInt(6); edit > 0; edit--) {
+				int position = random.nextInt(target.length() + 1);
+				if (random.nextBoolean() && position < target.length()) {
+					target.deleteCharAt(position);
+				} else {
+					target.insert(position, randomText(random, 3));
+				}
+			}
+
+			assertThat(TextDelta.apply(base, TextDelta.encode(base, target.toString()))).isEqualTo(target.toString());
+		}
+	}
+
+	@Test
+	void smallChangeToLargeTextGivesSmallDelta() {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 2_000; i++) {
+			text.append("Line ").append(i).append(" of the document\n");
+		}
+		String base = text.toString();
+		String target = base.replace("Line 1000 ", "Changed line 1000 ");
+
+		String delta = TextDelta.encode(base, target);
+
+		assertThat(delta.length()).isLessThan(100);
+		assertThat(TextDelta.apply(base, delta)).isEqualTo(target);
+	}
+
+	@Test
+	void deltaForDifferentBaseIsRejected() {
+		String delta = TextDelta.encode("a\nb\nc\n", "a\nc\n");
+
+		assertThatThrownBy(() -> TextDelta.apply("a\n", delta)).isInstanceOf(RuntimeException.class);
+	}
+
+	private static String randomText(Random random, int length) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			text.append(random.nextInt(4) == 0 ? '\n' : (char) ('a' + random.nextInt(3)));
+		}
+		return text.toString();
+	}
+}
@@ -0,0 +1,60 @@
+package com.markdowncollab.markdown;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class MarkdownBlocksTests {
+
+	@Test
+	void blocksAreSeparatedByBlankLines() {
+		List<MarkdownBlocks.Block> blocks = MarkdownBlocks.split("# Title\n\nSome text\nmore text\n\n\n> quote\n");
+
+		assertThat(blocks).extracting(MarkdownBlocks.Block::text)
+				.containsExactly("# Title", "Some text\nmore text", "> quote");
+	}
+
+	@Test
+	void blankLinesInsideFencesAndListsDoNotSplit() {
+		String fence = "```java\nint a;\n\nint b;\n```";
+		String list = "- one\n\n- two\n\n  continued";
+		List<MarkdownBlocks.Block> blocks = MarkdownBlocks.split(fence + "\n\n" + list + "\n\nafter");
+
+		assertThat(blocks).extracting(MarkdownBlocks.Block::text).containsExactly(fence, list, "after");
+		assertThat(blocks.get(0).literal()).isTrue();
+	}
+
+	@Test
+	void leadingLinkDefinitionsArePrependedToBlocksWithLinks() {
+		List<MarkdownBlocks.Block> blocks = MarkdownBlocks.split("See [docs].\n\nPlain\n\n[docs]: https://example.com\n");
+		String definitions = MarkdownBlocks.linkDefinitions(blocks);
+
+		assertThat(definitions).isEqualTo("[docs]: https://example.com\n");
+		assertThat(MarkdownBlocks.source(blocks.get(0), definitions)).isEqualTo(definitions + "\nSee [docs].");
+		assertThat(MarkdownBlocks.source(blocks.get(1), definitions)).isEqualTo("Plain");
+	}
+
+	@Test
+	void definitionsOtherBlocksCannotSeeKeepTheDocumentWhole() {
+		String content = "> [docs]: https://example.com\n\nSee [docs].";
+
+		assertThat(MarkdownBlocks.split(content)).extracting(MarkdownBlocks.Block::text).containsExactly(content);
+	}
+
+	@Test
+	void definitionsContinuingOnTheNextLineKeepTheDocumentWhole() {
+		for (String content : List.of("[foo]:\n/url\n\nSee [foo].\n", "[foo]: /url\n\"title\"\n\nSee [foo].\n",
+				"[foo]: /url 'multi\nline title'\n\nSee [foo].\n")) {
+			assertThat(MarkdownBlocks.split(content)).as(content).extracting(MarkdownBlocks.Block::text).containsExactly(content);
+		}
+	}
+
+	@Test
+	void indentedCodeAfterAnotherConstructKeepsItsBlankLines() {
+		String content = "Setext heading\n===\n    indented code\n\n    after a blank line\n\nafter";
+
+		assertThat(MarkdownBlocks.split(content)).extracting(MarkdownBlocks.Block::text)
+				.containsExactly("Setext heading\n===\n    indented code\n\n    after a blank line", "after");
+	}
+}
@@ -0,0 +1,56 @@
+package com.markdowncollab.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class CompressedTextConverterTests {
+
+	private final CompressedTextConverter converter = new CompressedTextConverter(true, 16);
+
+	@Test
+	void largeTextIsStoredCompressedAndReadBack() {
+		String markdown = "# Title\n\n" + "Some *markdown* paragraph with ünïcode.\n".repeat(200);
+
+		String stored = converter.convertToDatabaseColumn(markdown);
+
+		assertThat(stored).startsWith(CompressedTextConverter.DEFLATE_TAG);
+		assertThat(stored.length()).isLessThan(markdown.length() / 4);
+		assertThat(converter.convertToEntityAttribute(stored)).isEqualTo(markdown);
+	}
+
+	@Test
+	void shortAndNullTextIsStoredAsIs() {
+		assertThat(converter.convertToDatabaseColumn("short")).isEqualTo("short");
+		assertThat(converter.convertToDatabaseColumn(null)).isNull();
+	}
+
+	@Test
+	void uncompressedRowsAreReadAsIs() {
+		String legacy = "# Written before compression was enabled\n".repeat(10);
+
+		assertThat(converter.convertToEntityAttribute(legacy)).isEqualTo(legacy);
+	}
+
+	@Test
+	void disabledConverterStillReadsCompressedRows() {
+		String stored = converter.convertToDatabaseColumn("x".repeat(1000));
+		CompressedTextConverter disabled = new CompressedTextConverter(false, 16);
+
+		assertThat(disabled.convertToDatabaseColumn("x".repeat(1000))).isEqualTo("x".repeat(1000));
+		assertThat(disabled.convertToEntityAttribute(stored)).isEqualTo("x".repeat(1000));
+	}
+
+	@Test
+	void textStartingWithTheTagIsReadBackAsWritten() {
+		String tagged = CompressedTextConverter.DEFLATE_TAG + "not Base64";
+		CompressedTextConverter disabled = new CompressedTextConverter(false, 16);
+
+		for (CompressedTextConverter writer : new CompressedTextConverter[] { converter, disabled }) {
+			String stored = writer.convertToDatabaseColumn(tagged);
+
+			assertThat(converter.convertToEntityAttribute(stored)).isEqualTo(tagged);
+			assertThat(disabled.convertToEntityAttribute(stored)).isEqualTo(tagged);
+		}
+	}
+}
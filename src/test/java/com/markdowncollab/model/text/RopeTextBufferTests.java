@@ -0,0 +1,43 @@
+package com.markdowncollab.model.text;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class RopeTextBufferTests {
+
+	@Test
+	void matchesStringBuilderUnderRandomEdits() {
+		Random random = new Random(42);
+		StringBuilder expected = new StringBuilder("a".repeat(5000));
+		TextBuffer buffer = TextBuffer.of(expected.toString());
+
+		for (int i = 0; i < 5000; i++) {
+			int position = random.nextInt(expected.length() + 1);
+			if (random.nextBoolean()) {
+				String text = random.nextInt(20) == 0 ? "b".repeat(2000) : "c";
+				expected.insert(position, text);
+				buffer.insert(position, text);
+			} else {
+				int length = random.nextInt(20) == 0 ? 3000 : 1;
+				expected.delete(position, Math.min(position + length, expected.length()));
+				buffer.delete(position, length);
+			}
+			assertThat(buffer.length()).isEqualTo(expected.length());
+		}
+
+		assertThat(buffer.toString()).isEqualTo(expected.toString());
+		assertThat(buffer.substring(100, 200)).isEqualTo(expected.substring(100, 200));
+	}
+
+	@Test
+	void rejectsPositionsOutsideTheText() {
+		TextBuffer buffer = TextBuffer.of("hello");
+
+		assertThatThrownBy(() -> buffer.insert(6, "x")).isInstanceOf(IndexOutOfBoundsException.class);
+		assertThatThrownBy(() -> buffer.delete(-1, 1)).isInstanceOf(IndexOutOfBoundsException.class);
+	}
+
+}
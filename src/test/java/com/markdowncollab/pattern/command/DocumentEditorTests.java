@@ -0,0 +1,184 @@
+package com.markdowncollab.pattern.command;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import com.markdowncollab.dto.DocumentEditMessage;
+import com.markdowncollab.model.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class DocumentEditorTests {
+
+	private static final Long ALICE = 1L;
+	private static final Long BOB = 2L;
+
+	private final Document document = new Document();
+
+	@BeforeEach
+	void setUp() {
+		document.setId(1L);
+		document.setContent("");
+	}
+
+	@Test
+	void typingIsUndoneOneWordAtATime() {
+		DocumentEditor editor = new DocumentEditor(100, 1 << 20, 60_000, 60_000, 10_000);
+		type(editor, ALICE, "hello world");
+
+		editor.undo(1L, ALICE, this::apply);
+		assertThat(document.getContent()).isEqualTo("hello ");
+		editor.undo(1L, ALICE, this::apply);
+		assertThat(document.getContent()).isEmpty();
+		assertThat(editor.canUndo(1L, ALICE)).isFalse();
+
+		editor.redo(1L, ALICE, this::apply);
+		editor.redo(1L, ALICE, this::apply);
+		assertThat(document.getContent()).isEqualTo("hello world");
+	}
+
+	@Test
+	void backspacesAreUndoneTogether() {
+		DocumentEditor editor = new DocumentEditor(100, 1 << 20, 60_000, 60_000, 10_000);
+		document.setContent("abcdef");
+		edit(editor, ALICE, delete(5, 1));
+		edit(editor, ALICE, delete(4, 1));
+		edit(editor, ALICE, delete(3, 1));
+
+		editor.undo(1L, ALICE, this::apply);
+
+		assertThat(document.getContent()).isEqualTo("abcdef");
+		assertThat(editor.canUndo(1L, ALICE)).isFalse();
+	}
+
+	@Test
+	void undoRevertsOnlyTheUsersOwnEdits() {
+		DocumentEditor editor = new DocumentEditor(100, 1 << 20, 0, 60_000, 10_000);
+		document.setContent("hello world");
+		edit(editor, ALICE, delete(0, 6));
+		edit(editor, BOB, insert(5, "!"));
+		edit(editor, BOB, insert(0, "big "));
+		assertThat(document.getContent()).isEqualTo("big world!");
+
+		List<DocumentEditMessage> applied = editor.undo(1L, ALICE, this::apply);
+
+		assertThat(document.getContent()).isEqualTo("big hello world!");
+		assertThat(applied).extracting(DocumentEditMessage::getPosition).containsExactly(4);
+		editor.undo(1L, BOB, this::apply);
+		assertThat(document.getContent()).isEqualTo("hello world!");
+	}
+
+	@Test
+	void textInsertedIntoAnotherUsersEditSurvivesTheirUndo() {
+		DocumentEditor editor = new DocumentEditor(100, 1 << 20, 0, 60_000, 10_000);
+		edit(editor, ALICE, insert(0, "abc"));
+		edit(editor, BOB, insert(1, "12"));
+
+		editor.undo(1L, ALICE, this::apply);
+		assertThat(document.getContent()).isEqualTo("12");
+
+		editor.redo(1L, ALICE, this::apply);
+		assertThat(document.getContent()).isEqualTo("a12bc");
+	}
+
+	@Test
+	void editsDeletedByOthersCannotBeUndone() {
+		DocumentEditor editor = new DocumentEditor(100, 1 << 20, 0, 60_000, 10_000);
+		edit(editor, ALICE, insert(0, "abc"));
+		edit(editor, BOB, delete(0, 3));
+
+		assertThat(editor.canUndo(1L, ALICE)).isFalse();
+		assertThat(editor.canUndo(1L, BOB)).isTrue();
+	}
+
+	@Test
+	void historyIsCappedByDepthAndBytes() {
+		DocumentEditor shallow = new DocumentEditor(3, 1 << 20, 0, 60_000, 10_000);
+		for (int i = 0; i < 10; i++) {
+			edit(shallow, ALICE, insert(i, "x"));
+		}
+		assertThat(undoAll(shallow)).isEqualTo(3);
+
+		DocumentEditor small = new DocumentEditor(100, 500, 0, 60_000, 10_000);
+		for (int i = 0; i < 10; i++) {
+			edit(small, ALICE, insert(0, "y".repeat(100)));
+		}
+		// Each command holds about 230 bytes
+		assertThat(undoAll(small)).isEqualTo(2);
+	}
+
+	@Test
+	void commandsOlderThanTheLoggedOperationsAreDropped() {
+		DocumentEditor editor = new DocumentEditor(100, 1 << 20, 0, 60_000, 4);
+		edit(editor, ALICE, insert(0, "a"));
+		for (int i = 0; i < 5; i++) {
+			edit(editor, BOB, insert(0, "b"));
+		}
+
+		assertThat(editor.canUndo(1L, ALICE)).isFalse();
+		editor.undo(1L, BOB, this::apply);
+		assertThat(document.getContent()).isEqualTo("bbbba");
+	}
+
+	@Test
+	void idleHistoriesAreEvicted() {
+		DocumentEditor editor = new DocumentEditor(100, 1 << 20, 60_000, -1, 10_000);
+		edit(editor, ALICE, insert(0, "a"));
+
+		editor.evictIdle();
+
+		assertThat(editor.canUndo(1L, ALICE)).isFalse();
+	}
+
+	private int undoAll(DocumentEditor editor) {
+		int undone = 0;
+		while (editor.canUndo(1L, ALICE)) {
+			editor.undo(1L, ALICE, this::apply);
+			undone++;
+		}
+		return undone;
+	}
+
+	private void type(DocumentEditor editor, Long userId, String text) {
+		for (int i = 0; i < text.length(); i++) {
+			edit(editor, userId, insert(document.getContentLength(), String.valueOf(text.charAt(i))));
+		}
+	}
+
+	private void edit(DocumentEditor editor, Long userId, DocumentEditMessage operation) {
+		editor.recordEdit(1L, userId, apply(List.of(operation)));
+	}
+
+	// Applies operations to the current content, as the collaboration engines do for edits without a revision
+	private List<DocumentEditMessage> apply(List<DocumentEditMessage> operations) {
+		List<DocumentEditMessage> applied = new ArrayList<>();
+		for (DocumentEditMessage operation : operations) {
+			DocumentEditMessage op = new DocumentEditMessage(operation);
+			if ("insert".equals(op.getOperation())) {
+				document.insertText(op.getPosition(), op.getText());
+			} else {
+				op.setText(document.getTextRange(op.getPosition(), op.getLength()));
+				document.deleteText(op.getPosition(), op.getLength());
+			}
+			applied.add(op);
+		}
+		return applied;
+	}
+
+	private static DocumentEditMessage insert(int position, String text) {
+		DocumentEditMessage message = new DocumentEditMessage();
+		message.setOperation("insert");
+		message.setPosition(position);
+		message.setText(text);
+		return message;
+	}
+
+	private static DocumentEditMessage delete(int position, int length) {
+		DocumentEditMessage message = new DocumentEditMessage();
+		message.setOperation("delete");
+		message.setPosition(position);
+		message.setLength(length);
+		return message;
+	}
+}
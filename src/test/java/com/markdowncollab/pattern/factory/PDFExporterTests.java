@@ -0,0 +1,72 @@
+package com.markdowncollab.pattern.factory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.SimpleBookmark;
+import org.junit.jupiter.api.Test;
+import org.xhtmlrenderer.pdf.ITextRenderer;
+
+class PDFExporterTests {
+
+	// Sets everything a renderer could carry over: title, metadata, bookmarks, anchors and several pages
+	private static final String FIRST = "<!DOCTYPE html>\n<html><head>" +
+			"<title>First title</title>" +
+			"<meta name=\"author\" content=\"First author\" />" +
+			"<meta name=\"subject\" content=\"First subject\" />" +
+			"<meta name=\"keywords\" content=\"first, keywords\" />" +
+			"<bookmarks><bookmark name=\"First bookmark\" href=\"#first\" /></bookmarks>" +
+			"<style>@page { size: A5; } h1 { page-break-before: always; }</style>" +
+			"</head><body><h1 id=\"first\">First</h1><h1>Second page</h1><h1>Third page</h1></body></html>";
+
+	private static final String SECOND = "<!DOCTYPE html>\n<html><head>" +
+			"<title>Second title</title>" +
+			"</head><body><p>Second document</p></body></html>";
+
+	@Test
+	void pooledRendererProducesTheSamePdfAsAFreshOne() throws Exception {
+		ITextRenderer first = PdfRendererPool.acquire();
+		PDFExporter.renderPdf(first, FIRST.getBytes(StandardCharsets.UTF_8), OutputStream.nullOutputStream());
+		PdfRendererPool.release(first);
+
+		ITextRenderer pooled = PdfRendererPool.acquire();
+		assertThat(pooled.getFontResolver()).isSameAs(first.getFontResolver());
+		PdfReader afterFirst = new PdfReader(render(pooled, SECOND));
+		PdfReader fresh = new PdfReader(render(new ITextRenderer(), SECOND));
+
+		assertThat(info(afterFirst)).isEqualTo(info(fresh));
+		assertThat(info(afterFirst).get("Title")).isEqualTo("Second title");
+		assertThat(SimpleBookmark.getBookmark(afterFirst)).isNull();
+		assertThat(pages(afterFirst)).isEqualTo(pages(fresh));
+	}
+
+	private static byte[] render(ITextRenderer renderer, String html) throws Exception {
+		ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+		PDFExporter.renderPdf(renderer, html.getBytes(StandardCharsets.UTF_8), pdf);
+		return pdf.toByteArray();
+	}
+
+	// Document information without the dates, which differ between any two renders
+	private static Map<String, String> info(PdfReader reader) {
+		Map<String, String> info = new TreeMap<>(reader.getInfo());
+		info.remove("CreationDate");
+		info.remove("ModDate");
+		return info;
+	}
+
+	// Page sizes and content streams
+	private static List<String> pages(PdfReader reader) throws Exception {
+		List<String> pages = new ArrayList<>();
+		for (int page = 1; page <= reader.getNumberOfPages(); page++) {
+			pages.add(reader.getPageSize(page) + "\n" + new String(reader.getPageContent(page), StandardCharsets.ISO_8859_1));
+		}
+		return pages;
+	}
+}
@@ -0,0 +1,94 @@
+package com.markdowncollab.pattern.strategy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class AdaptiveRendererTests {
+
+	// Far above the scheduling and GC pauses a sample of the fast engine may be hit by
+	private static final long SLOW_MILLIS = 25;
+
+	@Test
+	void rendersWithTheFasterEngineOnceItsOutputMatched() {
+		CountingRenderer slow = new CountingRenderer("<p>text</p>\n", SLOW_MILLIS);
+		CountingRenderer fast = new CountingRenderer("<p>text</p>", 0);
+		AdaptiveRenderer renderer = new AdaptiveRenderer(slow, fast, 3, 1000);
+
+		for (int i = 0; i < 10; i++) {
+			// The engines differ only by the trailing newline, which is allowed
+			assertThat(renderer.render("text").trim()).isEqualTo("<p>text</p>");
+		}
+
+		assertThat(slow.calls.get()).isEqualTo(3);
+		assertThat(fast.calls.get()).isEqualTo(10);
+	}
+
+	@Test
+	void differentOutputKeepsTheReferenceEngine() {
+		CountingRenderer slow = new CountingRenderer("<p>text</p>", SLOW_MILLIS);
+		CountingRenderer fast = new CountingRenderer("<p><em>text</em></p>", 0);
+		AdaptiveRenderer renderer = new AdaptiveRenderer(slow, fast, 3, 1000);
+
+		for (int i = 0; i < 10; i++) {
+			assertThat(renderer.render("text")).isEqualTo("<p>text</p>");
+		}
+
+		assertThat(slow.calls.get()).isEqualTo(10);
+		assertThat(fast.calls.get()).isEqualTo(1);
+	}
+
+	@Test
+	void whitespaceBetweenTagsMayOnlyDifferOutsidePreformattedText() {
+		CountingRenderer slow = new CountingRenderer("<p>a</p>\n<pre><code><b>x</b>\n<b>y</b></code></pre>\n", SLOW_MILLIS);
+		CountingRenderer fast = new CountingRenderer("<p>a</p><pre><code><b>x</b>\n<b>y</b></code></pre>", 0);
+		CountingRenderer collapsed = new CountingRenderer("<p>a</p><pre><code><b>x</b><b>y</b></code></pre>", 0);
+
+		AdaptiveRenderer matching = new AdaptiveRenderer(slow, fast, 3, 1000);
+		AdaptiveRenderer differing = new AdaptiveRenderer(slow, collapsed, 3, 1000);
+		for (int i = 0; i < 10; i++) {
+			matching.render("text");
+			differing.render("text");
+		}
+
+		assertThat(fast.calls.get()).isEqualTo(10);
+		assertThat(collapsed.calls.get()).isEqualTo(1);
+	}
+
+	@Test
+	void documentsAreClassifiedBySizeAndShape() {
+		String table = "| a | b |\n|---|---|\n| 1 | 2 |\n\nSome text.";
+		String code = "Intro\n\n```\nx = 1\ny = 2\n```";
+		String list = "- one\n- two\n- three\n\nDone.";
+
+		assertThat(AdaptiveRenderer.ContentClass.of(table).shape()).isEqualTo(AdaptiveRenderer.Shape.TABLES);
+		assertThat(AdaptiveRenderer.ContentClass.of(code).shape()).isEqualTo(AdaptiveRenderer.Shape.CODE);
+		assertThat(AdaptiveRenderer.ContentClass.of(list).shape()).isEqualTo(AdaptiveRenderer.Shape.LISTS);
+		assertThat(AdaptiveRenderer.ContentClass.of("Plain prose.").shape()).isEqualTo(AdaptiveRenderer.Shape.PROSE);
+		assertThat(AdaptiveRenderer.ContentClass.of("x".repeat(100)))
+				.isNotEqualTo(AdaptiveRenderer.ContentClass.of("x".repeat(10_000)));
+	}
+
+	private static class CountingRenderer implements MarkdownRenderStrategy {
+		private final String html;
+		private final long delayMillis;
+		private final AtomicInteger calls = new AtomicInteger();
+
+		CountingRenderer(String html, long delayMillis) {
+			this.html = html;
+			this.delayMillis = delayMillis;
+		}
+
+		@Override
+		public String render(String markdownContent) {
+			calls.incrementAndGet();
+			try {
+				Thread.sleep(delayMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return html;
+		}
+	}
+}
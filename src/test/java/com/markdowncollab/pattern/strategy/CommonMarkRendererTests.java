@@ -0,0 +1,72 @@
+package com.markdowncollab.pattern.strategy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class CommonMarkRendererTests {
+
+	// Blocks whose rendering depends on what is around them
+	private static final List<String> BLOCKS = List.of(
+			"# Heading",
+			"Setext heading\n===",
+			"A paragraph with *emphasis*, `code` and a [reference link][ref].",
+			"[ref]: https://example.com \"Title\"",
+			"[multi]:\n  https://example.com/multi\n  'On following lines'",
+			"See [multi] and [missing].",
+			"[foo]:\n/url",
+			"[bar]: /url\n\"title\"",
+			"See [foo] and [bar].",
+			"```java\nint a = 1;\n\n\nint b = 2;\n```",
+			"~~~\nnot closed by ```\n\n~~~",
+			"    indented code\n\n    after a blank line",
+			"- tight\n- list",
+			"- loose\n\n- list\n\n  with a continued paragraph",
+			"3. ordered\n4. from three",
+			"> quote\n> over lines\nlazy continuation",
+			"<div>\nraw *html*\n</div>",
+			"<!-- a comment\n\nwith a blank line -->",
+			"<pre>\n\npreformatted\n\n</pre>",
+			"| not | a table |\n|-----|---------|",
+			"***",
+			"Text with a hard  \nbreak and &amp; entity");
+
+	@Test
+	void chunkedRenderingMatchesSequentialRendering() {
+		CommonMarkRenderer sequential = new CommonMarkRenderer(Integer.MAX_VALUE, 0);
+		CommonMarkRenderer chunked = new CommonMarkRenderer(0, 0);
+		Random random = new Random(42);
+
+		for (int round = 0; round < 200; round++) {
+			StringBuilder document = new StringBuilder();
+			int blocks = 1 + random.nextInt(12);
+			for (int i = 0; i < blocks; i++) {
+				document.append(BLOCKS.get(random.nextInt(BLOCKS.size())))
+						.append("\n".repeat(1 + random.nextInt(3)));
+			}
+			String content = document.toString();
+
+			assertThat(chunked.render(content)).as(content).isEqualTo(sequential.render(content));
+		}
+	}
+
+	@Test
+	void definitionsInsideContainersFallBackToSequentialRendering() {
+		String content = "See [a].\n\n> [a]: https://example.com\n\nAnd [a] again.";
+
+		assertThat(new CommonMarkRenderer(0, 0).render(content))
+				.isEqualTo(new CommonMarkRenderer(Integer.MAX_VALUE, 0).render(content));
+	}
+
+	@Test
+	void streamingRenderingMatchesStringRendering() throws Exception {
+		String content = String.join("\n\n", BLOCKS);
+		StringBuilder html = new StringBuilder();
+
+		new CommonMarkRenderer(0, 0).render(content, html);
+
+		assertThat(html.toString()).isEqualTo(new CommonMarkRenderer(Integer.MAX_VALUE, 0).render(content));
+	}
+}
@@ -0,0 +1,180 @@
+package com.markdowncollab.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.rmi.server.ExportException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import com.markdowncollab.exception.DocumentNotFoundException;
+import com.markdowncollab.model.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BulkExportServiceTests {
+
+	@TempDir
+	Path directory;
+
+	// Exports of a document wait until it is released, so tests decide the order they complete in
+	private final Map<Long, CountDownLatch> releases = new ConcurrentHashMap<>();
+	private final List<Long> exported = new CopyOnWriteArrayList<>();
+	private final List<ExportCacheService.Artifact> artifacts = new CopyOnWriteArrayList<>();
+	private final List<Long> snapshots = new CopyOnWriteArrayList<>();
+	private BulkExportService service;
+
+	@AfterEach
+	void shutdown() {
+		releases.values().forEach(CountDownLatch::countDown);
+		if (service != null) {
+			service.shutdown();
+		}
+	}
+
+	@Test
+	void entriesAreWrittenInTheOrderExportsComplete() throws Exception {
+		service = service(3, 3);
+		ByteArrayOutputStream zip = new ByteArrayOutputStream();
+		CompletableFuture<Void> written = CompletableFuture.runAsync(() -> writeZip(List.of(1L, 2L, 3L), zip));
+
+		for (long id : new long[] { 2, 3, 1 }) {
+			release(id);
+			awaitExported(exported.size() + 1);
+		}
+		written.get(5, TimeUnit.SECONDS);
+
+		assertThat(entries(zip).keySet()).containsExactly("Document 2-2.html", "Document 3-3.html", "Document 1-1.html");
+	}
+
+	@Test
+	void failedExportsAreListedInErrorsEntryAtTheEnd() throws Exception {
+		service = service(2, 2);
+		releaseAll(1, 2);
+		ByteArrayOutputStream zip = new ByteArrayOutputStream();
+
+		service.writeZip(List.of(1L, -1L, 2L), "html", zip);
+
+		Map<String, String> entries = entries(zip);
+		assertThat(entries).hasSize(3);
+		assertThat(new ArrayList<>(entries.keySet()).get(2)).isEqualTo("errors.txt");
+		assertThat(entries.get("errors.txt")).isEqualTo("Document -1: Document not found with ID: -1\n");
+		assertThat(entries.get("Document 1-1.html")).contains("Document 1");
+	}
+
+	@Test
+	void exportsStopAndArtifactsCloseWhenTheClientGoesAway() throws Exception {
+		service = service(2, 2);
+		OutputStream disconnected = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				throw new IOException("Broken pipe");
+			}
+		};
+		CompletableFuture<Void> written = CompletableFuture.runAsync(() -> writeZip(List.of(1L, 2L, 3L, 4L, 5L, 6L), disconnected));
+		awaitSnapshots(2);
+
+		// Writing the first entry fails while the second export is still running
+		release(1);
+		assertThatThrownBy(written::join).isInstanceOf(CompletionException.class).hasRootCauseInstanceOf(IOException.class);
+		release(2);
+
+		for (int i = 0; i < 500 && (artifacts.size() < 2 || artifacts.stream().anyMatch(artifact -> artifact.channel().isOpen())); i++) {
+			Thread.sleep(10);
+		}
+		assertThat(artifacts).hasSize(2).noneMatch(artifact -> artifact.channel().isOpen());
+		assertThat(snapshots).containsExactlyInAnyOrder(1L, 2L);
+	}
+
+	private BulkExportService service(int workers, int maxInFlight) throws IOException {
+		ExportCacheService cache = new ExportCacheService(directory.toString(), 1 << 20) {
+			@Override
+			public Artifact export(Document document, String format) throws ExportException, IOException {
+				try {
+					releases.computeIfAbsent(document.getId(), id -> new CountDownLatch(1)).await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException(e);
+				}
+				Artifact artifact = super.export(document, format);
+				artifacts.add(artifact);
+				exported.add(document.getId());
+				return artifact;
+			}
+		};
+		DocumentService documents = new DocumentService(null, null, null, null, null, null, null, null, cache) {
+			@Override
+			Document getCheckedExportSnapshot(Long documentId) {
+				snapshots.add(documentId);
+				if (documentId < 0) {
+					throw new DocumentNotFoundException("Document not found with ID: " + documentId);
+				}
+				Document document = new Document();
+				document.setId(documentId);
+				document.setTitle("Document " + documentId);
+				document.setContent("# Document " + documentId);
+				return document;
+			}
+		};
+		return new BulkExportService(documents, cache, workers, maxInFlight);
+	}
+
+	private void writeZip(List<Long> documentIds, OutputStream outputStream) {
+		try {
+			service.writeZip(documentIds, "html", outputStream);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void release(long documentId) {
+		releases.computeIfAbsent(documentId, id -> new CountDownLatch(1)).countDown();
+	}
+
+	private void releaseAll(long from, long to) {
+		for (long id = from; id <= to; id++) {
+			release(id);
+		}
+	}
+
+	private void awaitSnapshots(int exports) throws InterruptedException {
+		for (int i = 0; i < 500 && snapshots.size() < exports; i++) {
+			Thread.sleep(10);
+		}
+		assertThat(snapshots).hasSize(exports);
+	}
+
+	private void awaitExported(int exports) throws InterruptedException {
+		for (int i = 0; i < 500 && exported.size() < exports; i++) {
+			Thread.sleep(10);
+		}
+		assertThat(exported).hasSize(exports);
+	}
+
+	// Entry names in ZIP order, with their contents
+	private static Map<String, String> entries(ByteArrayOutputStream zip) throws IOException {
+		Map<String, String> entries = new LinkedHashMap<>();
+		try (ZipInputStream input = new ZipInputStream(new ByteArrayInputStream(zip.toByteArray()))) {
+			for (ZipEntry entry = input.getNextEntry(); entry != null; entry = input.getNextEntry()) {
+				entries.put(entry.getName(), new String(input.readAllBytes(), StandardCharsets.UTF_8));
+			}
+		}
+		return entries;
+	}
+}
@@ -0,0 +1,71 @@
+package com.markdowncollab.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import com.markdowncollab.collaboration.DocumentEditLanes;
+import com.markdowncollab.collaboration.EditJournal;
+import com.markdowncollab.collaboration.ot.OperationTransformer;
+import com.markdowncollab.collaboration.ot.OperationalTransformEngine;
+import com.markdowncollab.dto.DocumentEditMessage;
+import com.markdowncollab.model.Document;
+import com.markdowncollab.model.User;
+import com.markdowncollab.pattern.command.DocumentEditor;
+import com.markdowncollab.repository.DocumentRepository;
+import org.junit.jupiter.api.Test;
+
+class CollaborationServiceTests {
+
+	@Test
+	void editTransformedAwayIsAcknowledgedAtTheCurrentRevision() {
+		DocumentRepository documents = (DocumentRepository) Proxy.newProxyInstance(
+				DocumentRepository.class.getClassLoader(), new Class<?>[] { DocumentRepository.class },
+				(proxy, method, args) -> switch (method.getName()) {
+					case "save" -> args[0];
+					default -> throw new UnsupportedOperationException(method.getName());
+				});
+		Document document = new Document();
+		document.setId(1L);
+		document.setContent("hello world");
+
+		DocumentEditLanes lanes = new DocumentEditLanes(1000);
+		try {
+			EditJournal journal = new EditJournal(false, "unused", 1 << 20, false, 0, 0);
+			DocumentWriteBehindService writeBehind = new DocumentWriteBehindService(documents, journal, false, 1000);
+			DocumentCacheService cache = new DocumentCacheService(documents, writeBehind, lanes, 1 << 20, 1 << 20, 300_000);
+			CollaborationService service = new CollaborationService(documents, writeBehind, journal, cache,
+					List.of(new OperationalTransformEngine(100)), null, new DocumentEditor(200, 1 << 18, 1000, 1_800_000, 10_000));
+
+			// Both users delete the same word against revision 0, the second delete has nothing left to remove
+			service.processEdit(document, user(1L), delete(0, 6));
+			DocumentEditMessage second = delete(0, 6);
+			List<DocumentEditMessage> applied = service.processEdit(document, user(2L), second);
+			DocumentEditMessage acknowledgement = service.acknowledgement(document, second);
+
+			assertThat(applied).isEmpty();
+			assertThat(document.getContent()).isEqualTo("world");
+			assertThat(acknowledgement.getOperation()).isEqualTo(OperationTransformer.NOOP);
+			assertThat(acknowledgement.getUserId()).isEqualTo(2L);
+			assertThat(acknowledgement.getRevision()).isEqualTo(1);
+		} finally {
+			lanes.shutdown();
+		}
+	}
+
+	private static DocumentEditMessage delete(int position, int length) {
+		DocumentEditMessage message = new DocumentEditMessage();
+		message.setOperation(OperationTransformer.DELETE);
+		message.setPosition(position);
+		message.setLength(length);
+		message.setBaseRevision(0L);
+		return message;
+	}
+
+	private static User user(Long id) {
+		User user = new User();
+		user.setId(id);
+		user.setUsername("user" + id);
+		return user;
+	}
+}
@@ -0,0 +1,154 @@
+package com.markdowncollab.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.markdowncollab.collaboration.DocumentEditLanes;
+import com.markdowncollab.exception.UnsavedEditsException;
+import com.markdowncollab.model.Document;
+import com.markdowncollab.model.User;
+import com.markdowncollab.repository.DocumentRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+class DocumentCacheServiceTests {
+
+	private final Map<Long, String> rows = new ConcurrentHashMap<>();
+	private final AtomicInteger loads = new AtomicInteger();
+	private volatile CountDownLatch loadGate = new CountDownLatch(0);
+
+	private final DocumentRepository repository = (DocumentRepository) Proxy.newProxyInstance(
+			DocumentRepository.class.getClassLoader(), new Class<?>[] { DocumentRepository.class },
+			(proxy, method, args) -> {
+				if (!method.getName().equals("findByIdWithCollaborators")) {
+					throw new UnsupportedOperationException(method.getName());
+				}
+				loads.incrementAndGet();
+				loadGate.await();
+				Long id = (Long) args[0];
+				return Optional.ofNullable(rows.get(id)).map(content -> document(id, content));
+			});
+	private final DocumentEditLanes lanes = new DocumentEditLanes(1000);
+
+	@AfterEach
+	void shutdown() {
+		lanes.shutdown();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+	@Test
+	void invalidationInTransactionHoldsEditsAndDropsCopiesLoadedBeforeCommit() throws Exception {
+		DocumentCacheService cache = cache(1 << 20);
+		rows.put(1L, "old");
+		cache.get(1L);
+
+		TransactionSynchronizationManager.initSynchronization();
+		cache.invalidate(1L);
+		CompletableFuture<Void> edit = lanes.submit(1L, () -> { });
+		// A reader loads the row before the transaction commits
+		assertThat(cache.get(1L).getContent()).isEqualTo("old");
+		assertThat(edit).isNotDone();
+
+		rows.put(1L, "new");
+		for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+			synchronization.afterCommit();
+			synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+		}
+		TransactionSynchronizationManager.clearSynchronization();
+
+		edit.get(5, TimeUnit.SECONDS);
+		assertThat(cache.get(1L).getContent()).isEqualTo("new");
+	}
+
+	@Test
+	void invalidationFromTheDocumentsOwnLaneDoesNotWaitForItself() throws Exception {
+		DocumentCacheService cache = cache(1 << 20);
+		rows.put(1L, "content");
+		cache.get(1L);
+
+		lanes.submit(1L, () -> cache.invalidate(1L)).get(5, TimeUnit.SECONDS);
+
+		assertThat(cache.getStatistics()).startsWith("hot=0");
+	}
+
+	@Test
+	void invalidationRefusesWhileEditsCannotBeFlushed() {
+		// The repository has no updateContent, so every flush fails
+		DocumentWriteBehindService writeBehind = new DocumentWriteBehindService(repository, null, true, 200);
+		DocumentCacheService cache = new DocumentCacheService(repository, writeBehind, lanes, 1 << 20, 1 << 20, 300_000);
+		rows.put(1L, "old");
+		Document live = writeBehind.attach(cache.get(1L));
+		live.setContent("edited");
+		writeBehind.markDirty(live, 1);
+
+		assertThatThrownBy(() -> cache.invalidate(1L)).isInstanceOf(UnsavedEditsException.class);
+		assertThat(writeBehind.attach(document(1L, "reloaded"))).isSameAs(live);
+		assertThat(cache.get(1L).getContent()).isEqualTo("edited");
+	}
+
+	@Test
+	void concurrentMissesShareOneLoad() throws Exception {
+		DocumentCacheService cache = cache(1 << 20);
+		rows.put(1L, "content");
+		loadGate = new CountDownLatch(1);
+
+		CompletableFuture<Document> first = CompletableFuture.supplyAsync(() -> cache.get(1L));
+		CompletableFuture<Document> second = CompletableFuture.supplyAsync(() -> cache.get(1L));
+		Thread.sleep(100);
+		loadGate.countDown();
+
+		assertThat(first.get(5, TimeUnit.SECONDS)).isSameAs(second.get(5, TimeUnit.SECONDS));
+		assertThat(loads.get()).isEqualTo(1);
+	}
+
+	@Test
+	void leastRecentlyUsedDocumentsMoveToCompressedTierOverBudget() throws Exception {
+		// Each document is estimated at 512 + 2 * 1000 bytes, so two of them fit
+		DocumentCacheService cache = cache(6000);
+		for (long id = 1; id <= 3; id++) {
+			rows.put(id, "x".repeat(1000));
+			cache.get(id);
+			Thread.sleep(5);
+		}
+		drainLanes();
+
+		assertThat(cache.getStatistics()).startsWith("hot=2 (5024 bytes), compressed=1");
+		assertThat(cache.get(1L).getContent()).isEqualTo("x".repeat(1000));
+		assertThat(loads.get()).isEqualTo(3);
+		assertThat(cache.getStatistics()).contains("compressedHits=1");
+	}
+
+	private DocumentCacheService cache(long maxBytes) {
+		DocumentWriteBehindService writeBehind = new DocumentWriteBehindService(repository, null, false, 200);
+		return new DocumentCacheService(repository, writeBehind, lanes, maxBytes, 1 << 20, 300_000);
+	}
+
+	private void drainLanes() throws Exception {
+		for (long id = 1; id <= 3; id++) {
+			lanes.submit(id, () -> { }).get(5, TimeUnit.SECONDS);
+		}
+	}
+
+	private static Document document(Long id, String content) {
+		User owner = new User();
+		owner.setId(1L);
+		Document document = new Document();
+		document.setId(id);
+		document.setTitle("Document " + id);
+		document.setContent(content);
+		document.setOwner(owner);
+		return document;
+	}
+}
@@ -0,0 +1,69 @@
+package com.markdowncollab.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import com.markdowncollab.model.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ExportCacheServiceTests {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void unchangedDocumentsAreExportedOnce() throws Exception {
+		ExportCacheService cache = new ExportCacheService(directory.toString(), 1 << 20);
+
+		String first = export(cache, document(1L, "# Hello"));
+		String second = export(cache, document(1L, "# Hello"));
+		export(cache, document(1L, "# Hello again"));
+
+		assertThat(second).isEqualTo(first).contains("<h1>Hello</h1>");
+		assertThat(cache.getStatistics()).contains("hits=1, misses=2");
+	}
+
+	@Test
+	void leastRecentlyUsedArtifactsAreEvicted() throws Exception {
+		// Room for about two small HTML exports
+		ExportCacheService cache = new ExportCacheService(directory.toString(), 1200);
+
+		export(cache, document(1L, "one"));
+		export(cache, document(2L, "two"));
+		export(cache, document(1L, "one"));
+		export(cache, document(3L, "three"));
+		export(cache, document(1L, "one"));
+
+		assertThat(cache.getStatistics()).contains("files=2").contains("hits=2").contains("evictions=1");
+		try (var files = Files.list(directory)) {
+			assertThat(files.count()).isEqualTo(2);
+		}
+	}
+
+	@Test
+	void artifactsOfAPreviousRunAreReused() throws Exception {
+		export(new ExportCacheService(directory.toString(), 1 << 20), document(1L, "kept"));
+
+		ExportCacheService restarted = new ExportCacheService(directory.toString(), 1 << 20);
+		export(restarted, document(1L, "kept"));
+
+		assertThat(restarted.getStatistics()).contains("files=1").contains("hits=1, misses=0");
+	}
+
+	private static String export(ExportCacheService cache, Document document) throws Exception {
+		try (ExportCacheService.Artifact artifact = cache.export(document, "html")) {
+			return new String(artifact.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private static Document document(Long id, String content) {
+		Document document = new Document();
+		document.setId(id);
+		document.setTitle("Document " + id);
+		document.setContent(content);
+		return document;
+	}
+}
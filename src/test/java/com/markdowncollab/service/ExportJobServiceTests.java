@@ -0,0 +1,249 @@
+package com.markdowncollab.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.rmi.server.ExportException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.markdowncollab.dto.ExportJobDTO;
+import com.markdowncollab.exception.ExportJobNotFoundException;
+import com.markdowncollab.exception.ExportQueueFullException;
+import com.markdowncollab.model.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+class ExportJobServiceTests {
+
+	@TempDir
+	Path directory;
+
+	// Exports wait for a permit, so tests decide when each one finishes
+	private final Semaphore permits = new Semaphore(0);
+	private final List<Long> started = new ArrayList<>();
+	private final AtomicInteger running = new AtomicInteger();
+	private final AtomicInteger maxRunning = new AtomicInteger();
+	private final Map<String, List<String>> published = new ConcurrentHashMap<>();
+	private ExportJobService service;
+
+	@AfterEach
+	void shutdown() {
+		if (service != null) {
+			service.shutdown();
+		}
+		SecurityContextHolder.clearContext();
+	}
+
+	@Test
+	void usersAreServedInTurn() throws Exception {
+		service = service(1, 10, 10, 100);
+		login("alice");
+		String first = submit(1L);
+		awaitStarted(1);
+		submit(2L);
+		submit(3L);
+		login("bob");
+		submit(4L);
+
+		permits.release(4);
+		login("alice");
+		awaitStatus(first, "done");
+		awaitStarted(4);
+
+		synchronized (started) {
+			assertThat(started).containsExactly(1L, 2L, 4L, 3L);
+		}
+	}
+
+	@Test
+	void noMoreExportsRunThanThereAreWorkers() throws Exception {
+		service = service(2, 10, 10, 100);
+		login("alice");
+		for (long id = 1; id <= 4; id++) {
+			submit(id);
+		}
+		awaitStarted(2);
+		Thread.sleep(100);
+
+		assertThat(running.get()).isEqualTo(2);
+		permits.release(4);
+		awaitStarted(4);
+		assertThat(maxRunning.get()).isEqualTo(2);
+	}
+
+	@Test
+	void waitingJobsAreCappedPerUserAndOverall() throws Exception {
+		service = service(1, 3, 2, 100);
+		login("alice");
+		submit(1L);
+		awaitStarted(1);
+		// The running export no longer counts as waiting
+		submit(2L);
+		submit(3L);
+		assertThatThrownBy(() -> submit(4L)).isInstanceOf(ExportQueueFullException.class);
+
+		login("bob");
+		submit(5L);
+		login("carol");
+		assertThatThrownBy(() -> submit(6L)).isInstanceOf(ExportQueueFullException.class);
+		permits.release(4);
+	}
+
+	@Test
+	void statusGoesFromQueuedThroughRunningToDone() throws Exception {
+		service = service(1, 10, 10, 100);
+		login("alice");
+		submit(1L);
+		awaitStarted(1);
+		String jobId = submit(2L);
+
+		assertThat(service.getJob(jobId).getStatus()).isEqualTo("queued");
+		permits.release();
+		awaitStarted(2);
+		assertThat(service.getJob(jobId).getStatus()).isEqualTo("running");
+		assertThat(service.openArtifact(jobId)).isNull();
+		permits.release();
+		awaitStatus(jobId, "done");
+
+		assertThat(published.get(jobId)).containsExactly("queued", "running", "done");
+		assertThat(download(jobId)).contains("Document 2");
+	}
+
+	@Test
+	void failedExportsReportTheirError() throws Exception {
+		service = service(1, 10, 10, 100);
+		login("alice");
+		String jobId = submit(-1L);
+		permits.release();
+		awaitStatus(jobId, "failed");
+
+		assertThat(service.getJob(jobId).getError()).isEqualTo("Export failed");
+		assertThat(service.openArtifact(jobId)).isNull();
+	}
+
+	@Test
+	void evictedArtifactsAreExportedAgain() throws Exception {
+		service = service(1, 10, 10, 100);
+		login("alice");
+		String jobId = submit(1L);
+		permits.release();
+		awaitStatus(jobId, "done");
+		try (var files = Files.list(directory)) {
+			for (Path file : files.toList()) {
+				Files.delete(file);
+			}
+		}
+
+		assertThat(service.openArtifact(jobId)).isNull();
+		assertThat(service.getJob(jobId).getStatus()).isIn("queued", "running");
+		permits.release();
+		awaitStatus(jobId, "done");
+		assertThat(download(jobId)).contains("Document 1");
+	}
+
+	@Test
+	void oldestFinishedJobsAreDroppedOverTheCap() throws Exception {
+		service = service(1, 10, 10, 2);
+		login("alice");
+		permits.release(3);
+		String first = submit(1L);
+		awaitStatus(first, "done");
+		String second = submit(2L);
+		awaitStatus(second, "done");
+
+		String third = submit(3L);
+
+		assertThatThrownBy(() -> service.getJob(first)).isInstanceOf(ExportJobNotFoundException.class);
+		assertThat(service.getJob(second).getStatus()).isEqualTo("done");
+		awaitStatus(third, "done");
+	}
+
+	private ExportJobService service(int workers, int maxQueued, int maxQueuedPerUser, int maxJobs) throws IOException {
+		ExportCacheService cache = new ExportCacheService(directory.toString(), 1 << 20) {
+			@Override
+			public Artifact export(Document document, String format) throws ExportException, IOException {
+				synchronized (started) {
+					started.add(document.getId());
+				}
+				maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+				try {
+					permits.acquire();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException(e);
+				} finally {
+					running.decrementAndGet();
+				}
+				if (document.getId() < 0) {
+					throw new ExportException("Export failed");
+				}
+				return super.export(document, format);
+			}
+		};
+		DocumentService documents = new DocumentService(null, null, null, null, null, null, null, null, cache) {
+			@Override
+			public Document getExportSnapshot(Long documentId) {
+				Document document = new Document();
+				document.setId(documentId);
+				document.setTitle("Document " + documentId);
+				document.setContent("# Document " + documentId);
+				return document;
+			}
+		};
+		SimpMessagingTemplate messaging = new SimpMessagingTemplate((message, timeout) -> true) {
+			@Override
+			public void convertAndSendToUser(String user, String destination, Object payload) {
+				ExportJobDTO job = (ExportJobDTO) payload;
+				published.computeIfAbsent(job.getId(), id -> new CopyOnWriteArrayList<>()).add(job.getStatus());
+			}
+		};
+		return new ExportJobService(documents, cache, messaging, workers, maxQueued, maxQueuedPerUser, maxJobs, 600_000);
+	}
+
+	private String submit(Long documentId) {
+		return service.submit(documentId, "html").getId();
+	}
+
+	private String download(String jobId) throws IOException {
+		try (ExportCacheService.Artifact artifact = service.openArtifact(jobId)) {
+			return new String(artifact.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private void awaitStarted(int exports) throws InterruptedException {
+		for (int i = 0; i < 500; i++) {
+			synchronized (started) {
+				if (started.size() >= exports) {
+					return;
+				}
+			}
+			Thread.sleep(10);
+		}
+		throw new AssertionError("Exports did not start");
+	}
+
+	private void awaitStatus(String jobId, String status) throws InterruptedException {
+		for (int i = 0; i < 500 && !status.equals(service.getJob(jobId).getStatus()); i++) {
+			Thread.sleep(10);
+		}
+		assertThat(service.getJob(jobId).getStatus()).isEqualTo(status);
+	}
+
+	private static void login(String username) {
+		SecurityContextHolder.getContext().setAuthentication(
+				new UsernamePasswordAuthenticationToken(username, null, List.of()));
+	}
+}
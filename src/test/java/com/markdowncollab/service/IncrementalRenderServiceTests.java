@@ -0,0 +1,115 @@
+package com.markdowncollab.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.markdowncollab.dto.RenderedBlockDTO;
+import com.markdowncollab.pattern.strategy.CommonMarkRenderer;
+import com.markdowncollab.pattern.strategy.MarkdownRenderStrategy;
+import org.junit.jupiter.api.Test;
+
+class IncrementalRenderServiceTests {
+
+	// Blocks whose rendering depends on what is around them
+	private static final List<String> BLOCKS = List.of(
+			"# Heading",
+			"Setext heading\n===",
+			"A paragraph with *emphasis*, `code` and a [reference link][ref].",
+			"[ref]: https://example.com \"Title\"",
+			"See [ref] and [missing].",
+			"[foo]:\n/url",
+			"[bar]: /url\n\"title\"",
+			"See [foo] and [bar].",
+			"```java\nint a = 1;\n\n\nint b = 2;\n```",
+			"    indented code\n\n    after a blank line",
+			"- tight\n- list",
+			"- loose\n\n- list\n\n  with a continued paragraph",
+			"3. ordered\n4. from three",
+			"> quote\n> over lines\nlazy continuation",
+			"<div>\nraw *html*\n</div>",
+			"<pre>\n\npreformatted\n\n</pre>",
+			"***",
+			"Text with a hard  \nbreak and &amp; entity");
+
+	private final AtomicInteger renders = new AtomicInteger();
+
+	@Test
+	void blockHtmlConcatenatesToTheFullRender() {
+		CommonMarkRenderer renderer = new CommonMarkRenderer();
+		IncrementalRenderService service = new IncrementalRenderService(new MarkdownService(renderer, 1 << 20, 1 << 20), 4);
+		Random random = new Random(42);
+
+		List<String> document = new ArrayList<>();
+		for (int round = 0; round < 300; round++) {
+			// Insert, replace or remove a block, so later renders reuse blocks of earlier ones
+			int at = random.nextInt(document.size() + 1);
+			String block = BLOCKS.get(random.nextInt(BLOCKS.size()));
+			int edit = random.nextInt(3);
+			if (edit == 0 || document.isEmpty()) {
+				document.add(at, block);
+			} else if (edit == 1 && at < document.size()) {
+				document.set(at, block);
+			} else if (at < document.size()) {
+				document.remove(at);
+			}
+			String content = String.join("\n".repeat(2 + random.nextInt(2)), document);
+
+			StringBuilder html = new StringBuilder();
+			for (RenderedBlockDTO rendered : service.render(1L, content, List.of())) {
+				html.append(rendered.getHtml());
+			}
+
+			assertThat(html.toString()).as(content).isEqualTo(renderer.render(content));
+		}
+	}
+
+	@Test
+	void onlyEditedBlocksAreRenderedAgainAndGetNewIds() {
+		IncrementalRenderService service = service();
+		List<RenderedBlockDTO> before = service.render(1L, "one\n\ntwo\n\nthree", List.of());
+
+		List<RenderedBlockDTO> after = service.render(1L, "one\n\nTWO\n\nthree", ids(before));
+
+		assertThat(renders).hasValue(4);
+		assertThat(after).extracting(RenderedBlockDTO::isChanged).containsExactly(false, true, false);
+		assertThat(after.get(0).getId()).isEqualTo(before.get(0).getId());
+		assertThat(after.get(1).getId()).isNotEqualTo(before.get(1).getId());
+		assertThat(after.get(2).getId()).isEqualTo(before.get(2).getId());
+	}
+
+	@Test
+	void viewersOfOneDocumentGetTheSameIdsAndTheirOwnChanges() {
+		IncrementalRenderService service = service();
+		List<RenderedBlockDTO> first = service.render(1L, "one\n\ntwo", List.of());
+		// Another viewer renders different content of the same document in between
+		service.render(1L, "one\n\nthree", List.of());
+
+		List<RenderedBlockDTO> again = service.render(1L, "one\n\ntwo", ids(first));
+
+		assertThat(ids(again)).isEqualTo(ids(first));
+		assertThat(again).extracting(RenderedBlockDTO::isChanged).containsExactly(false, false);
+	}
+
+	@Test
+	void repeatedBlocksGetDistinctIds() {
+		List<RenderedBlockDTO> blocks = service().render(1L, "same\n\nother\n\nsame", List.of());
+
+		assertThat(blocks.get(0).getId()).isNotEqualTo(blocks.get(2).getId());
+		assertThat(renders).hasValue(2);
+	}
+
+	private IncrementalRenderService service() {
+		MarkdownRenderStrategy counting = content -> {
+			renders.incrementAndGet();
+			return "<p>" + content + "</p>";
+		};
+		return new IncrementalRenderService(new MarkdownService(counting, 1 << 20, 1 << 20), 4);
+	}
+
+	private static List<String> ids(List<RenderedBlockDTO> blocks) {
+		return blocks.stream().map(RenderedBlockDTO::getId).toList();
+	}
+}
@@ -0,0 +1,78 @@
+package com.markdowncollab.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import com.markdowncollab.pattern.strategy.MarkdownRenderStrategy;
+import org.junit.jupiter.api.Test;
+
+class MarkdownServiceTests {
+
+	private final AtomicInteger renders = new AtomicInteger();
+
+	@Test
+	void unchangedContentIsRenderedOnce() {
+		MarkdownService service = new MarkdownService(counting("<p>%s</p>"), 1 << 20, 1 << 20);
+
+		assertThat(service.renderMarkdown("# a")).isEqualTo("<p># a</p>");
+		assertThat(service.renderMarkdown("# a")).isEqualTo("<p># a</p>");
+		assertThat(service.renderMarkdown("# b")).isEqualTo("<p># b</p>");
+
+		assertThat(renders).hasValue(2);
+		assertThat(service.getStatistics()).contains("hits=1", "misses=2");
+	}
+
+	@Test
+	void cacheIsKeyedByStrategy() {
+		MarkdownService service = new MarkdownService(counting("<p>%s</p>"), 1 << 20, 1 << 20);
+		service.renderMarkdown("text");
+
+		service.setRenderStrategy(new OtherRenderer());
+
+		assertThat(service.renderMarkdown("text")).isEqualTo("<div>text</div>");
+	}
+
+	@Test
+	void leastRecentlyUsedHtmlIsEvicted() {
+		// Room for about two entries
+		MarkdownService service = new MarkdownService(counting("%s"), 800, 800);
+		service.renderMarkdown("a".repeat(100));
+		service.renderMarkdown("b".repeat(100));
+		service.renderMarkdown("a".repeat(100));
+		service.renderMarkdown("c".repeat(100));
+
+		service.renderMarkdown("a".repeat(100));
+		assertThat(renders).hasValue(3);
+		service.renderMarkdown("b".repeat(100));
+		assertThat(renders).hasValue(4);
+	}
+
+	@Test
+	void htmlOverTheEntryLimitIsNotCached() throws Exception {
+		MarkdownService service = new MarkdownService(counting("%s"), 1 << 20, 1000);
+		service.renderMarkdown("small");
+		String large = "x".repeat(1000);
+
+		StringBuilder html = new StringBuilder();
+		service.renderMarkdown(large, html);
+		service.renderMarkdown(large);
+
+		assertThat(html.toString()).isEqualTo(large);
+		assertThat(renders).hasValue(3);
+		assertThat(service.getStatistics()).startsWith("entries=1 ");
+	}
+
+	private MarkdownRenderStrategy counting(String format) {
+		return content -> {
+			renders.incrementAndGet();
+			return String.format(format, content);
+		};
+	}
+
+	private static class OtherRenderer implements MarkdownRenderStrategy {
+		@Override
+		public String render(String markdownContent) {
+			return "<div>" + markdownContent + "</div>";
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package com.markdowncollab.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import com.markdowncollab.dto.DiffHunkDTO;
+import com.markdowncollab.dto.DiffSegmentDTO;
+import com.markdowncollab.dto.VersionDiffDTO;
+import org.junit.jupiter.api.Test;
+
+class VersionDiffServiceTests {
+
+	private static final String TEXT = "a\nb\nc\nd\ne\nf\ng\nh\ni\nj\n";
+
+	@Test
+	void hunkHasContextAroundChange() {
+		VersionDiffDTO diff = VersionDiffService.diff(TEXT, TEXT.replace("e\n", "E\n"), VersionDiffService.LINE, 2, 1_000_000);
+
+		assertThat(diff.isComplete()).isTrue();
+		assertThat(diff.getAdditions()).isEqualTo(1);
+		assertThat(diff.getDeletions()).isEqualTo(1);
+		assertThat(diff.getHunks()).singleElement().satisfies(hunk -> {
+			assertThat(hunk.getLines()).containsExactly(" c", " d", "-e", "+E", " f", " g");
+			assertThat(List.of(hunk.getFromStart(), hunk.getFromLines(), hunk.getToStart(), hunk.getToLines()))
+					.containsExactly(3, 5, 3, 5);
+		});
+	}
+
+	@Test
+	void changesCloserThanTwiceTheContextShareAHunk() {
+		String changed = TEXT.replace("c\n", "C\n").replace("g\n", "G\n");
+
+		VersionDiffDTO merged = VersionDiffService.diff(TEXT, changed, VersionDiffService.LINE, 2, 1_000_000);
+		VersionDiffDTO separate = VersionDiffService.diff(TEXT, changed, VersionDiffService.LINE, 1, 1_000_000);
+
+		assertThat(merged.getHunks()).singleElement().satisfies(hunk ->
+				assertThat(hunk.getLines()).containsExactly(" a", " b", "-c", "+C", " d", " e", " f", "-g", "+G", " h", " i"));
+		assertThat(separate.getHunks()).hasSize(2);
+		assertThat(separate.getHunks().get(1).getLines()).containsExactly(" f", "-g", "+G", " h");
+	}
+
+	@Test
+	void pureInsertNamesTheLineBeforeIt() {
+		VersionDiffDTO diff = VersionDiffService.diff("a\nb\n", "a\nnew\nb\n", VersionDiffService.LINE, 0, 1_000_000);
+
+		DiffHunkDTO hunk = diff.getHunks().get(0);
+		assertThat(hunk.getLines()).containsExactly("+new");
+		assertThat(List.of(hunk.getFromStart(), hunk.getFromLines(), hunk.getToStart(), hunk.getToLines()))
+				.containsExactly(1, 0, 2, 1);
+	}
+
+	@Test
+	void wordGranularityRefinesChangedLines() {
+		VersionDiffDTO diff = VersionDiffService.diff("the quick fox\n", "the slow fox\n", VersionDiffService.WORD, 0, 1_000_000);
+
+		List<DiffSegmentDTO> words = diff.getHunks().get(0).getWords();
+		assertThat(words).extracting(DiffSegmentDTO::getType).contains("delete", "insert");
+		StringBuilder before = new StringBuilder();
+		StringBuilder after = new StringBuilder();
+		for (DiffSegmentDTO segment : words) {
+			if (!segment.getType().equals("insert")) {
+				before.append(segment.getText());
+			}
+			if (!segment.getType().equals("delete")) {
+				after.append(segment.getText());
+			}
+		}
+		assertThat(before.toString()).isEqualTo("the quick fox\n");
+		assertThat(after.toString()).isEqualTo("the slow fox\n");
+	}
+
+	@Test
+	void exhaustedBudgetMarksDiffIncomplete() {
+		StringBuilder from = new StringBuilder();
+		StringBuilder to = new StringBuilder();
+		for (int i = 0; i < 500; i++) {
+			from.append(i % 7).append('\n');
+			to.append(i % 5).append('\n');
+		}
+
+		VersionDiffDTO diff = VersionDiffService.diff(from.toString(), to.toString(), VersionDiffService.LINE, 3, 100);
+
+		assertThat(diff.isComplete()).isFalse();
+		assertThat(diff.getAdditions()).isEqualTo(diff.getDeletions());
+		assertThat(diff.getHunks()).isNotEmpty();
+	}
+}
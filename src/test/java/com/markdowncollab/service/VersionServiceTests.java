@@ -0,0 +1,193 @@
+package com.markdowncollab.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+import com.markdowncollab.collaboration.DocumentEditLanes;
+import com.markdowncollab.collaboration.EditJournal;
+import com.markdowncollab.dto.VersionPageDTO;
+import com.markdowncollab.dto.VersionSummaryDTO;
+import com.markdowncollab.exception.InvalidCursorException;
+import com.markdowncollab.model.Document;
+import com.markdowncollab.model.User;
+import com.markdowncollab.model.Version;
+import com.markdowncollab.repository.DocumentRepository;
+import com.markdowncollab.repository.UserRepository;
+import com.markdowncollab.repository.VersionRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+
+class VersionServiceTests {
+
+	private static final LocalDateTime SAVED_AT = LocalDateTime.of(2026, 10, 18, 12, 0);
+
+	private final List<VersionSummaryDTO> versions = new ArrayList<>();
+
+	// Answers the two summary queries over the versions above, as the database would
+	private final VersionRepository repository = (VersionRepository) Proxy.newProxyInstance(
+			VersionRepository.class.getClassLoader(), new Class<?>[] { VersionRepository.class },
+			(proxy, method, args) -> {
+				Predicate<VersionSummaryDTO> filter = switch (method.getName()) {
+					case "findSummaries" -> version -> true;
+					case "findSummariesBefore" -> version -> version.getCreatedAt().isBefore((LocalDateTime) args[1])
+							|| (version.getCreatedAt().equals(args[1]) && version.getId() < (Long) args[2]);
+					default -> throw new UnsupportedOperationException(method.getName());
+				};
+				return versions.stream()
+						.filter(filter)
+						.sorted(Comparator.comparing(VersionSummaryDTO::getCreatedAt).thenComparing(VersionSummaryDTO::getId).reversed())
+						.limit(((Pageable) args[args.length - 1]).getPageSize())
+						.toList();
+			});
+
+	@Test
+	void pagesCoverVersionsWithEqualTimestampsOnce() {
+		// Saves within one clock tick share their timestamp, only the ID orders them
+		for (long id = 1; id <= 7; id++) {
+			versions.add(summary(id, SAVED_AT.plusSeconds(id / 3)));
+		}
+
+		List<Long> seen = new ArrayList<>();
+		String cursor = null;
+		int pages = 0;
+		do {
+			VersionPageDTO page = VersionService.summaryPage(repository, 1L, cursor, 2);
+			page.getVersions().forEach(version -> seen.add(version.getId()));
+			cursor = page.getNextCursor();
+			pages++;
+		} while (cursor != null);
+
+		assertThat(seen).containsExactly(7L, 6L, 5L, 4L, 3L, 2L, 1L);
+		assertThat(pages).isEqualTo(4);
+	}
+
+	@Test
+	void fullLastPageHasNoCursor() {
+		for (long id = 1; id <= 4; id++) {
+			versions.add(summary(id, SAVED_AT.plusMinutes(id)));
+		}
+
+		VersionPageDTO first = VersionService.summaryPage(repository, 1L, null, 2);
+		VersionPageDTO last = VersionService.summaryPage(repository, 1L, first.getNextCursor(), 2);
+
+		assertThat(first.hasMore()).isTrue();
+		assertThat(last.getVersions()).extracting(VersionSummaryDTO::getId).containsExactly(2L, 1L);
+		assertThat(last.hasMore()).isFalse();
+	}
+
+	@Test
+	void cursorNamesTimestampAndIdOfLastVersion() {
+		versions.add(summary(41L, SAVED_AT.withNano(123_456_000)));
+		versions.add(summary(42L, SAVED_AT.withNano(123_456_000)));
+
+		VersionPageDTO page = VersionService.summaryPage(repository, 1L, null, 1);
+
+		assertThat(page.getNextCursor()).isEqualTo("2026-10-18T12:00:00.123456_42");
+		assertThat(VersionService.summaryPage(repository, 1L, page.getNextCursor(), 1).getVersions())
+				.extracting(VersionSummaryDTO::getId).containsExactly(41L);
+	}
+
+	@Test
+	void malformedCursorIsRejected() {
+		assertThatThrownBy(() -> VersionService.summaryPage(repository, 1L, "yesterday", 10))
+				.isInstanceOf(InvalidCursorException.class);
+		assertThatThrownBy(() -> VersionService.summaryPage(repository, 1L, "2026-10-18T12:00_x", 10))
+				.isInstanceOf(InvalidCursorException.class);
+	}
+
+	@Test
+	void restoreKeepsTheJournalSequenceOfFlushedEdits() {
+		Document row = document("restored", 0);
+		Version version = new Version();
+		version.setContent("restored");
+		List<Version> saved = new ArrayList<>();
+
+		// Each read builds a new entity from the row, as a fresh persistence context would
+		DocumentRepository documents = (DocumentRepository) Proxy.newProxyInstance(
+				DocumentRepository.class.getClassLoader(), new Class<?>[] { DocumentRepository.class },
+				(proxy, method, args) -> switch (method.getName()) {
+					case "findByIdWithCollaborators", "lockById" -> Optional.of(document(row.getContent(), row.getJournalSequence()));
+					case "updateContent" -> {
+						row.setContent((String) args[1]);
+						row.setJournalSequence((Long) args[2]);
+						yield 1;
+					}
+					case "save" -> {
+						Document document = (Document) args[0];
+						row.setContent(document.getContent());
+						row.setJournalSequence(document.getJournalSequence());
+						yield document;
+					}
+					default -> throw new UnsupportedOperationException(method.getName());
+				});
+		VersionRepository versionRepository = (VersionRepository) Proxy.newProxyInstance(
+				VersionRepository.class.getClassLoader(), new Class<?>[] { VersionRepository.class },
+				(proxy, method, args) -> switch (method.getName()) {
+					case "findDocumentIdById" -> Optional.of(1L);
+					case "findById" -> {
+						// The version's document is loaded along with it
+						version.setDocument(document(row.getContent(), row.getJournalSequence()));
+						yield Optional.of(version);
+					}
+					case "findFirstByDocumentIdAndSequenceNotNullOrderBySequenceDesc" -> Optional.empty();
+					case "save" -> {
+						saved.add((Version) args[0]);
+						yield args[0];
+					}
+					default -> throw new UnsupportedOperationException(method.getName());
+				});
+		UserRepository users = (UserRepository) Proxy.newProxyInstance(
+				UserRepository.class.getClassLoader(), new Class<?>[] { UserRepository.class },
+				(proxy, method, args) -> Optional.of(new User()));
+
+		DocumentEditLanes lanes = new DocumentEditLanes(1000);
+		try {
+			EditJournal journal = new EditJournal(false, "unused", 1 << 20, false, 0, 0);
+			DocumentWriteBehindService writeBehind = new DocumentWriteBehindService(documents, journal, true, 1000);
+			DocumentCacheService cache = new DocumentCacheService(documents, writeBehind, lanes, 1 << 20, 1 << 20, 300_000);
+			CollaborationService collaboration = new CollaborationService(null, null, null, null, List.of(), null, null) {
+				@Override
+				public void contentReplaced(Long documentId) {
+				}
+			};
+			VersionService service = new VersionService(versionRepository, documents, users, cache, collaboration,
+					new VersionStorageService(versionRepository, documents, 20, 1_000_000, 1 << 20), null);
+
+			// An edit applied in memory and journaled as sequence 5, not flushed yet
+			Document live = writeBehind.attach(cache.get(1L));
+			live.setContent("edited");
+			live.setJournalSequence(5);
+			writeBehind.markDirty(live, 1);
+
+			service.restoreVersion(2L, 3L);
+		} finally {
+			lanes.shutdown();
+		}
+
+		assertThat(row.getContent()).isEqualTo("restored");
+		assertThat(row.getJournalSequence()).isEqualTo(5);
+		assertThat(saved).singleElement().extracting(Version::getJournalSequence).isEqualTo(5L);
+	}
+
+	private static Document document(String content, long journalSequence) {
+		User owner = new User();
+		owner.setId(1L);
+		Document document = new Document();
+		document.setId(1L);
+		document.setContent(content);
+		document.setJournalSequence(journalSequence);
+		document.setOwner(owner);
+		return document;
+	}
+
+	private static VersionSummaryDTO summary(Long id, LocalDateTime createdAt) {
+		return new VersionSummaryDTO(id, 1L, "author", "Version " + id, createdAt, 10);
+	}
+}
@@ -0,0 +1,83 @@
+package com.markdowncollab.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import com.markdowncollab.model.Document;
+import com.markdowncollab.model.Version;
+import com.markdowncollab.repository.DocumentRepository;
+import com.markdowncollab.repository.VersionRepository;
+import org.junit.jupiter.api.Test;
+
+class VersionStorageServiceTests {
+
+	private static final String BASE = IntStream.range(0, 2000).mapToObj(i -> "line " + i + "\n").collect(Collectors.joining());
+
+	// Calls to both repositories, in order
+	private final List<String> calls = new ArrayList<>();
+
+	@Test
+	void versionIsStoredAsDeltaComputedBeforeTheLock() {
+		Version version = version(BASE.replace("line 100\n", "changed line\n"));
+
+		service(1_000_000).prepare(version);
+
+		assertThat(version.isKeyframe()).isFalse();
+		assertThat(version.getSequence()).isEqualTo(2);
+		assertThat(calls).containsExactly("findFirstByDocumentIdAndSequenceNotNullOrderBySequenceDesc", "lockById",
+				"findFirstByDocumentIdAndSequenceNotNullOrderBySequenceDesc");
+	}
+
+	@Test
+	void versionWhoseDiffRunsOutOfBudgetIsStoredAsKeyframe() {
+		// Lines changed all over the text: a small delta, but more diff steps than the budget allows
+		String content = IntStream.range(0, 2000).mapToObj(i -> i % 50 == 0 ? "other " + i + "\n" : "line " + i + "\n")
+				.collect(Collectors.joining());
+		Version version = version(content);
+
+		service(100).prepare(version);
+
+		assertThat(version.isKeyframe()).isTrue();
+		assertThat(version.getContent()).isEqualTo(content);
+		assertThat(version.getSequence()).isEqualTo(2);
+	}
+
+	private VersionStorageService service(long diffMaxSteps) {
+		Version previous = version(BASE);
+		previous.setId(1L);
+		previous.storeAsKeyframe(1);
+		VersionRepository versions = (VersionRepository) Proxy.newProxyInstance(
+				VersionRepository.class.getClassLoader(), new Class<?>[] { VersionRepository.class },
+				(proxy, method, args) -> {
+					calls.add(method.getName());
+					return switch (method.getName()) {
+						case "findFirstByDocumentIdAndSequenceNotNullOrderBySequenceDesc" -> Optional.of(previous);
+						default -> throw new UnsupportedOperationException(method.getName());
+					};
+				});
+		DocumentRepository documents = (DocumentRepository) Proxy.newProxyInstance(
+				DocumentRepository.class.getClassLoader(), new Class<?>[] { DocumentRepository.class },
+				(proxy, method, args) -> {
+					calls.add(method.getName());
+					return switch (method.getName()) {
+						case "lockById" -> Optional.of(new Document());
+						default -> throw new UnsupportedOperationException(method.getName());
+					};
+				});
+		return new VersionStorageService(versions, documents, 20, diffMaxSteps, 1 << 20);
+	}
+
+	private static Version version(String content) {
+		Document document = new Document();
+		document.setId(1L);
+		Version version = new Version();
+		version.setDocument(document);
+		version.setContent(content);
+		return version;
+	}
+}